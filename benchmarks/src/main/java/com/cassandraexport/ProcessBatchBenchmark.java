@@ -0,0 +1,79 @@
+package com.cassandraexport;
+
+import com.cassandraexport.benchmarks.SyntheticRows;
+import com.cassandraexport.codec.RowCodec;
+import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.kafka.KafkaProducer;
+import com.cassandraexport.model.CheckpointState;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records per second through {@code CassandraToKafkaExporter.processBatch}: encoding, key generation
+ * and the sync or async send of a whole batch to an in-memory {@link MockProducer}. Lives in the
+ * exporter's package because {@code processBatch} is package-private.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessBatchBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"4", "16", "64"})
+    private int columns;
+
+    @Param({"text", "mixed"})
+    private String types;
+
+    @Param({"sync", "async"})
+    private String sendMode;
+
+    private List<Row> batch;
+    private MockProducer<byte[], byte[]> mockProducer;
+    private KafkaProducer kafkaProducer;
+    private CassandraToKafkaExporter exporter;
+
+    @Setup
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty("kafka.topic", "benchmark");
+        properties.setProperty("kafka.sendMode", sendMode);
+        AppConfig config = AppConfig.fromProperties(properties);
+
+        ColumnDefinitions definitions = SyntheticRows.columns(columns, types);
+        batch = SyntheticRows.rows(definitions, BATCH_SIZE, 1);
+        mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+        kafkaProducer = new KafkaProducer(config, mockProducer);
+        exporter = new CassandraToKafkaExporter(config, new CheckpointState(), RowCodec.compile(definitions));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean processBatch() {
+        boolean success = exporter.processBatch(batch, kafkaProducer, 0);
+        // MockProducer keeps every record it was sent
+        mockProducer.clear();
+        return success;
+    }
+}
@@ -0,0 +1,68 @@
+package com.cassandraexport.benchmarks;
+
+import com.cassandraexport.model.CheckpointState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@code CheckpointState.save} in the binary and JSON formats for token scans with
+ * different numbers of ranges, all of them partially exported. Includes the fsync and rename.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CheckpointBenchmark {
+
+    @Param({"16", "256", "4096"})
+    private int ranges;
+
+    @Param({"bin", "json"})
+    private String format;
+
+    private CheckpointState state;
+    private String file;
+    private String pagingState;
+    private long step;
+
+    @Setup
+    public void setUp() throws Exception {
+        Path directory = Files.createTempDirectory("benchmark-checkpoints");
+        file = directory.resolve("checkpoint." + format).toString();
+
+        byte[] paging = new byte[40];
+        new Random(1).nextBytes(paging);
+        pagingState = Base64.getEncoder().encodeToString(paging);
+
+        state = new CheckpointState();
+        state.setTotalRanges(ranges);
+        step = Long.MAX_VALUE / ranges * 2;
+        for (int i = 0; i < ranges; i++) {
+            state.updateRangeProgress(i, Long.MIN_VALUE + i * step, Long.MIN_VALUE + (i + 1) * step,
+                    pagingState, 1000);
+        }
+    }
+
+    @Benchmark
+    public void save() {
+        state.updateRangeProgress(0, Long.MIN_VALUE, Long.MIN_VALUE + step, pagingState, 1000);
+        state.save(file);
+    }
+}
@@ -0,0 +1,88 @@
+package com.cassandraexport.benchmarks;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory sink: acknowledges every record immediately and, unlike {@link MockProducer}, keeps
+ * only which row ids arrived, so multi-million row runs do not fill the heap with records.
+ */
+public class CountingProducer extends MockProducer<byte[], byte[]> {
+    private final BitSet delivered = new BitSet();
+    private final AtomicLong records = new AtomicLong(0);
+    private final AtomicLong bytes = new AtomicLong(0);
+    private final LatencyRecorder latencies;
+    private long duplicates;
+
+    public CountingProducer(LatencyRecorder latencies) {
+        super(true, new ByteArraySerializer(), new ByteArraySerializer());
+        this.latencies = latencies;
+    }
+
+    @Override
+    public Future<RecordMetadata> send(ProducerRecord<byte[], byte[]> record, Callback callback) {
+        String key = new String(record.key(), StandardCharsets.UTF_8);
+        long id = Long.parseLong(key.substring(key.indexOf('-') + 1));
+        synchronized (delivered) {
+            if (delivered.get((int) id)) {
+                duplicates++;
+            } else {
+                delivered.set((int) id);
+            }
+        }
+        long offset = records.getAndIncrement();
+        bytes.addAndGet(record.value().length);
+
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition(record.topic(), 0), offset, 0,
+                System.currentTimeMillis(), record.key().length, record.value().length);
+        if (callback != null) {
+            callback.onCompletion(metadata, null);
+        }
+        latencies.recordAcknowledged(id);
+        return CompletableFuture.completedFuture(metadata);
+    }
+
+    // Nothing is buffered, and the sink stays open so that a resumed run keeps counting into it
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void close(Duration timeout) {
+    }
+
+    public long getRecords() {
+        return records.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getDistinctRecords() {
+        synchronized (delivered) {
+            return delivered.cardinality();
+        }
+    }
+
+    public long getDuplicates() {
+        synchronized (delivered) {
+            return duplicates;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.cassandraexport.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Batch latency from the moment the source hands out a page until the last record of that page
+ * has been sent and acknowledged, which covers encoding, queueing and sending.
+ */
+public class LatencyRecorder {
+    private final ConcurrentHashMap<Long, Long> pending = new ConcurrentHashMap<>();
+    private long[] latencies = new long[1024];
+    private int count;
+
+    void pageServed(long lastRowId) {
+        pending.put(lastRowId, System.nanoTime());
+    }
+
+    void recordAcknowledged(long rowId) {
+        Long servedAt = pending.remove(rowId);
+        if (servedAt != null) {
+            add(System.nanoTime() - servedAt);
+        }
+    }
+
+    private synchronized void add(long latencyNanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the latency in milliseconds below which {@code percentile} percent of the batches completed
+     */
+    public synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+}
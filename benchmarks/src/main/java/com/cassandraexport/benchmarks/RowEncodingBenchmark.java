@@ -0,0 +1,114 @@
+package com.cassandraexport.benchmarks;
+
+import com.cassandraexport.codec.AvroRowCodec;
+import com.cassandraexport.codec.FileSchemaRegistry;
+import com.cassandraexport.codec.RowCodec;
+import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.kafka.KafkaProducer;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per row of turning a driver row into a Kafka key and value: the compiled JSON and Avro
+ * codecs, key generation, and the map based conversion and JSON serialization they replaced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowEncodingBenchmark {
+    private static final int ROWS = 1000;
+
+    @Param({"4", "16", "64"})
+    private int columns;
+
+    @Param({"text", "numeric", "mixed"})
+    private String types;
+
+    private List<Row> rows;
+    private RowCodec jsonCodec;
+    private RowCodec avroCodec;
+    private KafkaProducer kafkaProducer;
+    private String[] names;
+
+    @Setup
+    public void setUp() throws Exception {
+        ColumnDefinitions definitions = SyntheticRows.columns(columns, types);
+        rows = SyntheticRows.rows(definitions, ROWS, 1);
+        jsonCodec = RowCodec.compile(definitions);
+        FileSchemaRegistry registry = new FileSchemaRegistry(Files.createTempDirectory("benchmark-schemas"));
+        avroCodec = AvroRowCodec.compile(definitions, registry, true);
+        kafkaProducer = new KafkaProducer(AppConfig.fromProperties(new Properties()), new MockProducer<>());
+
+        names = new String[definitions.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = definitions.get(i).getName().asInternal();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void jsonCodec(Blackhole blackhole) throws Exception {
+        for (Row row : rows) {
+            blackhole.consume(jsonCodec.encode(row));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void avroCodec(Blackhole blackhole) throws Exception {
+        for (Row row : rows) {
+            blackhole.consume(avroCodec.encode(row));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void key(Blackhole blackhole) {
+        for (Row row : rows) {
+            blackhole.consume(jsonCodec.key(row));
+        }
+    }
+
+    /**
+     * The conversion by column name into a map and its serialization with {@code KafkaProducer.serialize},
+     * the path {@code sendRecord} takes.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mapAndSerialize(Blackhole blackhole) throws Exception {
+        for (Row row : rows) {
+            Map<String, Object> record = new HashMap<>();
+            for (String name : names) {
+                Object value = row.getObject(name);
+                // Jackson has no serializer for java.time without an extra module
+                record.put(name, value instanceof Instant ? ((Instant) value).toEpochMilli() : value);
+            }
+            blackhole.consume(kafkaProducer.serialize(record));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.cassandraexport.benchmarks;
+
+import com.cassandraexport.cassandra.ResultPage;
+import com.cassandraexport.cassandra.TokenRange;
+import com.cassandraexport.codec.RowCodec;
+import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.metrics.ExportMetrics;
+import com.cassandraexport.spi.RowSource;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for Cassandra with the paging contract of the driver. The table
+ * holds rows {@code row-0} to {@code row-(rowCount-1)}, token range {@code i} of {@code n} holds the
+ * i-th n-th of them, and paging states encode the position within the query or range. Every page
+ * takes at least {@code pageLatencyMs}, like a round trip to the cluster.
+ */
+public class SyntheticRowSource implements RowSource {
+    private final long rowCount;
+    private final int tokenRangeSplits;
+    private final long pageLatencyMs;
+    private final long failAfterRows;
+    private final ColumnDefinitions columns;
+    private final RowCodec rowCodec;
+    private final LatencyRecorder latencies;
+    private final AtomicLong rowsServed = new AtomicLong(0);
+
+    /**
+     * @param failAfterRows fail the scan once this many rows have been served, 0 to never fail
+     */
+    public SyntheticRowSource(AppConfig config, long rowCount, ColumnDefinitions columns,
+                              long pageLatencyMs, long failAfterRows, LatencyRecorder latencies) {
+        this.rowCount = rowCount;
+        this.tokenRangeSplits = config.getCassandraTokenRangeSplits();
+        this.pageLatencyMs = pageLatencyMs;
+        this.failAfterRows = failAfterRows;
+        this.columns = columns;
+        this.rowCodec = RowCodec.compile(columns);
+        this.latencies = latencies;
+    }
+
+    @Override
+    public ResultPage fetchPage(String pagingState, int pageSize) {
+        return page(0, rowCount, pagingState, pageSize);
+    }
+
+    @Override
+    public boolean scanRange(TokenRange range, String pagingState, int batchSize, BatchHandler handler) {
+        long first = rowCount * range.getIndex() / tokenRangeSplits;
+        long end = rowCount * (range.getIndex() + 1) / tokenRangeSplits;
+        String nextPagingState = pagingState;
+        do {
+            ResultPage page = page(first, end, nextPagingState, batchSize);
+            nextPagingState = page.getPagingState();
+            if (!page.getRows().isEmpty() && !handler.onBatch(page.getRows(), nextPagingState)) {
+                return false;
+            }
+        } while (nextPagingState != null);
+        return true;
+    }
+
+    @Override
+    public RowCodec getRowCodec() {
+        return rowCodec;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private ResultPage page(long first, long end, String pagingState, int pageSize) {
+        long start = pagingState == null ? first : decode(pagingState);
+        long last = Math.min(start + pageSize, end);
+        if (failAfterRows > 0 && rowsServed.addAndGet(last - start) > failAfterRows) {
+            throw new RuntimeException("Synthetic failure after " + failAfterRows + " rows");
+        }
+        long fetchStart = System.nanoTime();
+        sleep();
+
+        Random random = new Random(start);
+        List<Row> rows = new ArrayList<>((int) (last - start));
+        for (long id = start; id < last; id++) {
+            rows.add(SyntheticRows.row(columns, id, random));
+        }
+        ExportMetrics.get().pageFetched(rows.size(), System.nanoTime() - fetchStart);
+        if (last > start) {
+            latencies.pageServed(last - 1);
+        }
+        return new ResultPage(rows, last < end ? encode(last) : null);
+    }
+
+    private void sleep() {
+        if (pageLatencyMs > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(pageLatencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String encode(long position) {
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(8).putLong(position).array());
+    }
+
+    private static long decode(String pagingState) {
+        return ByteBuffer.wrap(Base64.getDecoder().decode(pagingState)).getLong();
+    }
+}
@@ -0,0 +1,120 @@
+package com.cassandraexport.benchmarks;
+
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.detach.AttachmentPoint;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinition;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinitions;
+import com.datastax.oss.driver.internal.core.cql.DefaultRow;
+import com.datastax.oss.protocol.internal.response.result.ColumnSpec;
+import com.datastax.oss.protocol.internal.response.result.RawType;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Driver rows built in memory, holding the serialized column values the driver would receive from
+ * Cassandra, so decoding costs are the real ones. The first column is always the {@code id} text key.
+ */
+public final class SyntheticRows {
+    public static final String KEYSPACE = "bench";
+    public static final String TABLE = "rows";
+
+    private static final DataType[] NUMERIC = {DataTypes.BIGINT, DataTypes.INT, DataTypes.DOUBLE};
+    private static final DataType[] MIXED = {DataTypes.TEXT, DataTypes.BIGINT, DataTypes.TIMESTAMP, DataTypes.UUID,
+            DataTypes.DECIMAL, DataTypes.BOOLEAN, DataTypes.BLOB, DataTypes.INT};
+
+    private SyntheticRows() {
+    }
+
+    /**
+     * @param width number of columns, including the key
+     * @param types {@code text}, {@code numeric} or {@code mixed}
+     */
+    public static ColumnDefinitions columns(int width, String types) {
+        List<ColumnDefinition> definitions = new ArrayList<>(width);
+        definitions.add(column("id", 0, DataTypes.TEXT));
+        for (int i = 1; i < width; i++) {
+            definitions.add(column("col_" + i, i, typeOf(types, i)));
+        }
+        return DefaultColumnDefinitions.valueOf(definitions);
+    }
+
+    public static List<Row> rows(ColumnDefinitions columns, int count, long firstId) {
+        Random random = new Random(firstId);
+        List<Row> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(row(columns, firstId + i, random));
+        }
+        return rows;
+    }
+
+    public static Row row(ColumnDefinitions columns, long id, Random random) {
+        List<ByteBuffer> values = new ArrayList<>(columns.size());
+        values.add(encode(DataTypes.TEXT, "row-" + id));
+        for (int i = 1; i < columns.size(); i++) {
+            DataType type = columns.get(i).getType();
+            values.add(encode(type, valueOf(type, id, i, random)));
+        }
+        return new DefaultRow(columns, values, AttachmentPoint.NONE);
+    }
+
+    private static ColumnDefinition column(String name, int index, DataType type) {
+        RawType rawType = RawType.PRIMITIVES.get(type.getProtocolCode());
+        return new DefaultColumnDefinition(new ColumnSpec(KEYSPACE, TABLE, name, index, rawType), AttachmentPoint.NONE);
+    }
+
+    private static DataType typeOf(String types, int index) {
+        switch (types) {
+            case "text":
+                return DataTypes.TEXT;
+            case "numeric":
+                return NUMERIC[index % NUMERIC.length];
+            case "mixed":
+                return MIXED[index % MIXED.length];
+            default:
+                throw new IllegalArgumentException("Unknown column types: " + types);
+        }
+    }
+
+    private static Object valueOf(DataType type, long id, int column, Random random) {
+        if (type.equals(DataTypes.TEXT)) {
+            return "value " + id + " of column " + column;
+        } else if (type.equals(DataTypes.BIGINT)) {
+            return random.nextLong();
+        } else if (type.equals(DataTypes.INT)) {
+            return random.nextInt(1_000_000);
+        } else if (type.equals(DataTypes.DOUBLE)) {
+            return random.nextDouble() * 1000;
+        } else if (type.equals(DataTypes.TIMESTAMP)) {
+            return Instant.ofEpochMilli(1_600_000_000_000L + random.nextInt(Integer.MAX_VALUE));
+        } else if (type.equals(DataTypes.UUID)) {
+            return new UUID(random.nextLong(), random.nextLong());
+        } else if (type.equals(DataTypes.DECIMAL)) {
+            return BigDecimal.valueOf(random.nextInt(10_000_000), 2);
+        } else if (type.equals(DataTypes.BOOLEAN)) {
+            return random.nextBoolean();
+        } else if (type.equals(DataTypes.BLOB)) {
+            byte[] bytes = new byte[64];
+            random.nextBytes(bytes);
+            return ByteBuffer.wrap(bytes);
+        }
+        throw new IllegalArgumentException("Unsupported column type: " + type);
+    }
+
+    private static ByteBuffer encode(DataType type, Object value) {
+        TypeCodec<Object> codec = CodecRegistry.DEFAULT.codecFor(type);
+        return codec.encode(value, ProtocolVersion.DEFAULT);
+    }
+}
@@ -0,0 +1,144 @@
+package com.cassandraexport.benchmarks;
+
+import com.cassandraexport.CassandraToKafkaExporter;
+import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.kafka.KafkaProducer;
+import com.cassandraexport.model.CheckpointState;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a whole export, from the paging loop through the pipeline and the producer to the
+ * checkpoint, against a {@link SyntheticRowSource} and a {@link CountingProducer}, and reports
+ * throughput, batch latency, heap use and whether every row arrived exactly once.
+ *
+ * <p>Arguments are {@code key=value} pairs. The harness options are {@code rows}, {@code columns},
+ * {@code types} ({@code text}, {@code numeric} or {@code mixed}), {@code pageLatencyMs} and
+ * {@code failAfterRows}, which aborts the first run after that many rows and resumes the export
+ * from its checkpoint in a second run. Every other pair is passed on as an application property,
+ * e.g. {@code pipeline.enabled=true} or {@code cassandra.scanMode=token}.
+ */
+public final class ThroughputHarness {
+
+    private ThroughputHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties options = new Properties();
+        options.setProperty("rows", "1000000");
+        options.setProperty("columns", "10");
+        options.setProperty("types", "mixed");
+        options.setProperty("pageLatencyMs", "0");
+        options.setProperty("failAfterRows", "0");
+
+        Path checkpointFile = Files.createTempFile("harness-checkpoint", ".json");
+        Files.delete(checkpointFile);
+        Properties properties = new Properties();
+        properties.setProperty("kafka.topic", "harness");
+        properties.setProperty("state.checkpointFile", checkpointFile.toString());
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value but got " + arg);
+            }
+            String key = arg.substring(0, separator);
+            (options.containsKey(key) ? options : properties).setProperty(key, arg.substring(separator + 1));
+        }
+
+        long rows = Long.parseLong(options.getProperty("rows"));
+        long pageLatencyMs = Long.parseLong(options.getProperty("pageLatencyMs"));
+        long failAfterRows = Long.parseLong(options.getProperty("failAfterRows"));
+        properties.setProperty("cassandra.totalRecords", String.valueOf(rows));
+        AppConfig config = AppConfig.fromProperties(properties);
+        ColumnDefinitions columns = SyntheticRows.columns(Integer.parseInt(options.getProperty("columns")),
+                options.getProperty("types"));
+
+        LatencyRecorder latencies = new LatencyRecorder();
+        CountingProducer sink = new CountingProducer(latencies);
+        HeapSampler heap = new HeapSampler();
+        heap.start();
+
+        long start = System.nanoTime();
+        run(config, new SyntheticRowSource(config, rows, columns, pageLatencyMs, failAfterRows, latencies), sink);
+        CheckpointState checkpoint = CheckpointState.load(checkpointFile.toString());
+        int runs = 1;
+        if (failAfterRows > 0 && !checkpoint.isCompleted()) {
+            long resumeFrom = checkpoint.getRecordsProcessed();
+            System.out.printf("First run failed after %d rows, %d checkpointed, resuming%n",
+                    sink.getRecords(), resumeFrom);
+            run(config, new SyntheticRowSource(config, rows, columns, pageLatencyMs, 0, latencies), sink);
+            checkpoint = CheckpointState.load(checkpointFile.toString());
+            runs++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        heap.stop();
+
+        System.gc();
+        long heapAfterGc = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+        System.out.printf("Runs:               %d%n", runs);
+        System.out.printf("Records sent:       %d (%d distinct of %d, %d duplicates, %d missing)%n",
+                sink.getRecords(), sink.getDistinctRecords(), rows, sink.getDuplicates(),
+                rows - sink.getDistinctRecords());
+        System.out.printf("Throughput:         %.0f records/s, %.1f MB/s%n",
+                sink.getRecords() / seconds, sink.getBytes() / seconds / (1024 * 1024));
+        System.out.printf("Batch latency:      p50 %.2f ms, p99 %.2f ms (%d batches)%n",
+                latencies.percentileMillis(50), latencies.percentileMillis(99), latencies.getCount());
+        System.out.printf("Peak heap:          %d MB%n", heap.getPeakBytes() / (1024 * 1024));
+        System.out.printf("Heap after GC:      %d MB%n", heapAfterGc / (1024 * 1024));
+        System.out.printf("Checkpoint:         %s, %d records%n",
+                checkpoint.isCompleted() ? "completed" : "not completed", checkpoint.getRecordsProcessed());
+
+        Files.deleteIfExists(checkpointFile);
+        boolean exact = checkpoint.isCompleted() && sink.getDistinctRecords() == rows;
+        // The shutdown hooks of the exporters would otherwise keep the exit status from reflecting the run
+        Runtime.getRuntime().halt(exact ? 0 : 1);
+    }
+
+    private static void run(AppConfig config, SyntheticRowSource source, CountingProducer sink) {
+        new CassandraToKafkaExporter(config, () -> source, () -> new KafkaProducer(config, sink)).start();
+    }
+
+    // Samples the used heap, which includes garbage, so the peak shows the allocation headroom a run needs
+    private static final class HeapSampler implements Runnable {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final AtomicLong peakBytes = new AtomicLong(0);
+        private final Thread thread = new Thread(this, "heap-sampler");
+
+        void start() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running.set(false);
+            thread.join();
+        }
+
+        long getPeakBytes() {
+            return peakBytes.get();
+        }
+
+        @Override
+        public void run() {
+            while (running.get()) {
+                peakBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
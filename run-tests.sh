@@ -45,11 +45,11 @@ mkdir -p target/test-classes 2>/dev/null
 
 # Compile main classes
 echo "Compiling main classes..."
-$JAVAC_BIN -d target/classes -cp "$CLASSPATH" src/main/java/com/cassandraexport/*.java src/main/java/com/cassandraexport/cassandra/*.java src/main/java/com/cassandraexport/config/*.java src/main/java/com/cassandraexport/kafka/*.java src/main/java/com/cassandraexport/model/*.java
+$JAVAC_BIN -d target/classes -cp "$CLASSPATH" $(find src/main/java -name '*.java')
 
 # Compile test classes
 echo "Compiling test classes..."
-$JAVAC_BIN -d target/test-classes -cp "$CLASSPATH" src/test/java/com/cassandraexport/*.java src/test/java/com/cassandraexport/cassandra/*.java src/test/java/com/cassandraexport/config/*.java src/test/java/com/cassandraexport/kafka/*.java src/test/java/com/cassandraexport/model/*.java
+$JAVAC_BIN -d target/test-classes -cp "$CLASSPATH" $(find src/test/java -name '*.java')
 
 # Copy test resources
 echo "Copying test resources..."
@@ -1,16 +1,37 @@
 package com.cassandraexport;
 
 import com.cassandraexport.cassandra.CassandraClient;
+import com.cassandraexport.cassandra.ResultPage;
+import com.cassandraexport.cassandra.TokenRange;
+import com.cassandraexport.codec.RowCodec;
 import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.file.FileSink;
+import com.cassandraexport.kafka.BatchAcknowledgement;
 import com.cassandraexport.kafka.KafkaProducer;
+import com.cassandraexport.metrics.ExportMetrics;
+import com.cassandraexport.metrics.MetricsReporter;
 import com.cassandraexport.model.CheckpointState;
+import com.cassandraexport.model.CheckpointWriter;
+import com.cassandraexport.model.RangeCheckpoint;
+import com.cassandraexport.pipeline.ExportPipeline;
+import com.cassandraexport.spi.RecordSink;
+import com.cassandraexport.spi.RowSource;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 public class CassandraToKafkaExporter {
     private static final Logger logger = LoggerFactory.getLogger(CassandraToKafkaExporter.class);
@@ -18,9 +39,28 @@ public class CassandraToKafkaExporter {
     private final CheckpointState checkpointState;
     private final AtomicBoolean running = new AtomicBoolean(true);
     private final String checkpointFile;
+    private final Supplier<? extends RowSource> rowSources;
+    private final Supplier<? extends RecordSink> recordSinks;
+    private volatile CheckpointWriter checkpointWriter;
+    private RowCodec rowCodec;
 
     public CassandraToKafkaExporter() {
-        this.config = AppConfig.getInstance();
+        this(AppConfig.getInstance());
+    }
+
+    private CassandraToKafkaExporter(AppConfig config) {
+        this(config, CassandraClient::new, recordSinks(config));
+    }
+
+    /**
+     * Exports from the rows of a source to a sink, both created by {@link #start()} and closed
+     * when it returns, e.g. a synthetic source and an in-memory sink in the throughput harness.
+     */
+    public CassandraToKafkaExporter(AppConfig config, Supplier<? extends RowSource> rowSources,
+                                    Supplier<? extends RecordSink> recordSinks) {
+        this.config = config;
+        this.rowSources = rowSources;
+        this.recordSinks = recordSinks;
         this.checkpointFile = config.getStateCheckpointFile();
         this.checkpointState = CheckpointState.load(checkpointFile);
 
@@ -30,18 +70,54 @@ public class CassandraToKafkaExporter {
             public void run() {
                 logger.info("Shutdown initiated, gracefully stopping...");
                 running.set(false);
+
+                // Persist the acknowledged progress the background writer has not saved yet
+                CheckpointWriter writer = checkpointWriter;
+                if (writer != null) {
+                    writer.flush();
+                }
             }
         }));
     }
 
+    // Drives batches directly, without a checkpoint file, connections or shutdown hook (benchmarks)
+    CassandraToKafkaExporter(AppConfig config, CheckpointState checkpointState, RowCodec rowCodec) {
+        this.config = config;
+        this.checkpointFile = config.getStateCheckpointFile();
+        this.checkpointState = checkpointState;
+        this.rowCodec = rowCodec;
+        this.rowSources = null;
+        this.recordSinks = null;
+    }
+
+    /**
+     * The sink selected by {@code sink.type}: {@code kafka} or {@code file}.
+     */
+    private static Supplier<? extends RecordSink> recordSinks(AppConfig config) {
+        String sinkType = config.getSinkType();
+        if ("kafka".equalsIgnoreCase(sinkType)) {
+            return () -> new KafkaProducer(config);
+        }
+        if ("file".equalsIgnoreCase(sinkType)) {
+            return () -> new FileSink(config);
+        }
+        throw new IllegalArgumentException("Unsupported sink.type: " + sinkType);
+    }
+
     public void start() {
         logger.info("Starting Cassandra to Kafka export process");
         logger.info("Batch size: {}, Total target records: {}", 
                 config.getCassandraBatchSize(), config.getCassandraTotalRecords());
 
-        if (checkpointState.isCompleted()) {
-            logger.info("Previous export job already completed successfully. To run again, delete the checkpoint file.");
-            return;
+        boolean incremental = StringUtils.isNotBlank(config.getCassandraIncrementalColumn());
+        if (checkpointState.isCompleted() && checkpointState.getSpillSegments().isEmpty()) {
+            if (!incremental) {
+                logger.info("Previous export job already completed successfully. To run again, delete the checkpoint file.");
+                return;
+            }
+            startIncrementalRun();
+        } else if (checkpointState.isFresh()) {
+            checkpointState.setRunStartedAt(currentTimeMicros());
         }
 
         // If there was an error in a previous run, log it
@@ -50,94 +126,324 @@ public class CassandraToKafkaExporter {
                     checkpointState.getErrorMessage(), checkpointState.getLastProcessedOffset());
         }
 
-        try (CassandraClient cassandraClient = new CassandraClient();
-             KafkaProducer kafkaProducer = new KafkaProducer()) {
+        MetricsReporter metricsReporter = null;
+        try {
+            metricsReporter = MetricsReporter.start(config);
+            try (CheckpointWriter writer = new CheckpointWriter(checkpointState, checkpointFile,
+                    config.getStateCheckpointIntervalMs(), config.getStateCheckpointEveryRecords());
+                 RowSource rowSource = rowSources.get();
+                 RecordSink recordSink = recordSinks.get()) {
+                checkpointWriter = writer;
+                rowCodec = rowSource.getRowCodec();
+                if (incremental) {
+                    if (!rowSource.supportsWriteTimeWatermark()) {
+                        throw new IllegalStateException(rowSource.getClass().getSimpleName()
+                                + " does not support incremental exports, unset cassandra.incremental.column");
+                    }
+                    rowSource.setWriteTimeWatermark(checkpointState.getWriteTimeWatermark());
+                }
+                recordSink.resumeSpill(checkpointState.getSpillSegments(), this::spillSegmentsChanged);
 
-            long startOffset = checkpointState.getLastProcessedOffset();
-            long totalRecordsToProcess = config.getCassandraTotalRecords();
-            int batchSize = config.getCassandraBatchSize();
-            long totalProcessed = checkpointState.getRecordsProcessed();
+                boolean tokenScan = "token".equalsIgnoreCase(config.getCassandraScanMode());
+                if (checkpointState.isCompleted()) {
+                    // Only the spilled records of the previous run are left, closing the sink sends them
+                    logger.info("Previous export job completed, sending the records it spilled to disk");
+                } else if (config.isPipelineEnabled()) {
+                    ExportPipeline pipeline = new ExportPipeline(config, rowSource, recordSink,
+                            checkpointState, writer, running, rowCodec);
+                    if (tokenScan) {
+                        pipeline.exportTokenRanges(pendingTokenRanges());
+                    } else {
+                        pipeline.exportSequential();
+                    }
+                } else if (tokenScan) {
+                    exportTokenRanges(rowSource, recordSink);
+                } else {
+                    exportSequential(rowSource, recordSink);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Critical error during export process: {}", e.getMessage(), e);
+            checkpointState.setError("Critical error: " + e.getMessage());
+            checkpointState.save(checkpointFile);
+        } finally {
+            checkpointWriter = null;
+            if (metricsReporter != null) {
+                metricsReporter.close();
+            }
+        }
+    }
 
-            logger.info("Resuming from offset: {}, already processed: {} records", 
-                    startOffset, totalProcessed);
+    /**
+     * Resets the checkpoint of the completed previous run for the next one, which exports the rows
+     * written since the previous run started, less {@code cassandra.incremental.overlapMs}.
+     */
+    private void startIncrementalRun() {
+        long previousStart = checkpointState.getRunStartedAt();
+        long watermark = previousStart == 0
+                ? Long.MIN_VALUE : previousStart - config.getCassandraIncrementalOverlapMs() * 1000;
+        checkpointState.startRun(watermark, currentTimeMicros());
+        checkpointState.save(checkpointFile);
+        if (watermark == Long.MIN_VALUE) {
+            logger.info("Previous export job completed without a recorded start time, exporting every row");
+        } else {
+            logger.info("Previous export job completed, exporting the rows written since {}",
+                    Instant.EPOCH.plus(watermark, ChronoUnit.MICROS));
+        }
+    }
 
-            // Process batches until we've processed all records
-            while (running.get() && totalProcessed < totalRecordsToProcess) {
-                List<Map<String, Object>> batch = cassandraClient.fetchBatch(startOffset, batchSize);
-                
-                if (batch.isEmpty()) {
+    // Cassandra write times are microseconds since the epoch
+    private static long currentTimeMicros() {
+        return System.currentTimeMillis() * 1000;
+    }
+
+    /**
+     * Keeps the spill segments in the checkpoint in step with the sink, so a checkpoint never commits
+     * a batch without naming the segments its spilled records are in.
+     */
+    private void spillSegmentsChanged(List<String> segments) {
+        checkpointState.setSpillSegments(segments);
+        CheckpointWriter writer = checkpointWriter;
+        if (writer != null) {
+            writer.recordProgress(0);
+        }
+    }
+
+    private void exportSequential(RowSource rowSource, RecordSink recordSink) {
+        long startOffset = checkpointState.getLastProcessedOffset();
+        String pagingState = checkpointState.getPagingState();
+        long totalRecordsToProcess = config.getCassandraTotalRecords();
+        int batchSize = config.getCassandraBatchSize();
+        long totalProcessed = checkpointState.getRecordsProcessed();
+        boolean endOfData = false;
+
+        logger.info("Resuming from offset: {}, already processed: {} records", 
+                startOffset, totalProcessed);
+
+        // Checkpoints without a paging state can only be resumed by skipping the rows already sent
+        long rowsToSkip = pagingState == null ? startOffset : 0;
+        if (rowsToSkip > 0) {
+            logger.warn("Checkpoint has no paging state, skipping {} already exported rows", rowsToSkip);
+        }
+
+        // Process pages until we've processed all records
+        while (running.get() && totalProcessed < totalRecordsToProcess) {
+            ResultPage page = rowSource.fetchPage(pagingState, batchSize);
+            List<Row> batch = page.getRows();
+            
+            if (rowsToSkip > 0) {
+                int skipped = (int) Math.min(rowsToSkip, batch.size());
+                batch = batch.subList(skipped, batch.size());
+                rowsToSkip -= skipped;
+            }
+            
+            if (batch.isEmpty()) {
+                if (page.isLastPage()) {
                     logger.info("No more records available from Cassandra");
+                    endOfData = true;
                     break;
                 }
+                pagingState = page.getPagingState();
+                continue;
+            }
 
-                // Process this batch
-                boolean batchSuccess = processBatch(batch, kafkaProducer, startOffset);
+            // Process this batch
+            boolean batchSuccess = processBatch(batch, recordSink, startOffset);
+            
+            if (batchSuccess) {
+                // Update checkpoint
+                int recordsInBatch = batch.size();
+                totalProcessed += recordsInBatch;
+                startOffset += recordsInBatch;
+                pagingState = page.getPagingState();
                 
-                if (batchSuccess) {
-                    // Update checkpoint
-                    int recordsInBatch = batch.size();
-                    totalProcessed += recordsInBatch;
-                    startOffset += recordsInBatch;
-                    
-                    checkpointState.updateProgress(startOffset, recordsInBatch);
-                    checkpointState.save(checkpointFile);
-                    
-                    logger.info("Progress: {}/{} records processed ({}%)", 
-                            totalProcessed, totalRecordsToProcess, 
-                            (totalProcessed * 100) / totalRecordsToProcess);
-                    
-                } else {
-                    // Handle batch failure
-                    String errorMsg = "Failed to process batch starting at offset " + startOffset;
-                    logger.error(errorMsg);
-                    checkpointState.setError(errorMsg);
-                    checkpointState.save(checkpointFile);
-                    
-                    // Force exit the loop
-                    break;
+                checkpointState.updateProgress(startOffset, recordsInBatch, pagingState);
+                checkpointWriter.recordProgress(recordsInBatch);
+                
+                logger.info("Progress: {}/{} records processed ({}%)", 
+                        totalProcessed, totalRecordsToProcess, 
+                        (totalProcessed * 100) / totalRecordsToProcess);
+                
+            } else {
+                // Handle batch failure
+                String errorMsg = "Failed to process batch starting at offset " + startOffset;
+                logger.error(errorMsg);
+                checkpointState.setError(errorMsg);
+                checkpointWriter.flush();
+                
+                // Force exit the loop
+                break;
+            }
+
+            // Check if the record sink is still healthy
+            if (!recordSink.isHealthy()) {
+                logger.error("Record sink is not healthy, stopping export process");
+                String errorMsg = "Record sink failed after multiple retries";
+                checkpointState.setError(errorMsg);
+                checkpointWriter.flush();
+                break;
+            }
+
+            if (page.isLastPage()) {
+                logger.info("No more records available from Cassandra");
+                endOfData = true;
+                break;
+            }
+        }
+
+        // An incremental run exports fewer rows than the table has, it is complete once the query is
+        boolean finished = totalProcessed >= totalRecordsToProcess
+                || endOfData && StringUtils.isNotBlank(config.getCassandraIncrementalColumn());
+        // If we completed all records or were shut down gracefully
+        if (finished || !running.get()) {
+            if (finished) {
+                logger.info("Export process completed successfully");
+                checkpointState.markCompleted();
+            } else {
+                logger.info("Export process stopped gracefully before completion");
+            }
+            checkpointWriter.flush();
+        }
+    }
+
+    private void exportTokenRanges(RowSource rowSource, RecordSink recordSink)
+            throws InterruptedException {
+        List<TokenRange> pending = pendingTokenRanges();
+        int parallelism = Math.max(1, config.getCassandraScanParallelism());
+        int batchSize = config.getCassandraBatchSize();
+        long totalRecordsToProcess = config.getCassandraTotalRecords();
+
+        logger.info("Scanning {} token ranges with {} parallel scans", pending.size(), parallelism);
+
+        AtomicLong totalProcessed = new AtomicLong(checkpointState.getRecordsProcessed());
+        AtomicBoolean failed = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (TokenRange range : pending) {
+                executor.submit(() -> exportRange(range, rowSource, recordSink,
+                        batchSize, totalProcessed, totalRecordsToProcess, failed));
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        if (!failed.get() && running.get()) {
+            logger.info("Export process completed successfully");
+            checkpointState.markCompleted();
+            checkpointWriter.flush();
+        } else if (!failed.get()) {
+            logger.info("Export process stopped gracefully before completion");
+            checkpointWriter.flush();
+        }
+    }
+
+    private List<TokenRange> pendingTokenRanges() {
+        List<TokenRange> ranges = TokenRange.splitRing(config.getCassandraTokenRangeSplits());
+
+        // Completed range indices are only meaningful for the same split count
+        if (checkpointState.getTotalRanges() != 0 && checkpointState.getTotalRanges() != ranges.size()) {
+            throw new IllegalStateException("Checkpoint was written for " + checkpointState.getTotalRanges()
+                    + " token ranges but cassandra.tokenRangeSplits is " + ranges.size()
+                    + ", delete the checkpoint file to start over");
+        }
+        checkpointState.setTotalRanges(ranges.size());
+
+        List<TokenRange> pending = new ArrayList<>();
+        for (TokenRange range : ranges) {
+            if (!checkpointState.isRangeCompleted(range.getIndex())) {
+                pending.add(range);
+            }
+        }
+
+        logger.info("{} of {} token ranges left to scan, already processed: {} records",
+                pending.size(), ranges.size(), checkpointState.getRecordsProcessed());
+        return pending;
+    }
+
+    private void exportRange(TokenRange range, RowSource rowSource, RecordSink recordSink,
+                             int batchSize, AtomicLong totalProcessed, long totalRecordsToProcess,
+                             AtomicBoolean failed) {
+        if (failed.get() || !running.get()) {
+            return;
+        }
+
+        RangeCheckpoint rangeCheckpoint;
+        rangeCheckpoint = checkpointState.getRange(range.getIndex());
+        String startPagingState = rangeCheckpoint == null ? null : rangeCheckpoint.getPagingState();
+        long[] recordsInRange = {rangeCheckpoint == null ? 0 : rangeCheckpoint.getRecordsProcessed()};
+        try {
+            boolean scanned = rowSource.scanRange(range, startPagingState, batchSize, (batch, pagingState) -> {
+                if (failed.get() || !running.get()) {
+                    return false;
                 }
 
-                // Check if Kafka producer is still healthy
-                if (!kafkaProducer.isHealthy()) {
-                    logger.error("Kafka producer is not healthy, stopping export process");
-                    String errorMsg = "Kafka producer failed after multiple retries";
-                    checkpointState.setError(errorMsg);
-                    checkpointState.save(checkpointFile);
-                    break;
+                if (!processBatch(batch, recordSink, recordsInRange[0])) {
+                    failRange(range, failed, "Failed to process batch in token range " + range);
+                    return false;
                 }
-            }
+                recordsInRange[0] += batch.size();
 
-            // If we completed all records or were shut down gracefully
-            if (totalProcessed >= totalRecordsToProcess || !running.get()) {
-                if (totalProcessed >= totalRecordsToProcess) {
-                    logger.info("Export process completed successfully");
-                    checkpointState.markCompleted();
-                } else {
-                    logger.info("Export process stopped gracefully before completion");
+                // Each batch moves the range forward, a restart resumes the range at its paging state
+                checkpointState.updateRangeProgress(range.getIndex(), range.getStart(), range.getEnd(),
+                        pagingState, batch.size());
+                checkpointWriter.recordProgress(batch.size());
+
+                long processed = totalProcessed.addAndGet(batch.size());
+                logger.info("Progress: {}/{} records processed ({}%)",
+                        processed, totalRecordsToProcess,
+                        (processed * 100) / totalRecordsToProcess);
+
+                if (!recordSink.isHealthy()) {
+                    logger.error("Record sink is not healthy, stopping export process");
+                    failRange(range, failed, "Record sink failed after multiple retries");
+                    return false;
                 }
-                checkpointState.save(checkpointFile);
-            }
+                return true;
+            });
 
+            if (scanned) {
+                checkpointState.markRangeCompleted(range.getIndex(), range.getStart(), range.getEnd());
+                checkpointWriter.recordProgress(0);
+                logger.debug("Token range {} completed with {} records", range, recordsInRange[0]);
+            }
         } catch (Exception e) {
-            logger.error("Critical error during export process: {}", e.getMessage(), e);
-            checkpointState.setError("Critical error: " + e.getMessage());
-            checkpointState.save(checkpointFile);
+            logger.error("Error exporting token range {}: {}", range, e.getMessage(), e);
+            failRange(range, failed, "Error exporting token range " + range + ": " + e.getMessage());
         }
     }
 
-    private boolean processBatch(List<Map<String, Object>> batch, KafkaProducer kafkaProducer, long batchOffset) {
+    private void failRange(TokenRange range, AtomicBoolean failed, String errorMsg) {
+        logger.error(errorMsg);
+        failed.set(true);
+        checkpointState.setError(errorMsg);
+        checkpointWriter.flush();
+    }
+
+    boolean processBatch(List<Row> batch, RecordSink recordSink, long batchOffset) {
         logger.debug("Processing batch of {} records from offset {}", batch.size(), batchOffset);
         
+        if ("async".equalsIgnoreCase(config.getKafkaSendMode())) {
+            return processBatchAsync(batch, recordSink);
+        }
+        
         int recordsProcessed = 0;
         int recordsFailed = 0;
+        long serializedBytes = 0;
+        long serializationNanos = 0;
         
-        for (Map<String, Object> record : batch) {
+        for (Row row : batch) {
             try {
-                // Generate a key for the record - either use a natural key from the data or generate a UUID
-                String key = generateKey(record);
+                // The key columns selected by kafka.keyColumns, see RowKey
+                byte[] key = rowCodec.key(row);
+                
+                long encodeStart = System.nanoTime();
+                byte[] value = rowCodec.encode(row, recordSink.getValueBufferPool());
+                serializationNanos += System.nanoTime() - encodeStart;
+                serializedBytes += value.length;
                 
                 // Send to Kafka
-                boolean sent = kafkaProducer.sendRecord(key, record);
+                boolean sent = recordSink.sendEncoded(key, rowCodec.token(row), value);
                 
                 if (sent) {
                     recordsProcessed++;
@@ -155,25 +461,65 @@ public class CassandraToKafkaExporter {
             }
         }
         
+        ExportMetrics.get().batchSerialized(serializedBytes, serializationNanos);
+        
         // Flush to ensure all records in this batch are delivered
-        kafkaProducer.flush();
+        recordSink.flush();
         
         logger.debug("Batch processed: {} successful, {} failed", recordsProcessed, recordsFailed);
         
-        // Consider batch successful if we processed at least 90% of records
-        return recordsFailed <= (batch.size() * 0.1);
+        // The batch is only checkpointed if every record was delivered, a restart sends it again
+        if (recordsFailed > 0) {
+            logger.error("{} of {} records of the batch were not delivered", recordsFailed, batch.size());
+        }
+        return recordsFailed == 0;
     }
     
-    private String generateKey(Map<String, Object> record) {
-        // Try to use a primary key from the record if available
-        // This is just an example - adjust according to your data structure
-        if (record.containsKey("id")) {
-            return record.get("id").toString();
+    private boolean processBatchAsync(List<Row> batch, RecordSink recordSink) {
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(batch.size());
+        long serializedBytes = 0;
+        long serializationNanos = 0;
+        
+        try {
+            // Hand every record to the producer without waiting, so Kafka can fill its batches
+            for (Row row : batch) {
+                byte[] value;
+                long encodeStart = System.nanoTime();
+                try {
+                    value = rowCodec.encode(row, recordSink.getValueBufferPool());
+                } catch (IOException e) {
+                    logger.error("Error serializing record to JSON: {}", e.getMessage(), e);
+                    acknowledgement.recordFailure();
+                    continue;
+                }
+                serializationNanos += System.nanoTime() - encodeStart;
+                serializedBytes += value.length;
+                recordSink.sendEncodedAsync(rowCodec.key(row), rowCodec.token(row), value, acknowledgement);
+            }
+            ExportMetrics.get().batchSerialized(serializedBytes, serializationNanos);
+            
+            // Wait for the callbacks of this batch before it is checkpointed
+            if (!acknowledgement.await(config.getKafkaBatchAckTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                logger.error("Timed out waiting for {} of {} records to be acknowledged by Kafka",
+                        acknowledgement.getPending(), batch.size());
+                return false;
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while sending records to Kafka");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        
+        logger.debug("Batch processed: {} successful, {} failed",
+                acknowledgement.getSucceeded(), acknowledgement.getFailed());
+        
+        // The batch is only checkpointed if every record was delivered, a restart sends it again
+        if (!acknowledgement.isDelivered()) {
+            logger.error("{} of {} records of the batch were not delivered", acknowledgement.getFailed(), batch.size());
         }
-        // Otherwise generate a random UUID
-        return UUID.randomUUID().toString();
+        return acknowledgement.isDelivered();
     }
-
+    
     public static void main(String[] args) {
         CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
         exporter.start();
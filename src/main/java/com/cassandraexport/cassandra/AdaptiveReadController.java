@@ -0,0 +1,102 @@
+package com.cassandraexport.cassandra;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sizes pages and bounds the concurrent range scans from the page latency Cassandra shows, in the
+ * additive increase, multiplicative decrease style of TCP congestion control.
+ *
+ * <p>A page within the target latency grows the page size by one step, and once every running
+ * scan has had such a page the scan limit grows by one. A slower page halves the page size, so the
+ * next one takes about half as long. A timeout halves both the page size and the scan limit. Decreases
+ * are applied at most once per target latency, so the pages of parallel scans that were already
+ * running when the cluster slowed down count as a single signal.
+ */
+class AdaptiveReadController {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveReadController.class);
+
+    private final int minPageSize;
+    private final int maxPageSize;
+    private final int maxScans;
+    private final long targetLatencyNanos;
+
+    private int pageSize;
+    private int scanLimit;
+    private int activeScans;
+    private int fastPages;
+    private long lastDecreaseNanos;
+
+    AdaptiveReadController(int initialPageSize, int minPageSize, int maxPageSize, int maxScans, long targetLatencyMs) {
+        if (minPageSize < 1 || maxPageSize < minPageSize) {
+            throw new IllegalArgumentException("Invalid adaptive page size bounds: " + minPageSize + " to " + maxPageSize);
+        }
+        this.minPageSize = minPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxScans = Math.max(1, maxScans);
+        this.targetLatencyNanos = targetLatencyMs * 1_000_000L;
+        this.pageSize = Math.min(Math.max(initialPageSize, minPageSize), maxPageSize);
+        // Start with half the scans and let fast pages add the rest
+        this.scanLimit = Math.max(1, this.maxScans / 2);
+        this.lastDecreaseNanos = System.nanoTime() - targetLatencyNanos;
+    }
+
+    synchronized int getPageSize() {
+        return pageSize;
+    }
+
+    synchronized int getScanLimit() {
+        return scanLimit;
+    }
+
+    /**
+     * Blocks until fewer than the current scan limit of range scans are running.
+     */
+    synchronized void acquireScan() throws InterruptedException {
+        while (activeScans >= scanLimit) {
+            wait();
+        }
+        activeScans++;
+    }
+
+    synchronized void releaseScan() {
+        activeScans--;
+        notifyAll();
+    }
+
+    synchronized void onPage(long latencyNanos) {
+        if (latencyNanos <= targetLatencyNanos) {
+            pageSize = Math.min(pageSize + minPageSize, maxPageSize);
+            if (++fastPages >= scanLimit) {
+                fastPages = 0;
+                if (scanLimit < maxScans) {
+                    scanLimit++;
+                    notifyAll();
+                }
+            }
+        } else if (decreaseAllowed()) {
+            fastPages = 0;
+            pageSize = Math.max(pageSize / 2, minPageSize);
+            logger.debug("Page took {} ms, page size reduced to {}", latencyNanos / 1_000_000, pageSize);
+        }
+    }
+
+    synchronized void onTimeout() {
+        if (decreaseAllowed()) {
+            fastPages = 0;
+            pageSize = Math.max(pageSize / 2, minPageSize);
+            scanLimit = Math.max(scanLimit / 2, 1);
+            logger.warn("Cassandra read timed out, page size reduced to {} and concurrent scans to {}",
+                    pageSize, scanLimit);
+        }
+    }
+
+    private boolean decreaseAllowed() {
+        long now = System.nanoTime();
+        if (now - lastDecreaseNanos < targetLatencyNanos) {
+            return false;
+        }
+        lastDecreaseNanos = now;
+        return true;
+    }
+}
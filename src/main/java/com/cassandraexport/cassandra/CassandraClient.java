@@ -1,37 +1,142 @@
 package com.cassandraexport.cassandra;
 
+import com.cassandraexport.codec.RowCodec;
+import com.cassandraexport.codec.RowKey;
 import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.metrics.ExportMetrics;
+import com.cassandraexport.spi.RowSource;
+import com.datastax.oss.driver.api.core.AllNodesFailedException;
+import com.datastax.oss.driver.api.core.ConsistencyLevel;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.DefaultConsistencyLevel;
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.ExecutionInfo;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
-import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.NodeState;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.metadata.token.Token;
+import com.datastax.oss.driver.api.core.servererrors.ReadTimeoutException;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.ListType;
+import com.datastax.oss.driver.api.core.type.MapType;
+import com.datastax.oss.driver.api.core.type.SetType;
+import com.datastax.oss.driver.api.core.type.UserDefinedType;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-public class CassandraClient implements AutoCloseable {
+/**
+ * The default {@link RowSource}, reading with the prepared sequential and token range queries.
+ *
+ * <p>Token range scans are routed to a replica of their range in the local datacenter, using the
+ * token map of the driver metadata, and {@code cassandra.maxScansPerHost} bounds the scans each node
+ * serves at a time. The consistency level and page size of the scans are set on each statement, so
+ * they do not change the driver profile other requests of the session use.
+ *
+ * <p>With {@code cassandra.adaptive.enabled} an {@link AdaptiveReadController} picks the page size
+ * and the number of concurrent range scans from the observed page latency, and timed out pages are
+ * retried with a smaller page. A {@link ReadThrottle} caps the rows and bytes read per second.
+ *
+ * <p>With {@code cassandra.readMode=async} token range scans run on {@link CqlSession#executeAsync},
+ * see {@link #scanRangeAsync}, so a few threads keep {@code cassandra.asyncScans} of them in flight.
+ *
+ * <p>With {@code cassandra.incremental.column} the query also selects the write time of that column,
+ * and a {@link WriteTimeFilter} drops the rows not written after the watermark of the export.
+ */
+public class CassandraClient implements RowSource {
     private static final Logger logger = LoggerFactory.getLogger(CassandraClient.class);
+    private static final Pattern ALLOW_FILTERING = Pattern.compile("(?i)\\ballow\\s+filtering\\b");
+    private static final Pattern WHERE_CLAUSE = Pattern.compile(
+            "(?is)\\bwhere\\b(.*?)(?:\\border\\s+by\\b|\\bper\\s+partition\\s+limit\\b|\\blimit\\b|$)");
     private final AppConfig config;
+    private final ConsistencyLevel consistencyLevel;
+    private final int scanPageSize;
+    private final HostScanLimiter hostLimiter;
+    private final AdaptiveReadController readController;
+    private final ReadThrottle readThrottle;
+    private final ScheduledExecutorService scheduler;
     private CqlSession session;
     private PreparedStatement pagingStatement;
+    private PreparedStatement rangeStatement;
+    private RowCodec rowCodec;
+    private WriteTimeFilter writeTimeFilter;
 
     public CassandraClient() {
         this.config = AppConfig.getInstance();
+        String consistency = config.getCassandraScanConsistency();
+        this.consistencyLevel = StringUtils.isBlank(consistency)
+                ? null : DefaultConsistencyLevel.valueOf(consistency.toUpperCase());
+        this.scanPageSize = config.getCassandraScanPageSize();
+        int maxScansPerHost = config.getCassandraMaxScansPerHost();
+        this.hostLimiter = maxScansPerHost > 0 ? new HostScanLimiter(maxScansPerHost) : null;
+        this.readController = createReadController(config);
+        long maxRowsPerSecond = config.getCassandraMaxRowsPerSecond();
+        long maxBytesPerSecond = config.getCassandraMaxBytesPerSecond();
+        this.readThrottle = maxRowsPerSecond > 0 || maxBytesPerSecond > 0
+                ? new ReadThrottle(maxRowsPerSecond, maxBytesPerSecond) : null;
+        // Throttled pages and retries of asynchronous scans are delayed without holding a thread
+        this.scheduler = isAsyncReadMode(config) ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cassandra-read-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
         initializeSession();
     }
 
+    private static boolean isAsyncReadMode(AppConfig config) {
+        String readMode = config.getCassandraReadMode();
+        if (!"async".equalsIgnoreCase(readMode) && !"sync".equalsIgnoreCase(readMode)) {
+            throw new IllegalArgumentException("Unsupported cassandra.readMode: " + readMode);
+        }
+        return "async".equalsIgnoreCase(readMode);
+    }
+
+    private static AdaptiveReadController createReadController(AppConfig config) {
+        if (!config.isCassandraAdaptiveEnabled()) {
+            return null;
+        }
+        int maxScans = isAsyncReadMode(config)
+                ? config.getCassandraAsyncScans() : config.getCassandraScanParallelism();
+        int initialPageSize = config.getCassandraScanPageSize() > 0
+                ? config.getCassandraScanPageSize() : config.getCassandraBatchSize();
+        AdaptiveReadController controller = new AdaptiveReadController(initialPageSize,
+                config.getCassandraAdaptiveMinPageSize(), config.getCassandraAdaptiveMaxPageSize(),
+                maxScans, config.getCassandraAdaptiveTargetLatencyMs());
+        ExportMetrics.get().trackReader(controller::getPageSize, controller::getScanLimit);
+        return controller;
+    }
+
     private void initializeSession() {
         logger.info("Initializing Cassandra connection to {} on port {}", 
                 config.getCassandraContactPoints(), config.getCassandraPort());
@@ -60,21 +165,10 @@ public class CassandraClient implements AutoCloseable {
             session = sessionBuilder.build();
             logger.info("Successfully connected to Cassandra cluster");
 
-            // Prepare paging statement (custom query or a generic one based on keyspace and table)
-            String query = config.getCassandraQuery();
-            if (StringUtils.isBlank(query)) {
-                query = String.format("SELECT * FROM %s.%s", 
-                    config.getCassandraKeyspace(), config.getCassandraTable());
-            }
-            
-            // Append a LIMIT if there isn't one already
-            if (!query.toLowerCase().contains(" limit ")) {
-                query += " LIMIT ?";
-                this.pagingStatement = session.prepare(query);
-                logger.info("Prepared query: {}", query);
+            if ("token".equalsIgnoreCase(config.getCassandraScanMode())) {
+                prepareRangeStatement();
             } else {
-                throw new IllegalArgumentException("Please provide a query without LIMIT clause, " +
-                        "as it will be added automatically for pagination");
+                preparePagingStatement();
             }
             
         } catch (Exception e) {
@@ -83,70 +177,609 @@ public class CassandraClient implements AutoCloseable {
         }
     }
 
-    public List<Map<String, Object>> fetchBatch(long offset, int batchSize) {
-        logger.debug("Fetching batch of {} records from offset {}", batchSize, offset);
-        
-        List<Map<String, Object>> results = new ArrayList<>(batchSize);
-        AtomicInteger count = new AtomicInteger(0);
+    private String baseQuery() {
+        // Custom query or one built from the configured columns and key conditions
+        String query = config.getCassandraQuery();
+        String columns = config.getCassandraColumns();
+        String where = config.getCassandraWhere();
+        String incrementalColumn = config.getCassandraIncrementalColumn();
+        if (StringUtils.isNotBlank(query)) {
+            if (StringUtils.isNotBlank(columns) || StringUtils.isNotBlank(where)
+                    || StringUtils.isNotBlank(incrementalColumn)) {
+                throw new IllegalArgumentException("cassandra.columns, cassandra.where and cassandra.incremental.column "
+                        + "cannot be combined with a custom cassandra.query");
+            }
+            query = query.trim();
+        } else {
+            String projection;
+            if (StringUtils.isNotBlank(incrementalColumn)) {
+                // The write time is selected last, a wildcard cannot be combined with other selectors
+                List<String> projected = StringUtils.isBlank(columns)
+                        ? cqlNames(tableMetadata().getColumns().values()) : projectedColumns(columns);
+                projected.add(WriteTimeFilter.selector(incrementalColumn(incrementalColumn.trim())));
+                projection = String.join(", ", projected);
+            } else {
+                projection = StringUtils.isBlank(columns) ? "*" : String.join(", ", projectedColumns(columns));
+            }
+            query = String.format("SELECT %s FROM %s.%s", projection,
+                    config.getCassandraKeyspace(), config.getCassandraTable());
+            if (StringUtils.isNotBlank(where)) {
+                query += " WHERE " + where.trim();
+            }
+        }
+        return query;
+    }
+
+    private List<String> projectedColumns(String columns) {
+        TableMetadata table = tableMetadata();
+        List<String> projection = new ArrayList<>();
+        for (String column : columns.split(",")) {
+            String name = column.trim();
+            if (!table.getColumn(name).isPresent()) {
+                throw new IllegalArgumentException("Column " + name + " of cassandra.columns not found in table "
+                        + config.getCassandraKeyspace() + "." + config.getCassandraTable());
+            }
+            projection.add(name);
+        }
+        return projection;
+    }
+
+    /**
+     * Checks that Cassandra keeps a single write time for the column: a regular column, not part of
+     * the primary key, and no collection or user defined type unless it is frozen.
+     */
+    private String incrementalColumn(String name) {
+        TableMetadata table = tableMetadata();
+        ColumnMetadata column = table.getColumn(name).orElseThrow(() -> new IllegalArgumentException(
+                "Column " + name + " of cassandra.incremental.column not found in table "
+                        + config.getCassandraKeyspace() + "." + config.getCassandraTable()));
+        if (table.getPrimaryKey().contains(column)) {
+            throw new IllegalArgumentException("cassandra.incremental.column " + name
+                    + " is part of the primary key, which has no write time");
+        }
+        if (isMultiCell(column.getType())) {
+            throw new IllegalArgumentException("cassandra.incremental.column " + name
+                    + " is a non-frozen collection or user defined type, which has no single write time");
+        }
+        return name;
+    }
+
+    private static boolean isMultiCell(DataType type) {
+        return type instanceof ListType && !((ListType) type).isFrozen()
+                || type instanceof SetType && !((SetType) type).isFrozen()
+                || type instanceof MapType && !((MapType) type).isFrozen()
+                || type instanceof UserDefinedType && !((UserDefinedType) type).isFrozen();
+    }
+
+    /**
+     * Rejects queries Cassandra could only answer by reading and filtering more rows than it returns,
+     * checking the WHERE clause against the primary key of the table.
+     */
+    private void validateQuery(String query) {
+        if (ALLOW_FILTERING.matcher(query).find()) {
+            throw new IllegalArgumentException("Queries with ALLOW FILTERING read and filter the whole table, "
+                    + "restrict the primary key instead: " + query);
+        }
+        Matcher whereClause = WHERE_CLAUSE.matcher(query);
+        if (whereClause.find()) {
+            TableMetadata table = tableMetadata();
+            KeyPredicate.validate(whereClause.group(1), cqlNames(table.getPartitionKey()),
+                    cqlNames(table.getClusteringColumns().keySet()));
+        }
+    }
+
+    private static List<String> cqlNames(Collection<ColumnMetadata> columns) {
+        return columns.stream()
+                .map(column -> column.getName().asCql(true))
+                .collect(Collectors.toList());
+    }
+
+    private void preparePagingStatement() {
+        // Paging is done by the driver, so the query is prepared as-is
+        String query = baseQuery();
+        validateQuery(query);
+        this.pagingStatement = session.prepare(query);
+        this.rowCodec = compileRowCodec(pagingStatement);
+        logger.info("Prepared query: {}", query);
+    }
+
+    private void prepareRangeStatement() {
+        String query = baseQuery();
+        String lowerQuery = query.toLowerCase();
+        if (lowerQuery.contains(" where ") || lowerQuery.contains(" limit ")) {
+            throw new IllegalArgumentException("Token range scans need a query without WHERE or LIMIT clause, " +
+                    "use cassandra.scanMode=offset for custom filtered queries");
+        }
+        validateQuery(query);
+
+        String tokenExpression = "token(" + String.join(", ", resolvePartitionKey()) + ")";
+        query += " WHERE " + tokenExpression + " > ? AND " + tokenExpression + " <= ?";
+        this.rangeStatement = session.prepare(query);
+        this.rowCodec = compileRowCodec(rangeStatement);
+        logger.info("Prepared token range query: {}", query);
+    }
+
+    private RowCodec compileRowCodec(PreparedStatement statement) {
+        ColumnDefinitions definitions = statement.getResultSetDefinitions();
+        if (StringUtils.isNotBlank(config.getCassandraIncrementalColumn())) {
+            writeTimeFilter = new WriteTimeFilter(definitions.size() - 1);
+            definitions = WriteTimeFilter.exportedColumns(definitions);
+        }
+        try {
+            return RowCodec.forFormat(config, definitions, compileRowKey(definitions));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to register the Avro schema of the query", e);
+        }
+    }
+
+    private RowKey compileRowKey(ColumnDefinitions definitions) {
+        String keyColumns = config.getKafkaKeyColumns();
+        if ("partition".equalsIgnoreCase(keyColumns)) {
+            return RowKey.primaryKey(definitions, resolvePartitionKey(), Collections.<String>emptyList());
+        }
+        if ("primary".equalsIgnoreCase(keyColumns)) {
+            List<String> clusteringColumns = cqlNames(tableMetadata().getClusteringColumns().keySet());
+            logger.info("Keying records by partition key and clustering columns {}", clusteringColumns);
+            return RowKey.primaryKey(definitions, resolvePartitionKey(), clusteringColumns);
+        }
+        if (!"id".equalsIgnoreCase(keyColumns)) {
+            throw new IllegalArgumentException("Unsupported kafka.keyColumns: " + keyColumns);
+        }
+        return RowKey.idColumn(definitions);
+    }
+
+    private List<String> resolvePartitionKey() {
+        String configured = config.getCassandraPartitionKey();
+        if (StringUtils.isNotBlank(configured)) {
+            return Arrays.stream(configured.split(","))
+                    .map(String::trim)
+                    .collect(Collectors.toList());
+        }
+
+        List<String> partitionKey = cqlNames(tableMetadata().getPartitionKey());
+        logger.info("Using partition key {} from table metadata", partitionKey);
+        return partitionKey;
+    }
+
+    private TableMetadata tableMetadata() {
+        return session.getMetadata()
+                .getKeyspace(config.getCassandraKeyspace())
+                .flatMap(keyspace -> keyspace.getTable(config.getCassandraTable()))
+                .orElseThrow(() -> new IllegalStateException("Table " + config.getCassandraKeyspace() + "."
+                        + config.getCassandraTable() + " not found in cluster metadata, "
+                        + "set cassandra.partitionKey explicitly"));
+    }
+
+    /**
+     * Scans every row of a token range exactly once, handing them to {@code handler} one driver
+     * page of at most {@code batchSize} rows at a time.
+     *
+     * @param pagingState paging state of a previously interrupted scan of this range, or {@code null}
+     *                    to scan it from its start
+     * @return {@code true} if the whole range was scanned, {@code false} if the handler aborted it
+     */
+    @Override
+    public boolean scanRange(TokenRange range, String pagingState, int batchSize, BatchHandler handler) {
+        logger.debug("Scanning token range {}{}", range, pagingState == null ? "" : " from its paging state");
         
+        RangeRoute route = new RangeRoute(range);
         try {
-            // Create a paging query with the current offset and batch size
-            String query = String.format("%s ALLOW FILTERING", 
-                    config.getCassandraQuery().replace(" LIMIT ?", ""));
+            route.acquire();
             
-            ResultSet resultSet;
-            if (offset > 0) {
-                // Skip to the correct offset
-                BoundStatement boundStatement = pagingStatement.bind(batchSize);
-                resultSet = session.execute(boundStatement);
-                
-                // Skip records until we reach the offset
-                long toSkip = offset;
-                for (Row row : resultSet) {
-                    if (toSkip-- <= 0) {
-                        break;
+            String nextPagingState = pagingState;
+            do {
+                ResultPage page;
+                try {
+                    page = executePage(route.statement(), nextPagingState, batchSize);
+                } catch (AllNodesFailedException e) {
+                    if (!route.reroute(e)) {
+                        throw e;
                     }
+                    page = executePage(route.statement(), nextPagingState, batchSize);
                 }
-            } else {
-                BoundStatement boundStatement = pagingStatement.bind(batchSize);
-                resultSet = session.execute(boundStatement);
-            }
+                nextPagingState = page.getPagingState();
+                
+                if (!page.getRows().isEmpty() && !handler.onBatch(page.getRows(), nextPagingState)) {
+                    return false;
+                }
+            } while (nextPagingState != null);
+            
+            logger.debug("Finished scanning token range {}", range);
+            return true;
             
-            // Process results
-            for (Row row : resultSet) {
-                if (count.get() >= batchSize) {
-                    break;
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while waiting to scan token range {}", range);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            logger.error("Error scanning token range {} from Cassandra: {}", range, e.getMessage(), e);
+            throw new RuntimeException("Error scanning token range " + range + " from Cassandra", e);
+        } finally {
+            route.release();
+        }
+    }
+
+    /**
+     * Scans a token range like {@link #scanRange} with {@code cassandra.readMode=async}, fetching the
+     * pages with {@link CqlSession#executeAsync}. The next page is requested as soon as a page arrives,
+     * so it is in flight while {@code handler} takes the current one, and the page after it is only
+     * requested once the handler has taken the batch. No thread waits for Cassandra, the calling
+     * thread only blocks while the scan limits are reached.
+     */
+    @Override
+    public CompletionStage<Boolean> scanRangeAsync(TokenRange range, String pagingState, int batchSize,
+                                                   AsyncBatchHandler handler) {
+        if (scheduler == null) {
+            return RowSource.super.scanRangeAsync(range, pagingState, batchSize, handler);
+        }
+        logger.debug("Scanning token range {} asynchronously{}", range,
+                pagingState == null ? "" : " from its paging state");
+
+        RangeRoute route = new RangeRoute(range);
+        try {
+            route.acquire();
+        } catch (InterruptedException e) {
+            // The scan slot may already be held while waiting for a host
+            route.release();
+            logger.warn("Interrupted while waiting to scan token range {}", range);
+            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture(false);
+        } catch (RuntimeException e) {
+            route.release();
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            result.completeExceptionally(scanFailure(range, e));
+            return result;
+        }
+
+        AsyncRangeScan scan = new AsyncRangeScan(route, batchSize, handler);
+        scan.result.whenComplete((scanned, error) -> route.release());
+        scan.fetch(pagingState, CompletableFuture.completedFuture(true), 0);
+        return scan.result;
+    }
+
+    private static RuntimeException scanFailure(TokenRange range, Throwable error) {
+        logger.error("Error scanning token range {} from Cassandra: {}", range, error.getMessage(), error);
+        return new RuntimeException("Error scanning token range " + range + " from Cassandra", error);
+    }
+
+    /**
+     * Where the scan of a token range runs: the routing token of the range and the replica it is
+     * pinned to, with the scan slots it holds until {@link #release()}.
+     */
+    private final class RangeRoute {
+        private final TokenRange range;
+        private Token routingToken;
+        private Node node;
+        private boolean scanAcquired;
+
+        private RangeRoute(TokenRange range) {
+            this.range = range;
+        }
+
+        private void acquire() throws InterruptedException {
+            if (readController != null) {
+                readController.acquireScan();
+                scanAcquired = true;
+            }
+
+            // The end token belongs to the range, its replicas own (at least the end of) the range
+            Set<Node> replicas = Collections.emptySet();
+            Optional<TokenMap> tokenMap = session.getMetadata().getTokenMap();
+            if (tokenMap.isPresent()) {
+                routingToken = tokenMap.get().parse(String.valueOf(range.getEnd()));
+                replicas = localReplicas(tokenMap.get(), routingToken);
+            }
+            if (hostLimiter != null && !replicas.isEmpty()) {
+                node = hostLimiter.acquire(replicas);
+                logger.debug("Scanning token range {} on {}", range, node.getEndPoint());
+            }
+        }
+
+        private BoundStatement statement() {
+            BoundStatement statement = rangeStatement.bind(range.getStart(), range.getEnd());
+            if (routingToken != null) {
+                statement = statement.setRoutingToken(routingToken);
+            }
+            return node == null ? statement : statement.setNode(node);
+        }
+
+        /**
+         * @return {@code true} if the scan was pinned to a replica, which is released so the load
+         *         balancing policy picks another one
+         */
+        private boolean reroute(AllNodesFailedException e) {
+            if (node == null) {
+                return false;
+            }
+            logger.warn("Token range {} could not be read from {}, rerouting: {}",
+                    range, node.getEndPoint(), e.getMessage());
+            hostLimiter.release(node);
+            node = null;
+            return true;
+        }
+
+        private void release() {
+            if (node != null) {
+                hostLimiter.release(node);
+                node = null;
+            }
+            if (scanAcquired) {
+                readController.releaseScan();
+                scanAcquired = false;
+            }
+        }
+    }
+
+    /**
+     * The pages of an asynchronous token range scan. There is at most one request in flight, and a
+     * page is only handed to the handler once it took the batch before, so the driver callbacks run
+     * one after the other.
+     */
+    private final class AsyncRangeScan {
+        private final RangeRoute route;
+        private final int batchSize;
+        private final AsyncBatchHandler handler;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private AsyncRangeScan(RangeRoute route, int batchSize, AsyncBatchHandler handler) {
+            this.route = route;
+            this.batchSize = batchSize;
+            this.handler = handler;
+        }
+
+        /**
+         * Requests the page at {@code pagingState}, to be handed to the handler once {@code taken}
+         * completes with {@code true}.
+         */
+        private void fetch(String pagingState, CompletionStage<Boolean> taken, int attempts) {
+            CompletionStage<AsyncResultSet> request;
+            try {
+                request = session.executeAsync(preparePage(route.statement(), pagingState, batchSize));
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            await(request, System.nanoTime(), pagingState, taken, attempts);
+        }
+
+        private void await(CompletionStage<AsyncResultSet> request, long start, String pagingState,
+                           CompletionStage<Boolean> taken, int attempts) {
+            request.whenComplete((resultSet, error) -> {
+                if (error != null) {
+                    retry(pagingState, taken, attempts, error);
+                    return;
                 }
-                
-                // Convert Row to Map
-                Map<String, Object> rowMap = new HashMap<>();
-                for (ColumnDefinition columnDef : row.getColumnDefinitions()) {
-                    String columnName = columnDef.getName().asInternal();
-                    Object value = row.getObject(columnName);
-                    
-                    // Handle arrays and collections appropriately
-                    if (value != null && value.getClass().isArray()) {
-                        if (value instanceof byte[]) {
-                            value = Arrays.toString((byte[]) value);
-                        } else {
-                            value = Arrays.toString((Object[]) value);
-                        }
-                    }
-                    
-                    rowMap.put(columnName, value);
+                try {
+                    onPage(resultSet, System.nanoTime() - start, taken);
+                } catch (RuntimeException e) {
+                    fail(e);
                 }
-                
-                results.add(rowMap);
-                count.incrementAndGet();
+            });
+        }
+
+        private void onPage(AsyncResultSet resultSet, long latencyNanos, CompletionStage<Boolean> taken) {
+            List<Row> rows = new ArrayList<>(resultSet.remaining());
+            for (Row row : resultSet.currentPage()) {
+                rows.add(row);
             }
+
+            ExportMetrics.get().pageFetched(rows.size(), latencyNanos);
+            if (readController != null) {
+                readController.onPage(latencyNanos);
+            }
+
+            ExecutionInfo executionInfo = resultSet.getExecutionInfo();
+            String nextPagingState = encodePagingState(executionInfo.getPagingState());
+            long waitNanos = readThrottle == null
+                    ? 0 : readThrottle.reserve(rows.size(), executionInfo.getResponseSizeInBytes());
+            List<Row> changed = changed(rows);
+
+            taken.whenComplete((keepScanning, error) -> {
+                if (error != null) {
+                    fail(error);
+                } else if (!keepScanning) {
+                    result.complete(false);
+                } else if (waitNanos > 0) {
+                    scheduler.schedule(() -> deliver(resultSet, changed, nextPagingState), waitNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    deliver(resultSet, changed, nextPagingState);
+                }
+            });
+        }
+
+        private void deliver(AsyncResultSet resultSet, List<Row> rows, String nextPagingState) {
+            if (result.isDone()) {
+                return;
+            }
+            CompletionStage<Boolean> taken;
+            try {
+                taken = rows.isEmpty()
+                        ? CompletableFuture.completedFuture(true) : handler.onBatch(rows, nextPagingState);
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+
+            if (nextPagingState == null) {
+                taken.whenComplete((keepScanning, error) -> {
+                    if (error != null) {
+                        fail(error);
+                    } else {
+                        logger.debug("Finished scanning token range {}", route.range);
+                        result.complete(keepScanning);
+                    }
+                });
+            } else if (readController == null && resultSet.hasMorePages()) {
+                // Prefetch with the statement of this page, the page size does not change
+                await(resultSet.fetchNextPage(), System.nanoTime(), nextPagingState, taken, 0);
+            } else {
+                fetch(nextPagingState, taken, 0);
+            }
+        }
+
+        private void retry(String pagingState, CompletionStage<Boolean> taken, int attempts, Throwable error) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (cause instanceof AllNodesFailedException && route.reroute((AllNodesFailedException) cause)) {
+                fetch(pagingState, taken, attempts);
+                return;
+            }
+            if ((cause instanceof DriverTimeoutException || cause instanceof ReadTimeoutException)
+                    && readController != null && attempts + 1 < config.getErrorMaxRetries()) {
+                readController.onTimeout();
+                long waitTime = Math.min((long) config.getErrorRetryBackoffMs() * (attempts + 1), 10000);
+                logger.warn("Cassandra page of token range {} timed out (attempt {}/{}), retrying with page size {} in {} ms: {}",
+                        route.range, attempts + 1, config.getErrorMaxRetries(), readController.getPageSize(),
+                        waitTime, cause.getMessage());
+                scheduler.schedule(() -> fetch(pagingState, taken, attempts + 1), waitTime, TimeUnit.MILLISECONDS);
+                return;
+            }
+            fail(cause);
+        }
+
+        private void fail(Throwable error) {
+            result.completeExceptionally(scanFailure(route.range, error));
+        }
+    }
+
+    private Set<Node> localReplicas(TokenMap tokenMap, Token token) {
+        String localDatacenter = config.getCassandraLocalDatacenter();
+        Set<Node> replicas = new LinkedHashSet<>();
+        for (Node replica : tokenMap.getReplicas(config.getCassandraKeyspace(), token)) {
+            if (replica.getState() == NodeState.UP
+                    && (localDatacenter == null || localDatacenter.equals(replica.getDatacenter()))) {
+                replicas.add(replica);
+            }
+        }
+        return replicas;
+    }
+
+    /**
+     * Fetches a single driver page of the sequential query. Passing the paging state of the
+     * previous page resumes exactly where it ended, without re-reading any earlier rows.
+     *
+     * @param pagingState Base64 encoded paging state from a previous {@link ResultPage}, or {@code null}
+     *                    to start from the first row
+     */
+    @Override
+    public ResultPage fetchPage(String pagingState, int pageSize) {
+        logger.debug("Fetching page of {} records", pageSize);
+        
+        try {
+            ResultPage page = executePage(pagingStatement.bind(), pagingState, pageSize);
+            logger.debug("Fetched {} records", page.getRows().size());
+            return page;
             
-            logger.debug("Fetched {} records", count.get());
-            return results;
-            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while fetching data page from Cassandra", e);
         } catch (Exception e) {
-            logger.error("Error fetching data batch from Cassandra: {}", e.getMessage(), e);
-            throw new RuntimeException("Error fetching data batch from Cassandra", e);
+            logger.error("Error fetching data page from Cassandra: {}", e.getMessage(), e);
+            throw new RuntimeException("Error fetching data page from Cassandra", e);
+        }
+    }
+
+    private ResultPage executePage(BoundStatement boundStatement, String pagingState, int pageSize)
+            throws InterruptedException {
+        int attempts = 0;
+        while (true) {
+            try {
+                return executePageOnce(boundStatement, pagingState, pageSize);
+            } catch (DriverTimeoutException | ReadTimeoutException e) {
+                attempts++;
+                if (readController == null || attempts >= config.getErrorMaxRetries()) {
+                    throw e;
+                }
+                readController.onTimeout();
+                long waitTime = Math.min((long) config.getErrorRetryBackoffMs() * attempts, 10000);
+                logger.warn("Cassandra page timed out (attempt {}/{}), retrying with page size {} in {} ms: {}",
+                        attempts, config.getErrorMaxRetries(), readController.getPageSize(), waitTime, e.getMessage());
+                Thread.sleep(waitTime);
+            }
+        }
+    }
+
+    private ResultPage executePageOnce(BoundStatement boundStatement, String pagingState, int pageSize)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        ResultSet resultSet = session.execute(preparePage(boundStatement, pagingState, pageSize));
+        long latencyNanos = System.nanoTime() - start;
+        
+        // Only consume the rows already fetched, iterating further would fetch the next page
+        int available = resultSet.getAvailableWithoutFetching();
+        List<Row> rows = new ArrayList<>(available);
+        for (int i = 0; i < available; i++) {
+            rows.add(resultSet.one());
+        }
+        
+        ExportMetrics.get().pageFetched(available, latencyNanos);
+        if (readController != null) {
+            readController.onPage(latencyNanos);
+        }
+
+        ExecutionInfo executionInfo = resultSet.getExecutionInfo();
+        if (readThrottle != null) {
+            readThrottle.acquire(available, executionInfo.getResponseSizeInBytes());
         }
+        return new ResultPage(changed(rows), encodePagingState(executionInfo.getPagingState()));
+    }
+
+    private List<Row> changed(List<Row> rows) {
+        return writeTimeFilter == null ? rows : writeTimeFilter.changed(rows);
+    }
+
+    /**
+     * @return {@code true} with {@code cassandra.incremental.column} set
+     */
+    @Override
+    public boolean supportsWriteTimeWatermark() {
+        return writeTimeFilter != null;
+    }
+
+    /**
+     * Hands on only the rows whose {@code cassandra.incremental.column} was written after
+     * {@code watermark}. Pages without such rows are skipped, their rows still count as fetched.
+     */
+    @Override
+    public void setWriteTimeWatermark(long watermark) {
+        if (writeTimeFilter == null) {
+            throw new IllegalStateException("Incremental exports need cassandra.incremental.column");
+        }
+        writeTimeFilter.setWatermark(watermark);
+    }
+
+    private BoundStatement preparePage(BoundStatement boundStatement, String pagingState, int pageSize) {
+        if (readController != null) {
+            pageSize = readController.getPageSize();
+        } else if (scanPageSize > 0) {
+            pageSize = scanPageSize;
+        }
+        boundStatement = boundStatement.setPageSize(pageSize);
+        if (consistencyLevel != null) {
+            boundStatement = boundStatement.setConsistencyLevel(consistencyLevel);
+        }
+        if (pagingState != null) {
+            boundStatement = boundStatement.setPagingState(
+                    ByteBuffer.wrap(Base64.getDecoder().decode(pagingState)));
+        }
+        return boundStatement;
+    }
+
+    private static String encodePagingState(ByteBuffer pagingState) {
+        if (pagingState == null) {
+            return null;
+        }
+        byte[] bytes = new byte[pagingState.remaining()];
+        pagingState.duplicate().get(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * @return the codec compiled from the columns of the prepared query, shared by all callers
+     */
+    @Override
+    public RowCodec getRowCodec() {
+        return rowCodec;
     }
 
     public boolean isConnected() {
@@ -155,6 +788,9 @@ public class CassandraClient implements AutoCloseable {
 
     @Override
     public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
         if (session != null && !session.isClosed()) {
             try {
                 session.close();
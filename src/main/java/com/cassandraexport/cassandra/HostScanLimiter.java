@@ -0,0 +1,62 @@
+package com.cassandraexport.cassandra;
+
+import com.datastax.oss.driver.api.core.metadata.Node;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounds the token range scans running against each Cassandra node. A scan is assigned to the
+ * replica of its range with the fewest running scans, and waits while every replica is at the limit,
+ * so a parallel export spreads over the replicas instead of queueing on a single coordinator.
+ */
+class HostScanLimiter {
+    private final int maxScansPerHost;
+    private final Map<Node, Integer> activeScans = new HashMap<>();
+
+    HostScanLimiter(int maxScansPerHost) {
+        if (maxScansPerHost < 1) {
+            throw new IllegalArgumentException("Scans per host must be positive: " + maxScansPerHost);
+        }
+        this.maxScansPerHost = maxScansPerHost;
+    }
+
+    /**
+     * Blocks until one of {@code replicas} runs fewer than the maximum number of scans.
+     *
+     * @return the least busy of {@code replicas}, to be passed to {@link #release(Node)} once the scan ends
+     */
+    synchronized Node acquire(Collection<Node> replicas) throws InterruptedException {
+        while (true) {
+            Node leastBusy = null;
+            int leastActive = maxScansPerHost;
+            for (Node replica : replicas) {
+                int active = activeScans.getOrDefault(replica, 0);
+                if (active < leastActive) {
+                    leastBusy = replica;
+                    leastActive = active;
+                }
+            }
+            if (leastBusy != null) {
+                activeScans.put(leastBusy, leastActive + 1);
+                return leastBusy;
+            }
+            wait();
+        }
+    }
+
+    synchronized void release(Node node) {
+        int active = activeScans.getOrDefault(node, 0) - 1;
+        if (active > 0) {
+            activeScans.put(node, active);
+        } else {
+            activeScans.remove(node);
+        }
+        notifyAll();
+    }
+
+    synchronized int getActiveScans(Node node) {
+        return activeScans.getOrDefault(node, 0);
+    }
+}
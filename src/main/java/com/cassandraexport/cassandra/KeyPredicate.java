@@ -0,0 +1,153 @@
+package com.cassandraexport.cassandra;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that a WHERE clause only restricts primary key columns in ways Cassandra answers from its
+ * partition index and clustering order, so the query never has to read and filter rows it does not
+ * return. These are the restrictions Cassandra accepts without {@code ALLOW FILTERING} on a table
+ * without secondary indexes:
+ *
+ * <ul>
+ *   <li>the partition key is either unrestricted or every column of it is restricted with {@code =} or
+ *   {@code IN}</li>
+ *   <li>clustering columns are only restricted along with the partition key, as a prefix in clustering
+ *   order where only the last column may have a range ({@code <}, {@code <=}, {@code >}, {@code >=}),
+ *   either on its own or as a multi-column range like {@code (c1, c2) > (1, 2)}</li>
+ * </ul>
+ */
+final class KeyPredicate {
+    private static final Pattern RESTRICTION = Pattern.compile(
+            "(?s)\\s*(\\([^)]*\\)|\"(?:[^\"]|\"\")+\"|\\w+)\\s*(=|<=|>=|<|>|(?i:in)\\b)\\s*(\\S.*)");
+
+    private KeyPredicate() {
+    }
+
+    /**
+     * @param where             the conditions of the WHERE clause, without the {@code WHERE} keyword
+     * @param partitionKey      the partition key columns as CQL identifiers
+     * @param clusteringColumns the clustering columns as CQL identifiers, in clustering order
+     * @throws IllegalArgumentException if the clause restricts other columns or needs filtering
+     */
+    static void validate(String where, List<String> partitionKey, List<String> clusteringColumns) {
+        List<String> partitionColumns = internalNames(partitionKey);
+        List<String> clustering = internalNames(clusteringColumns);
+
+        // Per column whether it has a range, and the multi-column restriction it belongs to
+        Map<String, Boolean> ranges = new HashMap<>();
+        Map<String, Integer> groups = new HashMap<>();
+        List<String> conditions = splitConditions(where);
+        for (int group = 0; group < conditions.size(); group++) {
+            String condition = conditions.get(group);
+            Matcher matcher = RESTRICTION.matcher(condition);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Unsupported condition in WHERE clause: " + condition.trim());
+            }
+            boolean range = !matcher.group(2).equals("=") && !matcher.group(2).equalsIgnoreCase("in");
+            for (String column : columns(matcher.group(1))) {
+                if (partitionColumns.contains(column)) {
+                    if (range) {
+                        throw new IllegalArgumentException("Partition key column " + column
+                                + " can only be restricted with = or IN, use cassandra.scanMode=token to read token ranges");
+                    }
+                } else if (!clustering.contains(column)) {
+                    throw new IllegalArgumentException("Column " + column + " in the WHERE clause is not part of the "
+                            + "primary key, Cassandra would have to filter the rows with ALLOW FILTERING");
+                }
+                ranges.merge(column, range, Boolean::logicalOr);
+                groups.put(column, group);
+            }
+        }
+
+        int restrictedPartitionColumns = 0;
+        for (String column : partitionColumns) {
+            if (ranges.containsKey(column)) {
+                restrictedPartitionColumns++;
+            }
+        }
+        if (restrictedPartitionColumns > 0 && restrictedPartitionColumns < partitionColumns.size()) {
+            throw new IllegalArgumentException("Restrict all partition key columns " + partitionColumns
+                    + " or none of them, a partial partition key would need ALLOW FILTERING");
+        }
+
+        int rangeGroup = -1;
+        for (int i = 0; i < clustering.size(); i++) {
+            String column = clustering.get(i);
+            if (!ranges.containsKey(column)) {
+                continue;
+            }
+            if (restrictedPartitionColumns == 0) {
+                throw new IllegalArgumentException("Clustering column " + column
+                        + " can only be restricted together with the whole partition key " + partitionColumns);
+            }
+            if (i > 0 && !ranges.containsKey(clustering.get(i - 1))) {
+                throw new IllegalArgumentException("Clustering column " + column + " is restricted but "
+                        + clustering.get(i - 1) + " before it is not");
+            }
+            if (rangeGroup >= 0 && groups.get(column) != rangeGroup) {
+                throw new IllegalArgumentException("Clustering column " + column
+                        + " follows a range restriction, only the last restricted clustering column may have a range");
+            }
+            if (ranges.get(column) && rangeGroup < 0) {
+                rangeGroup = groups.get(column);
+            }
+        }
+    }
+
+    // Splits at the ANDs outside of string literals and parentheses
+    private static List<String> splitConditions(String where) {
+        List<String> conditions = new ArrayList<>();
+        int depth = 0;
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < where.length(); i++) {
+            char c = where.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')') {
+                depth--;
+            } else if (!quoted && depth == 0 && isAnd(where, i)) {
+                conditions.add(where.substring(start, i));
+                start = i + 3;
+                i += 2;
+            }
+        }
+        conditions.add(where.substring(start));
+        return conditions;
+    }
+
+    private static boolean isAnd(String where, int index) {
+        return index > 0 && Character.isWhitespace(where.charAt(index - 1))
+                && where.regionMatches(true, index, "and", 0, 3)
+                && index + 3 < where.length() && Character.isWhitespace(where.charAt(index + 3));
+    }
+
+    private static List<String> columns(String left) {
+        List<String> columns = new ArrayList<>();
+        if (left.startsWith("(")) {
+            for (String column : left.substring(1, left.length() - 1).split(",")) {
+                columns.add(CqlIdentifier.fromCql(column.trim()).asInternal());
+            }
+        } else {
+            columns.add(CqlIdentifier.fromCql(left).asInternal());
+        }
+        return columns;
+    }
+
+    private static List<String> internalNames(List<String> cqlNames) {
+        List<String> names = new ArrayList<>(cqlNames.size());
+        for (String name : cqlNames) {
+            names.add(CqlIdentifier.fromCql(name).asInternal());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,46 @@
+package com.cassandraexport.cassandra;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds reads to a ceiling of rows and bytes per second, shared by every scan of the export. Each
+ * page is charged after it arrived and the caller waits until the pages before it are paid off, so
+ * the average rate stays at the ceiling without knowing the size of a page in advance.
+ */
+class ReadThrottle {
+    private final double nanosPerRow;
+    private final double nanosPerByte;
+    private long nextFreeNanos = System.nanoTime();
+
+    /**
+     * @param maxRowsPerSecond  the row ceiling, 0 for none
+     * @param maxBytesPerSecond the byte ceiling, 0 for none
+     */
+    ReadThrottle(long maxRowsPerSecond, long maxBytesPerSecond) {
+        this.nanosPerRow = maxRowsPerSecond > 0 ? 1e9 / maxRowsPerSecond : 0;
+        this.nanosPerByte = maxBytesPerSecond > 0 ? 1e9 / maxBytesPerSecond : 0;
+    }
+
+    /**
+     * Charges a page to the throttle and waits for the reads before it.
+     *
+     * @param bytes the size of the page, or a negative value if it is unknown
+     */
+    void acquire(int rows, long bytes) throws InterruptedException {
+        long waitNanos = reserve(rows, bytes);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    synchronized long reserve(int rows, long bytes) {
+        long now = System.nanoTime();
+        if (nextFreeNanos < now) {
+            nextFreeNanos = now;
+        }
+        long waitNanos = nextFreeNanos - now;
+        double costNanos = Math.max(rows * nanosPerRow, Math.max(bytes, 0) * nanosPerByte);
+        nextFreeNanos += (long) costNanos;
+        return waitNanos;
+    }
+}
@@ -0,0 +1,34 @@
+package com.cassandraexport.cassandra;
+
+import com.datastax.oss.driver.api.core.cql.Row;
+
+import java.util.List;
+
+/**
+ * One driver page of query results together with the serialized paging state
+ * needed to fetch the page that follows it.
+ */
+public class ResultPage {
+    private final List<Row> rows;
+    private final String pagingState;
+
+    public ResultPage(List<Row> rows, String pagingState) {
+        this.rows = rows;
+        this.pagingState = pagingState;
+    }
+
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the Base64 encoded paging state of the next page, or {@code null} if this is the last page
+     */
+    public String getPagingState() {
+        return pagingState;
+    }
+
+    public boolean isLastPage() {
+        return pagingState == null;
+    }
+}
@@ -0,0 +1,90 @@
+package com.cassandraexport.cassandra;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A contiguous slice of the Murmur3 token ring, scanned with
+ * {@code token(pk) > start AND token(pk) <= end}.
+ */
+public class TokenRange {
+    public static final long MIN_TOKEN = Long.MIN_VALUE;
+    public static final long MAX_TOKEN = Long.MAX_VALUE;
+
+    private final int index;
+    private final long start;
+    private final long end;
+
+    public TokenRange(int index, long start, long end) {
+        if (start >= end) {
+            throw new IllegalArgumentException("Token range start must be lower than end: " + start + " >= " + end);
+        }
+        this.index = index;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Splits the full Murmur3 ring into {@code splits} ranges of (nearly) equal width.
+     * The first range starts at {@link #MIN_TOKEN} and the last one ends at {@link #MAX_TOKEN},
+     * so together they cover every token exactly once.
+     */
+    public static List<TokenRange> splitRing(int splits) {
+        if (splits < 1) {
+            throw new IllegalArgumentException("Number of token range splits must be positive: " + splits);
+        }
+
+        BigInteger min = BigInteger.valueOf(MIN_TOKEN);
+        BigInteger width = BigInteger.valueOf(MAX_TOKEN).subtract(min);
+        BigInteger count = BigInteger.valueOf(splits);
+
+        List<TokenRange> ranges = new ArrayList<>(splits);
+        long start = MIN_TOKEN;
+        for (int i = 1; i <= splits; i++) {
+            long end = i == splits
+                    ? MAX_TOKEN
+                    : min.add(width.multiply(BigInteger.valueOf(i)).divide(count)).longValue();
+            ranges.add(new TokenRange(i - 1, start, end));
+            start = end;
+        }
+        return ranges;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TokenRange)) {
+            return false;
+        }
+        TokenRange other = (TokenRange) o;
+        return index == other.index && start == other.start && end == other.end;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = index;
+        result = 31 * result + Long.hashCode(start);
+        result = 31 * result + Long.hashCode(end);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + index + " (" + start + ", " + end + "]";
+    }
+}
@@ -0,0 +1,77 @@
+package com.cassandraexport.cassandra;
+
+import com.cassandraexport.metrics.ExportMetrics;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinitions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drops the rows of an incremental export that were not written since the last run. The query
+ * selects {@code WRITETIME(<cassandra.incremental.column>)} as its last column, and a row is kept if
+ * that write time, in microseconds since the epoch, is after the watermark or unknown because the
+ * column is null. A row whose column is null, never set or deleted, is therefore exported again on
+ * every incremental run; the column should be one every write sets.
+ *
+ * <p>Cassandra cannot restrict a scan by write time, so the rows are still read, only not exported.
+ */
+final class WriteTimeFilter {
+    static final String ALIAS = "export_writetime";
+
+    private final int index;
+    private volatile long watermark = Long.MIN_VALUE;
+
+    WriteTimeFilter(int index) {
+        this.index = index;
+    }
+
+    /**
+     * @return the select expression of the write time of {@code column}
+     */
+    static String selector(String column) {
+        return "WRITETIME(" + column + ") AS " + ALIAS;
+    }
+
+    /**
+     * @return the columns of a query without its last one, the write time, which is not exported
+     */
+    static ColumnDefinitions exportedColumns(ColumnDefinitions definitions) {
+        List<ColumnDefinition> exported = new ArrayList<>(definitions.size() - 1);
+        for (int i = 0; i < definitions.size() - 1; i++) {
+            exported.add(definitions.get(i));
+        }
+        return DefaultColumnDefinitions.valueOf(exported);
+    }
+
+    void setWatermark(long watermark) {
+        this.watermark = watermark;
+    }
+
+    long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * @return the rows written after the watermark, {@code rows} itself if that is all of them
+     */
+    List<Row> changed(List<Row> rows) {
+        long after = watermark;
+        if (after == Long.MIN_VALUE) {
+            return rows;
+        }
+        List<Row> changed = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            if (row.isNull(index) || row.getLong(index) > after) {
+                changed.add(row);
+            }
+        }
+        if (changed.size() == rows.size()) {
+            return rows;
+        }
+        ExportMetrics.get().rowsUnchanged(rows.size() - changed.size());
+        return changed;
+    }
+}
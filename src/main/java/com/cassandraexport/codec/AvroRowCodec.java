@@ -0,0 +1,276 @@
+package com.cassandraexport.codec;
+
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.protocol.internal.ProtocolConstants;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes driver rows as Avro binary Kafka values, with a record schema derived from the columns.
+ *
+ * <p>Like {@link JsonRowCodec} every column gets a writer compiled from its CQL type that reads it by
+ * index and writes it straight into a per-thread buffer, so no generic records are built. Every
+ * field is a union of {@code null} and the column type. Each value starts with a reference to its
+ * schema, either the Confluent wire format header (a zero byte and the 4 byte schema id of the
+ * {@link FileSchemaRegistry}) or the Avro single object header (two marker bytes and the 8 byte
+ * fingerprint of the schema).
+ */
+public final class AvroRowCodec implements RowCodec {
+    private static final EncoderFactory encoderFactory = EncoderFactory.get();
+
+    private final Schema schema;
+    private final String[] names;
+    private final ColumnWriter[] writers;
+    private final RowKey rowKey;
+    private final byte[] header;
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+
+    private interface ColumnWriter {
+        void write(Row row, int index, BinaryEncoder encoder) throws IOException;
+    }
+
+    private static final class Encoder {
+        private final EncodeBuffer buffer = new EncodeBuffer();
+        private final BinaryEncoder encoder = encoderFactory.binaryEncoder(buffer, null);
+    }
+
+    private AvroRowCodec(Schema schema, String[] names, ColumnWriter[] writers, RowKey rowKey, byte[] header) {
+        this.schema = schema;
+        this.names = names;
+        this.writers = writers;
+        this.rowKey = rowKey;
+        this.header = header;
+    }
+
+    /**
+     * Compiles a codec for rows with the given columns and registers their schema. Rows are keyed
+     * by their {@code id} column.
+     *
+     * @param referenceById start values with the registry id of the schema rather than its fingerprint
+     */
+    public static AvroRowCodec compile(ColumnDefinitions definitions, FileSchemaRegistry registry,
+                                       boolean referenceById) throws IOException {
+        return compile(definitions, RowKey.idColumn(definitions), registry, referenceById);
+    }
+
+    /**
+     * Compiles a codec for rows with the given columns and key, see
+     * {@link #compile(ColumnDefinitions, FileSchemaRegistry, boolean)}.
+     */
+    public static AvroRowCodec compile(ColumnDefinitions definitions, RowKey rowKey, FileSchemaRegistry registry,
+                                       boolean referenceById) throws IOException {
+        Schema schema = schemaFor(definitions);
+        int schemaId = registry.register(schema);
+
+        int columnCount = definitions.size();
+        String[] names = new String[columnCount];
+        ColumnWriter[] writers = new ColumnWriter[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = definitions.get(i).getName().asInternal();
+            writers[i] = writerFor(definitions.get(i).getType());
+        }
+
+        ByteBuffer header;
+        if (referenceById) {
+            header = ByteBuffer.allocate(5).put((byte) 0).putInt(schemaId);
+        } else {
+            header = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN)
+                    .put((byte) 0xC3).put((byte) 0x01)
+                    .putLong(SchemaNormalization.parsingFingerprint64(schema));
+        }
+        return new AvroRowCodec(schema, names, writers, rowKey, header.array());
+    }
+
+    /**
+     * Derives the record schema of rows with the given columns. The record is named after the table
+     * and every field is nullable.
+     */
+    public static Schema schemaFor(ColumnDefinitions definitions) {
+        String name = "Row";
+        String namespace = null;
+        if (definitions.size() > 0 && definitions.get(0).getTable() != null) {
+            name = avroName(definitions.get(0).getTable().asInternal());
+            namespace = avroName(definitions.get(0).getKeyspace().asInternal());
+        }
+
+        SchemaBuilder.FieldAssembler<Schema> fields = SchemaBuilder.record(name).namespace(namespace).fields();
+        for (int i = 0; i < definitions.size(); i++) {
+            ColumnDefinition definition = definitions.get(i);
+            Schema type = Schema.createUnion(Schema.create(Schema.Type.NULL), schemaFor(definition.getType()));
+            fields = fields.name(avroName(definition.getName().asInternal())).type(type).withDefault(null);
+        }
+        return fields.endRecord();
+    }
+
+    @Override
+    public byte[] encode(Row row, ByteArrayPool pool) throws IOException {
+        Encoder encoder = encoders.get();
+        try {
+            encoder.buffer.write(header, 0, header.length);
+            BinaryEncoder out = encoder.encoder;
+            for (int i = 0; i < writers.length; i++) {
+                if (row.isNull(i)) {
+                    out.writeIndex(0);
+                    out.writeNull();
+                } else {
+                    out.writeIndex(1);
+                    writers[i].write(row, i, out);
+                }
+            }
+            out.flush();
+
+            return encoder.buffer.copy(pool);
+        } catch (IOException | RuntimeException e) {
+            // The encoder may still buffer part of the row, start over with a fresh one
+            encoders.remove();
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] key(Row row) {
+        return rowKey.of(row);
+    }
+
+    @Override
+    public long token(Row row) {
+        return rowKey.token(row);
+    }
+
+    @Override
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    @Override
+    public String getColumnName(int index) {
+        return names[index];
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return the bytes every value starts with, the schema id or fingerprint
+     */
+    public byte[] getHeader() {
+        return header.clone();
+    }
+
+    private static Schema schemaFor(DataType type) {
+        switch (type.getProtocolCode()) {
+            case ProtocolConstants.DataType.ASCII:
+            case ProtocolConstants.DataType.VARCHAR:
+            case ProtocolConstants.DataType.DECIMAL:
+            case ProtocolConstants.DataType.VARINT:
+            case ProtocolConstants.DataType.DURATION:
+                return Schema.create(Schema.Type.STRING);
+            case ProtocolConstants.DataType.INT:
+            case ProtocolConstants.DataType.SMALLINT:
+            case ProtocolConstants.DataType.TINYINT:
+                return Schema.create(Schema.Type.INT);
+            case ProtocolConstants.DataType.BIGINT:
+            case ProtocolConstants.DataType.COUNTER:
+                return Schema.create(Schema.Type.LONG);
+            case ProtocolConstants.DataType.BOOLEAN:
+                return Schema.create(Schema.Type.BOOLEAN);
+            case ProtocolConstants.DataType.DOUBLE:
+                return Schema.create(Schema.Type.DOUBLE);
+            case ProtocolConstants.DataType.FLOAT:
+                return Schema.create(Schema.Type.FLOAT);
+            case ProtocolConstants.DataType.UUID:
+            case ProtocolConstants.DataType.TIMEUUID:
+                return LogicalTypes.uuid().addToSchema(Schema.create(Schema.Type.STRING));
+            case ProtocolConstants.DataType.TIMESTAMP:
+                return LogicalTypes.timestampMillis().addToSchema(Schema.create(Schema.Type.LONG));
+            case ProtocolConstants.DataType.DATE:
+                return LogicalTypes.date().addToSchema(Schema.create(Schema.Type.INT));
+            case ProtocolConstants.DataType.TIME:
+                return LogicalTypes.timeMicros().addToSchema(Schema.create(Schema.Type.LONG));
+            case ProtocolConstants.DataType.INET:
+            case ProtocolConstants.DataType.BLOB:
+                return Schema.create(Schema.Type.BYTES);
+            default:
+                // UDTs, tuples, collections and custom types as CQL literals
+                return Schema.create(Schema.Type.STRING);
+        }
+    }
+
+    private static ColumnWriter writerFor(DataType type) {
+        switch (type.getProtocolCode()) {
+            case ProtocolConstants.DataType.ASCII:
+            case ProtocolConstants.DataType.VARCHAR:
+                return (row, i, out) -> out.writeString(row.getString(i));
+            case ProtocolConstants.DataType.DECIMAL:
+                // CQL decimals have a scale per value, Avro decimals one per schema
+                return (row, i, out) -> out.writeString(row.getBigDecimal(i).toString());
+            case ProtocolConstants.DataType.VARINT:
+                return (row, i, out) -> out.writeString(row.getBigInteger(i).toString());
+            case ProtocolConstants.DataType.DURATION:
+                return (row, i, out) -> out.writeString(row.getCqlDuration(i).toString());
+            case ProtocolConstants.DataType.INT:
+                return (row, i, out) -> out.writeInt(row.getInt(i));
+            case ProtocolConstants.DataType.SMALLINT:
+                return (row, i, out) -> out.writeInt(row.getShort(i));
+            case ProtocolConstants.DataType.TINYINT:
+                return (row, i, out) -> out.writeInt(row.getByte(i));
+            case ProtocolConstants.DataType.BIGINT:
+            case ProtocolConstants.DataType.COUNTER:
+                return (row, i, out) -> out.writeLong(row.getLong(i));
+            case ProtocolConstants.DataType.BOOLEAN:
+                return (row, i, out) -> out.writeBoolean(row.getBoolean(i));
+            case ProtocolConstants.DataType.DOUBLE:
+                return (row, i, out) -> out.writeDouble(row.getDouble(i));
+            case ProtocolConstants.DataType.FLOAT:
+                return (row, i, out) -> out.writeFloat(row.getFloat(i));
+            case ProtocolConstants.DataType.UUID:
+            case ProtocolConstants.DataType.TIMEUUID:
+                return (row, i, out) -> out.writeString(row.getUuid(i).toString());
+            case ProtocolConstants.DataType.TIMESTAMP:
+                return (row, i, out) -> out.writeLong(row.getInstant(i).toEpochMilli());
+            case ProtocolConstants.DataType.DATE:
+                return (row, i, out) -> out.writeInt((int) row.getLocalDate(i).toEpochDay());
+            case ProtocolConstants.DataType.TIME:
+                return (row, i, out) -> out.writeLong(row.getLocalTime(i).toNanoOfDay() / 1000);
+            case ProtocolConstants.DataType.INET:
+                return (row, i, out) -> out.writeBytes(row.getInetAddress(i).getAddress());
+            case ProtocolConstants.DataType.BLOB:
+                return (row, i, out) -> out.writeBytes(row.getByteBuffer(i).duplicate());
+            case ProtocolConstants.DataType.UDT:
+                return (row, i, out) -> out.writeString(row.getUdtValue(i).getFormattedContents());
+            case ProtocolConstants.DataType.TUPLE:
+                return (row, i, out) -> out.writeString(row.getTupleValue(i).getFormattedContents());
+            default:
+                return AvroRowCodec::writeFormatted;
+        }
+    }
+
+    private static void writeFormatted(Row row, int index, BinaryEncoder out) throws IOException {
+        TypeCodec<Object> codec = row.codecRegistry().codecFor(row.getType(index));
+        out.writeString(codec.format(row.get(index, codec)));
+    }
+
+    // Avro names only allow letters, digits and underscores, quoted CQL identifiers allow anything
+    private static String avroName(String name) {
+        StringBuilder result = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (i > 0 && c >= '0' && c <= '9');
+            result.append(valid ? c : '_');
+        }
+        return result.toString();
+    }
+}
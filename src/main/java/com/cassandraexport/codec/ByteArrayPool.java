@@ -0,0 +1,74 @@
+package com.cassandraexport.codec;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recycles encoded value arrays. Kafka's byte array serializer needs arrays of exactly the value's
+ * length, so arrays are pooled per length, which pays off when encoded values keep the same sizes,
+ * as they do for rows of fixed width columns. At most {@code maxPooled} arrays are retained.
+ *
+ * <p>Every array has a single owner at a time: whoever acquired it hands it on with the record, and the
+ * last holder, e.g. the send callback, releases it exactly once. The hit rate shows whether values are
+ * regular enough for pooling to pay off.
+ */
+public final class ByteArrayPool {
+    private final ConcurrentHashMap<Integer, Queue<byte[]>> free = new ConcurrentHashMap<>();
+    private final AtomicInteger pooled = new AtomicInteger(0);
+    private final int maxPooled;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ByteArrayPool(int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return a recycled array of exactly {@code length} bytes, or a new one if none is pooled
+     */
+    public byte[] acquire(int length) {
+        Queue<byte[]> arrays = free.get(length);
+        if (arrays != null) {
+            byte[] array = arrays.poll();
+            if (array != null) {
+                pooled.decrementAndGet();
+                hits.increment();
+                return array;
+            }
+        }
+        misses.increment();
+        return new byte[length];
+    }
+
+    /**
+     * Returns an array to the pool. The caller must not touch it afterwards.
+     */
+    public void release(byte[] array) {
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        free.computeIfAbsent(array.length, length -> new ConcurrentLinkedQueue<>()).offer(array);
+    }
+
+    public int getPooledCount() {
+        return pooled.get();
+    }
+
+    /**
+     * @return how many acquired arrays were recycled ones
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return how many acquired arrays had to be allocated
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,23 @@
+package com.cassandraexport.codec;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Per-thread encoding buffer that exposes its internal array, so an encoded value can be copied
+ * straight into an exactly sized (and possibly pooled) array.
+ */
+final class EncodeBuffer extends ByteArrayOutputStream {
+    EncodeBuffer() {
+        super(1024);
+    }
+
+    /**
+     * @return a copy of the buffered value, the buffer is reset for the next one
+     */
+    byte[] copy(ByteArrayPool pool) {
+        byte[] value = pool == null ? new byte[count] : pool.acquire(count);
+        System.arraycopy(buf, 0, value, 0, count);
+        reset();
+        return value;
+    }
+}
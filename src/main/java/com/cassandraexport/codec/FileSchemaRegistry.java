@@ -0,0 +1,89 @@
+package com.cassandraexport.codec;
+
+import org.apache.avro.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Local stand-in for a schema registry: every schema is stored as {@code <id>.avsc} in a directory
+ * that consumers read to resolve the schema id at the start of each value. Registering a schema
+ * that is already stored returns its existing id.
+ */
+public class FileSchemaRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(FileSchemaRegistry.class);
+    private static final String SUFFIX = ".avsc";
+
+    private final Path directory;
+
+    public FileSchemaRegistry(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the id of the schema, stored under a new id if it is not registered yet
+     */
+    public synchronized int register(Schema schema) throws IOException {
+        Files.createDirectories(directory);
+
+        int nextId = 1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                int id = idOf(file);
+                if (id < 0) {
+                    continue;
+                }
+                nextId = Math.max(nextId, id + 1);
+                if (schema.equals(read(file))) {
+                    return id;
+                }
+            }
+        }
+
+        // Another exporter may register a schema concurrently, never overwrite its file
+        byte[] content = schema.toString(true).getBytes(StandardCharsets.UTF_8);
+        while (true) {
+            Path file = directory.resolve(nextId + SUFFIX);
+            try {
+                Files.write(file, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                logger.info("Registered Avro schema {} with id {} in {}", schema.getFullName(), nextId, directory);
+                return nextId;
+            } catch (FileAlreadyExistsException e) {
+                nextId++;
+            }
+        }
+    }
+
+    public Schema getSchema(int id) throws IOException {
+        Schema schema = read(directory.resolve(id + SUFFIX));
+        if (schema == null) {
+            throw new IOException("Schema " + id + " is not readable in " + directory);
+        }
+        return schema;
+    }
+
+    private static Schema read(Path file) throws IOException {
+        try {
+            return new Schema.Parser().parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring unreadable schema file {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private static int idOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
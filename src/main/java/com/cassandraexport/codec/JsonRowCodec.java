@@ -0,0 +1,194 @@
+package com.cassandraexport.codec;
+
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.protocol.internal.ProtocolConstants;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes driver rows as JSON Kafka values without building a map per row.
+ *
+ * <p>The codec is compiled once from the result set definitions of a prepared statement. Every
+ * column gets a writer that reads it by index with the getter of its CQL type and streams the value
+ * through a {@link JsonGenerator} into a buffer that each thread reuses from row to row. Column
+ * names are encoded once, at compile time.
+ */
+public final class JsonRowCodec implements RowCodec {
+    // Rows are written back to back into the same generator, without a separator between them
+    private static final ObjectMapper mapper = new ObjectMapper(
+            new JsonFactoryBuilder().rootValueSeparator((String) null).build());
+
+    private final String[] names;
+    private final SerializedString[] fieldNames;
+    private final ColumnWriter[] writers;
+    private final RowKey rowKey;
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+
+    private interface ColumnWriter {
+        void write(Row row, int index, JsonGenerator generator) throws IOException;
+    }
+
+    private static final class Encoder {
+        private final EncodeBuffer buffer = new EncodeBuffer();
+        private final JsonGenerator generator;
+
+        private Encoder() {
+            try {
+                generator = mapper.getFactory().createGenerator(buffer);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to create JSON generator", e);
+            }
+        }
+    }
+
+    private JsonRowCodec(String[] names, ColumnWriter[] writers, RowKey rowKey) {
+        this.names = names;
+        this.writers = writers;
+        this.rowKey = rowKey;
+        this.fieldNames = new SerializedString[names.length];
+        for (int i = 0; i < names.length; i++) {
+            fieldNames[i] = new SerializedString(names[i]);
+        }
+    }
+
+    /**
+     * Compiles a codec for rows with the given columns, usually
+     * {@code PreparedStatement.getResultSetDefinitions()}, keyed by their {@code id} column.
+     */
+    public static JsonRowCodec compile(ColumnDefinitions definitions) {
+        return compile(definitions, RowKey.idColumn(definitions));
+    }
+
+    /**
+     * Compiles a codec for rows with the given columns and key.
+     */
+    public static JsonRowCodec compile(ColumnDefinitions definitions, RowKey rowKey) {
+        int columnCount = definitions.size();
+        String[] names = new String[columnCount];
+        ColumnWriter[] writers = new ColumnWriter[columnCount];
+
+        for (int i = 0; i < columnCount; i++) {
+            ColumnDefinition definition = definitions.get(i);
+            names[i] = definition.getName().asInternal();
+            writers[i] = writerFor(definition.getType());
+        }
+        return new JsonRowCodec(names, writers, rowKey);
+    }
+
+    /**
+     * Encodes the row as a UTF-8 JSON object keyed by column name.
+     */
+    @Override
+    public byte[] encode(Row row, ByteArrayPool pool) throws IOException {
+        Encoder encoder = encoders.get();
+        try {
+            JsonGenerator generator = encoder.generator;
+            generator.writeStartObject();
+            for (int i = 0; i < writers.length; i++) {
+                generator.writeFieldName(fieldNames[i]);
+                if (row.isNull(i)) {
+                    generator.writeNull();
+                } else {
+                    writers[i].write(row, i, generator);
+                }
+            }
+            generator.writeEndObject();
+            generator.flush();
+
+            return encoder.buffer.copy(pool);
+        } catch (IOException | RuntimeException e) {
+            // The generator is left in the middle of an object, start over with a fresh one
+            encoders.remove();
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] key(Row row) {
+        return rowKey.of(row);
+    }
+
+    @Override
+    public long token(Row row) {
+        return rowKey.token(row);
+    }
+
+    @Override
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    @Override
+    public String getColumnName(int index) {
+        return names[index];
+    }
+
+    private static ColumnWriter writerFor(DataType type) {
+        switch (type.getProtocolCode()) {
+            case ProtocolConstants.DataType.ASCII:
+            case ProtocolConstants.DataType.VARCHAR:
+                return (row, i, generator) -> generator.writeString(row.getString(i));
+            case ProtocolConstants.DataType.INT:
+                return (row, i, generator) -> generator.writeNumber(row.getInt(i));
+            case ProtocolConstants.DataType.BIGINT:
+            case ProtocolConstants.DataType.COUNTER:
+                return (row, i, generator) -> generator.writeNumber(row.getLong(i));
+            case ProtocolConstants.DataType.SMALLINT:
+                return (row, i, generator) -> generator.writeNumber(row.getShort(i));
+            case ProtocolConstants.DataType.TINYINT:
+                return (row, i, generator) -> generator.writeNumber(row.getByte(i));
+            case ProtocolConstants.DataType.BOOLEAN:
+                return (row, i, generator) -> generator.writeBoolean(row.getBoolean(i));
+            case ProtocolConstants.DataType.DOUBLE:
+                return (row, i, generator) -> generator.writeNumber(row.getDouble(i));
+            case ProtocolConstants.DataType.FLOAT:
+                return (row, i, generator) -> generator.writeNumber(row.getFloat(i));
+            case ProtocolConstants.DataType.DECIMAL:
+                return (row, i, generator) -> generator.writeNumber(row.getBigDecimal(i));
+            case ProtocolConstants.DataType.VARINT:
+                return (row, i, generator) -> generator.writeNumber(row.getBigInteger(i));
+            case ProtocolConstants.DataType.UUID:
+            case ProtocolConstants.DataType.TIMEUUID:
+                return (row, i, generator) -> generator.writeString(row.getUuid(i).toString());
+            case ProtocolConstants.DataType.TIMESTAMP:
+                // Epoch milliseconds, like Jackson writes java.util.Date
+                return (row, i, generator) -> generator.writeNumber(row.getInstant(i).toEpochMilli());
+            case ProtocolConstants.DataType.DATE:
+                return (row, i, generator) -> generator.writeString(row.getLocalDate(i).toString());
+            case ProtocolConstants.DataType.TIME:
+                return (row, i, generator) -> generator.writeString(row.getLocalTime(i).toString());
+            case ProtocolConstants.DataType.INET:
+                return (row, i, generator) -> generator.writeString(row.getInetAddress(i).getHostAddress());
+            case ProtocolConstants.DataType.DURATION:
+                return (row, i, generator) -> generator.writeString(row.getCqlDuration(i).toString());
+            case ProtocolConstants.DataType.BLOB:
+                return JsonRowCodec::writeBlob;
+            case ProtocolConstants.DataType.UDT:
+                return (row, i, generator) -> generator.writeString(row.getUdtValue(i).getFormattedContents());
+            case ProtocolConstants.DataType.TUPLE:
+                return (row, i, generator) -> generator.writeString(row.getTupleValue(i).getFormattedContents());
+            default:
+                // Collections and custom types go through Jackson data binding
+                return (row, i, generator) -> generator.writeObject(row.getObject(i));
+        }
+    }
+
+    private static void writeBlob(Row row, int index, JsonGenerator generator) throws IOException {
+        ByteBuffer blob = row.getByteBuffer(index);
+        if (blob.hasArray()) {
+            generator.writeBinary(blob.array(), blob.arrayOffset() + blob.position(), blob.remaining());
+        } else {
+            byte[] bytes = new byte[blob.remaining()];
+            blob.duplicate().get(bytes);
+            generator.writeBinary(bytes);
+        }
+    }
+}
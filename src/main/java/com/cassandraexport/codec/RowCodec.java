@@ -0,0 +1,84 @@
+package com.cassandraexport.codec;
+
+import com.cassandraexport.config.AppConfig;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Turns driver rows into Kafka keys and values. Codecs are compiled once from the result set
+ * definitions of a prepared statement and are safe to use from several threads.
+ */
+public interface RowCodec {
+
+    /**
+     * The token of rows without a known partition key. Murmur3 never yields it, Cassandra maps that
+     * hash to the maximum token.
+     */
+    long NO_TOKEN = Long.MIN_VALUE;
+
+    /**
+     * Encodes the row as a Kafka value in this codec's format.
+     */
+    default byte[] encode(Row row) throws IOException {
+        return encode(row, null);
+    }
+
+    /**
+     * Encodes the row into an array taken from {@code pool}, see {@link #encode(Row)}.
+     */
+    byte[] encode(Row row, ByteArrayPool pool) throws IOException;
+
+    /**
+     * @return the Kafka key of the row, see {@link RowKey}
+     */
+    byte[] key(Row row);
+
+    /**
+     * @return the Murmur3 token of the row's partition, or {@link #NO_TOKEN} if the codec does not
+     *         know the partition key
+     */
+    long token(Row row);
+
+    int getColumnCount();
+
+    String getColumnName(int index);
+
+    /**
+     * Compiles a JSON codec for rows with the given columns, usually
+     * {@code PreparedStatement.getResultSetDefinitions()}.
+     */
+    static RowCodec compile(ColumnDefinitions definitions) {
+        return JsonRowCodec.compile(definitions);
+    }
+
+    /**
+     * Compiles a codec for the value format configured with {@code kafka.valueFormat}, keyed by the
+     * {@code id} column.
+     *
+     * @throws IOException if the Avro schema could not be registered
+     */
+    static RowCodec forFormat(AppConfig config, ColumnDefinitions definitions) throws IOException {
+        return forFormat(config, definitions, RowKey.idColumn(definitions));
+    }
+
+    /**
+     * Compiles a codec for the value format configured with {@code kafka.valueFormat} and the given key.
+     *
+     * @throws IOException if the Avro schema could not be registered
+     */
+    static RowCodec forFormat(AppConfig config, ColumnDefinitions definitions, RowKey rowKey) throws IOException {
+        String format = config.getKafkaValueFormat();
+        if ("avro".equalsIgnoreCase(format)) {
+            FileSchemaRegistry registry = new FileSchemaRegistry(Paths.get(config.getKafkaSchemaRegistryDir()));
+            boolean referenceById = !"fingerprint".equalsIgnoreCase(config.getKafkaSchemaReference());
+            return AvroRowCodec.compile(definitions, rowKey, registry, referenceById);
+        }
+        if (format != null && !"json".equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("Unsupported kafka.valueFormat: " + format);
+        }
+        return JsonRowCodec.compile(definitions, rowKey);
+    }
+}
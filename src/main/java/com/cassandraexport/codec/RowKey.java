@@ -0,0 +1,160 @@
+package com.cassandraexport.codec;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.internal.core.metadata.token.Murmur3Token;
+import com.datastax.oss.driver.internal.core.metadata.token.Murmur3TokenFactory;
+import com.datastax.oss.protocol.internal.ProtocolConstants;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Derives the Kafka key of a row, the same way for every value format.
+ *
+ * <p>Keys from the primary key are built from the serialized column values as the driver received
+ * them, without decoding them: a single column is its value bytes, several columns use the composite
+ * layout of Cassandra (a two byte length, the value and a zero byte per column). With the partition
+ * key columns first, such a key starts with the partition's routing key, and its Murmur3 hash is the
+ * row's token.
+ */
+public final class RowKey {
+    private static final String KEY_COLUMN = "id";
+    private static final Murmur3TokenFactory tokenFactory = new Murmur3TokenFactory();
+
+    private final int[] keyIndices;
+    private final int partitionKeyColumns;
+    private final boolean textKey;
+
+    private RowKey(int[] keyIndices, int partitionKeyColumns, boolean textKey) {
+        this.keyIndices = keyIndices;
+        this.partitionKeyColumns = partitionKeyColumns;
+        this.textKey = textKey;
+    }
+
+    /**
+     * Keys rows by the text of their {@code id} column, or a random UUID if they have none.
+     */
+    public static RowKey idColumn(ColumnDefinitions definitions) {
+        for (int i = 0; i < definitions.size(); i++) {
+            if (KEY_COLUMN.equals(definitions.get(i).getName().asInternal())) {
+                return new RowKey(new int[] {i}, 0, isText(definitions.get(i).getType()));
+            }
+        }
+        return new RowKey(new int[0], 0, false);
+    }
+
+    /**
+     * Keys rows by the bytes of their partition key and clustering columns, so every run gives a row
+     * the same key and all rows of a Cassandra partition share the token.
+     *
+     * @param partitionKey the partition key columns in CQL form, in their order in the table
+     * @param clusteringColumns the clustering columns to add to the key, empty to key by partition only
+     * @throws IllegalArgumentException if a column is not in the result set
+     */
+    public static RowKey primaryKey(ColumnDefinitions definitions, List<String> partitionKey,
+                                    List<String> clusteringColumns) {
+        int[] keyIndices = new int[partitionKey.size() + clusteringColumns.size()];
+        for (int i = 0; i < keyIndices.length; i++) {
+            String column = i < partitionKey.size()
+                    ? partitionKey.get(i) : clusteringColumns.get(i - partitionKey.size());
+            keyIndices[i] = definitions.firstIndexOf(CqlIdentifier.fromCql(column));
+            if (keyIndices[i] < 0) {
+                throw new IllegalArgumentException("Key column " + column + " is not selected by the query");
+            }
+        }
+        return new RowKey(keyIndices, partitionKey.size(), false);
+    }
+
+    /**
+     * @return the key of the row, never {@code null}
+     */
+    byte[] of(Row row) {
+        if (partitionKeyColumns == 0) {
+            return idOf(row);
+        }
+        if (keyIndices.length == 1) {
+            return bytesOf(row, keyIndices[0]);
+        }
+
+        int length = 0;
+        for (int index : keyIndices) {
+            ByteBuffer value = row.getBytesUnsafe(index);
+            length += 3 + (value == null ? 0 : value.remaining());
+        }
+        ByteBuffer key = ByteBuffer.allocate(length);
+        for (int index : keyIndices) {
+            ByteBuffer value = row.getBytesUnsafe(index);
+            if (value == null) {
+                key.putShort((short) 0);
+            } else {
+                key.putShort((short) value.remaining());
+                key.put(value.duplicate());
+            }
+            key.put((byte) 0);
+        }
+        return key.array();
+    }
+
+    /**
+     * @return the Murmur3 token of the row's partition, or {@link RowCodec#NO_TOKEN} if rows are
+     *         keyed by their {@code id} column
+     */
+    long token(Row row) {
+        if (partitionKeyColumns == 0) {
+            return RowCodec.NO_TOKEN;
+        }
+
+        ByteBuffer routingKey;
+        if (partitionKeyColumns == 1) {
+            routingKey = row.getBytesUnsafe(keyIndices[0]);
+            if (routingKey == null) {
+                routingKey = ByteBuffer.allocate(0);
+            }
+        } else {
+            int length = 0;
+            for (int i = 0; i < partitionKeyColumns; i++) {
+                length += 3 + row.getBytesUnsafe(keyIndices[i]).remaining();
+            }
+            routingKey = ByteBuffer.allocate(length);
+            for (int i = 0; i < partitionKeyColumns; i++) {
+                ByteBuffer value = row.getBytesUnsafe(keyIndices[i]);
+                routingKey.putShort((short) value.remaining()).put(value.duplicate()).put((byte) 0);
+            }
+            routingKey.flip();
+        }
+        return ((Murmur3Token) tokenFactory.hash(routingKey.duplicate())).getValue();
+    }
+
+    private byte[] idOf(Row row) {
+        if (keyIndices.length == 0 || row.isNull(keyIndices[0])) {
+            // Random version 4 UUID without the SecureRandom of UUID.randomUUID()
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long mostSignificantBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+            long leastSignificantBits = (random.nextLong() & ~(0xC000L << 48)) | (0x8000L << 48);
+            return new UUID(mostSignificantBits, leastSignificantBits).toString().getBytes(StandardCharsets.UTF_8);
+        }
+        String id = textKey ? row.getString(keyIndices[0]) : String.valueOf(row.getObject(keyIndices[0]));
+        return id.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytesOf(Row row, int index) {
+        ByteBuffer value = row.getBytesUnsafe(index);
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static boolean isText(DataType type) {
+        return type.getProtocolCode() == ProtocolConstants.DataType.VARCHAR
+                || type.getProtocolCode() == ProtocolConstants.DataType.ASCII;
+    }
+}
@@ -10,6 +10,7 @@ import java.util.Properties;
 public class AppConfig {
     private static final Logger logger = LoggerFactory.getLogger(AppConfig.class);
     private static final String CONFIG_FILE = "application.properties";
+    private static final String KAFKA_PRODUCER_PREFIX = "kafka.producer.";
     private static AppConfig instance;
     private final Properties properties;
 
@@ -18,6 +19,18 @@ public class AppConfig {
         loadProperties();
     }
 
+    private AppConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Configuration backed by the given properties rather than {@code application.properties},
+     * for benchmarks and harnesses that run several configurations in one process.
+     */
+    public static AppConfig fromProperties(Properties properties) {
+        return new AppConfig(properties);
+    }
+
     public static synchronized AppConfig getInstance() {
         if (instance == null) {
             instance = new AppConfig();
@@ -71,6 +84,22 @@ public class AppConfig {
         return properties.getProperty("cassandra.query");
     }
 
+    public String getCassandraColumns() {
+        return properties.getProperty("cassandra.columns", "");
+    }
+
+    public String getCassandraWhere() {
+        return properties.getProperty("cassandra.where", "");
+    }
+
+    public String getCassandraIncrementalColumn() {
+        return properties.getProperty("cassandra.incremental.column", "").trim();
+    }
+
+    public long getCassandraIncrementalOverlapMs() {
+        return Long.parseLong(properties.getProperty("cassandra.incremental.overlapMs", "60000"));
+    }
+
     public int getCassandraBatchSize() {
         return Integer.parseInt(properties.getProperty("cassandra.batchSize", "10000"));
     }
@@ -79,10 +108,78 @@ public class AppConfig {
         return Long.parseLong(properties.getProperty("cassandra.totalRecords", "6000000"));
     }
 
+    public String getCassandraScanMode() {
+        return properties.getProperty("cassandra.scanMode", "offset").trim();
+    }
+
+    public String getCassandraPartitionKey() {
+        return properties.getProperty("cassandra.partitionKey");
+    }
+
+    public int getCassandraTokenRangeSplits() {
+        return Integer.parseInt(properties.getProperty("cassandra.tokenRangeSplits", "256"));
+    }
+
+    public int getCassandraScanParallelism() {
+        return Integer.parseInt(properties.getProperty("cassandra.scanParallelism", "4"));
+    }
+
+    public String getCassandraScanConsistency() {
+        return properties.getProperty("cassandra.scanConsistency", "").trim();
+    }
+
+    public int getCassandraScanPageSize() {
+        return Integer.parseInt(properties.getProperty("cassandra.scanPageSize", "0"));
+    }
+
+    public int getCassandraMaxScansPerHost() {
+        return Integer.parseInt(properties.getProperty("cassandra.maxScansPerHost", "0"));
+    }
+
+    public boolean isCassandraAdaptiveEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("cassandra.adaptive.enabled", "false"));
+    }
+
+    public int getCassandraAdaptiveMinPageSize() {
+        return Integer.parseInt(properties.getProperty("cassandra.adaptive.minPageSize", "500"));
+    }
+
+    public int getCassandraAdaptiveMaxPageSize() {
+        return Integer.parseInt(properties.getProperty("cassandra.adaptive.maxPageSize", "20000"));
+    }
+
+    public long getCassandraAdaptiveTargetLatencyMs() {
+        return Long.parseLong(properties.getProperty("cassandra.adaptive.targetLatencyMs", "500"));
+    }
+
+    public long getCassandraMaxRowsPerSecond() {
+        return Long.parseLong(properties.getProperty("cassandra.maxRowsPerSecond", "0"));
+    }
+
+    public long getCassandraMaxBytesPerSecond() {
+        return Long.parseLong(properties.getProperty("cassandra.maxBytesPerSecond", "0"));
+    }
+
+    public String getCassandraReadMode() {
+        return properties.getProperty("cassandra.readMode", "sync").trim();
+    }
+
+    public int getCassandraAsyncScans() {
+        return Integer.parseInt(properties.getProperty("cassandra.asyncScans", "32"));
+    }
+
     public String getStateCheckpointFile() {
         return properties.getProperty("state.checkpointFile", "checkpoint.json");
     }
 
+    public long getStateCheckpointIntervalMs() {
+        return Long.parseLong(properties.getProperty("state.checkpointIntervalMs", "1000"));
+    }
+
+    public long getStateCheckpointEveryRecords() {
+        return Long.parseLong(properties.getProperty("state.checkpointEveryRecords", "10000"));
+    }
+
     public String getKafkaBootstrapServers() {
         return properties.getProperty("kafka.bootstrapServers");
     }
@@ -111,6 +208,173 @@ public class AppConfig {
         return Integer.parseInt(properties.getProperty("kafka.bufferMemory", "33554432"));
     }
 
+    public String getKafkaCompressionType() {
+        return properties.getProperty("kafka.compressionType", "none").trim();
+    }
+
+    public int getKafkaLingerMs() {
+        return Integer.parseInt(properties.getProperty("kafka.lingerMs", "0"));
+    }
+
+    public int getKafkaMaxInFlightRequestsPerConnection() {
+        return Integer.parseInt(properties.getProperty("kafka.maxInFlightRequestsPerConnection", "5"));
+    }
+
+    public boolean isKafkaEnableIdempotence() {
+        return Boolean.parseBoolean(properties.getProperty("kafka.enableIdempotence", "true").trim());
+    }
+
+    /**
+     * @return every {@code kafka.producer.*} property with the prefix removed, passed to the producer as-is
+     */
+    public Properties getKafkaProducerProperties() {
+        Properties producerProperties = new Properties();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(KAFKA_PRODUCER_PREFIX)) {
+                producerProperties.setProperty(name.substring(KAFKA_PRODUCER_PREFIX.length()),
+                        properties.getProperty(name).trim());
+            }
+        }
+        return producerProperties;
+    }
+
+    public boolean isKafkaAdaptiveTuning() {
+        return Boolean.parseBoolean(properties.getProperty("kafka.adaptive.enabled", "false").trim());
+    }
+
+    public long getKafkaAdaptiveSampleRecords() {
+        return Long.parseLong(properties.getProperty("kafka.adaptive.sampleRecords", "10000"));
+    }
+
+    public int getKafkaAdaptiveMaxLingerMs() {
+        return Integer.parseInt(properties.getProperty("kafka.adaptive.maxLingerMs", "50"));
+    }
+
+    public String getKafkaValueFormat() {
+        return properties.getProperty("kafka.valueFormat", "json");
+    }
+
+    public String getKafkaSchemaRegistryDir() {
+        return properties.getProperty("kafka.schemaRegistryDir", "schemas");
+    }
+
+    public String getKafkaSchemaReference() {
+        return properties.getProperty("kafka.schemaReference", "id");
+    }
+
+    public String getKafkaKeyColumns() {
+        return properties.getProperty("kafka.keyColumns", "id").trim();
+    }
+
+    public String getKafkaPartitioner() {
+        return properties.getProperty("kafka.partitioner", "default").trim();
+    }
+
+    public boolean isKafkaReuseValueBuffers() {
+        return Boolean.parseBoolean(properties.getProperty("kafka.reuseValueBuffers", "false"));
+    }
+
+    public int getKafkaValueBufferPoolSize() {
+        return Integer.parseInt(properties.getProperty("kafka.valueBufferPoolSize", "10000"));
+    }
+
+    public String getKafkaSendMode() {
+        return properties.getProperty("kafka.sendMode", "sync").trim();
+    }
+
+    public int getKafkaMaxInFlightRecords() {
+        return Integer.parseInt(properties.getProperty("kafka.maxInFlightRecords", "10000"));
+    }
+
+    public long getKafkaBatchAckTimeoutMs() {
+        return Long.parseLong(properties.getProperty("kafka.batchAckTimeoutMs", "120000"));
+    }
+
+    public boolean isKafkaSpillEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("kafka.spill.enabled", "false").trim());
+    }
+
+    public String getKafkaSpillDirectory() {
+        return properties.getProperty("kafka.spill.directory", "spill").trim();
+    }
+
+    public int getKafkaSpillSegmentBytes() {
+        return Integer.parseInt(properties.getProperty("kafka.spill.segmentBytes", "67108864"));
+    }
+
+    public long getKafkaSpillMaxBytes() {
+        return Long.parseLong(properties.getProperty("kafka.spill.maxBytes", "10737418240"));
+    }
+
+    public long getKafkaSpillSyncIntervalMs() {
+        return Long.parseLong(properties.getProperty("kafka.spill.syncIntervalMs", "100"));
+    }
+
+    public long getKafkaSpillWaitMs() {
+        return Long.parseLong(properties.getProperty("kafka.spill.waitMs", "1000"));
+    }
+
+    public String getSinkType() {
+        return properties.getProperty("sink.type", "kafka").trim();
+    }
+
+    public String getFileDirectory() {
+        return properties.getProperty("file.directory", "export").trim();
+    }
+
+    public String getFileFormat() {
+        return properties.getProperty("file.format", "ndjson").trim();
+    }
+
+    public String getFileCompression() {
+        return properties.getProperty("file.compression", "gzip").trim();
+    }
+
+    public long getFileRollBytes() {
+        return Long.parseLong(properties.getProperty("file.rollBytes", "134217728"));
+    }
+
+    public long getFileSyncIntervalMs() {
+        return Long.parseLong(properties.getProperty("file.syncIntervalMs", "1000"));
+    }
+
+    public int getFileBlockRecords() {
+        return Integer.parseInt(properties.getProperty("file.blockRecords", "10000"));
+    }
+
+    public boolean isPipelineEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("pipeline.enabled", "false").trim());
+    }
+
+    public int getPipelineReaderThreads() {
+        return Integer.parseInt(properties.getProperty("pipeline.readerThreads",
+                String.valueOf(getCassandraScanParallelism())));
+    }
+
+    public int getPipelineSerializerThreads() {
+        return Integer.parseInt(properties.getProperty("pipeline.serializerThreads", "4"));
+    }
+
+    public int getPipelineSenderThreads() {
+        return Integer.parseInt(properties.getProperty("pipeline.senderThreads", "2"));
+    }
+
+    public int getPipelineRowQueueCapacity() {
+        return Integer.parseInt(properties.getProperty("pipeline.rowQueueCapacity", "8"));
+    }
+
+    public int getPipelineSendQueueCapacity() {
+        return Integer.parseInt(properties.getProperty("pipeline.sendQueueCapacity", "8"));
+    }
+
+    public int getPipelineMaxPendingBatches() {
+        return Integer.parseInt(properties.getProperty("pipeline.maxPendingBatches", "16"));
+    }
+
+    public int getPipelineMaxBufferedRows() {
+        return Integer.parseInt(properties.getProperty("pipeline.maxBufferedRows", "0"));
+    }
+
     public int getErrorMaxRetries() {
         return Integer.parseInt(properties.getProperty("error.maxRetries", "5"));
     }
@@ -118,4 +382,20 @@ public class AppConfig {
     public int getErrorRetryBackoffMs() {
         return Integer.parseInt(properties.getProperty("error.retryBackoffMs", "1000"));
     }
-} 
\ No newline at end of file
+
+    public boolean isMetricsEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("metrics.enabled", "false").trim());
+    }
+
+    public String getMetricsBindAddress() {
+        return properties.getProperty("metrics.bindAddress", "127.0.0.1").trim();
+    }
+
+    public int getMetricsPort() {
+        return Integer.parseInt(properties.getProperty("metrics.port", "9404"));
+    }
+
+    public boolean isMetricsJmxEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("metrics.jmx.enabled", "false").trim());
+    }
+}
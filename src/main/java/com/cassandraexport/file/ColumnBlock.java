@@ -0,0 +1,144 @@
+package com.cassandraexport.file;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects JSON records column by column, in the manner of a Parquet row group, and writes them as
+ * one line {@code {"rows":n,"columns":{"name":[values...],...}}}. The values of a column sit next to
+ * each other, which compresses considerably better than the same rows one after the other. A column
+ * a record does not have gets {@code null} for it.
+ *
+ * <p>Records are only tokenized to find where each top-level value starts and ends, the value bytes
+ * are copied into their column as the codec wrote them, without building a tree per record.
+ */
+final class ColumnBlock {
+    private static final JsonFactory factory = new JsonFactory();
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    // Fields of the record being added, with the start and end offset of each value
+    private final List<String> names = new ArrayList<>();
+    private int[] offsets = new int[64];
+    private int rows;
+
+    /**
+     * The comma separated values of one column.
+     */
+    private static final class Column {
+        private final byte[] quotedName;
+        private final ByteArrayOutputStream values = new ByteArrayOutputStream();
+        private int count;
+
+        private Column(String name) {
+            this.quotedName = JsonStringEncoder.getInstance().quoteAsUTF8(name);
+        }
+
+        private void add(byte[] source, int offset, int length) {
+            if (count++ > 0) {
+                values.write(',');
+            }
+            values.write(source, offset, length);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is not a JSON object
+     */
+    void add(byte[] value) {
+        names.clear();
+        try (JsonParser parser = factory.createParser(value)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Columnar files need JSON object records");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                int start = (int) parser.currentTokenLocation().getByteOffset();
+                parser.skipChildren();
+                parser.finishToken();
+                int end = (int) parser.currentLocation().getByteOffset();
+                if (offsets.length < names.size() * 2 + 2) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                offsets[names.size() * 2] = start;
+                offsets[names.size() * 2 + 1] = end;
+                names.add(name);
+            }
+            if (token != JsonToken.END_OBJECT) {
+                throw new IllegalArgumentException("Record is not valid JSON: unexpected end of the object");
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Record is not valid JSON: " + e.getMessage(), e);
+        }
+
+        // Only a complete record is added, so the columns stay aligned
+        for (int i = 0; i < names.size(); i++) {
+            Column column = columns.get(names.get(i));
+            if (column == null) {
+                column = new Column(names.get(i));
+                for (int row = 0; row < rows; row++) {
+                    column.add(NULL, 0, NULL.length);
+                }
+                columns.put(names.get(i), column);
+            } else if (column.count > rows) {
+                // A repeated field keeps its first value
+                continue;
+            }
+            column.add(value, offsets[i * 2], offsets[i * 2 + 1] - offsets[i * 2]);
+        }
+        rows++;
+        for (Column column : columns.values()) {
+            if (column.count < rows) {
+                column.add(NULL, 0, NULL.length);
+            }
+        }
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the block as a line of JSON, including the line break
+     */
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        line.write(("{\"rows\":" + rows + ",\"columns\":{").getBytes(StandardCharsets.US_ASCII));
+        boolean first = true;
+        for (Column column : columns.values()) {
+            if (!first) {
+                line.write(',');
+            }
+            first = false;
+            line.write('"');
+            line.write(column.quotedName);
+            line.write('"');
+            line.write(':');
+            line.write('[');
+            column.values.writeTo(line);
+            line.write(']');
+        }
+        line.write('}');
+        line.write('}');
+        line.write('\n');
+        return line.toByteArray();
+    }
+
+    void clear() {
+        columns.clear();
+        rows = 0;
+    }
+}
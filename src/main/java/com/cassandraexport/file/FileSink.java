@@ -0,0 +1,327 @@
+package com.cassandraexport.file;
+
+import com.cassandraexport.cassandra.TokenRange;
+import com.cassandraexport.codec.ByteArrayPool;
+import com.cassandraexport.codec.RowCodec;
+import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.kafka.BatchAcknowledgement;
+import com.cassandraexport.metrics.ExportMetrics;
+import com.cassandraexport.spi.RecordSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link RecordSink} writing records to files in {@code file.directory} instead of Kafka, one file
+ * at a time per token range of {@code cassandra.tokenRangeSplits}, so parallel range scans write
+ * separate files. Records go to {@code range-<index>_<start>_<end>-<sequence>} files by the token of their
+ * partition key, which needs {@code kafka.keyColumns=partition} or {@code primary}, or to {@code all-<sequence>}
+ * for records without a token, either as NDJSON, one JSON value per line, or as columnar blocks of
+ * {@code file.blockRecords} records (see {@link ColumnBlock}), optionally gzip compressed.
+ *
+ * <p>Every {@code file.syncIntervalMs} the files are synced and the records written since the last
+ * sync are acknowledged, so a checkpointed batch is always on disk. A file is renamed to its final
+ * name once it reaches {@code file.rollBytes}, when its range has had no records for a while, and when
+ * the sink is closed. Files a crashed run left unfinished are cut back to their last sync and given
+ * their final name when the next run starts; the records after its checkpoint are written again.
+ */
+public class FileSink implements RecordSink {
+    private static final Logger logger = LoggerFactory.getLogger(FileSink.class);
+    private static final byte[] NEWLINE = {'\n'};
+    // Syncs without records after which the scan of a range is taken to have moved on
+    private static final int IDLE_SYNCS = 10;
+    private static final Pattern FILE_NAME = Pattern.compile("(.+)-(\\d+)\\.(?:ndjson|columnar\\.ndjson)(?:\\.gz)?");
+
+    private final AppConfig config;
+    private final Path directory;
+    private final boolean columnar;
+    private final boolean gzip;
+    private final String suffix;
+    private final long rollBytes;
+    private final int blockRecords;
+    private final List<TokenRange> ranges;
+    private final Map<Integer, RangeFiles> files = new ConcurrentHashMap<>();
+    private final Map<String, Integer> nextSequences = new HashMap<>();
+    private final ScheduledExecutorService syncScheduler;
+    private final ByteArrayPool valueBufferPool;
+    private volatile boolean failed;
+
+    public FileSink(AppConfig config) {
+        this.config = config;
+        this.directory = Paths.get(config.getFileDirectory());
+        String format = config.getFileFormat();
+        if (!"ndjson".equalsIgnoreCase(format) && !"columnar".equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("Unsupported file.format: " + format);
+        }
+        String compression = config.getFileCompression();
+        if (!"gzip".equalsIgnoreCase(compression) && !"none".equalsIgnoreCase(compression)) {
+            throw new IllegalArgumentException("Unsupported file.compression: " + compression);
+        }
+        if (!"json".equalsIgnoreCase(config.getKafkaValueFormat())) {
+            throw new IllegalArgumentException("The file sink writes JSON records, set kafka.valueFormat=json");
+        }
+        String keyColumns = config.getKafkaKeyColumns();
+        if (!"partition".equalsIgnoreCase(keyColumns) && !"primary".equalsIgnoreCase(keyColumns)) {
+            // Records keyed by id carry no token, every scan would write to the same file
+            throw new IllegalArgumentException(
+                    "The file sink places records by their partition token, set kafka.keyColumns=partition or primary");
+        }
+        this.columnar = "columnar".equalsIgnoreCase(format);
+        this.gzip = "gzip".equalsIgnoreCase(compression);
+        this.suffix = (columnar ? ".columnar.ndjson" : ".ndjson") + (gzip ? ".gz" : "");
+        this.rollBytes = config.getFileRollBytes();
+        this.blockRecords = Math.max(1, config.getFileBlockRecords());
+        this.ranges = TokenRange.splitRing(config.getCassandraTokenRangeSplits());
+        this.valueBufferPool = config.isKafkaReuseValueBuffers()
+                ? new ByteArrayPool(config.getKafkaValueBufferPoolSize()) : null;
+        if (valueBufferPool != null) {
+            ExportMetrics.get().trackValuePool(valueBufferPool);
+        }
+
+        try {
+            Files.createDirectories(directory);
+            recoverFiles();
+        } catch (IOException e) {
+            logger.error("Failed to prepare export directory {}: {}", directory, e.getMessage(), e);
+            throw new RuntimeException("Failed to prepare export directory " + directory, e);
+        }
+
+        this.syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-sink-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long syncIntervalMs = Math.max(1, config.getFileSyncIntervalMs());
+        syncScheduler.scheduleWithFixedDelay(this::flush, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Writing {} files to {}", suffix, directory.toAbsolutePath());
+    }
+
+    /**
+     * Finishes the files a previous run left unfinished and continues the numbering after the
+     * highest file of each range.
+     */
+    private void recoverFiles() throws IOException {
+        try (DirectoryStream<Path> unfinished = Files.newDirectoryStream(directory, "*" + OutputFile.IN_PROGRESS_SUFFIX)) {
+            for (Path file : unfinished) {
+                Path recovered = OutputFile.recover(file, file.getFileName().toString().endsWith(".gz" + OutputFile.IN_PROGRESS_SUFFIX));
+                logger.info("Finished {} left by the previous run", recovered == null ? file.getFileName() : recovered.getFileName());
+            }
+        }
+        try (DirectoryStream<Path> existing = Files.newDirectoryStream(directory)) {
+            for (Path file : existing) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    nextSequences.merge(matcher.group(1), Integer.parseInt(matcher.group(2)) + 1, Math::max);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the record and syncs its file right away rather than waiting for the next scheduled sync,
+     * which would hold up every record of {@code kafka.sendMode=sync} for {@code file.syncIntervalMs}.
+     * Each record then gets its own sync, and its own block in columnar files; the async send mode and
+     * the pipeline sync many records at once.
+     */
+    @Override
+    public boolean sendEncoded(byte[] key, long token, byte[] value) throws InterruptedException {
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(1);
+        RangeFiles rangeFiles = append(token, value, acknowledgement);
+        if (rangeFiles != null) {
+            rangeFiles.sync(false);
+        }
+        if (!acknowledgement.await(config.getKafkaBatchAckTimeoutMs(), TimeUnit.MILLISECONDS)) {
+            logger.error("Timed out waiting for the record to be synced to disk");
+            return false;
+        }
+        return acknowledgement.isDelivered();
+    }
+
+    /**
+     * Writes the record to the file of its token range. It is acknowledged by the next sync.
+     */
+    @Override
+    public void sendEncodedAsync(byte[] key, long token, byte[] value, BatchAcknowledgement acknowledgement) {
+        append(token, value, acknowledgement);
+    }
+
+    /**
+     * @return the files the record was appended to, or {@code null} if the sink has failed
+     */
+    private RangeFiles append(long token, byte[] value, BatchAcknowledgement acknowledgement) {
+        if (failed) {
+            acknowledgement.recordFailure();
+            return null;
+        }
+        RangeFiles rangeFiles = files.computeIfAbsent(rangeIndex(token), RangeFiles::new);
+        rangeFiles.append(value, acknowledgement);
+        if (valueBufferPool != null) {
+            valueBufferPool.release(value);
+        }
+        return rangeFiles;
+    }
+
+    /**
+     * @return the index of the token range holding {@code token}, or -1 for records without a token
+     */
+    int rangeIndex(long token) {
+        if (token == RowCodec.NO_TOKEN) {
+            return -1;
+        }
+        int low = 0;
+        int high = ranges.size() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ranges.get(middle).getEnd() < token) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Syncs every file and acknowledges the records written since the last sync.
+     */
+    @Override
+    public void flush() {
+        for (RangeFiles rangeFiles : files.values()) {
+            rangeFiles.sync(false);
+        }
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return !failed;
+    }
+
+    /**
+     * Values are written before {@link #sendEncodedAsync} returns, so they can always be reused.
+     */
+    @Override
+    public ByteArrayPool getValueBufferPool() {
+        return valueBufferPool;
+    }
+
+    @Override
+    public void close() {
+        syncScheduler.shutdown();
+        try {
+            syncScheduler.awaitTermination(config.getFileSyncIntervalMs() + 10000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (RangeFiles rangeFiles : files.values()) {
+            rangeFiles.sync(true);
+        }
+        logger.info("File sink closed");
+    }
+
+    private synchronized int nextSequence(String baseName) {
+        int sequence = nextSequences.getOrDefault(baseName, 0);
+        nextSequences.put(baseName, sequence + 1);
+        return sequence;
+    }
+
+    private void fail(String message, Exception e) {
+        logger.error("{}: {}", message, e.getMessage(), e);
+        failed = true;
+    }
+
+    /**
+     * The files of one token range, written one after the other.
+     */
+    private final class RangeFiles {
+        private final String baseName;
+        private final List<BatchAcknowledgement> unsynced = new ArrayList<>();
+        private final ColumnBlock block = columnar ? new ColumnBlock() : null;
+        private OutputFile current;
+        private int idleSyncs;
+
+        private RangeFiles(int rangeIndex) {
+            if (rangeIndex < 0) {
+                this.baseName = "all";
+            } else {
+                TokenRange range = ranges.get(rangeIndex);
+                this.baseName = String.format("range-%05d_%d_%d", range.getIndex(), range.getStart(), range.getEnd());
+            }
+        }
+
+        synchronized void append(byte[] value, BatchAcknowledgement acknowledgement) {
+            try {
+                if (current == null) {
+                    current = new OutputFile(directory.resolve(
+                            String.format("%s-%06d%s", baseName, nextSequence(baseName), suffix)), gzip);
+                }
+                if (block == null) {
+                    current.write(value);
+                    current.write(NEWLINE);
+                } else {
+                    block.add(value);
+                    if (block.getRows() >= blockRecords) {
+                        current.write(block.encode());
+                        block.clear();
+                    }
+                }
+                unsynced.add(acknowledgement);
+            } catch (IllegalArgumentException e) {
+                logger.error("Record could not be written: {}", e.getMessage());
+                acknowledgement.recordFailure();
+            } catch (IOException e) {
+                fail("Failed to write to " + baseName, e);
+                acknowledgement.recordFailure();
+            }
+        }
+
+        /**
+         * @param finish whether to give the file its final name whatever its size
+         */
+        synchronized void sync(boolean finish) {
+            if (current == null) {
+                return;
+            }
+            idleSyncs = unsynced.isEmpty() ? idleSyncs + 1 : 0;
+            boolean synced = false;
+            try {
+                if (block != null && block.getRows() > 0) {
+                    current.write(block.encode());
+                    block.clear();
+                }
+                if (finish || current.size() >= rollBytes || idleSyncs >= IDLE_SYNCS) {
+                    current.finish();
+                    current = null;
+                    idleSyncs = 0;
+                } else if (!unsynced.isEmpty()) {
+                    current.sync();
+                }
+                synced = true;
+            } catch (IOException e) {
+                fail("Failed to sync " + baseName, e);
+            }
+            for (BatchAcknowledgement acknowledgement : unsynced) {
+                if (synced) {
+                    acknowledgement.recordSuccess();
+                } else {
+                    acknowledgement.recordFailure();
+                }
+            }
+            unsynced.clear();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.cassandraexport.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An export file being written. Content goes through a direct buffer straight into a
+ * {@link FileChannel}, and is only durable once {@link #sync()} has forced it to disk. The file is
+ * written under an {@code .inprogress} name and renamed to its final name by {@link #finish()}.
+ *
+ * <p>Compressed files are gzip streams of one member per sync. Concatenated members are a valid
+ * gzip file, so a file whose writer crashed is recovered by {@link #recover(Path, boolean)} up to its
+ * last complete member, i.e. up to its last sync.
+ */
+final class OutputFile {
+    private static final Logger logger = LoggerFactory.getLogger(OutputFile.class);
+    static final String IN_PROGRESS_SUFFIX = ".inprogress";
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final int GZIP_HEADER_BYTES = 10;
+    private static final int GZIP_TRAILER_BYTES = 8;
+    // Deflate, no flags, no modification time, unknown operating system
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final Path inProgress;
+    private final Path target;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] deflated;
+    private boolean memberOpen;
+    private long size;
+
+    /**
+     * @param target the final name of the file, it is written as {@code target.inprogress} until finished
+     */
+    OutputFile(Path target, boolean gzip) throws IOException {
+        this.target = target;
+        this.inProgress = target.resolveSibling(target.getFileName() + IN_PROGRESS_SUFFIX);
+        this.channel = FileChannel.open(inProgress, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.deflater = gzip ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+        this.deflated = gzip ? new byte[64 * 1024] : null;
+    }
+
+    void write(byte[] data) throws IOException {
+        write(data, 0, data.length);
+    }
+
+    void write(byte[] data, int offset, int length) throws IOException {
+        if (deflater == null) {
+            put(data, offset, length);
+            return;
+        }
+        if (!memberOpen) {
+            put(GZIP_HEADER, 0, GZIP_HEADER_BYTES);
+            deflater.reset();
+            crc.reset();
+            memberOpen = true;
+        }
+        crc.update(data, offset, length);
+        deflater.setInput(data, offset, length);
+        while (!deflater.needsInput()) {
+            put(deflated, 0, deflater.deflate(deflated));
+        }
+    }
+
+    /**
+     * Writes everything so far to disk. For gzip files this ends the current member.
+     */
+    void sync() throws IOException {
+        if (memberOpen) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                put(deflated, 0, deflater.deflate(deflated));
+            }
+            byte[] trailer = new byte[GZIP_TRAILER_BYTES];
+            putIntLittleEndian(trailer, 0, (int) crc.getValue());
+            putIntLittleEndian(trailer, 4, deflater.getTotalIn());
+            put(trailer, 0, GZIP_TRAILER_BYTES);
+            memberOpen = false;
+        }
+        drain();
+        channel.force(false);
+    }
+
+    /**
+     * @return the bytes written so far, compressed
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Syncs the file and gives it its final name.
+     */
+    void finish() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        move(inProgress, target);
+    }
+
+    private void put(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(data, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+            size += chunk;
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void putIntLittleEndian(byte[] bytes, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    /**
+     * Finishes a file its writer left behind: cuts off what was written after the last sync, which
+     * may be incomplete, and renames it to its final name. A file without a complete sync is deleted.
+     *
+     * @return the final file, or {@code null} if nothing was left to keep
+     */
+    static Path recover(Path inProgress, boolean gzip) throws IOException {
+        String name = inProgress.getFileName().toString();
+        Path target = inProgress.resolveSibling(name.substring(0, name.length() - IN_PROGRESS_SUFFIX.length()));
+        long valid;
+        try (FileChannel channel = FileChannel.open(inProgress, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            valid = gzip ? completeMembers(content) : completeLines(content);
+            if (valid < channel.size()) {
+                logger.warn("Cutting {} bytes written after the last sync off {}", channel.size() - valid, name);
+                channel.truncate(valid);
+                channel.force(false);
+            }
+        }
+        if (valid == 0) {
+            Files.delete(inProgress);
+            return null;
+        }
+        move(inProgress, target);
+        return target;
+    }
+
+    private static long completeLines(ByteBuffer content) {
+        for (int i = content.limit() - 1; i >= 0; i--) {
+            if (content.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static long completeMembers(ByteBuffer content) {
+        content.order(ByteOrder.LITTLE_ENDIAN);
+        int valid = 0;
+        byte[] input = new byte[64 * 1024];
+        byte[] output = new byte[64 * 1024];
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        try {
+            while (content.limit() - valid >= GZIP_HEADER_BYTES + GZIP_TRAILER_BYTES) {
+                for (int i = 0; i < GZIP_HEADER_BYTES; i++) {
+                    if (content.get(valid + i) != GZIP_HEADER[i]) {
+                        return valid;
+                    }
+                }
+                inflater.reset();
+                crc.reset();
+                ByteBuffer member = content.duplicate();
+                member.position(valid + GZIP_HEADER_BYTES);
+                while (!inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        if (!member.hasRemaining()) {
+                            return valid;
+                        }
+                        int chunk = Math.min(input.length, member.remaining());
+                        member.get(input, 0, chunk);
+                        inflater.setInput(input, 0, chunk);
+                    }
+                    int inflated = inflater.inflate(output);
+                    crc.update(output, 0, inflated);
+                }
+                long end = valid + GZIP_HEADER_BYTES + inflater.getBytesRead() + GZIP_TRAILER_BYTES;
+                if (end > content.limit() || content.getInt((int) end - GZIP_TRAILER_BYTES) != (int) crc.getValue()) {
+                    return valid;
+                }
+                valid = (int) end;
+            }
+            return valid;
+        } catch (DataFormatException e) {
+            return valid;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        }
+    }
+}
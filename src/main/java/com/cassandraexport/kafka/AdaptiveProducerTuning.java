@@ -0,0 +1,75 @@
+package com.cassandraexport.kafka;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks {@code linger.ms} and {@code batch.size} from the value sizes and the send rate observed
+ * over the first records of an export. The batch is sized to what a partition receives within the
+ * maximum linger time, and the linger time to how long it takes to fill that batch, so fast exports
+ * send large, full batches while slow ones are not held back longer than the maximum.
+ */
+class AdaptiveProducerTuning {
+    static final int MIN_BATCH_SIZE = 16384;
+    static final int MAX_BATCH_SIZE = 1048576;
+
+    private final long sampleRecords;
+    private final int maxLingerMs;
+    private final AtomicLong records = new AtomicLong(0);
+    private final AtomicLong bytes = new AtomicLong(0);
+    private final AtomicBoolean sampled = new AtomicBoolean(false);
+    private volatile long startNanos;
+
+    AdaptiveProducerTuning(long sampleRecords, int maxLingerMs) {
+        this.sampleRecords = sampleRecords;
+        this.maxLingerMs = maxLingerMs;
+    }
+
+    /**
+     * Adds a sent value to the sample.
+     *
+     * @return {@code true} exactly once, for the record that completes the sample
+     */
+    boolean record(int valueSize) {
+        if (sampled.get()) {
+            return false;
+        }
+        long count = records.incrementAndGet();
+        bytes.addAndGet(valueSize);
+        if (count == 1) {
+            startNanos = System.nanoTime();
+        }
+        return count >= sampleRecords && sampled.compareAndSet(false, true);
+    }
+
+    /**
+     * @return the producer settings for the sampled traffic spread over {@code partitions}
+     */
+    Properties settings(int partitions) {
+        long count = records.get();
+        double elapsedSeconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+        return settings((double) bytes.get() / count, count / elapsedSeconds, partitions);
+    }
+
+    Properties settings(double averageValueSize, double recordsPerSecond, int partitions) {
+        double bytesPerPartitionPerMs = averageValueSize * recordsPerSecond / Math.max(partitions, 1) / 1000;
+
+        long batchSize = (long) Math.ceil(bytesPerPartitionPerMs * maxLingerMs);
+        // A batch should always have room for a few records
+        batchSize = Math.max(batchSize, (long) Math.ceil(averageValueSize * 4));
+        batchSize = Math.min(Math.max(batchSize, MIN_BATCH_SIZE), MAX_BATCH_SIZE);
+
+        long lingerMs = maxLingerMs;
+        if (bytesPerPartitionPerMs > 0) {
+            lingerMs = Math.min((long) Math.ceil(batchSize / bytesPerPartitionPerMs), maxLingerMs);
+        }
+
+        Properties settings = new Properties();
+        settings.put(ProducerConfig.BATCH_SIZE_CONFIG, String.valueOf(batchSize));
+        settings.put(ProducerConfig.LINGER_MS_CONFIG, String.valueOf(lingerMs));
+        return settings;
+    }
+}
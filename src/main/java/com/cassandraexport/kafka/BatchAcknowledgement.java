@@ -0,0 +1,64 @@
+package com.cassandraexport.kafka;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the send callbacks of one exporter batch, so the batch can be judged
+ * once every record in it has been acknowledged or has failed. A batch only counts
+ * as exported if every one of its records was delivered.
+ */
+public class BatchAcknowledgement {
+    private final int expected;
+    private final CountDownLatch pending;
+    private final AtomicInteger succeeded = new AtomicInteger(0);
+    private final AtomicInteger failed = new AtomicInteger(0);
+
+    public BatchAcknowledgement(int expected) {
+        this.expected = expected;
+        this.pending = new CountDownLatch(expected);
+    }
+
+    public void recordSuccess() {
+        succeeded.incrementAndGet();
+        pending.countDown();
+    }
+
+    public void recordFailure() {
+        failed.incrementAndGet();
+        pending.countDown();
+    }
+
+    /**
+     * Waits until every record of the batch has completed.
+     *
+     * @return {@code false} if the timeout elapsed before all callbacks completed
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return pending.await(timeout, unit);
+    }
+
+    /**
+     * @return {@code true} if every record of the batch was delivered, none failed or is still pending
+     */
+    public boolean isDelivered() {
+        return succeeded.get() == expected;
+    }
+
+    public int getExpected() {
+        return expected;
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getPending() {
+        return (int) pending.getCount();
+    }
+}
@@ -1,32 +1,68 @@
 package com.cassandraexport.kafka;
 
+import com.cassandraexport.codec.ByteArrayPool;
+import com.cassandraexport.codec.RowCodec;
 import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.metrics.ExportMetrics;
+import com.cassandraexport.spi.RecordSink;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.KafkaException;
-import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.errors.RetriableException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
-public class KafkaProducer implements AutoCloseable {
+/**
+ * The default {@link RecordSink}, sending records to the configured Kafka topic.
+ */
+public class KafkaProducer implements RecordSink {
     private static final Logger logger = LoggerFactory.getLogger(KafkaProducer.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long SPILL_POLL_MS = 100;
     private final AppConfig config;
-    private Producer<String, String> producer;
-    private final AtomicInteger retryCounter = new AtomicInteger(0);
+    private Producer<byte[], byte[]> producer;
     private final int maxRetries;
     private final long retryBackoffMs;
+    private final Semaphore inFlightPermits;
+    private final long spillWaitMs;
+    private final ByteArrayPool valueBufferPool;
+    private final AdaptiveProducerTuning tuning;
+    // Sends share the producer, adaptive tuning replaces it exclusively
+    private final ReadWriteLock producerLock = new ReentrantReadWriteLock();
+    private final ExportMetrics metrics = ExportMetrics.get();
+    private final boolean tokenPartitioning;
+    private final ScheduledExecutorService retryScheduler;
+    // Records waiting on the retry scheduler for their next attempt
+    private final Set<PendingSend> resends = ConcurrentHashMap.newKeySet();
+    private volatile int partitionCount;
+    private volatile SpillBuffer spill;
+    private volatile boolean closing;
+    private volatile boolean spillFailed;
+    // A record used up its attempts on retriable errors, cleared by the next delivered record
+    private volatile boolean retriesExhausted;
+    private Thread spillDrainer;
     
     // Existing default constructor - now delegates to the new one
     public KafkaProducer() {
@@ -38,126 +74,604 @@ public class KafkaProducer implements AutoCloseable {
         this.config = config;
         this.maxRetries = config.getErrorMaxRetries();
         this.retryBackoffMs = config.getErrorRetryBackoffMs();
+        this.inFlightPermits = new Semaphore(config.getKafkaMaxInFlightRecords());
+        this.spillWaitMs = config.getKafkaSpillWaitMs();
+        this.valueBufferPool = createValueBufferPool(config);
+        this.tuning = config.isKafkaAdaptiveTuning()
+                ? new AdaptiveProducerTuning(config.getKafkaAdaptiveSampleRecords(), config.getKafkaAdaptiveMaxLingerMs())
+                : null;
+        this.tokenPartitioning = isTokenPartitioner(config);
+        this.retryScheduler = createRetryScheduler();
+        ExportMetrics.get().trackProducer(this::getInFlightRecords, this::getFailedAttempts);
         initializeProducer();
     }
     
+    /**
+     * Sends through the given producer, e.g. a {@code MockProducer} in benchmarks.
+     */
+    public KafkaProducer(AppConfig config, Producer<byte[], byte[]> producer) {
+        this(config, true);
+        this.producer = producer;
+    }
+    
     // Test-specific constructor that skips producer initialization
     KafkaProducer(AppConfig config, boolean skipInitialization) {
         this.config = config;
         this.maxRetries = config.getErrorMaxRetries();
         this.retryBackoffMs = config.getErrorRetryBackoffMs();
+        this.inFlightPermits = new Semaphore(config.getKafkaMaxInFlightRecords());
+        this.spillWaitMs = config.getKafkaSpillWaitMs();
+        this.valueBufferPool = createValueBufferPool(config);
+        this.tuning = config.isKafkaAdaptiveTuning()
+                ? new AdaptiveProducerTuning(config.getKafkaAdaptiveSampleRecords(), config.getKafkaAdaptiveMaxLingerMs())
+                : null;
+        this.tokenPartitioning = isTokenPartitioner(config);
+        this.retryScheduler = createRetryScheduler();
+        ExportMetrics.get().trackProducer(this::getInFlightRecords, this::getFailedAttempts);
         if (!skipInitialization) {
             initializeProducer();
         }
     }
     
+    private static boolean isTokenPartitioner(AppConfig config) {
+        String partitioner = config.getKafkaPartitioner();
+        if (!"token".equalsIgnoreCase(partitioner) && !"default".equalsIgnoreCase(partitioner)) {
+            throw new IllegalArgumentException("Unsupported kafka.partitioner: " + partitioner);
+        }
+        return "token".equalsIgnoreCase(partitioner);
+    }
+
+    private static ScheduledExecutorService createRetryScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-resend");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static ByteArrayPool createValueBufferPool(AppConfig config) {
+        if (!config.isKafkaReuseValueBuffers()) {
+            return null;
+        }
+        ByteArrayPool pool = new ByteArrayPool(config.getKafkaValueBufferPoolSize());
+        ExportMetrics.get().trackValuePool(pool);
+        return pool;
+    }
+    
     private void initializeProducer() {
         logger.info("Initializing Kafka producer to {}", config.getKafkaBootstrapServers());
+        producer = createProducer(producerProperties(new Properties()));
+    }
+
+    private Producer<byte[], byte[]> createProducer(Properties props) {
         try {
-            Properties props = new Properties();
-            props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getKafkaBootstrapServers());
-            props.put(ProducerConfig.CLIENT_ID_CONFIG, config.getKafkaClientId());
-            props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-            props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-            props.put(ProducerConfig.ACKS_CONFIG, config.getKafkaAcks());
-            props.put(ProducerConfig.RETRIES_CONFIG, config.getKafkaRetries());
-            props.put(ProducerConfig.BATCH_SIZE_CONFIG, config.getKafkaBatchSize());
-            props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, config.getKafkaBufferMemory());
-            
-            // Create the Kafka producer
-            producer = new org.apache.kafka.clients.producer.KafkaProducer<>(props);
-            logger.info("Kafka producer initialized successfully");
+            Producer<byte[], byte[]> created = new org.apache.kafka.clients.producer.KafkaProducer<>(props);
+            logger.info("Kafka producer initialized successfully (compression {}, linger {} ms, batch size {})",
+                    props.get(ProducerConfig.COMPRESSION_TYPE_CONFIG), props.get(ProducerConfig.LINGER_MS_CONFIG),
+                    props.get(ProducerConfig.BATCH_SIZE_CONFIG));
+            return created;
         } catch (KafkaException e) {
             logger.error("Failed to initialize Kafka producer: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to initialize Kafka producer", e);
         }
     }
 
+    /**
+     * Producer settings from the {@code kafka.*} options, then the {@code kafka.producer.*} passthrough
+     * properties and finally {@code overrides}, each replacing what came before.
+     */
+    Properties producerProperties(Properties overrides) {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getKafkaBootstrapServers());
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, config.getKafkaClientId());
+        props.put(ProducerConfig.ACKS_CONFIG, config.getKafkaAcks());
+        props.put(ProducerConfig.RETRIES_CONFIG, config.getKafkaRetries());
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, config.getKafkaBatchSize());
+        props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, config.getKafkaBufferMemory());
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, config.getKafkaCompressionType());
+        props.put(ProducerConfig.LINGER_MS_CONFIG, config.getKafkaLingerMs());
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, config.getKafkaMaxInFlightRequestsPerConnection());
+        // The producer rejects idempotence unless every replica acknowledges
+        String acks = config.getKafkaAcks();
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG,
+                config.isKafkaEnableIdempotence() && ("all".equals(acks) || "-1".equals(acks)));
+
+        props.putAll(config.getKafkaProducerProperties());
+        props.putAll(overrides);
+
+        // Keys and values are encoded by the exporter, so they go into the record batches as they are
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        return props;
+    }
+
+    /**
+     * Replaces the producer with one tuned for the sampled traffic. Records already handed to the
+     * old producer are delivered, and their callbacks run, before it is closed.
+     */
+    private void retune() {
+        try {
+            int partitions = producer.partitionsFor(config.getKafkaTopic()).size();
+            Properties settings = tuning.settings(partitions);
+            logger.info("Adaptive tuning over {} partitions: linger {} ms, batch size {}", partitions,
+                    settings.get(ProducerConfig.LINGER_MS_CONFIG), settings.get(ProducerConfig.BATCH_SIZE_CONFIG));
+
+            Producer<byte[], byte[]> tuned = createProducer(producerProperties(settings));
+            producerLock.writeLock().lock();
+            try {
+                Producer<byte[], byte[]> previous = producer;
+                producer = tuned;
+                previous.close();
+            } finally {
+                producerLock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            // Keep exporting with the configured settings
+            logger.error("Adaptive producer tuning failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void sampleValue(byte[] value) {
+        if (tuning != null && tuning.record(value.length)
+                && producer instanceof org.apache.kafka.clients.producer.KafkaProducer) {
+            retune();
+        }
+    }
+
+    /**
+     * Builds the record for a row. With {@code kafka.partitioner=token} the partition follows from the
+     * row's token, so contiguous token ranges of the ring land on the same partition; otherwise, and
+     * for records without a token, the producer's partitioner hashes the key.
+     */
+    ProducerRecord<byte[], byte[]> createRecord(byte[] key, long token, byte[] value) {
+        String topic = config.getKafkaTopic();
+        if (tokenPartitioning && token != RowCodec.NO_TOKEN) {
+            int partitions = getPartitionCount();
+            if (partitions > 0) {
+                return new ProducerRecord<>(topic, partitionForToken(token, partitions), key, value);
+            }
+        }
+        return new ProducerRecord<>(topic, key, value);
+    }
+
+    /**
+     * Maps the signed Murmur3 token range evenly onto {@code partitions}, preserving token order.
+     */
+    static int partitionForToken(long token, int partitions) {
+        long unsigned = token - Long.MIN_VALUE;
+        return (int) (((unsigned >>> 32) * partitions) >>> 32);
+    }
+
+    private int getPartitionCount() {
+        int partitions = partitionCount;
+        if (partitions == 0) {
+            producerLock.readLock().lock();
+            try {
+                partitions = producer.partitionsFor(config.getKafkaTopic()).size();
+            } catch (KafkaException e) {
+                logger.warn("Could not read the partitions of topic {}: {}", config.getKafkaTopic(), e.getMessage());
+                return 0;
+            } finally {
+                producerLock.readLock().unlock();
+            }
+            partitionCount = partitions;
+        }
+        return partitions;
+    }
+
+    private static byte[] keyBytes(String key) {
+        return key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+    }
+
     public boolean sendRecord(String key, Map<String, Object> record) throws InterruptedException {
+        byte[] recordJson;
         try {
-            String recordJson = objectMapper.writeValueAsString(record);
-            String topic = config.getKafkaTopic();
-            
-            ProducerRecord<String, String> producerRecord = 
-                    new ProducerRecord<>(topic, key, recordJson);
-            
-            // Send the record with retry logic
-            return sendWithRetry(producerRecord);
-            
+            recordJson = objectMapper.writeValueAsBytes(record);
         } catch (Exception e) {
             logger.error("Error serializing record to JSON: {}", e.getMessage(), e);
             return false;
         }
+        return sendEncoded(keyBytes(key), RowCodec.NO_TOKEN, recordJson);
     }
     
-    private boolean sendWithRetry(ProducerRecord<String, String> record) throws InterruptedException {
-        int attempts = 0;
-        boolean sent = false;
-        Exception lastException = null;
-        
-        while (!sent && attempts < maxRetries) {
+    /**
+     * Sends a value that has already been encoded, e.g. by a {@code RowCodec}, and waits until it is
+     * delivered or its resends are used up, see {@link #sendEncodedAsync(byte[], long, byte[], BatchAcknowledgement)}.
+     */
+    @Override
+    public boolean sendEncoded(byte[] key, long token, byte[] value) throws InterruptedException {
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(1);
+        sendEncodedAsync(key, token, value, acknowledgement);
+        if (!acknowledgement.await(config.getKafkaBatchAckTimeoutMs(), TimeUnit.MILLISECONDS)) {
+            logger.error("Timed out waiting for Kafka to acknowledge the record");
+            return false;
+        }
+        return acknowledgement.isDelivered();
+    }
+    
+    /**
+     * Sends a record without waiting for the broker. The outcome is reported to {@code acknowledgement}
+     * from the send callback. At most {@code kafka.maxInFlightRecords} records are unacknowledged at any
+     * time, this call blocks until a permit is free.
+     */
+    public void sendRecordAsync(String key, Map<String, Object> record, BatchAcknowledgement acknowledgement)
+            throws InterruptedException {
+        byte[] recordJson;
+        try {
+            recordJson = objectMapper.writeValueAsBytes(record);
+        } catch (Exception e) {
+            logger.error("Error serializing record to JSON: {}", e.getMessage(), e);
+            acknowledgement.recordFailure();
+            return;
+        }
+
+        sendEncodedAsync(keyBytes(key), RowCodec.NO_TOKEN, recordJson, acknowledgement);
+    }
+
+    /**
+     * String form of the record, kept for callers of the String based API.
+     */
+    public String serialize(Map<String, Object> record) throws JsonProcessingException {
+        return objectMapper.writeValueAsString(record);
+    }
+
+    /**
+     * Asynchronously sends a record that has already been serialized to a String, see
+     * {@link #sendRecordAsync(String, Map, BatchAcknowledgement)}. Kept for compatibility,
+     * {@link #sendEncodedAsync(byte[], long, byte[], BatchAcknowledgement)} avoids the extra copy.
+     */
+    public void sendSerializedAsync(String key, String value, BatchAcknowledgement acknowledgement)
+            throws InterruptedException {
+        sendEncodedAsync(keyBytes(key), RowCodec.NO_TOKEN, value.getBytes(StandardCharsets.UTF_8), acknowledgement);
+    }
+
+    /**
+     * Asynchronously sends a value that has already been encoded, see
+     * {@link #sendRecordAsync(String, Map, BatchAcknowledgement)}. A record the producer gives up on with
+     * a retriable error is sent again on its own after a jittered backoff, up to {@code error.maxRetries}
+     * attempts, while the other records go on, so it reaches its partition after records sent later,
+     * idempotence or not. With {@code kafka.reuseValueBuffers} the value goes back to
+     * {@link #getValueBufferPool()} once the record is delivered or has failed for good.
+     */
+    @Override
+    public void sendEncodedAsync(byte[] key, long token, byte[] value, BatchAcknowledgement acknowledgement)
+            throws InterruptedException {
+        if (!inFlightPermits.tryAcquire()) {
+            SpillBuffer spillBuffer = spill;
+            if (spillBuffer == null) {
+                inFlightPermits.acquire();
+            } else if (!inFlightPermits.tryAcquire(spillWaitMs, TimeUnit.MILLISECONDS)) {
+                // Kafka is behind, keep going and let the drainer send the record once it has caught up
+                if (spill(spillBuffer, key, token, value, acknowledgement)) {
+                    return;
+                }
+                inFlightPermits.acquire();
+            }
+        }
+        send(new PendingSend(createRecord(key, token, value), token, acknowledgement, true));
+        sampleValue(value);
+    }
+
+    /**
+     * A record on its way to Kafka. It holds an in-flight permit, and keeps its value out of the pool,
+     * until it has been delivered or has used up its attempts.
+     */
+    private static final class PendingSend {
+        private final ProducerRecord<byte[], byte[]> record;
+        private final long token;
+        private final BatchAcknowledgement acknowledgement;
+        private final boolean spillable;
+        // Read by the metrics while the record waits for a resend
+        private volatile int attempts;
+
+        private PendingSend(ProducerRecord<byte[], byte[]> record, long token, BatchAcknowledgement acknowledgement,
+                            boolean spillable) {
+            this.record = record;
+            this.token = token;
+            this.acknowledgement = acknowledgement;
+            this.spillable = spillable;
+        }
+    }
+
+    private void send(PendingSend pending) {
+        pending.attempts++;
+        long start = System.nanoTime();
+        producerLock.readLock().lock();
+        try {
+            producer.send(pending.record, (metadata, exception) -> {
+                if (exception == null) {
+                    retriesExhausted = false;
+                    metrics.recordSent(System.nanoTime() - start);
+                    complete(pending, true);
+                } else {
+                    resendOrFail(pending, exception);
+                }
+            });
+        } catch (KafkaException | IllegalStateException e) {
+            resendOrFail(pending, e);
+        } finally {
+            producerLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Schedules another attempt for a record whose send failed, or fails it. Attempts never run in the
+     * send callback, which runs on the producer's I/O thread.
+     */
+    private void resendOrFail(PendingSend pending, Exception exception) {
+        if (exception instanceof RetriableException && pending.attempts < maxRetries) {
+            long backoffMs = jitteredBackoff(retryBackoffMs, pending.attempts);
+            resends.add(pending);
             try {
-                Future<RecordMetadata> future = producer.send(record);
-                
-                // Wait for confirmation (with timeout)
-                RecordMetadata metadata = future.get(10, TimeUnit.SECONDS);
-                
-                logger.debug("Record sent to partition {} with offset {}", 
-                        metadata.partition(), metadata.offset());
-                
-                sent = true;
-                retryCounter.set(0); // Reset retry counter on success
-                
-            } catch (ExecutionException | TimeoutException e) {
-                attempts++;
-                lastException = e;
-                retryCounter.incrementAndGet();
-                
-                long waitTime = Math.min(retryBackoffMs * attempts, 10000); // Max 10 seconds
-                logger.warn("Failed to send record to Kafka (attempt {}/{}), retrying in {} ms: {}", 
-                        attempts, maxRetries, waitTime, e.getMessage());
-                
-                Thread.sleep(waitTime);
+                retryScheduler.schedule(() -> {
+                    // Unless close() has failed it in the meantime
+                    if (resends.remove(pending)) {
+                        send(pending);
+                    }
+                }, backoffMs, TimeUnit.MILLISECONDS);
+                logger.warn("Failed to send record to Kafka (attempt {}/{}), resending in {} ms: {}",
+                        pending.attempts, maxRetries, backoffMs, exception.getMessage());
+                return;
+            } catch (RejectedExecutionException e) {
+                // The producer is closing
+                resends.remove(pending);
+            }
+        }
+        SpillBuffer spillBuffer = spill;
+        if (exception instanceof RetriableException && pending.spillable && spillBuffer != null
+                && spill(spillBuffer, pending.record.key(), pending.token, pending.record.value(), pending.acknowledgement)) {
+            logger.warn("Failed to send record to Kafka after {} attempts, spilled it to disk: {}",
+                    pending.attempts, exception.getMessage());
+            inFlightPermits.release();
+            return;
+        }
+        if (exception instanceof RetriableException && pending.attempts >= maxRetries) {
+            retriesExhausted = true;
+        }
+        metrics.recordFailed();
+        logger.error("Failed to send record to Kafka after {} attempts: {}",
+                pending.attempts, exception.getMessage(), exception);
+        complete(pending, false);
+    }
+
+    private void complete(PendingSend pending, boolean delivered) {
+        inFlightPermits.release();
+        recycle(pending.record.value());
+        if (delivered) {
+            pending.acknowledgement.recordSuccess();
+        } else {
+            pending.acknowledgement.recordFailure();
+        }
+    }
+
+    /**
+     * Appends a record to the spill buffer, which acknowledges it once it is on disk.
+     *
+     * @return {@code false} if the spill buffer is full or failed, the record still has to be sent
+     */
+    private boolean spill(SpillBuffer spillBuffer, byte[] key, long token, byte[] value,
+                          BatchAcknowledgement acknowledgement) {
+        try {
+            if (!spillBuffer.append(key, token, value, acknowledgement)) {
+                return false;
+            }
+        } catch (IOException e) {
+            logger.error("Failed to spill record to disk: {}", e.getMessage(), e);
+            return false;
+        }
+        metrics.recordSpilled();
+        recycle(value);
+        return true;
+    }
+
+    /**
+     * Opens the spill buffer in {@code kafka.spill.directory} when {@code kafka.spill.enabled} is set,
+     * keeping the segments of {@code segments} for the drainer, and starts the drainer. Without this call
+     * records are never spilled.
+     */
+    @Override
+    public void resumeSpill(List<String> segments, Consumer<List<String>> segmentListener) {
+        if (!config.isKafkaSpillEnabled()) {
+            if (!segments.isEmpty()) {
+                throw new IllegalStateException("The checkpoint names " + segments.size()
+                        + " spill segments with records not yet sent to Kafka, set kafka.spill.enabled=true to send them");
             }
+            return;
         }
-        
-        if (!sent) {
-            logger.error("Failed to send record to Kafka after {} attempts: {}", 
-                    attempts, lastException.getMessage(), lastException);
+        String directory = config.getKafkaSpillDirectory();
+        try {
+            spill = new SpillBuffer(Paths.get(directory), config.getKafkaSpillSegmentBytes(),
+                    config.getKafkaSpillMaxBytes(), segments, segmentListener);
+        } catch (IOException e) {
+            logger.error("Failed to open spill directory {}: {}", directory, e.getMessage(), e);
+            throw new RuntimeException("Failed to open spill directory " + directory, e);
         }
-        
-        return sent;
+        metrics.trackSpill(spill::getSegmentCount);
+
+        long syncIntervalMs = Math.max(1, config.getKafkaSpillSyncIntervalMs());
+        SpillBuffer spillBuffer = spill;
+        retryScheduler.scheduleWithFixedDelay(spillBuffer::sync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        spillDrainer = new Thread(this::drainSpill, "kafka-spill-drain");
+        spillDrainer.setDaemon(true);
+        spillDrainer.start();
+    }
+
+    /**
+     * Sends the spilled segments to Kafka, oldest first. The segment records are being spilled to is
+     * only taken once Kafka has room for more records, or when the producer closes. Stops when a
+     * segment cannot be delivered, which leaves it to the next run.
+     */
+    private void drainSpill() {
+        try {
+            while (true) {
+                boolean closed = closing;
+                SpillBuffer.Segment segment = spill.nextSegment(closed || inFlightPermits.availablePermits() > 0,
+                        SPILL_POLL_MS);
+                if (segment == null) {
+                    if (closed) {
+                        return;
+                    }
+                } else if (!drainSegment(segment)) {
+                    // Without closing, only records Kafka rejected for good are left
+                    spillFailed = !closed;
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean drainSegment(SpillBuffer.Segment segment) throws InterruptedException {
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(segment.getRecords());
+        // Records that fail again go back to the spill buffer, except while closing
+        boolean spillable = !closing;
+        int[] read = {0};
+        try {
+            // Spilled values come back from the pool as well, the send callback returns them
+            spill.read(segment, getValueBufferPool(), (key, token, value) -> {
+                read[0]++;
+                inFlightPermits.acquire();
+                send(new PendingSend(createRecord(key, token, value), token, acknowledgement, spillable));
+            });
+        } catch (IOException e) {
+            logger.error("Failed to read spill segment {}: {}", segment.getName(), e.getMessage(), e);
+        }
+        for (int i = read[0]; i < segment.getRecords(); i++) {
+            acknowledgement.recordFailure();
+        }
+        acknowledgement.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        if (!acknowledgement.isDelivered()) {
+            logger.error("{} of {} records of spill segment {} not delivered, keeping it for the next run",
+                    acknowledgement.getFailed(), acknowledgement.getExpected(), segment.getName());
+            return false;
+        }
+        try {
+            spill.release(segment);
+        } catch (IOException e) {
+            logger.error("Failed to delete spill segment {}: {}", segment.getName(), e.getMessage(), e);
+            return false;
+        }
+        logger.info("Sent {} spilled records of segment {} to Kafka", segment.getRecords(), segment.getName());
+        return true;
+    }
+
+    /**
+     * The wait before attempt {@code attempts + 1}: the retry backoff times the attempts so far, at most
+     * 10 seconds, of which a random part of up to half is left out, so records that failed together are
+     * not all sent again at the same moment.
+     */
+    static long jitteredBackoff(long retryBackoffMs, int attempts) {
+        long backoffMs = Math.min(retryBackoffMs * attempts, 10000);
+        return backoffMs - ThreadLocalRandom.current().nextLong(backoffMs / 2 + 1);
     }
     
+    /**
+     * @return the pool encoded values should be taken from, or {@code null} if values are not reused
+     */
+    @Override
+    public ByteArrayPool getValueBufferPool() {
+        // Only the Kafka client copies the value into its record batch before send() returns,
+        // other producers such as MockProducer keep a reference to it
+        return producer instanceof org.apache.kafka.clients.producer.KafkaProducer ? valueBufferPool : null;
+    }
+    
+    private void recycle(byte[] value) {
+        ByteArrayPool pool = getValueBufferPool();
+        if (pool != null) {
+            pool.release(value);
+        }
+    }
+    
+    public int getInFlightRecords() {
+        return config.getKafkaMaxInFlightRecords() - inFlightPermits.availablePermits();
+    }
+    
+    @Override
     public void flush() {
-        if (producer != null) {
-            try {
+        producerLock.readLock().lock();
+        try {
+            if (producer != null) {
                 producer.flush();
                 logger.debug("Flushed Kafka producer");
-            } catch (KafkaException e) {
-                logger.error("Error flushing Kafka producer: {}", e.getMessage(), e);
             }
+        } catch (KafkaException e) {
+            logger.error("Error flushing Kafka producer: {}", e.getMessage(), e);
+        } finally {
+            producerLock.readLock().unlock();
         }
     }
     
+    /**
+     * @return the most failed attempts of a record waiting to be sent again
+     */
     public int getFailedAttempts() {
-        return retryCounter.get();
+        int attempts = 0;
+        for (PendingSend pending : resends) {
+            attempts = Math.max(attempts, pending.attempts);
+        }
+        return attempts;
     }
     
+    /**
+     * Unhealthy once a record has used up its {@code error.maxRetries} attempts on retriable errors,
+     * until another record is delivered; records failing for reasons of their own do not count. With a
+     * spill buffer the sink stays healthy through failed sends for as long as records fit on disk.
+     */
+    @Override
     public boolean isHealthy() {
-        return retryCounter.get() < maxRetries;
+        if (spillFailed) {
+            return false;
+        }
+        SpillBuffer spillBuffer = spill;
+        return !retriesExhausted || (spillBuffer != null && spillBuffer.hasCapacity());
     }
     
     @Override
     public void close() {
-        if (producer != null) {
+        closing = true;
+        if (spillDrainer != null) {
+            // Send what was spilled while the producer still takes records
             try {
+                spillDrainer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Records waiting for another attempt are failed, the producer delivers the ones it holds
+        retryScheduler.shutdownNow();
+        try {
+            // A resend already running still goes to the producer
+            retryScheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int abandoned = 0;
+        for (PendingSend pending : resends) {
+            if (resends.remove(pending)) {
+                metrics.recordFailed();
+                complete(pending, false);
+                abandoned++;
+            }
+        }
+        if (abandoned > 0) {
+            logger.error("Failed {} records still waiting to be sent to Kafka again", abandoned);
+        }
+        if (spill != null) {
+            spill.close();
+        }
+        producerLock.writeLock().lock();
+        try {
+            if (producer != null) {
                 producer.flush();
                 producer.close();
                 logger.info("Kafka producer closed");
-            } catch (KafkaException e) {
-                logger.error("Error closing Kafka producer: {}", e.getMessage(), e);
             }
+        } catch (KafkaException e) {
+            logger.error("Error closing Kafka producer: {}", e.getMessage(), e);
+        } finally {
+            producerLock.writeLock().unlock();
         }
     }
 } 
\ No newline at end of file
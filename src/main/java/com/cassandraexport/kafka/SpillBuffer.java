@@ -0,0 +1,394 @@
+package com.cassandraexport.kafka;
+
+import com.cassandraexport.codec.ByteArrayPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps encoded records on local disk while Kafka cannot take them, so the export goes on reading
+ * instead of waiting for the broker. Records are appended to memory-mapped segment files of a fixed
+ * size; a full segment is sealed and handed out, oldest first, to be sent to Kafka and deleted.
+ *
+ * <p>A record is only acknowledged once the segment holding it has been synced to disk, which
+ * happens every {@code syncIntervalMs} through {@link #sync()} and whenever a segment is sealed.
+ * Every change to the segment files is reported to a listener before a record goes into a new
+ * segment, so the checkpoint that commits a spilled record also names its segment.
+ *
+ * <p>Segment layout: records of {@code length, CRC32, key length (-1 for none), key, token,
+ * value length, value}, where the length and checksum cover the fields after them. A zero length,
+ * as in the unwritten rest of the file, ends the segment.
+ */
+class SpillBuffer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SpillBuffer.class);
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int DELETE_ATTEMPTS = 10;
+    private static final long DELETE_RETRY_MS = 100;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final Consumer<List<String>> segmentListener;
+
+    // Guarded by "this"
+    private final Deque<Segment> sealed = new ArrayDeque<>();
+    private final List<BatchAcknowledgement> unsynced = new ArrayList<>();
+    private Segment active;
+    private long nextSequence;
+    private long spilledRecords;
+    private boolean closed;
+
+    /**
+     * Opens the spill directory, keeping the segments the checkpoint still names and deleting any
+     * other: their records belong to batches that were never checkpointed and will be read again.
+     *
+     * @param retained        the segments named by the checkpoint, oldest first
+     * @param segmentListener receives the names of all segments, oldest first, whenever they change
+     */
+    SpillBuffer(Path directory, int segmentBytes, long maxBytes, List<String> retained,
+                Consumer<List<String>> segmentListener) throws IOException {
+        if (segmentBytes <= RECORD_HEADER_BYTES || maxBytes < segmentBytes) {
+            throw new IllegalArgumentException("Invalid spill sizes: segments of " + segmentBytes
+                    + " bytes, at most " + maxBytes + " bytes");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.segmentListener = segmentListener;
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                nextSequence = Math.max(nextSequence, sequenceOf(name) + 1);
+                if (!retained.contains(name)) {
+                    logger.info("Deleting spill segment {}, its records were not checkpointed", name);
+                    Files.delete(file);
+                }
+            }
+        }
+        for (String name : retained) {
+            Path file = directory.resolve(name);
+            if (Files.exists(file)) {
+                Segment segment = new Segment(name, file, Files.size(file));
+                segment.records = countRecords(file);
+                sealed.add(segment);
+            } else {
+                // Deleted after it was drained, before the checkpoint without it was written
+                logger.warn("Spill segment {} named by the checkpoint no longer exists", name);
+            }
+        }
+        if (!sealed.isEmpty()) {
+            logger.info("Resuming {} spill segments with records not yet sent to Kafka", sealed.size());
+        }
+        segmentListener.accept(segmentNames());
+    }
+
+    /**
+     * Appends a record. {@code acknowledgement} is told of its success once the record is on disk.
+     *
+     * @return {@code false} if the record does not fit into {@code maxBytes}, it was not spilled
+     */
+    synchronized boolean append(byte[] key, long token, byte[] value, BatchAcknowledgement acknowledgement)
+            throws IOException {
+        int length = 4 + (key == null ? 0 : key.length) + 8 + 4 + value.length;
+        if (closed || RECORD_HEADER_BYTES + length > segmentBytes) {
+            return false;
+        }
+        if (active != null && active.buffer.remaining() < RECORD_HEADER_BYTES + length) {
+            seal();
+        }
+        if (active == null) {
+            if (bytesOnDisk() + segmentBytes > maxBytes) {
+                return false;
+            }
+            createSegment();
+        }
+
+        MappedByteBuffer buffer = active.buffer;
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_BYTES);
+        if (key == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(key.length).put(key);
+        }
+        buffer.putLong(token).putInt(value.length).put(value);
+
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + RECORD_HEADER_BYTES).limit(start + RECORD_HEADER_BYTES + length);
+        crc.update(payload);
+        buffer.putInt(start, length).putInt(start + 4, (int) crc.getValue());
+
+        active.records++;
+        spilledRecords++;
+        unsynced.add(acknowledgement);
+        return true;
+    }
+
+    /**
+     * Writes the appended records to disk and acknowledges them.
+     */
+    synchronized void sync() {
+        if (unsynced.isEmpty()) {
+            return;
+        }
+        boolean synced = true;
+        try {
+            active.buffer.force();
+        } catch (RuntimeException e) {
+            logger.error("Failed to sync spill segment {}: {}", active.name, e.getMessage(), e);
+            synced = false;
+        }
+        for (BatchAcknowledgement acknowledgement : unsynced) {
+            if (synced) {
+                acknowledgement.recordSuccess();
+            } else {
+                acknowledgement.recordFailure();
+            }
+        }
+        unsynced.clear();
+    }
+
+    /**
+     * Waits up to {@code timeoutMs} for a sealed segment.
+     *
+     * @param sealActive whether to seal the segment records are appended to if no other is sealed
+     * @return the oldest sealed segment, or {@code null} if there is none
+     */
+    synchronized Segment nextSegment(boolean sealActive, long timeoutMs) throws InterruptedException {
+        if (sealed.isEmpty() && sealActive && active != null && active.records > 0) {
+            seal();
+        }
+        if (sealed.isEmpty() && timeoutMs > 0) {
+            wait(timeoutMs);
+        }
+        return sealed.peekFirst();
+    }
+
+    /**
+     * Reads the records of a sealed segment, in the order they were appended.
+     *
+     * @param valuePool where value arrays are taken from, or {@code null} to allocate them
+     */
+    void read(Segment segment, ByteArrayPool valuePool, RecordHandler handler) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (nextRecord(buffer, segment.file)) {
+                int keyLength = buffer.getInt();
+                byte[] key = null;
+                if (keyLength >= 0) {
+                    key = new byte[keyLength];
+                    buffer.get(key);
+                }
+                long token = buffer.getLong();
+                int valueLength = buffer.getInt();
+                byte[] value = valuePool == null ? new byte[valueLength] : valuePool.acquire(valueLength);
+                buffer.get(value);
+                handler.accept(key, token, value);
+            }
+        }
+    }
+
+    /**
+     * Deletes a segment whose records have all been delivered. A file that is still mapped cannot be
+     * deleted on Windows, and Java 8 has no way to unmap it, so the mapping is dropped and the delete
+     * retried until the garbage collector has released it.
+     */
+    void release(Segment segment) throws IOException, InterruptedException {
+        synchronized (this) {
+            sealed.remove(segment);
+            segment.buffer = null;
+            segmentListener.accept(segmentNames());
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Files.deleteIfExists(segment.file);
+                break;
+            } catch (IOException e) {
+                if (attempt == DELETE_ATTEMPTS) {
+                    throw e;
+                }
+                System.gc();
+                Thread.sleep(DELETE_RETRY_MS);
+            }
+        }
+        logger.debug("Spill segment {} delivered and deleted", segment.name);
+    }
+
+    /**
+     * @return {@code true} if a record of a few kilobytes still fits into {@code maxBytes}
+     */
+    synchronized boolean hasCapacity() {
+        return !closed && (active != null || bytesOnDisk() + segmentBytes <= maxBytes);
+    }
+
+    synchronized boolean isEmpty() {
+        return sealed.isEmpty() && (active == null || active.records == 0);
+    }
+
+    synchronized int getSegmentCount() {
+        return sealed.size() + (active == null ? 0 : 1);
+    }
+
+    synchronized long getSpilledRecords() {
+        return spilledRecords;
+    }
+
+    /**
+     * Syncs the records appended so far and stops accepting new ones. Segments that have not been
+     * delivered stay on disk for the next run.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        if (active != null && active.records > 0) {
+            seal();
+        }
+        closed = true;
+        notifyAll();
+        if (!sealed.isEmpty()) {
+            logger.warn("{} spill segments with records not yet sent to Kafka are kept in {}",
+                    sealed.size(), directory);
+        }
+    }
+
+    private void seal() {
+        sync();
+        sealed.add(active);
+        active = null;
+        notifyAll();
+    }
+
+    private void createSegment() throws IOException {
+        String name = String.format("%s%016d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX);
+        Path file = directory.resolve(name);
+        Segment segment = new Segment(name, file, segmentBytes);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            segment.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        // Named in the checkpoint before any record that could be committed goes into it
+        active = segment;
+        segmentListener.accept(segmentNames());
+        logger.debug("Spilling records to {}", name);
+    }
+
+    private List<String> segmentNames() {
+        List<String> names = new ArrayList<>(sealed.size() + 1);
+        for (Segment segment : sealed) {
+            names.add(segment.name);
+        }
+        if (active != null) {
+            names.add(active.name);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    private long bytesOnDisk() {
+        long bytes = active == null ? 0 : active.size;
+        for (Segment segment : sealed) {
+            bytes += segment.size;
+        }
+        return bytes;
+    }
+
+    private static long sequenceOf(String name) {
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int countRecords(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int records = 0;
+            while (nextRecord(buffer, file)) {
+                buffer.position(buffer.position() + buffer.getInt(buffer.position() - RECORD_HEADER_BYTES));
+                records++;
+            }
+            return records;
+        }
+    }
+
+    /**
+     * Moves past the header of the next record if it is complete and intact, so the buffer is positioned
+     * at its key length. A record torn by a crash ends the segment.
+     */
+    private static boolean nextRecord(ByteBuffer buffer, Path file) {
+        if (buffer.remaining() < RECORD_HEADER_BYTES) {
+            return false;
+        }
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+        if (length <= 0) {
+            return false;
+        }
+        if (length > buffer.remaining() - RECORD_HEADER_BYTES) {
+            logger.warn("Spill segment {} ends with a truncated record", file.getFileName());
+            return false;
+        }
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + RECORD_HEADER_BYTES).limit(start + RECORD_HEADER_BYTES + length);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+            logger.warn("Spill segment {} ends with a corrupted record", file.getFileName());
+            return false;
+        }
+        buffer.position(start + RECORD_HEADER_BYTES);
+        return true;
+    }
+
+    /**
+     * Receives the records of a segment.
+     */
+    interface RecordHandler {
+        void accept(byte[] key, long token, byte[] value) throws InterruptedException;
+    }
+
+    static final class Segment {
+        private final String name;
+        private final Path file;
+        private final long size;
+        private MappedByteBuffer buffer;
+        private int records;
+
+        private Segment(String name, Path file, long size) {
+            this.name = name;
+            this.file = file;
+            this.size = size;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getRecords() {
+            return records;
+        }
+    }
+}
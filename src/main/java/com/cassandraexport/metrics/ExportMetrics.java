@@ -0,0 +1,175 @@
+package com.cassandraexport.metrics;
+
+import com.cassandraexport.codec.ByteArrayPool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * The meters of an export, one per stage, so a slow run shows whether it waits for Cassandra pages,
+ * serialization, Kafka acknowledgements or checkpoint writes. Meters live in Micrometer's global
+ * registry and cost next to nothing until a {@link MetricsReporter} adds a registry that publishes them.
+ */
+public final class ExportMetrics {
+    private static final ExportMetrics instance = new ExportMetrics(Metrics.globalRegistry);
+
+    private final Counter rowsFetched;
+    private final Counter rowsUnchanged;
+    private final Timer pageLatency;
+    private final Counter bytesSerialized;
+    private final Timer serializationTime;
+    private final Counter recordsSent;
+    private final Counter recordsFailed;
+    private final Counter recordsSpilled;
+    private final Timer sendLatency;
+    private final Timer checkpointWriteLatency;
+    private volatile IntSupplier inFlightRecords = () -> 0;
+    private volatile IntSupplier sendRetries = () -> 0;
+    private volatile IntSupplier pageSize = () -> 0;
+    private volatile IntSupplier scanLimit = () -> 0;
+    private volatile IntSupplier spillSegments = () -> 0;
+    private volatile IntSupplier bufferedRows = () -> 0;
+    private volatile ByteArrayPool valuePool = new ByteArrayPool(0);
+
+    ExportMetrics(MeterRegistry registry) {
+        rowsFetched = Counter.builder("cassandra.rows.fetched")
+                .description("Rows read from Cassandra")
+                .register(registry);
+        rowsUnchanged = Counter.builder("cassandra.rows.unchanged")
+                .description("Rows an incremental export skipped because they were not written since the last run")
+                .register(registry);
+        pageLatency = latency("cassandra.page.latency", "Time to fetch one page from Cassandra", registry);
+        bytesSerialized = Counter.builder("export.bytes.serialized")
+                .description("Bytes of encoded record values")
+                .baseUnit("bytes")
+                .register(registry);
+        serializationTime = latency("export.batch.serialization", "Time to encode the rows of one batch", registry);
+        recordsSent = Counter.builder("kafka.records.sent")
+                .description("Records acknowledged by Kafka")
+                .register(registry);
+        recordsFailed = Counter.builder("kafka.records.failed")
+                .description("Records Kafka failed to acknowledge")
+                .register(registry);
+        recordsSpilled = Counter.builder("kafka.records.spilled")
+                .description("Records written to the spill buffer because Kafka could not take them")
+                .register(registry);
+        sendLatency = latency("kafka.send.latency", "Time from handing a record to the producer until Kafka acknowledged it", registry);
+        checkpointWriteLatency = latency("checkpoint.write.latency", "Time to write and sync the checkpoint file", registry);
+        Gauge.builder("kafka.records.inflight", this, metrics -> metrics.inFlightRecords.getAsInt())
+                .description("Records sent and not yet acknowledged")
+                .register(registry);
+        Gauge.builder("kafka.send.retries", this, metrics -> metrics.sendRetries.getAsInt())
+                .description("Most failed attempts of a record waiting to be resent, it fails at error.maxRetries")
+                .register(registry);
+        Gauge.builder("cassandra.page.size", this, metrics -> metrics.pageSize.getAsInt())
+                .description("Page size chosen by the adaptive read controller")
+                .register(registry);
+        Gauge.builder("cassandra.scans.limit", this, metrics -> metrics.scanLimit.getAsInt())
+                .description("Concurrent range scans allowed by the adaptive read controller")
+                .register(registry);
+        Gauge.builder("kafka.spill.segments", this, metrics -> metrics.spillSegments.getAsInt())
+                .description("Spill segments with records not yet sent to Kafka")
+                .register(registry);
+        Gauge.builder("pipeline.rows.buffered", this, metrics -> metrics.bufferedRows.getAsInt())
+                .description("Rows read and not yet checkpointed, bounded by pipeline.maxBufferedRows")
+                .register(registry);
+        FunctionCounter.builder("export.valuepool.hits", this, metrics -> metrics.valuePool.getHits())
+                .description("Encoded values written into a recycled array")
+                .register(registry);
+        FunctionCounter.builder("export.valuepool.misses", this, metrics -> metrics.valuePool.getMisses())
+                .description("Encoded values for which no recycled array of their length was pooled")
+                .register(registry);
+        Gauge.builder("export.valuepool.arrays", this, metrics -> metrics.valuePool.getPooledCount())
+                .description("Value arrays kept for reuse, bounded by kafka.valueBufferPoolSize")
+                .register(registry);
+    }
+
+    public static ExportMetrics get() {
+        return instance;
+    }
+
+    private static Timer latency(String name, String description, MeterRegistry registry) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+    }
+
+    public void pageFetched(int rows, long latencyNanos) {
+        rowsFetched.increment(rows);
+        pageLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void rowsUnchanged(int rows) {
+        rowsUnchanged.increment(rows);
+    }
+
+    public void batchSerialized(long bytes, long durationNanos) {
+        bytesSerialized.increment(bytes);
+        serializationTime.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSent(long latencyNanos) {
+        recordsSent.increment();
+        sendLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFailed() {
+        recordsFailed.increment();
+    }
+
+    public void recordSpilled() {
+        recordsSpilled.increment();
+    }
+
+    public void checkpointWritten(long latencyNanos) {
+        checkpointWriteLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reports the in-flight records and the most failed attempts of a record waiting to be resent, of the
+     * producer of the current export.
+     */
+    public void trackProducer(IntSupplier inFlightRecords, IntSupplier sendRetries) {
+        this.inFlightRecords = inFlightRecords;
+        this.sendRetries = sendRetries;
+    }
+
+    /**
+     * Reports the page size and scan limit of the adaptive read controller of the current export.
+     */
+    public void trackReader(IntSupplier pageSize, IntSupplier scanLimit) {
+        this.pageSize = pageSize;
+        this.scanLimit = scanLimit;
+    }
+
+    /**
+     * Reports the spill segments of the producer of the current export.
+     */
+    public void trackSpill(IntSupplier spillSegments) {
+        this.spillSegments = spillSegments;
+    }
+
+    /**
+     * Reports the rows the export pipeline of the current export holds.
+     */
+    public void trackPipeline(IntSupplier bufferedRows) {
+        this.bufferedRows = bufferedRows;
+    }
+
+    /**
+     * Reports the hits and misses of the value array pool of the sink of the current export.
+     */
+    public void trackValuePool(ByteArrayPool valuePool) {
+        this.valuePool = valuePool;
+    }
+}
@@ -0,0 +1,125 @@
+package com.cassandraexport.metrics;
+
+import com.cassandraexport.config.AppConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Publishes the {@link ExportMetrics} while an export runs: in the Prometheus text format on
+ * {@code http://<metrics.bindAddress>:<metrics.port>/metrics} with {@code metrics.enabled}, and as
+ * JMX MBeans in the {@code cassandraexport} domain with {@code metrics.jmx.enabled}.
+ */
+public final class MetricsReporter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsReporter.class);
+
+    private final List<MeterRegistry> registries = new ArrayList<>();
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    private MetricsReporter() {
+    }
+
+    /**
+     * @return the running reporter, or {@code null} if neither the endpoint nor JMX is enabled
+     */
+    public static MetricsReporter start(AppConfig config) {
+        if (!config.isMetricsEnabled() && !config.isMetricsJmxEnabled()) {
+            return null;
+        }
+
+        MetricsReporter reporter = new MetricsReporter();
+        try {
+            if (config.isMetricsEnabled()) {
+                reporter.startEndpoint(config.getMetricsBindAddress(), config.getMetricsPort());
+            }
+            if (config.isMetricsJmxEnabled()) {
+                reporter.add(new JmxMeterRegistry(new JmxConfig() {
+                    @Override
+                    public String get(String key) {
+                        return null;
+                    }
+
+                    @Override
+                    public String domain() {
+                        return "cassandraexport";
+                    }
+                }, Clock.SYSTEM));
+                logger.info("Publishing metrics as JMX MBeans in the cassandraexport domain");
+            }
+        } catch (IOException e) {
+            reporter.close();
+            logger.error("Failed to start metrics endpoint: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to start metrics endpoint", e);
+        }
+        return reporter;
+    }
+
+    private void startEndpoint(String bindAddress, int port) throws IOException {
+        PrometheusMeterRegistry prometheus = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        add(prometheus);
+
+        server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        server.createContext("/metrics", exchange -> respond(exchange, prometheus.scrape()));
+        serverExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-endpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        logger.info("Serving Prometheus metrics on http://{}:{}/metrics", bindAddress, getPort());
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", TextFormat.CONTENT_TYPE_004);
+        exchange.sendResponseHeaders(200, content.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content);
+        }
+    }
+
+    private void add(MeterRegistry registry) {
+        registries.add(registry);
+        Metrics.globalRegistry.add(registry);
+    }
+
+    /**
+     * @return the port of the HTTP endpoint, e.g. when {@code metrics.port} is 0, or -1 without endpoint
+     */
+    public int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+        for (MeterRegistry registry : registries) {
+            Metrics.globalRegistry.remove(registry);
+            registry.close();
+        }
+        registries.clear();
+    }
+}
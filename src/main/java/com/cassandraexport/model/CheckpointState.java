@@ -1,39 +1,62 @@
 package com.cassandraexport.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
+/**
+ * Progress of an export, saved as its checkpoint. Updates hold the lock of the state, which a
+ * background {@link CheckpointWriter} serializes under, so a saved checkpoint never holds half of an
+ * update. Callers that make several updates which belong together hold the lock around all of them.
+ */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class CheckpointState {
     private static final Logger logger = LoggerFactory.getLogger(CheckpointState.class);
-    private static final ObjectMapper mapper = new ObjectMapper()
-            .configure(SerializationFeature.INDENT_OUTPUT, true);
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
     private long lastProcessedOffset;
+    private String pagingState;
     private int batchesProcessed;
     private long recordsProcessed;
     private String lastProcessedTimestamp;
     private boolean completed;
     private String errorMessage;
+    private int totalRanges;
+    private final Map<Integer, RangeCheckpoint> ranges = new TreeMap<>();
+    private final List<String> spillSegments = new ArrayList<>();
+    private long runStartedAt;
+    private long writeTimeWatermark = Long.MIN_VALUE;
 
     public CheckpointState() {
         this.lastProcessedOffset = 0;
+        this.pagingState = null;
         this.batchesProcessed = 0;
         this.recordsProcessed = 0;
-        this.lastProcessedTimestamp = dateFormat.format(new Date());
+        this.lastProcessedTimestamp = now();
         this.completed = false;
         this.errorMessage = null;
+        this.totalRanges = 0;
     }
 
+    /**
+     * Loads a checkpoint written by {@link #save(String)}, in either the binary or the JSON format.
+     */
     public static CheckpointState load(String checkpointFilePath) {
         File checkpointFile = new File(checkpointFilePath);
         if (!checkpointFile.exists()) {
@@ -42,9 +65,13 @@ public class CheckpointState {
         }
 
         try {
-            CheckpointState state = mapper.readValue(checkpointFile, CheckpointState.class);
-            logger.info("Loaded checkpoint: processed {} records, last offset: {}", 
-                    state.getRecordsProcessed(), state.getLastProcessedOffset());
+            byte[] content = Files.readAllBytes(checkpointFile.toPath());
+            CheckpointState state = CheckpointStore.isBinary(content)
+                    ? CheckpointStore.decode(content)
+                    : mapper.readValue(content, CheckpointState.class);
+            logger.info("Loaded checkpoint: processed {} records, last offset: {}, {} of {} token ranges completed", 
+                    state.getRecordsProcessed(), state.getLastProcessedOffset(),
+                    state.getCompletedRanges().size(), state.getTotalRanges());
             return state;
         } catch (IOException e) {
             logger.error("Failed to load checkpoint file: {}", e.getMessage(), e);
@@ -53,30 +80,119 @@ public class CheckpointState {
         }
     }
 
+    /**
+     * Atomically replaces the checkpoint file. Files named {@code *.json} are written as JSON,
+     * everything else in the compact binary format of {@link CheckpointStore}.
+     */
     public void save(String checkpointFilePath) {
         try {
-            this.lastProcessedTimestamp = dateFormat.format(new Date());
-            mapper.writeValue(new File(checkpointFilePath), this);
+            Path path = new File(checkpointFilePath).toPath();
+            CheckpointStore.writeAtomically(path, serialize(checkpointFilePath));
             logger.debug("Saved checkpoint state to: {}", checkpointFilePath);
         } catch (IOException e) {
             logger.error("Failed to save checkpoint: {}", e.getMessage(), e);
         }
     }
 
-    public void updateProgress(long offset, int batchSize) {
+    /**
+     * Stamps the state and encodes it in the format {@link #save(String)} uses for the given file.
+     */
+    synchronized byte[] serialize(String checkpointFilePath) throws IOException {
+        this.lastProcessedTimestamp = now();
+        return checkpointFilePath.toLowerCase().endsWith(".json")
+                ? mapper.writeValueAsBytes(this)
+                : CheckpointStore.encode(this);
+    }
+
+    private static String now() {
+        return LocalDateTime.now().format(TIMESTAMP_FORMAT);
+    }
+
+    public synchronized void updateProgress(long offset, int batchSize) {
         this.lastProcessedOffset = offset;
         this.batchesProcessed++;
         this.recordsProcessed += batchSize;
     }
 
-    public void markCompleted() {
+    public synchronized void updateProgress(long offset, int batchSize, String pagingState) {
+        updateProgress(offset, batchSize);
+        this.pagingState = pagingState;
+    }
+
+    /**
+     * Records a batch of a token range scan, {@code pagingState} is where the scan of the range resumes.
+     */
+    public synchronized void updateRangeProgress(int rangeIndex, long start, long end, String pagingState, int batchSize) {
+        RangeCheckpoint range = rangeCheckpoint(rangeIndex, start, end);
+        range.setPagingState(pagingState);
+        range.setRecordsProcessed(range.getRecordsProcessed() + batchSize);
+        this.batchesProcessed++;
+        this.recordsProcessed += batchSize;
+    }
+
+    public synchronized void markRangeCompleted(int rangeIndex, long start, long end) {
+        RangeCheckpoint range = rangeCheckpoint(rangeIndex, start, end);
+        range.setCompleted(true);
+        range.setPagingState(null);
+    }
+
+    private RangeCheckpoint rangeCheckpoint(int rangeIndex, long start, long end) {
+        RangeCheckpoint range = ranges.get(rangeIndex);
+        if (range == null) {
+            range = new RangeCheckpoint(rangeIndex, start, end);
+            ranges.put(rangeIndex, range);
+        }
+        return range;
+    }
+
+    public synchronized boolean isRangeCompleted(int rangeIndex) {
+        RangeCheckpoint range = ranges.get(rangeIndex);
+        return range != null && range.isCompleted();
+    }
+
+    /**
+     * @return the checkpoint of the given token range, or {@code null} if it has not been started
+     */
+    public synchronized RangeCheckpoint getRange(int rangeIndex) {
+        return ranges.get(rangeIndex);
+    }
+
+    /**
+     * @return whether nothing was exported or checkpointed yet in this run
+     */
+    @JsonIgnore
+    public synchronized boolean isFresh() {
+        return !completed && batchesProcessed == 0 && recordsProcessed == 0 && lastProcessedOffset == 0
+                && pagingState == null && ranges.isEmpty();
+    }
+
+    /**
+     * Starts the next run of an incremental export over the checkpoint of the previous one: the
+     * progress is reset and only rows written after {@code writeTimeWatermark} are exported.
+     *
+     * @param runStartedAt when the new run starts, in microseconds since the epoch
+     */
+    public synchronized void startRun(long writeTimeWatermark, long runStartedAt) {
+        this.lastProcessedOffset = 0;
+        this.pagingState = null;
+        this.batchesProcessed = 0;
+        this.recordsProcessed = 0;
+        this.completed = false;
+        this.errorMessage = null;
+        this.totalRanges = 0;
+        this.ranges.clear();
+        this.writeTimeWatermark = writeTimeWatermark;
+        this.runStartedAt = runStartedAt;
+    }
+
+    public synchronized void markCompleted() {
         this.completed = true;
-        this.lastProcessedTimestamp = dateFormat.format(new Date());
+        this.lastProcessedTimestamp = now();
     }
 
-    public void setError(String message) {
+    public synchronized void setError(String message) {
         this.errorMessage = message;
-        this.lastProcessedTimestamp = dateFormat.format(new Date());
+        this.lastProcessedTimestamp = now();
     }
 
     public long getLastProcessedOffset() {
@@ -87,6 +203,14 @@ public class CheckpointState {
         this.lastProcessedOffset = lastProcessedOffset;
     }
 
+    public String getPagingState() {
+        return pagingState;
+    }
+
+    public void setPagingState(String pagingState) {
+        this.pagingState = pagingState;
+    }
+
     public int getBatchesProcessed() {
         return batchesProcessed;
     }
@@ -126,4 +250,70 @@ public class CheckpointState {
     public void setErrorMessage(String errorMessage) {
         this.errorMessage = errorMessage;
     }
-} 
\ No newline at end of file
+
+    public int getTotalRanges() {
+        return totalRanges;
+    }
+
+    public synchronized void setTotalRanges(int totalRanges) {
+        this.totalRanges = totalRanges;
+    }
+
+    @JsonIgnore
+    public synchronized Set<Integer> getCompletedRanges() {
+        Set<Integer> completedRanges = new TreeSet<>();
+        for (RangeCheckpoint range : ranges.values()) {
+            if (range.isCompleted()) {
+                completedRanges.add(range.getIndex());
+            }
+        }
+        return completedRanges;
+    }
+
+    public synchronized List<RangeCheckpoint> getRanges() {
+        return new ArrayList<>(ranges.values());
+    }
+
+    public synchronized void setRanges(List<RangeCheckpoint> ranges) {
+        this.ranges.clear();
+        for (RangeCheckpoint range : ranges) {
+            this.ranges.put(range.getIndex(), range);
+        }
+    }
+
+    /**
+     * @return the spill segments holding records that were acknowledged to the exporter, and so may
+     *         belong to checkpointed batches, but not delivered to Kafka yet, oldest first
+     */
+    public synchronized List<String> getSpillSegments() {
+        return new ArrayList<>(spillSegments);
+    }
+
+    public synchronized void setSpillSegments(List<String> spillSegments) {
+        this.spillSegments.clear();
+        this.spillSegments.addAll(spillSegments);
+    }
+
+    /**
+     * @return when the run of this checkpoint started, in microseconds since the epoch, or 0 if unknown
+     */
+    public long getRunStartedAt() {
+        return runStartedAt;
+    }
+
+    public void setRunStartedAt(long runStartedAt) {
+        this.runStartedAt = runStartedAt;
+    }
+
+    /**
+     * @return the write time, in microseconds since the epoch, up to which rows were exported by
+     *         earlier runs, {@link Long#MIN_VALUE} to export every row
+     */
+    public long getWriteTimeWatermark() {
+        return writeTimeWatermark;
+    }
+
+    public void setWriteTimeWatermark(long writeTimeWatermark) {
+        this.writeTimeWatermark = writeTimeWatermark;
+    }
+}
@@ -0,0 +1,206 @@
+package com.cassandraexport.model;
+
+import com.cassandraexport.metrics.ExportMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary encoding of a {@link CheckpointState} and crash-safe checkpoint file replacement.
+ *
+ * <p>Layout: magic, format version, the global progress fields, then one fixed-size entry per
+ * token range followed by its paging state, the spilled Kafka segments (since version 2), the start
+ * and write time watermark of the run (since version 3), and a CRC32 of everything before it.
+ * Paging states are stored as raw bytes rather than Base64 text.
+ */
+final class CheckpointStore {
+    private static final int MAGIC = 0x434B5054; // "CKPT"
+    private static final byte VERSION = 3;
+
+    private CheckpointStore() {
+    }
+
+    static boolean isBinary(byte[] content) {
+        return content.length >= 4 && ByteBuffer.wrap(content).getInt() == MAGIC;
+    }
+
+    static byte[] encode(CheckpointState state) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256 + state.getRanges().size() * 64);
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(state.getLastProcessedOffset());
+        writeBytes(out, decodePagingState(state.getPagingState()));
+        out.writeInt(state.getBatchesProcessed());
+        out.writeLong(state.getRecordsProcessed());
+        writeString(out, state.getLastProcessedTimestamp());
+        out.writeBoolean(state.isCompleted());
+        writeString(out, state.getErrorMessage());
+        out.writeInt(state.getTotalRanges());
+
+        List<RangeCheckpoint> ranges = state.getRanges();
+        out.writeInt(ranges.size());
+        for (RangeCheckpoint range : ranges) {
+            out.writeInt(range.getIndex());
+            out.writeLong(range.getStart());
+            out.writeLong(range.getEnd());
+            out.writeLong(range.getRecordsProcessed());
+            out.writeBoolean(range.isCompleted());
+            writeBytes(out, decodePagingState(range.getPagingState()));
+        }
+
+        List<String> spillSegments = state.getSpillSegments();
+        out.writeInt(spillSegments.size());
+        for (String segment : spillSegments) {
+            writeString(out, segment);
+        }
+        out.writeLong(state.getRunStartedAt());
+        out.writeLong(state.getWriteTimeWatermark());
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    static CheckpointState decode(byte[] content) throws IOException {
+        if (content.length < 13) {
+            throw new IOException("Checkpoint file is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 8);
+        if (crc.getValue() != ByteBuffer.wrap(content, content.length - 8, 8).getLong()) {
+            throw new IOException("Checkpoint file is corrupted (checksum mismatch)");
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 8));
+        in.readInt();
+        byte version = in.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported checkpoint format version " + version);
+        }
+
+        CheckpointState state = new CheckpointState();
+        state.setLastProcessedOffset(in.readLong());
+        state.setPagingState(encodePagingState(readBytes(in)));
+        state.setBatchesProcessed(in.readInt());
+        state.setRecordsProcessed(in.readLong());
+        state.setLastProcessedTimestamp(readString(in));
+        state.setCompleted(in.readBoolean());
+        state.setErrorMessage(readString(in));
+        state.setTotalRanges(in.readInt());
+
+        int rangeCount = in.readInt();
+        List<RangeCheckpoint> ranges = new ArrayList<>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            RangeCheckpoint range = new RangeCheckpoint(in.readInt(), in.readLong(), in.readLong());
+            range.setRecordsProcessed(in.readLong());
+            range.setCompleted(in.readBoolean());
+            range.setPagingState(encodePagingState(readBytes(in)));
+            ranges.add(range);
+        }
+        state.setRanges(ranges);
+
+        // Version 1 checkpoints were written before records could be spilled
+        if (version >= 2) {
+            int segmentCount = in.readInt();
+            List<String> spillSegments = new ArrayList<>(segmentCount);
+            for (int i = 0; i < segmentCount; i++) {
+                spillSegments.add(readString(in));
+            }
+            state.setSpillSegments(spillSegments);
+        }
+        if (version >= 3) {
+            state.setRunStartedAt(in.readLong());
+            state.setWriteTimeWatermark(in.readLong());
+        }
+        return state;
+    }
+
+    /**
+     * Replaces {@code target} so that a crash leaves either the old or the new content, never a mix:
+     * the content is written and fsynced to a temporary file that is then renamed over the target.
+     */
+    static void writeAtomically(Path target, byte[] content) throws IOException {
+        long start = System.nanoTime();
+        Path absoluteTarget = target.toAbsolutePath();
+        Path directory = absoluteTarget.getParent();
+        Path temp = directory.resolve(absoluteTarget.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, absoluteTarget, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absoluteTarget, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // Persist the rename itself, not supported on every platform
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            // Best effort only
+        }
+        ExportMetrics.get().checkpointWritten(System.nanoTime() - start);
+    }
+
+    private static byte[] decodePagingState(String pagingState) {
+        return pagingState == null ? null : Base64.getDecoder().decode(pagingState);
+    }
+
+    private static String encodePagingState(byte[] pagingState) {
+        return pagingState == null ? null : Base64.getEncoder().encodeToString(pagingState);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+}
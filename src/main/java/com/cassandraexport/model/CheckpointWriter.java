@@ -0,0 +1,153 @@
+package com.cassandraexport.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Persists a {@link CheckpointState} on a background thread. Callers record progress after they
+ * have updated the state, and the writer coalesces those updates into one checkpoint write once
+ * {@code flushIntervalMs} has passed since the first unsaved update or {@code flushEveryRecords}
+ * records have accumulated, whichever comes first.
+ *
+ * <p>The writer persists whatever the state contains when it takes a snapshot, so callers must only
+ * apply progress to the state once the records of a batch have been acknowledged by Kafka. Errors,
+ * completion and shutdown go through {@link #flush()}, which writes synchronously.
+ */
+public class CheckpointWriter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointWriter.class);
+
+    private final CheckpointState checkpointState;
+    private final String checkpointFile;
+    private final long flushIntervalMs;
+    private final long flushEveryRecords;
+    private final Thread writerThread;
+
+    // Guarded by "this"
+    private boolean dirty;
+    private long dirtySince;
+    private long pendingRecords;
+    private boolean closed;
+
+    // Snapshots are numbered under the state lock, so an older snapshot never overwrites a newer one
+    private final Object writeLock = new Object();
+    private long snapshotVersion;
+    private long writtenVersion;
+    private long flushes;
+
+    public CheckpointWriter(CheckpointState checkpointState, String checkpointFile,
+                            long flushIntervalMs, long flushEveryRecords) {
+        this.checkpointState = checkpointState;
+        this.checkpointFile = checkpointFile;
+        this.flushIntervalMs = Math.max(0, flushIntervalMs);
+        this.flushEveryRecords = flushEveryRecords;
+        this.writerThread = new Thread(this::runWriter, "checkpoint-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Notes that the state has changed by {@code records} acknowledged records. Never blocks on I/O.
+     */
+    public synchronized void recordProgress(long records) {
+        if (!dirty) {
+            dirty = true;
+            dirtySince = System.currentTimeMillis();
+        }
+        pendingRecords += records;
+        notifyAll();
+    }
+
+    /**
+     * Writes the current state immediately, regardless of the flush policy.
+     */
+    public void flush() {
+        synchronized (this) {
+            dirty = false;
+            pendingRecords = 0;
+        }
+
+        byte[] content;
+        long version;
+        synchronized (checkpointState) {
+            try {
+                content = checkpointState.serialize(checkpointFile);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to serialize checkpoint: {}", e.getMessage(), e);
+                return;
+            }
+            version = ++snapshotVersion;
+        }
+
+        synchronized (writeLock) {
+            if (version <= writtenVersion) {
+                return;
+            }
+            // A failed write is logged and left to the next flush, it must not stop the writer thread
+            try {
+                CheckpointStore.writeAtomically(new File(checkpointFile).toPath(), content);
+                writtenVersion = version;
+                flushes++;
+                logger.debug("Saved checkpoint state to: {}", checkpointFile);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to save checkpoint: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of checkpoint writes so far
+     */
+    public long getFlushCount() {
+        synchronized (writeLock) {
+            return flushes;
+        }
+    }
+
+    /**
+     * Stops the background thread and writes any progress it has not saved yet.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void runWriter() {
+        while (awaitFlushDue()) {
+            flush();
+        }
+    }
+
+    private synchronized boolean awaitFlushDue() {
+        try {
+            while (!closed) {
+                if (dirty) {
+                    long remaining = dirtySince + flushIntervalMs - System.currentTimeMillis();
+                    if (remaining <= 0 || (flushEveryRecords > 0 && pendingRecords >= flushEveryRecords)) {
+                        return true;
+                    }
+                    wait(remaining);
+                } else {
+                    wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+}
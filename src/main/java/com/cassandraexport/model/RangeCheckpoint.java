@@ -0,0 +1,74 @@
+package com.cassandraexport.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Progress of a single token range: its bounds, the paging state to resume the scan from,
+ * the number of records exported so far and whether the range is finished.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RangeCheckpoint {
+    private int index;
+    private long start;
+    private long end;
+    private String pagingState;
+    private long recordsProcessed;
+    private boolean completed;
+
+    public RangeCheckpoint() {
+    }
+
+    public RangeCheckpoint(int index, long start, long end) {
+        this.index = index;
+        this.start = start;
+        this.end = end;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public void setStart(long start) {
+        this.start = start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public void setEnd(long end) {
+        this.end = end;
+    }
+
+    public String getPagingState() {
+        return pagingState;
+    }
+
+    public void setPagingState(String pagingState) {
+        this.pagingState = pagingState;
+    }
+
+    public long getRecordsProcessed() {
+        return recordsProcessed;
+    }
+
+    public void setRecordsProcessed(long recordsProcessed) {
+        this.recordsProcessed = recordsProcessed;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+}
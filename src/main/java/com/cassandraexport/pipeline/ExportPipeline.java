@@ -0,0 +1,566 @@
+package com.cassandraexport.pipeline;
+
+import com.cassandraexport.cassandra.ResultPage;
+import com.cassandraexport.cassandra.TokenRange;
+import com.cassandraexport.codec.RowCodec;
+import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.kafka.BatchAcknowledgement;
+import com.cassandraexport.metrics.ExportMetrics;
+import com.cassandraexport.model.CheckpointState;
+import com.cassandraexport.model.CheckpointWriter;
+import com.cassandraexport.model.RangeCheckpoint;
+import com.cassandraexport.spi.RecordSink;
+import com.cassandraexport.spi.RowSource;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged export pipeline: reader threads fill a bounded queue of row batches, serializer workers turn
+ * rows into record keys and values, sender threads hand them to the record sink without waiting, and a
+ * single committer checkpoints each batch once all of its records have been acknowledged.
+ * Every hand-off is a bounded queue, so a slow stage holds back the ones in front of it while
+ * reads from the row source and writes to the sink overlap.
+ *
+ * <p>Rows flow through one page at a time, and each stage lets go of what it no longer needs: a
+ * batch drops its rows once they are serialized and its records once the sink has them. With
+ * {@code pipeline.maxBufferedRows} the rows read and not yet committed are bounded as well, whatever
+ * the batch size and queue capacities, and the readers wait for committed batches to make room.
+ */
+public class ExportPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(ExportPipeline.class);
+
+    private static final RowBatch END_OF_ROWS = RowBatch.sequential(-1, -1, Collections.<Row>emptyList(), null);
+    private static final SerializedBatch END_OF_RECORDS = new SerializedBatch(END_OF_ROWS, null, null, null, 0);
+
+    private final AppConfig config;
+    private final RowSource rowSource;
+    private final RecordSink recordSink;
+    private final CheckpointState checkpointState;
+    private final CheckpointWriter checkpointWriter;
+    private final AtomicBoolean running;
+    private final RowCodec rowCodec;
+
+    private final BlockingQueue<RowBatch> rowQueue;
+    private final BlockingQueue<SerializedBatch> sendQueue;
+    private final BlockingQueue<SerializedBatch> pendingQueue;
+    private final Queue<WaitingBatch> waitingBatches = new ArrayDeque<>();
+    private final AtomicBoolean failed = new AtomicBoolean(false);
+    private final ProgressTracker progressTracker;
+    private volatile boolean endOfData;
+    private final int maxBufferedRows;
+    private final Semaphore bufferedRows;
+
+    public ExportPipeline(AppConfig config, RowSource rowSource, RecordSink recordSink,
+                          CheckpointState checkpointState, CheckpointWriter checkpointWriter, AtomicBoolean running,
+                          RowCodec rowCodec) {
+        this.config = config;
+        this.rowSource = rowSource;
+        this.recordSink = recordSink;
+        this.checkpointState = checkpointState;
+        this.checkpointWriter = checkpointWriter;
+        this.running = running;
+        this.rowCodec = rowCodec;
+        this.rowQueue = new ArrayBlockingQueue<>(Math.max(1, config.getPipelineRowQueueCapacity()));
+        this.sendQueue = new ArrayBlockingQueue<>(Math.max(1, config.getPipelineSendQueueCapacity()));
+        this.pendingQueue = new ArrayBlockingQueue<>(Math.max(1, config.getPipelineMaxPendingBatches()));
+        this.progressTracker = new ProgressTracker(checkpointState, checkpointWriter, config.getCassandraTotalRecords());
+        this.maxBufferedRows = Math.max(0, config.getPipelineMaxBufferedRows());
+        this.bufferedRows = maxBufferedRows > 0 ? new Semaphore(maxBufferedRows) : null;
+        if (bufferedRows != null) {
+            ExportMetrics.get().trackPipeline(() -> maxBufferedRows - bufferedRows.availablePermits());
+        }
+    }
+
+    /**
+     * @return the page size the readers request, at most {@code pipeline.maxBufferedRows}
+     */
+    private int pageSize() {
+        int batchSize = config.getCassandraBatchSize();
+        return maxBufferedRows > 0 ? Math.min(batchSize, maxBufferedRows) : batchSize;
+    }
+
+    // A page larger than the whole budget takes all of it, so it is read on its own rather than never
+    private int permits(RowBatch batch) {
+        return Math.min(batch.size(), maxBufferedRows);
+    }
+
+    private boolean tryReserve(RowBatch batch, long timeoutMs) throws InterruptedException {
+        return bufferedRows == null || bufferedRows.tryAcquire(permits(batch), timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gives the rows of a committed or abandoned batch back to the budget of the readers.
+     */
+    private void release(RowBatch batch) {
+        if (bufferedRows != null) {
+            bufferedRows.release(permits(batch));
+        }
+    }
+
+    /**
+     * Exports the given token ranges, reading up to {@code pipeline.readerThreads} of them at a time,
+     * or with {@code cassandra.readMode=async} up to {@code cassandra.asyncScans} of them from a single
+     * reader thread.
+     */
+    public void exportTokenRanges(List<TokenRange> pendingRanges) throws InterruptedException {
+        ConcurrentLinkedQueue<TokenRange> rangeQueue = new ConcurrentLinkedQueue<>(pendingRanges);
+        int batchSize = pageSize();
+
+        if ("async".equalsIgnoreCase(config.getCassandraReadMode())) {
+            runStages(() -> dispatchRanges(rangeQueue, batchSize, Math.max(1, config.getCassandraAsyncScans())), 1);
+        } else {
+            Runnable reader = () -> {
+                TokenRange range;
+                while (!isAborted() && (range = rangeQueue.poll()) != null) {
+                    readRange(range, batchSize);
+                }
+            };
+            runStages(reader, Math.max(1, config.getPipelineReaderThreads()));
+        }
+
+        if (!failed.get() && running.get()) {
+            logger.info("Export process completed successfully");
+            checkpointState.markCompleted();
+        } else if (!failed.get()) {
+            logger.info("Export process stopped gracefully before completion");
+        }
+        saveCheckpoint();
+    }
+
+    /**
+     * Exports the sequential query. Paging is inherently sequential, so there is a single reader,
+     * while serialization and sending still run in parallel with it.
+     */
+    public void exportSequential() throws InterruptedException {
+        runStages(this::readSequential, 1);
+
+        long totalRecordsToProcess = config.getCassandraTotalRecords();
+        long totalProcessed = progressTracker.getTotalProcessed();
+        // An incremental run exports fewer rows than the table has, it is complete once the query is
+        boolean finished = totalProcessed >= totalRecordsToProcess
+                || endOfData && StringUtils.isNotBlank(config.getCassandraIncrementalColumn());
+        if (!failed.get() && (finished || !running.get())) {
+            if (finished) {
+                logger.info("Export process completed successfully");
+                checkpointState.markCompleted();
+            } else {
+                logger.info("Export process stopped gracefully before completion");
+            }
+            saveCheckpoint();
+        }
+    }
+
+    private void runStages(Runnable reader, int readerThreads) throws InterruptedException {
+        int serializerThreads = Math.max(1, config.getPipelineSerializerThreads());
+        int senderThreads = Math.max(1, config.getPipelineSenderThreads());
+        logger.info("Starting export pipeline with {} reader, {} serializer and {} sender threads",
+                readerThreads, serializerThreads, senderThreads);
+
+        ExecutorService readers = Executors.newFixedThreadPool(readerThreads, namedThreads("pipeline-reader"));
+        ExecutorService serializers = Executors.newFixedThreadPool(serializerThreads, namedThreads("pipeline-serializer"));
+        ExecutorService senders = Executors.newFixedThreadPool(senderThreads, namedThreads("pipeline-sender"));
+        ExecutorService committer = Executors.newSingleThreadExecutor(namedThreads("pipeline-committer"));
+
+        try {
+            committer.submit(guarded(this::commitBatches));
+            for (int i = 0; i < senderThreads; i++) {
+                senders.submit(guarded(this::sendBatches));
+            }
+            for (int i = 0; i < serializerThreads; i++) {
+                serializers.submit(guarded(this::serializeBatches));
+            }
+            for (int i = 0; i < readerThreads; i++) {
+                readers.submit(guarded(reader::run));
+            }
+
+            // Shut the stages down front to back, each one drains its input queue before it stops
+            awaitStage(readers);
+            for (int i = 0; i < serializerThreads; i++) {
+                rowQueue.put(END_OF_ROWS);
+            }
+            awaitStage(serializers);
+            for (int i = 0; i < senderThreads; i++) {
+                sendQueue.put(END_OF_RECORDS);
+            }
+            awaitStage(senders);
+            pendingQueue.put(END_OF_RECORDS);
+            awaitStage(committer);
+        } finally {
+            readers.shutdownNow();
+            serializers.shutdownNow();
+            senders.shutdownNow();
+            committer.shutdownNow();
+        }
+    }
+
+    private void readRange(TokenRange range, int batchSize) {
+        String startPagingState = startPagingState(range);
+        long[] sequence = {0};
+        try {
+            boolean scanned = rowSource.scanRange(range, startPagingState, batchSize, (batch, pagingState) -> {
+                if (isAborted()) {
+                    return false;
+                }
+                return enqueue(RowBatch.ofRange(range, sequence[0]++, batch, pagingState));
+            });
+
+            if (scanned) {
+                enqueue(RowBatch.endOfRange(range, sequence[0]));
+            }
+        } catch (Exception e) {
+            fail("Error exporting token range " + range + ": " + e.getMessage(), e);
+        }
+    }
+
+    private String startPagingState(TokenRange range) {
+        synchronized (checkpointState) {
+            RangeCheckpoint rangeCheckpoint = checkpointState.getRange(range.getIndex());
+            return rangeCheckpoint == null ? null : rangeCheckpoint.getPagingState();
+        }
+    }
+
+    /**
+     * Starts the asynchronous scans of the ranges, keeping up to {@code maxScans} of them running, and
+     * returns once all of them ended.
+     */
+    private void dispatchRanges(ConcurrentLinkedQueue<TokenRange> rangeQueue, int batchSize, int maxScans) {
+        Semaphore scans = new Semaphore(maxScans);
+        try {
+            TokenRange range;
+            while (!isAborted() && (range = rangeQueue.poll()) != null) {
+                while (!scans.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    transferWaitingBatches();
+                }
+                if (isAborted()) {
+                    scans.release();
+                    break;
+                }
+                readRangeAsync(range, batchSize).whenComplete((scanned, error) -> scans.release());
+            }
+            // Scans end after their current page once aborted, the batches they wait with are refused
+            while (!scans.tryAcquire(maxScans, 100, TimeUnit.MILLISECONDS)) {
+                transferWaitingBatches();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail("Export pipeline interrupted", null);
+            transferWaitingBatches();
+        }
+    }
+
+    private CompletionStage<Boolean> readRangeAsync(TokenRange range, int batchSize) {
+        AtomicLong sequence = new AtomicLong();
+        CompletionStage<Boolean> scan;
+        try {
+            scan = rowSource.scanRangeAsync(range, startPagingState(range), batchSize,
+                    (batch, pagingState) -> enqueueAsync(RowBatch.ofRange(range, sequence.getAndIncrement(), batch, pagingState)));
+        } catch (Exception e) {
+            fail("Error exporting token range " + range + ": " + e.getMessage(), e);
+            return CompletableFuture.completedFuture(false);
+        }
+        return scan.thenCompose(scanned -> scanned
+                        ? enqueueAsync(RowBatch.endOfRange(range, sequence.get()))
+                        : CompletableFuture.completedFuture(false))
+                .whenComplete((scanned, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        fail("Error exporting token range " + range + ": " + cause.getMessage(), null);
+                    }
+                });
+    }
+
+    /**
+     * Hands a batch to the serializers without blocking, for the callbacks of asynchronous scans.
+     * Batches that do not fit into the row queue wait in arrival order and are moved over as the
+     * serializers take batches, so a scan only reads on once the serializers asked for more rows.
+     *
+     * @return completes once the batch is in the row queue, with {@code false} if the export was aborted
+     */
+    private CompletionStage<Boolean> enqueueAsync(RowBatch batch) {
+        WaitingBatch waiting = new WaitingBatch(batch);
+        synchronized (waitingBatches) {
+            waitingBatches.add(waiting);
+        }
+        transferWaitingBatches();
+        return waiting.taken;
+    }
+
+    private void transferWaitingBatches() {
+        List<WaitingBatch> transferred = new ArrayList<>();
+        boolean aborted = isAborted();
+        synchronized (waitingBatches) {
+            WaitingBatch waiting;
+            while ((waiting = waitingBatches.peek()) != null) {
+                if (!aborted) {
+                    if (bufferedRows != null && !bufferedRows.tryAcquire(permits(waiting.batch))) {
+                        break;
+                    }
+                    if (!rowQueue.offer(waiting.batch)) {
+                        release(waiting.batch);
+                        break;
+                    }
+                }
+                transferred.add(waitingBatches.poll());
+            }
+        }
+        // Outside the lock, completing a batch lets its scan go on in this thread
+        for (WaitingBatch waiting : transferred) {
+            waiting.taken.complete(!aborted);
+        }
+    }
+
+    private static final class WaitingBatch {
+        private final RowBatch batch;
+        private final CompletableFuture<Boolean> taken = new CompletableFuture<>();
+
+        private WaitingBatch(RowBatch batch) {
+            this.batch = batch;
+        }
+    }
+
+    private void readSequential() {
+        long offset = checkpointState.getLastProcessedOffset();
+        String pagingState = checkpointState.getPagingState();
+        long remaining = config.getCassandraTotalRecords() - checkpointState.getRecordsProcessed();
+        int batchSize = pageSize();
+
+        // Checkpoints without a paging state can only be resumed by skipping the rows already sent
+        long rowsToSkip = pagingState == null ? offset : 0;
+        if (rowsToSkip > 0) {
+            logger.warn("Checkpoint has no paging state, skipping {} already exported rows", rowsToSkip);
+        }
+
+        long sequence = 0;
+        try {
+            while (!isAborted() && remaining > 0) {
+                ResultPage page = rowSource.fetchPage(pagingState, batchSize);
+                List<Row> rows = page.getRows();
+
+                if (rowsToSkip > 0) {
+                    int skipped = (int) Math.min(rowsToSkip, rows.size());
+                    rows = rows.subList(skipped, rows.size());
+                    rowsToSkip -= skipped;
+                }
+
+                if (!rows.isEmpty()) {
+                    if (!enqueue(RowBatch.sequential(sequence++, offset, rows, page.getPagingState()))) {
+                        return;
+                    }
+                    offset += rows.size();
+                    remaining -= rows.size();
+                }
+
+                if (page.isLastPage()) {
+                    logger.info("No more records available from Cassandra");
+                    endOfData = true;
+                    return;
+                }
+                pagingState = page.getPagingState();
+            }
+        } catch (Exception e) {
+            fail("Error reading from Cassandra at offset " + offset + ": " + e.getMessage(), e);
+        }
+    }
+
+    private boolean enqueue(RowBatch batch) {
+        // Blocks while the serializers are behind or the rows in the pipeline use up the budget,
+        // which throttles the readers
+        try {
+            while (!tryReserve(batch, 100)) {
+                if (isAborted()) {
+                    return false;
+                }
+            }
+            while (!rowQueue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (isAborted()) {
+                    release(batch);
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail("Export pipeline interrupted", null);
+            return false;
+        }
+    }
+
+    private void serializeBatches() throws InterruptedException {
+        RowBatch batch;
+        while ((batch = rowQueue.take()) != END_OF_ROWS) {
+            transferWaitingBatches();
+            if (failed.get()) {
+                release(batch);
+                continue;
+            }
+
+            List<byte[]> keys = new ArrayList<>(batch.size());
+            long[] tokens = new long[batch.size()];
+            List<byte[]> values = new ArrayList<>(batch.size());
+            int failures = 0;
+            long serializedBytes = 0;
+            long start = System.nanoTime();
+            for (Row row : batch.getRows()) {
+                try {
+                    byte[] value = rowCodec.encode(row, recordSink.getValueBufferPool());
+                    tokens[keys.size()] = rowCodec.token(row);
+                    keys.add(rowCodec.key(row));
+                    values.add(value);
+                    serializedBytes += value.length;
+                } catch (Exception e) {
+                    logger.error("Error serializing record to JSON: {}", e.getMessage(), e);
+                    failures++;
+                }
+            }
+            ExportMetrics.get().batchSerialized(serializedBytes, System.nanoTime() - start);
+            batch.releaseRows();
+            sendQueue.put(new SerializedBatch(batch, keys, tokens, values, failures));
+        }
+    }
+
+    private void sendBatches() throws InterruptedException {
+        SerializedBatch batch;
+        while ((batch = sendQueue.take()) != END_OF_RECORDS) {
+            if (failed.get()) {
+                release(batch.getSource());
+                continue;
+            }
+
+            BatchAcknowledgement acknowledgement = new BatchAcknowledgement(batch.getSource().size());
+            batch.setAcknowledgement(acknowledgement);
+            for (int i = 0; i < batch.getSerializationFailures(); i++) {
+                acknowledgement.recordFailure();
+            }
+
+            // Blocks once the committer has too many unacknowledged batches
+            pendingQueue.put(batch);
+
+            List<byte[]> keys = batch.getKeys();
+            long[] tokens = batch.getTokens();
+            List<byte[]> values = batch.getValues();
+            for (int i = 0; i < keys.size(); i++) {
+                recordSink.sendEncodedAsync(keys.get(i), tokens[i], values.get(i), acknowledgement);
+            }
+            batch.releaseRecords();
+        }
+    }
+
+    private void commitBatches() throws InterruptedException {
+        long ackTimeoutMs = config.getKafkaBatchAckTimeoutMs();
+        SerializedBatch batch;
+        while ((batch = pendingQueue.take()) != END_OF_RECORDS) {
+            try {
+                commitBatch(batch, ackTimeoutMs);
+            } finally {
+                release(batch.getSource());
+                transferWaitingBatches();
+            }
+        }
+    }
+
+    private void commitBatch(SerializedBatch batch, long ackTimeoutMs) throws InterruptedException {
+        if (failed.get()) {
+            return;
+        }
+
+        RowBatch source = batch.getSource();
+        BatchAcknowledgement acknowledgement = batch.getAcknowledgement();
+        if (!acknowledgement.await(ackTimeoutMs, TimeUnit.MILLISECONDS)) {
+            fail("Timed out waiting for " + acknowledgement.getPending() + " of " + source.size()
+                    + " records to be acknowledged by Kafka", null);
+            return;
+        }
+
+        // The batch is only checkpointed if every record was delivered, a restart sends it again
+        if (!acknowledgement.isDelivered()) {
+            String undelivered = acknowledgement.getFailed() + " of " + source.size() + " records not delivered";
+            fail(source.getRange() == null
+                    ? "Failed to process batch starting at offset " + source.getOffset() + ": " + undelivered
+                    : "Failed to process batch in token range " + source.getRange() + ": " + undelivered, null);
+            return;
+        }
+
+        progressTracker.commit(source);
+
+        // Check if the record sink is still healthy
+        if (!recordSink.isHealthy()) {
+            logger.error("Record sink is not healthy, stopping export process");
+            fail("Record sink failed after multiple retries", null);
+        }
+    }
+
+    private boolean isAborted() {
+        return failed.get() || !running.get();
+    }
+
+    private void fail(String errorMsg, Exception e) {
+        if (e != null) {
+            logger.error(errorMsg, e);
+        } else {
+            logger.error(errorMsg);
+        }
+        // Only the first failure is recorded, the ones after it are usually caused by the abort
+        if (failed.compareAndSet(false, true)) {
+            checkpointState.setError(errorMsg);
+            checkpointWriter.flush();
+        }
+    }
+
+    private void saveCheckpoint() {
+        checkpointWriter.flush();
+    }
+
+    private Runnable guarded(StageTask task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Export pipeline interrupted", null);
+            } catch (Exception e) {
+                fail("Export pipeline stage failed: " + e.getMessage(), e);
+            }
+        };
+    }
+
+    private interface StageTask {
+        void run() throws Exception;
+    }
+
+    private static void awaitStage(ExecutorService stage) throws InterruptedException {
+        stage.shutdown();
+        stage.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
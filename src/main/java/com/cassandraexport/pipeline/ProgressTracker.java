@@ -0,0 +1,93 @@
+package com.cassandraexport.pipeline;
+
+import com.cassandraexport.cassandra.TokenRange;
+import com.cassandraexport.model.CheckpointState;
+import com.cassandraexport.model.CheckpointWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Applies acknowledged batches to the checkpoint. Batches of the same token range (or of the
+ * sequential query) may be acknowledged out of order when several workers run in parallel, so a
+ * batch is only checkpointed once every batch before it in its stream has been committed.
+ * Committed batches are handed to the {@link CheckpointWriter}, which persists them in the background.
+ */
+class ProgressTracker {
+    private static final Logger logger = LoggerFactory.getLogger(ProgressTracker.class);
+    private static final int SEQUENTIAL_STREAM = -1;
+
+    private final CheckpointState checkpointState;
+    private final CheckpointWriter checkpointWriter;
+    private final long totalRecordsToProcess;
+    private final Map<Integer, StreamProgress> streams = new HashMap<>();
+    private long totalProcessed;
+
+    private static class StreamProgress {
+        private long nextSequence;
+        private long records;
+        private final TreeMap<Long, RowBatch> acknowledged = new TreeMap<>();
+    }
+
+    ProgressTracker(CheckpointState checkpointState, CheckpointWriter checkpointWriter, long totalRecordsToProcess) {
+        this.checkpointState = checkpointState;
+        this.checkpointWriter = checkpointWriter;
+        this.totalRecordsToProcess = totalRecordsToProcess;
+        this.totalProcessed = checkpointState.getRecordsProcessed();
+    }
+
+    void commit(RowBatch batch) {
+        int streamId = batch.getRange() == null ? SEQUENTIAL_STREAM : batch.getRange().getIndex();
+
+        synchronized (checkpointState) {
+            StreamProgress stream = streams.get(streamId);
+            if (stream == null) {
+                stream = new StreamProgress();
+                streams.put(streamId, stream);
+            }
+            stream.acknowledged.put(batch.getSequence(), batch);
+
+            RowBatch next;
+            while ((next = stream.acknowledged.remove(stream.nextSequence)) != null) {
+                apply(next, stream);
+                stream.nextSequence++;
+            }
+        }
+    }
+
+    private void apply(RowBatch batch, StreamProgress stream) {
+        int recordsInBatch = batch.size();
+        totalProcessed += recordsInBatch;
+
+        if (batch.getRange() == null) {
+            checkpointState.updateProgress(batch.getOffset() + recordsInBatch, recordsInBatch, batch.getPagingState());
+        } else {
+            TokenRange range = batch.getRange();
+            stream.records += recordsInBatch;
+            if (batch.isEndOfRange()) {
+                checkpointState.markRangeCompleted(range.getIndex(), range.getStart(), range.getEnd());
+                logger.debug("Token range {} completed with {} records", range, stream.records);
+            } else {
+                // A restart resumes the range at the paging state of its last committed batch
+                checkpointState.updateRangeProgress(range.getIndex(), range.getStart(), range.getEnd(),
+                        batch.getPagingState(), recordsInBatch);
+            }
+        }
+        checkpointWriter.recordProgress(recordsInBatch);
+
+        if (recordsInBatch > 0) {
+            logger.info("Progress: {}/{} records processed ({}%)",
+                    totalProcessed, totalRecordsToProcess,
+                    (totalProcessed * 100) / totalRecordsToProcess);
+        }
+    }
+
+    long getTotalProcessed() {
+        synchronized (checkpointState) {
+            return totalProcessed;
+        }
+    }
+}
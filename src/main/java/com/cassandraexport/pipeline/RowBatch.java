@@ -0,0 +1,91 @@
+package com.cassandraexport.pipeline;
+
+import com.cassandraexport.cassandra.TokenRange;
+import com.datastax.oss.driver.api.core.cql.Row;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of rows read from Cassandra, tagged with the position it was read from so it can be
+ * checkpointed once its records have been acknowledged.
+ */
+public class RowBatch {
+    private final TokenRange range;
+    private final long sequence;
+    private final long offset;
+    private List<Row> rows;
+    private final int size;
+    private final String pagingState;
+    private final boolean endOfRange;
+
+    private RowBatch(TokenRange range, long sequence, long offset, List<Row> rows,
+                     String pagingState, boolean endOfRange) {
+        this.range = range;
+        this.sequence = sequence;
+        this.offset = offset;
+        this.rows = rows;
+        this.size = rows.size();
+        this.pagingState = pagingState;
+        this.endOfRange = endOfRange;
+    }
+
+    /**
+     * A page of the sequential query starting at {@code offset}, followed by the page at {@code pagingState}.
+     */
+    public static RowBatch sequential(long sequence, long offset, List<Row> rows, String pagingState) {
+        return new RowBatch(null, sequence, offset, rows, pagingState, false);
+    }
+
+    /**
+     * The {@code sequence}-th batch of a token range scan, the scan of the range resumes at {@code pagingState}.
+     */
+    public static RowBatch ofRange(TokenRange range, long sequence, List<Row> rows, String pagingState) {
+        return new RowBatch(range, sequence, 0, rows, pagingState, false);
+    }
+
+    /**
+     * An empty marker following the last batch of a token range, the range is complete once it is committed.
+     */
+    public static RowBatch endOfRange(TokenRange range, long sequence) {
+        return new RowBatch(range, sequence, 0, Collections.<Row>emptyList(), null, true);
+    }
+
+    public TokenRange getRange() {
+        return range;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the rows, {@code null} once they were serialized
+     */
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    /**
+     * Drops the rows once they are serialized, the batch is only kept for its position until it is committed.
+     */
+    void releaseRows() {
+        rows = null;
+    }
+
+    public String getPagingState() {
+        return pagingState;
+    }
+
+    public boolean isEndOfRange() {
+        return endOfRange;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,63 @@
+package com.cassandraexport.pipeline;
+
+import com.cassandraexport.kafka.BatchAcknowledgement;
+
+import java.util.List;
+
+/**
+ * The Kafka keys, partition tokens and values of a {@link RowBatch}, as produced by the serializer stage.
+ */
+class SerializedBatch {
+    private final RowBatch source;
+    private List<byte[]> keys;
+    private long[] tokens;
+    private List<byte[]> values;
+    private final int serializationFailures;
+    private BatchAcknowledgement acknowledgement;
+
+    SerializedBatch(RowBatch source, List<byte[]> keys, long[] tokens, List<byte[]> values,
+                    int serializationFailures) {
+        this.source = source;
+        this.keys = keys;
+        this.tokens = tokens;
+        this.values = values;
+        this.serializationFailures = serializationFailures;
+    }
+
+    RowBatch getSource() {
+        return source;
+    }
+
+    List<byte[]> getKeys() {
+        return keys;
+    }
+
+    long[] getTokens() {
+        return tokens;
+    }
+
+    List<byte[]> getValues() {
+        return values;
+    }
+
+    /**
+     * Drops the records once the sink has them, the batch only waits for their acknowledgements.
+     */
+    void releaseRecords() {
+        keys = null;
+        tokens = null;
+        values = null;
+    }
+
+    int getSerializationFailures() {
+        return serializationFailures;
+    }
+
+    BatchAcknowledgement getAcknowledgement() {
+        return acknowledgement;
+    }
+
+    void setAcknowledgement(BatchAcknowledgement acknowledgement) {
+        this.acknowledgement = acknowledgement;
+    }
+}
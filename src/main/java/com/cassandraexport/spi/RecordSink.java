@@ -0,0 +1,71 @@
+package com.cassandraexport.spi;
+
+import com.cassandraexport.codec.ByteArrayPool;
+import com.cassandraexport.codec.RowCodec;
+import com.cassandraexport.kafka.BatchAcknowledgement;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Where the exporter writes encoded records to. {@link com.cassandraexport.kafka.KafkaProducer}
+ * sends them to the Kafka topic, other sinks can replace it without changing the export loop, the
+ * pipeline or checkpointing. A batch is only checkpointed after the sink has acknowledged its records.
+ */
+public interface RecordSink extends AutoCloseable {
+
+    /**
+     * Writes a record and waits until it is durable.
+     *
+     * @param token the Murmur3 token of the row's partition key, or {@link RowCodec#NO_TOKEN}; a hint
+     *              sinks may use to place the record
+     * @return {@code false} if the record could not be written
+     */
+    boolean sendEncoded(byte[] key, long token, byte[] value) throws InterruptedException;
+
+    /**
+     * Submits a record without waiting. The outcome must be reported to {@code acknowledgement}
+     * exactly once, from any thread. May block to bound the records in flight.
+     */
+    void sendEncodedAsync(byte[] key, long token, byte[] value, BatchAcknowledgement acknowledgement)
+            throws InterruptedException;
+
+    /**
+     * Waits until every record written so far is durable.
+     */
+    void flush();
+
+    /**
+     * @return {@code false} once the sink keeps failing and the export should stop
+     */
+    boolean isHealthy();
+
+    /**
+     * @return the pool encoded values should be taken from, or {@code null} if the sink keeps a
+     *         reference to values after accepting them
+     */
+    default ByteArrayPool getValueBufferPool() {
+        return null;
+    }
+
+    /**
+     * Takes over the records a previous run acknowledged but had not delivered yet, named by the
+     * checkpoint, and reports every later change to such records to {@code segmentListener}, which keeps
+     * the checkpoint in step. Sinks that deliver every record before acknowledging it have none.
+     *
+     * @param segments the spill segments named by the checkpoint, oldest first
+     * @throws IllegalStateException if the sink cannot deliver the records of {@code segments}
+     */
+    default void resumeSpill(List<String> segments, Consumer<List<String>> segmentListener) {
+        if (!segments.isEmpty()) {
+            throw new IllegalStateException("The checkpoint names " + segments.size()
+                    + " spill segments with records this sink cannot deliver");
+        }
+    }
+
+    /**
+     * Delivers or keeps any records that were acknowledged but not delivered yet, then releases the sink.
+     */
+    @Override
+    void close();
+}
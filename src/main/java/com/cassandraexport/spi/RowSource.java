@@ -0,0 +1,112 @@
+package com.cassandraexport.spi;
+
+import com.cassandraexport.cassandra.ResultPage;
+import com.cassandraexport.cassandra.TokenRange;
+import com.cassandraexport.codec.RowCodec;
+import com.datastax.oss.driver.api.core.cql.Row;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Where the exporter reads rows from. {@link com.cassandraexport.cassandra.CassandraClient} reads
+ * them from the cluster, other sources can replace it without changing the export loop, the pipeline
+ * or checkpointing.
+ *
+ * <p>Positions are opaque strings that the exporter stores in the checkpoint and passes back to
+ * resume a read, e.g. the Base64 encoded driver paging state. Implementations must be safe for
+ * concurrent scans of different token ranges.
+ */
+public interface RowSource extends AutoCloseable {
+
+    /**
+     * Receives the rows of a token range scan, one batch at a time.
+     */
+    interface BatchHandler {
+        /**
+         * @param pagingState where the scan of the range resumes after this batch, {@code null} after the last one
+         * @return {@code true} to keep scanning, {@code false} to abort the scan
+         */
+        boolean onBatch(List<Row> batch, String pagingState);
+    }
+
+    /**
+     * Receives the rows of an asynchronous token range scan. Called from the threads of the source,
+     * e.g. the driver's I/O threads, so it must not block.
+     */
+    interface AsyncBatchHandler {
+        /**
+         * @param pagingState where the scan of the range resumes after this batch, {@code null} after the last one
+         * @return completes once the batch has been taken, with {@code true} to keep scanning or
+         *         {@code false} to abort the scan; the source does not hand out the next batch before
+         */
+        CompletionStage<Boolean> onBatch(List<Row> batch, String pagingState);
+    }
+
+    /**
+     * Fetches the page of the sequential read that starts at {@code pagingState}.
+     *
+     * @param pagingState position returned with a previous page, or {@code null} to start from the first row
+     */
+    ResultPage fetchPage(String pagingState, int pageSize);
+
+    /**
+     * Streams every row of a token range exactly once to {@code handler}, in batches of at most
+     * {@code batchSize} rows.
+     *
+     * @param pagingState position of a previously interrupted scan of this range, or {@code null}
+     *                    to scan it from its start
+     * @return {@code true} if the whole range was scanned, {@code false} if the handler aborted it
+     */
+    boolean scanRange(TokenRange range, String pagingState, int batchSize, BatchHandler handler);
+
+    /**
+     * Starts a scan of a token range like {@link #scanRange} without holding a thread while pages are
+     * fetched. Sources may fetch the page after a batch while {@code handler} has not taken the batch
+     * yet, but never further ahead. The calling thread may block until the source has capacity for
+     * another scan.
+     *
+     * <p>The default scans synchronously in the calling thread.
+     *
+     * @return completes with {@code true} if the whole range was scanned, {@code false} if the handler
+     *         aborted it, or exceptionally if the scan failed
+     */
+    default CompletionStage<Boolean> scanRangeAsync(TokenRange range, String pagingState, int batchSize,
+                                                    AsyncBatchHandler handler) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            result.complete(scanRange(range, pagingState, batchSize,
+                    (batch, nextPagingState) -> handler.onBatch(batch, nextPagingState).toCompletableFuture().join()));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * @return {@code true} if the source can limit its reads with {@link #setWriteTimeWatermark}, which
+     *         the exporter checks before an incremental run; the default supports no incremental exports
+     */
+    default boolean supportsWriteTimeWatermark() {
+        return false;
+    }
+
+    /**
+     * Limits the reads of an incremental export to the rows written after {@code watermark}, in
+     * microseconds since the epoch, see {@code cassandra.incremental.column}. Positions still move over
+     * the rows left out, so a read may hand out fewer rows than it read, or none.
+     *
+     * <p>Only called if {@link #supportsWriteTimeWatermark()}; the default does nothing.
+     */
+    default void setWriteTimeWatermark(long watermark) {
+    }
+
+    /**
+     * @return the codec for the rows of this source
+     */
+    RowCodec getRowCodec();
+
+    @Override
+    void close();
+}
@@ -1,27 +1,35 @@
 package com.cassandraexport;
 
 import com.cassandraexport.cassandra.CassandraClient;
+import com.cassandraexport.cassandra.ResultPage;
+import com.cassandraexport.cassandra.TokenRange;
+import com.cassandraexport.codec.RowCodec;
+import com.cassandraexport.codec.TestRows;
+import com.cassandraexport.config.AppConfig;
 import com.cassandraexport.config.TestAppConfig;
+import com.cassandraexport.kafka.BatchAcknowledgement;
 import com.cassandraexport.kafka.KafkaProducer;
 import com.cassandraexport.model.CheckpointState;
+import com.cassandraexport.spi.RecordSink;
+import com.cassandraexport.spi.RowSource;
+import com.datastax.oss.driver.api.core.cql.Row;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
-import org.mockito.Mock;
 import org.mockito.MockedConstruction;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -32,14 +40,12 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 public class CassandraToKafkaExporterTest {
 
-    @Mock
-    private CheckpointState mockCheckpointState;
-    
     @TempDir
     Path tempDir;
     
     private Properties testProperties;
     private String checkpointFile;
+    private RowCodec rowCodec;
     
     @BeforeEach
     void setUp() {
@@ -54,214 +60,584 @@ public class CassandraToKafkaExporterTest {
         
         // Inject test properties
         TestAppConfig.injectTestProperties(testProperties);
+        
+        rowCodec = TestRows.codec();
     }
     
     @Test
     void testStartNewExport() throws Exception {
-        // Use mocked static for CheckpointState.load
-        try (MockedStatic<CheckpointState> mockedCheckpointState = Mockito.mockStatic(CheckpointState.class)) {
-            // Mock CheckpointState.load() to return our mock
-            mockedCheckpointState.when(() -> CheckpointState.load(anyString())).thenReturn(mockCheckpointState);
-            when(mockCheckpointState.isCompleted()).thenReturn(false);
-            when(mockCheckpointState.getLastProcessedOffset()).thenReturn(0L);
-            when(mockCheckpointState.getRecordsProcessed()).thenReturn(0L);
+        // Mock sample data
+        List<Row> sampleBatch1 = createSampleBatch(5, 0);
+        List<Row> sampleBatch2 = createSampleBatch(5, 5);
+        List<Row> emptyBatch = new ArrayList<>();
+        
+        // Mock CassandraClient and KafkaProducer
+        try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class,
+                (mock, context) -> {
+                    when(mock.getRowCodec()).thenReturn(rowCodec);
+                    // Return sample batches in sequence
+                    when(mock.fetchPage(null, 100)).thenReturn(new ResultPage(sampleBatch1, "page-2"));
+                    when(mock.fetchPage("page-2", 100)).thenReturn(new ResultPage(sampleBatch2, "page-3"));
+                    when(mock.fetchPage("page-3", 100)).thenReturn(new ResultPage(emptyBatch, null));
+                });
+             MockedConstruction<KafkaProducer> mockedKafkaProducer = Mockito.mockConstruction(KafkaProducer.class,
+                (mock, context) -> {
+                    when(mock.sendEncoded(any(byte[].class), anyLong(), any(byte[].class))).thenReturn(true);
+                    when(mock.isHealthy()).thenReturn(true);
+                })
+        ) {
+            // Create and run the exporter
+            CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
+            exporter.start();
+            
+            // Verify CassandraClient and KafkaProducer were constructed
+            assertEquals(1, mockedCassandraClient.constructed().size());
+            assertEquals(1, mockedKafkaProducer.constructed().size());
+            
+            // Verify batch processing, the checkpoint carries the paging state of the next page
+            CheckpointState checkpointState = CheckpointState.load(checkpointFile);
+            assertEquals(10, checkpointState.getLastProcessedOffset());
+            assertEquals(10, checkpointState.getRecordsProcessed());
+            assertEquals(2, checkpointState.getBatchesProcessed());
+            assertEquals("page-3", checkpointState.getPagingState());
+            
+            // Not completed since we only processed 10 records and the totalRecords in our config is 1000
+            assertFalse(checkpointState.isCompleted());
+        }
+    }
+    
+    @Test
+    void testResumeExport() throws Exception {
+        // A previously interrupted job, resumed from offset 5
+        CheckpointState previousRun = new CheckpointState();
+        previousRun.updateProgress(5, 5, "page-2");
+        previousRun.setError("Previous error");
+        previousRun.save(checkpointFile);
+        
+        // Mock sample data
+        List<Row> sampleBatch2 = createSampleBatch(5, 5);
+        
+        // Mock CassandraClient and KafkaProducer
+        try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class,
+                (mock, context) -> {
+                    when(mock.getRowCodec()).thenReturn(rowCodec);
+                    // Return sample batches in sequence - starting from resume point
+                    when(mock.fetchPage("page-2", 100)).thenReturn(new ResultPage(sampleBatch2, null));
+                });
+             MockedConstruction<KafkaProducer> mockedKafkaProducer = Mockito.mockConstruction(KafkaProducer.class,
+                (mock, context) -> {
+                    when(mock.sendEncoded(any(byte[].class), anyLong(), any(byte[].class))).thenReturn(true);
+                    when(mock.isHealthy()).thenReturn(true);
+                })
+        ) {
+            // Create and run the exporter
+            CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
+            exporter.start();
+            
+            // Verify resumed from correct point
+            CassandraClient cassandraClient = mockedCassandraClient.constructed().get(0);
+            verify(cassandraClient).fetchPage("page-2", 100);
+            verify(cassandraClient, never()).fetchPage(null, 100);
+            
+            // Verify only one batch was processed from the resume point
+            CheckpointState checkpointState = CheckpointState.load(checkpointFile);
+            assertEquals(10, checkpointState.getLastProcessedOffset());
+            assertEquals(2, checkpointState.getBatchesProcessed());
+            assertNull(checkpointState.getPagingState());
+            
+            // Not completed since we only processed 10 records total and the totalRecords in our config is 1000
+            assertFalse(checkpointState.isCompleted());
+        }
+    }
+    
+    @Test
+    void testResumeExportWithoutPagingState() throws Exception {
+        // A checkpoint written before paging states were stored only has an offset
+        CheckpointState previousRun = new CheckpointState();
+        previousRun.updateProgress(3, 3);
+        previousRun.save(checkpointFile);
+        
+        List<Row> sampleBatch = createSampleBatch(5, 0);
+        
+        try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class,
+                (mock, context) -> {
+                    when(mock.getRowCodec()).thenReturn(rowCodec);
+                    when(mock.fetchPage(null, 100)).thenReturn(new ResultPage(sampleBatch, null));
+                });
+             MockedConstruction<KafkaProducer> mockedKafkaProducer = Mockito.mockConstruction(KafkaProducer.class,
+                (mock, context) -> {
+                    when(mock.sendEncoded(any(byte[].class), anyLong(), any(byte[].class))).thenReturn(true);
+                    when(mock.isHealthy()).thenReturn(true);
+                })
+        ) {
+            CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
+            exporter.start();
+            
+            // The first 3 rows were already exported and are skipped
+            KafkaProducer kafkaProducer = mockedKafkaProducer.constructed().get(0);
+            verify(kafkaProducer, times(2)).sendEncoded(any(byte[].class), anyLong(), any(byte[].class));
+            verify(kafkaProducer, never()).sendEncoded(aryEq("0".getBytes(StandardCharsets.UTF_8)), anyLong(), any(byte[].class));
+            CheckpointState checkpointState = CheckpointState.load(checkpointFile);
+            assertEquals(5, checkpointState.getLastProcessedOffset());
+            assertEquals(5, checkpointState.getRecordsProcessed());
+            assertNull(checkpointState.getPagingState());
+        }
+    }
+    
+    @Test
+    void testAlreadyCompletedExport() throws Exception {
+        // A completed job
+        CheckpointState previousRun = new CheckpointState();
+        previousRun.updateProgress(1000, 1000, null);
+        previousRun.markCompleted();
+        previousRun.save(checkpointFile);
+        
+        try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class)) {
+            // Create and run the exporter
+            CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
+            exporter.start();
+            
+            // Verify we don't try to process anything if job is already marked complete
+            assertTrue(mockedCassandraClient.constructed().isEmpty());
+            CheckpointState checkpointState = CheckpointState.load(checkpointFile);
+            assertTrue(checkpointState.isCompleted());
+            assertEquals(1, checkpointState.getBatchesProcessed());
+        }
+    }
+    
+    @Test
+    void testBatchFailure() throws Exception {
+        // Mock sample data
+        List<Row> sampleBatch = createSampleBatch(5, 0);
+        
+        // Mock CassandraClient and KafkaProducer with failure
+        try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class,
+                (mock, context) -> {
+                    when(mock.getRowCodec()).thenReturn(rowCodec);
+                    when(mock.fetchPage(null, 100)).thenReturn(new ResultPage(sampleBatch, "page-2"));
+                });
+             MockedConstruction<KafkaProducer> mockedKafkaProducer = Mockito.mockConstruction(KafkaProducer.class,
+                (mock, context) -> {
+                    // Simulate failures for all records
+                    when(mock.sendEncoded(any(byte[].class), anyLong(), any(byte[].class))).thenReturn(false);
+                })
+        ) {
+            // Create and run the exporter
+            CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
+            exporter.start();
+            
+            // Verify error was set and no progress was made
+            CheckpointState checkpointState = CheckpointState.load(checkpointFile);
+            assertEquals("Failed to process batch starting at offset 0", checkpointState.getErrorMessage());
+            assertEquals(0, checkpointState.getBatchesProcessed());
+            assertEquals(0, checkpointState.getLastProcessedOffset());
+        }
+    }
+    
+    @Test
+    void testCompleteExport() throws Exception {
+        // Override test properties to set a smaller totalRecords value
+        Properties smallConfig = new Properties();
+        smallConfig.putAll(testProperties); // Keep existing properties
+        smallConfig.setProperty("cassandra.totalRecords", "5");
+        smallConfig.setProperty("cassandra.batchSize", "5");
+        TestAppConfig.injectTestProperties(smallConfig);
+        
+        // Mock sample data - just enough to complete
+        List<Row> sampleBatch = createSampleBatch(5, 0);
+        
+        // Mock CassandraClient and KafkaProducer
+        try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class,
+                (mock, context) -> {
+                    when(mock.getRowCodec()).thenReturn(rowCodec);
+                    // Mock fetchBatch to return data
+                    when(mock.fetchPage(null, 5)).thenReturn(new ResultPage(sampleBatch, "page-2"));
+                });
+             MockedConstruction<KafkaProducer> mockedKafkaProducer = Mockito.mockConstruction(KafkaProducer.class,
+                (mock, context) -> {
+                    // Mock sendRecord to always succeed
+                    when(mock.sendEncoded(any(byte[].class), anyLong(), any(byte[].class))).thenReturn(true);
+                    when(mock.isHealthy()).thenReturn(true);
+                })
+        ) {
+            // Create and run the exporter
+            CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
+            exporter.start();
+            
+            // Verify progress was saved for the batch, and the export completed since we've processed
+            // enough records
+            CheckpointState checkpointState = CheckpointState.load(checkpointFile);
+            assertEquals(5, checkpointState.getLastProcessedOffset());
+            assertEquals("page-2", checkpointState.getPagingState());
+            assertTrue(checkpointState.isCompleted());
+        }
+    }
+    
+    @Test
+    void testAsyncSendMode() throws Exception {
+        testProperties.setProperty("kafka.sendMode", "async");
+        
+        List<Row> sampleBatch1 = createSampleBatch(5, 0);
+        List<Row> sampleBatch2 = createSampleBatch(5, 5);
+        
+        try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class,
+                (mock, context) -> {
+                    when(mock.getRowCodec()).thenReturn(rowCodec);
+                    when(mock.fetchPage(null, 100)).thenReturn(new ResultPage(sampleBatch1, "page-2"));
+                    when(mock.fetchPage("page-2", 100)).thenReturn(new ResultPage(sampleBatch2, null));
+                });
+             MockedConstruction<KafkaProducer> mockedKafkaProducer = Mockito.mockConstruction(KafkaProducer.class,
+                (mock, context) -> {
+                    // Acknowledge every record except the one with id 7
+                    doAnswer(invocation -> {
+                        BatchAcknowledgement acknowledgement = invocation.getArgument(3);
+                        if ("7".equals(new String(invocation.<byte[]>getArgument(0), StandardCharsets.UTF_8))) {
+                            acknowledgement.recordFailure();
+                        } else {
+                            acknowledgement.recordSuccess();
+                        }
+                        return null;
+                    }).when(mock).sendEncodedAsync(any(byte[].class), anyLong(), any(byte[].class), any(BatchAcknowledgement.class));
+                    when(mock.isHealthy()).thenReturn(true);
+                })
+        ) {
+            CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
+            exporter.start();
+            
+            KafkaProducer kafkaProducer = mockedKafkaProducer.constructed().get(0);
+            verify(kafkaProducer, times(10)).sendEncodedAsync(any(byte[].class), anyLong(), any(byte[].class), any(BatchAcknowledgement.class));
+            verify(kafkaProducer, never()).sendEncoded(any(byte[].class), anyLong(), any(byte[].class));
             
-            // Mock sample data
-            List<Map<String, Object>> sampleBatch1 = createSampleBatch(5, 0);
-            List<Map<String, Object>> sampleBatch2 = createSampleBatch(5, 5);
-            List<Map<String, Object>> emptyBatch = new ArrayList<>();
+            // The first batch is fully acknowledged, one failed record out of five fails the second batch
+            CheckpointState checkpointState = CheckpointState.load(checkpointFile);
+            assertEquals(5, checkpointState.getLastProcessedOffset());
+            assertEquals(1, checkpointState.getBatchesProcessed());
+            assertEquals("page-2", checkpointState.getPagingState());
+            assertNotNull(checkpointState.getErrorMessage());
+        }
+    }
+    
+    @Test
+    void testPipelineMode() throws Exception {
+        testProperties.setProperty("pipeline.enabled", "true");
+        
+        CheckpointState checkpointState = new CheckpointState();
+        List<Row> sampleBatch1 = createSampleBatch(5, 0);
+        List<Row> sampleBatch2 = createSampleBatch(5, 5);
+        
+        try (MockedStatic<CheckpointState> mockedCheckpointState = Mockito.mockStatic(CheckpointState.class)) {
+            mockedCheckpointState.when(() -> CheckpointState.load(anyString())).thenReturn(checkpointState);
             
-            // Mock CassandraClient and KafkaProducer
             try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class,
                     (mock, context) -> {
-                        // Return sample batches in sequence
-                        when(mock.fetchBatch(0, 100)).thenReturn(sampleBatch1);
-                        when(mock.fetchBatch(5, 100)).thenReturn(sampleBatch2);
-                        when(mock.fetchBatch(10, 100)).thenReturn(emptyBatch);
+                        when(mock.getRowCodec()).thenReturn(rowCodec);
+                        when(mock.fetchPage(null, 100)).thenReturn(new ResultPage(sampleBatch1, "page-2"));
+                        when(mock.fetchPage("page-2", 100)).thenReturn(new ResultPage(sampleBatch2, null));
                     });
                  MockedConstruction<KafkaProducer> mockedKafkaProducer = Mockito.mockConstruction(KafkaProducer.class,
                     (mock, context) -> {
-                        when(mock.sendRecord(anyString(), any(Map.class))).thenReturn(true);
+                        doAnswer(invocation -> {
+                            invocation.<BatchAcknowledgement>getArgument(3).recordSuccess();
+                            return null;
+                        }).when(mock).sendEncodedAsync(any(byte[].class), anyLong(), any(byte[].class), any(BatchAcknowledgement.class));
                         when(mock.isHealthy()).thenReturn(true);
                     })
             ) {
-                // Create and run the exporter
                 CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
                 exporter.start();
                 
-                // Verify CassandraClient and KafkaProducer were constructed
-                assertEquals(1, mockedCassandraClient.constructed().size());
-                assertEquals(1, mockedKafkaProducer.constructed().size());
+                // Records flow through the pipeline stages instead of the single-threaded loop
+                KafkaProducer kafkaProducer = mockedKafkaProducer.constructed().get(0);
+                verify(kafkaProducer, times(10)).sendEncodedAsync(any(byte[].class), anyLong(), any(byte[].class), any(BatchAcknowledgement.class));
+                verify(kafkaProducer, never()).sendEncoded(any(byte[].class), anyLong(), any(byte[].class));
                 
-                // Verify batch processing
-                verify(mockCheckpointState, times(2)).updateProgress(anyLong(), anyInt());
-                
-                // Verify markCompleted is not called since we only processed 10 records
-                // and the totalRecords in our config is 1000
-                verify(mockCheckpointState, never()).markCompleted();
+                assertEquals(10, checkpointState.getRecordsProcessed());
+                assertEquals(10, checkpointState.getLastProcessedOffset());
+                assertNull(checkpointState.getErrorMessage());
             }
         }
     }
     
     @Test
-    void testResumeExport() throws Exception {
-        // Use mocked static for CheckpointState.load
+    void testTokenRangeExport() throws Exception {
+        testProperties.setProperty("cassandra.scanMode", "token");
+        testProperties.setProperty("cassandra.tokenRangeSplits", "4");
+        testProperties.setProperty("cassandra.scanParallelism", "2");
+        
+        CheckpointState checkpointState = new CheckpointState();
+        checkpointState.setTotalRanges(4);
+        TokenRange completedRange = TokenRange.splitRing(4).get(1);
+        checkpointState.updateRangeProgress(1, completedRange.getStart(), completedRange.getEnd(), null, 5);
+        checkpointState.markRangeCompleted(1, completedRange.getStart(), completedRange.getEnd());
+        
         try (MockedStatic<CheckpointState> mockedCheckpointState = Mockito.mockStatic(CheckpointState.class)) {
-            // Mock CheckpointState.load() to return our mock - simulating a previously interrupted job
-            mockedCheckpointState.when(() -> CheckpointState.load(anyString())).thenReturn(mockCheckpointState);
-            when(mockCheckpointState.isCompleted()).thenReturn(false);
-            when(mockCheckpointState.getLastProcessedOffset()).thenReturn(5L); // Resume from offset 5
-            when(mockCheckpointState.getRecordsProcessed()).thenReturn(5L);
-            when(mockCheckpointState.getErrorMessage()).thenReturn("Previous error");
-            
-            // Mock sample data
-            List<Map<String, Object>> sampleBatch2 = createSampleBatch(5, 5);
-            List<Map<String, Object>> emptyBatch = new ArrayList<>();
+            mockedCheckpointState.when(() -> CheckpointState.load(anyString())).thenReturn(checkpointState);
             
-            // Mock CassandraClient and KafkaProducer
+            // Every range yields one batch of 5 records
             try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class,
                     (mock, context) -> {
-                        // Return sample batches in sequence - starting from resume point
-                        when(mock.fetchBatch(5, 100)).thenReturn(sampleBatch2);
-                        when(mock.fetchBatch(10, 100)).thenReturn(emptyBatch);
+                        when(mock.getRowCodec()).thenReturn(rowCodec);
+                        when(mock.scanRange(any(TokenRange.class), isNull(), eq(100), any())).thenAnswer(invocation -> {
+                            TokenRange range = invocation.getArgument(0);
+                            RowSource.BatchHandler handler = invocation.getArgument(3);
+                            return handler.onBatch(createSampleBatch(5, range.getIndex() * 5), null);
+                        });
                     });
                  MockedConstruction<KafkaProducer> mockedKafkaProducer = Mockito.mockConstruction(KafkaProducer.class,
                     (mock, context) -> {
-                        when(mock.sendRecord(anyString(), any(Map.class))).thenReturn(true);
+                        when(mock.sendEncoded(any(byte[].class), anyLong(), any(byte[].class))).thenReturn(true);
                         when(mock.isHealthy()).thenReturn(true);
                     })
             ) {
-                // Create and run the exporter
                 CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
                 exporter.start();
                 
-                // Verify resumed from correct point
+                // The range completed in the previous run is not scanned again
                 CassandraClient cassandraClient = mockedCassandraClient.constructed().get(0);
-                verify(cassandraClient).fetchBatch(5, 100);
+                verify(cassandraClient, times(3)).scanRange(any(TokenRange.class), isNull(), eq(100), any());
+                verify(cassandraClient, never()).scanRange(eq(completedRange), any(), anyInt(), any());
+                verify(mockedKafkaProducer.constructed().get(0), times(15)).sendEncoded(any(byte[].class), anyLong(), any(byte[].class));
                 
-                // Verify only one batch was processed from the resume point
-                verify(mockCheckpointState, times(1)).updateProgress(anyLong(), anyInt());
-                
-                // Verify markCompleted is not called since we only processed 10 records total
-                // and the totalRecords in our config is 1000
-                verify(mockCheckpointState, never()).markCompleted();
+                assertEquals(4, checkpointState.getCompletedRanges().size());
+                assertEquals(20, checkpointState.getRecordsProcessed());
+                assertTrue(checkpointState.isCompleted());
             }
         }
     }
     
     @Test
-    void testAlreadyCompletedExport() throws Exception {
-        // Use mocked static for CheckpointState.load
-        try (MockedStatic<CheckpointState> mockedCheckpointState = Mockito.mockStatic(CheckpointState.class)) {
-            // Mock CheckpointState.load() to return our mock - simulating a completed job
-            mockedCheckpointState.when(() -> CheckpointState.load(anyString())).thenReturn(mockCheckpointState);
-            when(mockCheckpointState.isCompleted()).thenReturn(true);
-            
-            // Create and run the exporter
-            CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
-            exporter.start();
-            
-            // Verify we don't try to process anything if job is already marked complete
-            verify(mockCheckpointState, never()).updateProgress(anyLong(), anyInt());
-            verify(mockCheckpointState, never()).markCompleted();
-        }
-    }
-    
-    @Test
-    void testBatchFailure() throws Exception {
-        // Use mocked static for CheckpointState.load
+    void testTokenRangeExportResumesPartialRange() throws Exception {
+        testProperties.setProperty("cassandra.scanMode", "token");
+        testProperties.setProperty("cassandra.tokenRangeSplits", "2");
+        testProperties.setProperty("cassandra.scanParallelism", "1");
+        
+        // Range 0 is done, range 1 was interrupted after its first page
+        List<TokenRange> ranges = TokenRange.splitRing(2);
+        CheckpointState checkpointState = new CheckpointState();
+        checkpointState.setTotalRanges(2);
+        checkpointState.updateRangeProgress(0, ranges.get(0).getStart(), ranges.get(0).getEnd(), null, 5);
+        checkpointState.markRangeCompleted(0, ranges.get(0).getStart(), ranges.get(0).getEnd());
+        checkpointState.updateRangeProgress(1, ranges.get(1).getStart(), ranges.get(1).getEnd(), "range-1-page-2", 5);
+        
         try (MockedStatic<CheckpointState> mockedCheckpointState = Mockito.mockStatic(CheckpointState.class)) {
-            // Mock CheckpointState.load() to return our mock
-            mockedCheckpointState.when(() -> CheckpointState.load(anyString())).thenReturn(mockCheckpointState);
-            when(mockCheckpointState.isCompleted()).thenReturn(false);
-            when(mockCheckpointState.getLastProcessedOffset()).thenReturn(0L);
-            when(mockCheckpointState.getRecordsProcessed()).thenReturn(0L);
-            
-            // Mock sample data
-            List<Map<String, Object>> sampleBatch = createSampleBatch(5, 0);
+            mockedCheckpointState.when(() -> CheckpointState.load(anyString())).thenReturn(checkpointState);
             
-            // Mock CassandraClient and KafkaProducer with failure
             try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class,
                     (mock, context) -> {
-                        when(mock.fetchBatch(0, 100)).thenReturn(sampleBatch);
+                        when(mock.getRowCodec()).thenReturn(rowCodec);
+                        when(mock.scanRange(eq(ranges.get(1)), eq("range-1-page-2"), eq(100), any())).thenAnswer(invocation -> {
+                            RowSource.BatchHandler handler = invocation.getArgument(3);
+                            return handler.onBatch(createSampleBatch(3, 5), null);
+                        });
                     });
                  MockedConstruction<KafkaProducer> mockedKafkaProducer = Mockito.mockConstruction(KafkaProducer.class,
                     (mock, context) -> {
-                        // Simulate failures for all records
-                        when(mock.sendRecord(anyString(), any(Map.class))).thenReturn(false);
+                        when(mock.sendEncoded(any(byte[].class), anyLong(), any(byte[].class))).thenReturn(true);
+                        when(mock.isHealthy()).thenReturn(true);
                     })
             ) {
-                // Create and run the exporter
                 CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
                 exporter.start();
                 
-                // Verify error was set and no progress was made
-                verify(mockCheckpointState, never()).updateProgress(anyLong(), anyInt());
-                verify(mockCheckpointState, times(1)).setError(anyString());
+                // Only the remaining pages of the interrupted range are exported
+                verify(mockedCassandraClient.constructed().get(0), times(1))
+                        .scanRange(any(TokenRange.class), any(), anyInt(), any());
+                verify(mockedKafkaProducer.constructed().get(0), times(3)).sendEncoded(any(byte[].class), anyLong(), any(byte[].class));
+                assertEquals(8, checkpointState.getRange(1).getRecordsProcessed());
+                assertTrue(checkpointState.isRangeCompleted(1));
+                assertTrue(checkpointState.isCompleted());
             }
         }
     }
     
     @Test
-    void testCompleteExport() throws Exception {
-        // Use mocked static for CheckpointState.load
+    void testTokenRangeExportFailure() throws Exception {
+        testProperties.setProperty("cassandra.scanMode", "token");
+        testProperties.setProperty("cassandra.tokenRangeSplits", "4");
+        testProperties.setProperty("cassandra.scanParallelism", "1");
+        
+        CheckpointState checkpointState = new CheckpointState();
+        
         try (MockedStatic<CheckpointState> mockedCheckpointState = Mockito.mockStatic(CheckpointState.class)) {
-            // Mock CheckpointState.load() to return our mock
-            mockedCheckpointState.when(() -> CheckpointState.load(anyString())).thenReturn(mockCheckpointState);
-            when(mockCheckpointState.isCompleted()).thenReturn(false);
-            when(mockCheckpointState.getLastProcessedOffset()).thenReturn(0L);
-            when(mockCheckpointState.getRecordsProcessed()).thenReturn(0L);
-            
-            // Override test properties to set a smaller totalRecords value
-            Properties smallConfig = new Properties();
-            smallConfig.putAll(testProperties); // Keep existing properties
-            smallConfig.setProperty("cassandra.totalRecords", "5");
-            smallConfig.setProperty("cassandra.batchSize", "5");
-            TestAppConfig.injectTestProperties(smallConfig);
+            mockedCheckpointState.when(() -> CheckpointState.load(anyString())).thenReturn(checkpointState);
             
-            // Mock sample data - just enough to complete
-            List<Map<String, Object>> sampleBatch = createSampleBatch(5, 0);
-            List<Map<String, Object>> emptyBatch = new ArrayList<>();
-            
-            // Mock CassandraClient and KafkaProducer
             try (MockedConstruction<CassandraClient> mockedCassandraClient = Mockito.mockConstruction(CassandraClient.class,
                     (mock, context) -> {
-                        // Mock fetchBatch to return data
-                        when(mock.fetchBatch(0, 5)).thenReturn(sampleBatch);
-                        when(mock.fetchBatch(5, 5)).thenReturn(emptyBatch);
-                        when(mock.isConnected()).thenReturn(true);
+                        when(mock.getRowCodec()).thenReturn(rowCodec);
+                        when(mock.scanRange(any(TokenRange.class), any(), anyInt(), any())).thenAnswer(invocation -> {
+                            RowSource.BatchHandler handler = invocation.getArgument(3);
+                            return handler.onBatch(createSampleBatch(5, 0), "next-page");
+                        });
                     });
                  MockedConstruction<KafkaProducer> mockedKafkaProducer = Mockito.mockConstruction(KafkaProducer.class,
                     (mock, context) -> {
-                        // Mock sendRecord to always succeed
-                        when(mock.sendRecord(anyString(), any(Map.class))).thenReturn(true);
-                        when(mock.isHealthy()).thenReturn(true);
+                        // Simulate failures for all records
+                        when(mock.sendEncoded(any(byte[].class), anyLong(), any(byte[].class))).thenReturn(false);
                     })
             ) {
-                // Create and run the exporter
                 CassandraToKafkaExporter exporter = new CassandraToKafkaExporter();
                 exporter.start();
                 
-                // Verify progress was updated for the batch
-                verify(mockCheckpointState, times(1)).updateProgress(eq(5L), eq(5));
-                
-                // Verify markCompleted is called since we've processed enough records to complete
-                verify(mockCheckpointState, times(1)).markCompleted();
+                // The first failing range stops the remaining ones
+                verify(mockedCassandraClient.constructed().get(0), times(1))
+                        .scanRange(any(TokenRange.class), any(), anyInt(), any());
+                assertTrue(checkpointState.getCompletedRanges().isEmpty());
+                assertNotNull(checkpointState.getErrorMessage());
+                assertFalse(checkpointState.isCompleted());
             }
         }
     }
     
+    @Test
+    void testCustomRowSourceAndRecordSink() throws Exception {
+        testProperties.setProperty("cassandra.totalRecords", "10");
+        testProperties.setProperty("kafka.sendMode", "async");
+        AppConfig config = AppConfig.fromProperties(testProperties);
+        
+        // Plain implementations of the interfaces, no construction mocking needed
+        RowSource rowSource = new RowSource() {
+            @Override
+            public ResultPage fetchPage(String pagingState, int pageSize) {
+                return pagingState == null
+                        ? new ResultPage(createSampleBatch(5, 0), "page-2")
+                        : new ResultPage(createSampleBatch(5, 5), null);
+            }
+            
+            @Override
+            public boolean scanRange(TokenRange range, String pagingState, int batchSize, BatchHandler handler) {
+                throw new UnsupportedOperationException();
+            }
+            
+            @Override
+            public RowCodec getRowCodec() {
+                return rowCodec;
+            }
+            
+            @Override
+            public void close() {
+            }
+        };
+        List<String> keys = new ArrayList<>();
+        RecordSink recordSink = new RecordSink() {
+            @Override
+            public boolean sendEncoded(byte[] key, long token, byte[] value) {
+                keys.add(new String(key, StandardCharsets.UTF_8));
+                return true;
+            }
+            
+            @Override
+            public void sendEncodedAsync(byte[] key, long token, byte[] value, BatchAcknowledgement acknowledgement) {
+                keys.add(new String(key, StandardCharsets.UTF_8));
+                acknowledgement.recordSuccess();
+            }
+            
+            @Override
+            public void flush() {
+            }
+            
+            @Override
+            public boolean isHealthy() {
+                return true;
+            }
+            
+            @Override
+            public void close() {
+            }
+        };
+        
+        new CassandraToKafkaExporter(config, () -> rowSource, () -> recordSink).start();
+        
+        assertEquals(10, keys.size());
+        assertEquals("9", keys.get(9));
+        CheckpointState checkpointState = CheckpointState.load(checkpointFile);
+        assertTrue(checkpointState.isCompleted());
+        assertEquals(10, checkpointState.getRecordsProcessed());
+    }
+    
+    @Test
+    void testIncrementalExportStartsAfterCompletedRun() throws Exception {
+        testProperties.setProperty("cassandra.incremental.column", "updated_at");
+        testProperties.setProperty("cassandra.incremental.overlapMs", "1");
+        AppConfig config = AppConfig.fromProperties(testProperties);
+
+        CheckpointState previousRun = new CheckpointState();
+        previousRun.setRunStartedAt(5_000_000L);
+        previousRun.updateProgress(1000, 1000, null);
+        previousRun.markCompleted();
+        previousRun.save(checkpointFile);
+
+        long[] watermark = {0};
+        RowSource rowSource = new RowSource() {
+            @Override
+            public ResultPage fetchPage(String pagingState, int pageSize) {
+                // Only the changed rows, fewer than cassandra.totalRecords
+                return new ResultPage(createSampleBatch(5, 0), null);
+            }
+
+            @Override
+            public boolean scanRange(TokenRange range, String pagingState, int batchSize, BatchHandler handler) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean supportsWriteTimeWatermark() {
+                return true;
+            }
+
+            @Override
+            public void setWriteTimeWatermark(long writeTimeWatermark) {
+                watermark[0] = writeTimeWatermark;
+            }
+
+            @Override
+            public RowCodec getRowCodec() {
+                return rowCodec;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        RecordSink recordSink = mock(RecordSink.class);
+        when(recordSink.sendEncoded(any(byte[].class), anyLong(), any(byte[].class))).thenReturn(true);
+        when(recordSink.isHealthy()).thenReturn(true);
+
+        long before = System.currentTimeMillis() * 1000;
+        new CassandraToKafkaExporter(config, () -> rowSource, () -> recordSink).start();
+
+        // Rows written since the previous run started, less the overlap
+        assertEquals(4_999_000L, watermark[0]);
+        verify(recordSink, times(5)).sendEncoded(any(byte[].class), anyLong(), any(byte[].class));
+        CheckpointState checkpointState = CheckpointState.load(checkpointFile);
+        assertTrue(checkpointState.isCompleted());
+        assertEquals(5, checkpointState.getRecordsProcessed());
+        assertEquals(4_999_000L, checkpointState.getWriteTimeWatermark());
+        assertTrue(checkpointState.getRunStartedAt() >= before);
+    }
+
+    @Test
+    void testIncrementalExportNeedsWatermarkSupport() throws Exception {
+        testProperties.setProperty("cassandra.incremental.column", "updated_at");
+        AppConfig config = AppConfig.fromProperties(testProperties);
+
+        CheckpointState previousRun = new CheckpointState();
+        previousRun.setRunStartedAt(5_000_000L);
+        previousRun.markCompleted();
+        previousRun.save(checkpointFile);
+
+        RowSource rowSource = mock(RowSource.class);
+        RecordSink recordSink = mock(RecordSink.class);
+        new CassandraToKafkaExporter(config, () -> rowSource, () -> recordSink).start();
+
+        // The run stops before reading instead of exporting every row again
+        verify(rowSource, never()).setWriteTimeWatermark(anyLong());
+        verify(rowSource, never()).fetchPage(any(), anyInt());
+        CheckpointState checkpointState = CheckpointState.load(checkpointFile);
+        assertTrue(checkpointState.getErrorMessage().contains("does not support incremental exports"));
+    }
+
     // Helper method to create a sample batch of records
-    private List<Map<String, Object>> createSampleBatch(int size, int startOffset) {
-        List<Map<String, Object>> batch = new ArrayList<>(size);
-        for (int i = 0; i < size; i++) {
-            Map<String, Object> record = new HashMap<>();
-            int recordNum = startOffset + i;
-            record.put("id", String.valueOf(recordNum));
-            record.put("name", "Test Record " + recordNum);
-            record.put("value", recordNum * 10);
-            batch.add(record);
-        }
-        return batch;
+    private List<Row> createSampleBatch(int size, int startOffset) {
+        return TestRows.rows(size, startOffset);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,72 @@
+package com.cassandraexport.cassandra;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveReadControllerTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    void testFastPagesIncreaseAdditively() {
+        AdaptiveReadController controller = new AdaptiveReadController(1000, 100, 1250, 4, 0);
+        assertEquals(2, controller.getScanLimit());
+
+        controller.onPage(0);
+        assertEquals(1100, controller.getPageSize());
+        assertEquals(2, controller.getScanLimit());
+        controller.onPage(0);
+        assertEquals(1200, controller.getPageSize());
+        assertEquals(3, controller.getScanLimit());
+
+        // Bounded by the maximum page size and scans
+        for (int i = 0; i < 10; i++) {
+            controller.onPage(0);
+        }
+        assertEquals(1250, controller.getPageSize());
+        assertEquals(4, controller.getScanLimit());
+    }
+
+    @Test
+    void testSlowPagesAndTimeoutsDecreaseMultiplicatively() throws Exception {
+        AdaptiveReadController controller = new AdaptiveReadController(1000, 100, 2000, 8, 100);
+        controller.onPage(FAST);
+        assertEquals(1100, controller.getPageSize());
+
+        controller.onPage(SLOW);
+        assertEquals(550, controller.getPageSize());
+        // Further signals within the target latency count as the same slowdown
+        controller.onTimeout();
+        assertEquals(550, controller.getPageSize());
+        assertEquals(4, controller.getScanLimit());
+
+        Thread.sleep(150);
+        controller.onTimeout();
+        assertEquals(275, controller.getPageSize());
+        assertEquals(2, controller.getScanLimit());
+    }
+
+    @Test
+    void testScansWaitForTheLimit() throws Exception {
+        AdaptiveReadController controller = new AdaptiveReadController(1000, 100, 2000, 2, 100);
+        controller.acquireScan();
+
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                controller.acquireScan();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+
+        // A fast page from the running scan raises the limit to 2
+        controller.onPage(FAST);
+        waiting.get(1, TimeUnit.SECONDS);
+    }
+}
@@ -1,13 +1,30 @@
 package com.cassandraexport.cassandra;
 
+import com.cassandraexport.codec.TestRows;
+import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.DefaultConsistencyLevel;
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
 import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.ExecutionInfo;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.NodeState;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.schema.ClusteringOrder;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.KeyspaceMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.metadata.token.Token;
+import com.datastax.oss.driver.api.core.type.DataType;
 import com.datastax.oss.driver.api.core.type.DataTypes;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -20,10 +37,18 @@ import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -48,6 +73,12 @@ public class CassandraClientTest {
     @Mock
     private ResultSet mockResultSet;
     
+    @Mock
+    private ExecutionInfo mockExecutionInfo;
+    
+    @Mock
+    private Metadata mockMetadata;
+    
     @Captor
     private ArgumentCaptor<String> queryCaptor;
     
@@ -63,8 +94,16 @@ public class CassandraClientTest {
         lenient().when(mockSessionBuilder.build()).thenReturn(mockSession);
         
         lenient().when(mockSession.prepare(anyString())).thenReturn(mockPreparedStatement);
-        lenient().when(mockPreparedStatement.bind(anyInt())).thenReturn(mockBoundStatement);
+        lenient().when(mockPreparedStatement.bind()).thenReturn(mockBoundStatement);
+        lenient().when(mockBoundStatement.setPageSize(anyInt())).thenReturn(mockBoundStatement);
+        lenient().when(mockBoundStatement.setPagingState(any(ByteBuffer.class))).thenReturn(mockBoundStatement);
+        lenient().when(mockBoundStatement.setRoutingToken(any(Token.class))).thenReturn(mockBoundStatement);
+        lenient().when(mockBoundStatement.setNode(any(Node.class))).thenReturn(mockBoundStatement);
+        lenient().when(mockBoundStatement.setConsistencyLevel(any(ConsistencyLevel.class))).thenReturn(mockBoundStatement);
+        lenient().when(mockSession.getMetadata()).thenReturn(mockMetadata);
         lenient().when(mockSession.execute(any(BoundStatement.class))).thenReturn(mockResultSet);
+        ColumnDefinitions resultColumns = TestRows.columnDefinitions();
+        lenient().when(mockPreparedStatement.getResultSetDefinitions()).thenReturn(resultColumns);
         lenient().when(mockSession.isClosed()).thenReturn(false);
         
         // Set up test configuration
@@ -81,57 +120,455 @@ public class CassandraClientTest {
     }
     
     @Test
-    void testFetchBatch() throws Exception {
+    void testFetchPage() throws Exception {
         // Set up mocks
         try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
             mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
             
             // Create test data
             List<Row> rows = createMockRows(5);
+            Iterator<Row> rowIterator = rows.iterator();
             
-            // Mock ResultSet
-            when(mockSession.execute(any(BoundStatement.class))).thenReturn(mockResultSet);
-            when(mockResultSet.iterator()).thenReturn(rows.iterator());
+            // Mock ResultSet with a single page and a paging state for the next one
+            when(mockResultSet.getAvailableWithoutFetching()).thenReturn(5);
+            when(mockResultSet.one()).thenAnswer(invocation -> rowIterator.next());
+            when(mockResultSet.getExecutionInfo()).thenReturn(mockExecutionInfo);
+            when(mockExecutionInfo.getPagingState()).thenReturn(ByteBuffer.wrap(new byte[] {1, 2, 3}));
             
             // Create CassandraClient
             cassandraClient = new CassandraClient();
             
-            // Test fetching a batch
-            List<Map<String, Object>> results = cassandraClient.fetchBatch(0, 5);
+            // Verify the query is prepared without a LIMIT
+            verify(mockSession).prepare(queryCaptor.capture());
+            assertEquals("SELECT * FROM testkeyspace.testtable", queryCaptor.getValue());
+            
+            // The row codec is compiled from the columns of the prepared query
+            assertEquals(3, cassandraClient.getRowCodec().getColumnCount());
+            
+            // Test fetching the first page
+            ResultPage page = cassandraClient.fetchPage(null, 5);
             
             // Verify
-            assertNotNull(results);
-            assertEquals(5, results.size());
-            assertEquals("1", results.get(0).get("id"));
-            assertEquals("Test Name 1", results.get(0).get("name"));
+            assertNotNull(page);
+            assertEquals(5, page.getRows().size());
+            assertSame(rows.get(0), page.getRows().get(0));
+            assertEquals(Base64.getEncoder().encodeToString(new byte[] {1, 2, 3}), page.getPagingState());
+            assertFalse(page.isLastPage());
+            verify(mockBoundStatement).setPageSize(5);
+            verify(mockBoundStatement, never()).setPagingState(any(ByteBuffer.class));
         }
     }
     
     @Test
-    void testFetchBatchWithOffset() throws Exception {
+    void testFetchPageWithPagingState() throws Exception {
         // Set up mocks
         try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
             mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
             
             // Create test data
+            List<Row> rows = createMockRows(2);
+            Iterator<Row> rowIterator = rows.iterator();
+            
+            // Mock ResultSet with the last page
+            when(mockResultSet.getAvailableWithoutFetching()).thenReturn(2);
+            when(mockResultSet.one()).thenAnswer(invocation -> rowIterator.next());
+            when(mockResultSet.getExecutionInfo()).thenReturn(mockExecutionInfo);
+            when(mockExecutionInfo.getPagingState()).thenReturn(null);
+            
+            // Create CassandraClient
+            cassandraClient = new CassandraClient();
+            
+            // Test resuming from a stored paging state
+            String pagingState = Base64.getEncoder().encodeToString(new byte[] {1, 2, 3});
+            ResultPage page = cassandraClient.fetchPage(pagingState, 3);
+            
+            // Verify the driver resumed at the stored page and nothing was skipped client-side
+            verify(mockBoundStatement).setPagingState(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+            verify(mockResultSet, times(2)).one();
+            assertEquals(2, page.getRows().size());
+            assertTrue(page.isLastPage());
+        }
+    }
+    
+    @Test
+    void testScanRange() throws Exception {
+        testProperties.setProperty("cassandra.scanMode", "token");
+        testProperties.setProperty("cassandra.partitionKey", "id");
+        
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            
+            // Create test data served as pages of 2, 2 and 1 rows
             List<Row> rows = createMockRows(5);
+            Iterator<Row> rowIterator = rows.iterator();
+            ByteBuffer firstState = ByteBuffer.wrap(new byte[] {1});
+            ByteBuffer secondState = ByteBuffer.wrap(new byte[] {2});
             
-            // Mock ResultSet
-            when(mockSession.execute(any(BoundStatement.class))).thenReturn(mockResultSet);
-            when(mockResultSet.iterator()).thenReturn(rows.iterator());
+            when(mockPreparedStatement.bind(any(), any())).thenReturn(mockBoundStatement);
+            when(mockResultSet.getAvailableWithoutFetching()).thenReturn(2, 2, 1);
+            when(mockResultSet.one()).thenAnswer(invocation -> rowIterator.next());
+            when(mockResultSet.getExecutionInfo()).thenReturn(mockExecutionInfo);
+            when(mockExecutionInfo.getPagingState()).thenReturn(firstState, secondState, null);
             
             // Create CassandraClient
             cassandraClient = new CassandraClient();
             
-            // Test fetching a batch with offset
-            List<Map<String, Object>> results = cassandraClient.fetchBatch(2, 3);
+            // Verify the token range query
+            verify(mockSession).prepare(queryCaptor.capture());
+            assertEquals("SELECT * FROM testkeyspace.testtable WHERE token(id) > ? AND token(id) <= ?",
+                    queryCaptor.getValue());
             
-            // Verify
-            assertNotNull(results);
-            assertEquals(2, results.size()); // We expect 2 results based on implementation
+            // Scan a range in batches of 2
+            TokenRange range = new TokenRange(0, -100L, 100L);
+            List<List<Row>> batches = new ArrayList<>();
+            List<String> pagingStates = new ArrayList<>();
+            boolean completed = cassandraClient.scanRange(range, null, 2, (batch, pagingState) -> {
+                pagingStates.add(pagingState);
+                return batches.add(batch);
+            });
+            
+            // Verify each batch carries the paging state of the page after it
+            assertTrue(completed);
+            verify(mockPreparedStatement, times(3)).bind(-100L, 100L);
+            verify(mockBoundStatement, times(3)).setPageSize(2);
+            assertEquals(3, batches.size());
+            assertEquals(2, batches.get(0).size());
+            assertEquals(1, batches.get(2).size());
+            assertSame(rows.get(4), batches.get(2).get(0));
+            assertEquals(Base64.getEncoder().encodeToString(new byte[] {1}), pagingStates.get(0));
+            assertNull(pagingStates.get(2));
+        }
+    }
+    
+    @Test
+    void testScanRangeRoutesToLocalReplica() throws Exception {
+        testProperties.setProperty("cassandra.scanMode", "token");
+        testProperties.setProperty("cassandra.partitionKey", "id");
+        testProperties.setProperty("cassandra.maxScansPerHost", "1");
+        testProperties.setProperty("cassandra.scanConsistency", "local_quorum");
+        testProperties.setProperty("cassandra.scanPageSize", "500");
+        
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            
+            // Replicas of the range: one down, one in another datacenter and one local
+            Node down = node("datacenter1", NodeState.DOWN);
+            Node remote = node("datacenter2", NodeState.UP);
+            Node local = node("datacenter1", NodeState.UP);
+            Token token = mock(Token.class);
+            TokenMap tokenMap = mock(TokenMap.class);
+            when(mockMetadata.getTokenMap()).thenReturn(Optional.of(tokenMap));
+            when(tokenMap.parse("100")).thenReturn(token);
+            when(tokenMap.getReplicas("testkeyspace", token))
+                    .thenReturn(new LinkedHashSet<>(Arrays.asList(down, remote, local)));
+            
+            when(mockPreparedStatement.bind(any(), any())).thenReturn(mockBoundStatement);
+            when(mockResultSet.getAvailableWithoutFetching()).thenReturn(0);
+            when(mockResultSet.getExecutionInfo()).thenReturn(mockExecutionInfo);
+            
+            cassandraClient = new CassandraClient();
+            assertTrue(cassandraClient.scanRange(new TokenRange(0, -100L, 100L), null, 2,
+                    (batch, pagingState) -> true));
+            
+            // The scan is pinned to the local replica and uses the scan consistency and page size
+            verify(mockBoundStatement).setRoutingToken(token);
+            verify(mockBoundStatement).setNode(local);
+            verify(mockBoundStatement).setConsistencyLevel(DefaultConsistencyLevel.LOCAL_QUORUM);
+            verify(mockBoundStatement).setPageSize(500);
+        }
+    }
+    
+    @Test
+    void testAdaptivePageSizeRetriesTimedOutPage() throws Exception {
+        testProperties.setProperty("cassandra.adaptive.enabled", "true");
+        testProperties.setProperty("cassandra.adaptive.minPageSize", "100");
+        testProperties.setProperty("cassandra.batchSize", "1000");
+        testProperties.setProperty("error.retryBackoffMs", "1");
+        
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            
+            when(mockSession.execute(any(BoundStatement.class)))
+                    .thenThrow(new DriverTimeoutException("Query timed out"))
+                    .thenReturn(mockResultSet);
+            when(mockResultSet.getAvailableWithoutFetching()).thenReturn(0);
+            when(mockResultSet.getExecutionInfo()).thenReturn(mockExecutionInfo);
+            
+            cassandraClient = new CassandraClient();
+            ResultPage page = cassandraClient.fetchPage(null, 1000);
+            
+            // The timed out page is fetched again with half the page size
+            assertTrue(page.isLastPage());
+            verify(mockBoundStatement).setPageSize(1000);
+            verify(mockBoundStatement).setPageSize(500);
+        }
+    }
+    
+    @Test
+    void testScanRangeAsyncPrefetchesNextPage() throws Exception {
+        testProperties.setProperty("cassandra.scanMode", "token");
+        testProperties.setProperty("cassandra.partitionKey", "id");
+        testProperties.setProperty("cassandra.readMode", "async");
+        
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            
+            List<Row> rows = createMockRows(3);
+            AsyncResultSet firstPage = asyncPage(rows.subList(0, 2), ByteBuffer.wrap(new byte[] {1}));
+            AsyncResultSet lastPage = asyncPage(rows.subList(2, 3), null);
+            CompletableFuture<AsyncResultSet> nextPage = new CompletableFuture<>();
+            when(firstPage.hasMorePages()).thenReturn(true);
+            when(firstPage.fetchNextPage()).thenAnswer(invocation -> nextPage);
+            when(mockPreparedStatement.bind(any(), any())).thenReturn(mockBoundStatement);
+            when(mockSession.executeAsync(any(BoundStatement.class)))
+                    .thenAnswer(invocation -> CompletableFuture.completedFuture(firstPage));
+            
+            cassandraClient = new CassandraClient();
+            
+            List<List<Row>> batches = new ArrayList<>();
+            List<String> pagingStates = new ArrayList<>();
+            CompletableFuture<Boolean> firstTaken = new CompletableFuture<>();
+            CompletableFuture<Boolean> scan = cassandraClient.scanRangeAsync(new TokenRange(0, -100L, 100L), null, 2,
+                    (batch, pagingState) -> {
+                        batches.add(batch);
+                        pagingStates.add(pagingState);
+                        return batches.size() == 1 ? firstTaken : CompletableFuture.completedFuture(true);
+                    }).toCompletableFuture();
+            
+            // The next page is requested while the first batch has not been taken yet
+            verify(firstPage).fetchNextPage();
+            nextPage.complete(lastPage);
+            assertEquals(1, batches.size());
+            assertFalse(scan.isDone());
+            
+            // Taking the first batch releases the prefetched page
+            firstTaken.complete(true);
+            assertTrue(scan.get(5, TimeUnit.SECONDS));
+            assertEquals(2, batches.size());
+            assertSame(rows.get(2), batches.get(1).get(0));
+            assertEquals(Base64.getEncoder().encodeToString(new byte[] {1}), pagingStates.get(0));
+            assertNull(pagingStates.get(1));
+            verify(mockSession, times(1)).executeAsync(any(BoundStatement.class));
+            verify(mockSession, never()).execute(any(BoundStatement.class));
+            cassandraClient.close();
+        }
+    }
+    
+    private AsyncResultSet asyncPage(List<Row> rows, ByteBuffer pagingState) {
+        AsyncResultSet page = mock(AsyncResultSet.class);
+        ExecutionInfo executionInfo = mock(ExecutionInfo.class);
+        when(page.remaining()).thenReturn(rows.size());
+        when(page.currentPage()).thenReturn(rows);
+        when(page.getExecutionInfo()).thenReturn(executionInfo);
+        when(executionInfo.getPagingState()).thenReturn(pagingState);
+        return page;
+    }
+    
+    @Test
+    void testScanRangeResumesFromPagingState() throws Exception {
+        testProperties.setProperty("cassandra.scanMode", "token");
+        testProperties.setProperty("cassandra.partitionKey", "id");
+        
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            
+            List<Row> rows = createMockRows(1);
+            Iterator<Row> rowIterator = rows.iterator();
+            
+            when(mockPreparedStatement.bind(any(), any())).thenReturn(mockBoundStatement);
+            when(mockResultSet.getAvailableWithoutFetching()).thenReturn(1);
+            when(mockResultSet.one()).thenAnswer(invocation -> rowIterator.next());
+            when(mockResultSet.getExecutionInfo()).thenReturn(mockExecutionInfo);
+            when(mockExecutionInfo.getPagingState()).thenReturn(null);
+            
+            cassandraClient = new CassandraClient();
+            
+            String pagingState = Base64.getEncoder().encodeToString(new byte[] {4, 2});
+            List<List<Row>> batches = new ArrayList<>();
+            boolean completed = cassandraClient.scanRange(new TokenRange(0, -100L, 100L), pagingState, 2,
+                    (batch, state) -> batches.add(batch));
+            
+            assertTrue(completed);
+            verify(mockBoundStatement).setPagingState(ByteBuffer.wrap(new byte[] {4, 2}));
+            assertEquals(1, batches.size());
+        }
+    }
+    
+    @Test
+    void testScanRangeAbortedByHandler() throws Exception {
+        testProperties.setProperty("cassandra.scanMode", "token");
+        testProperties.setProperty("cassandra.partitionKey", "id");
+        
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            
+            List<Row> rows = createMockRows(2);
+            Iterator<Row> rowIterator = rows.iterator();
+            
+            when(mockPreparedStatement.bind(any(), any())).thenReturn(mockBoundStatement);
+            when(mockResultSet.getAvailableWithoutFetching()).thenReturn(2);
+            when(mockResultSet.one()).thenAnswer(invocation -> rowIterator.next());
+            when(mockResultSet.getExecutionInfo()).thenReturn(mockExecutionInfo);
+            when(mockExecutionInfo.getPagingState()).thenReturn(ByteBuffer.wrap(new byte[] {1}));
+            
+            cassandraClient = new CassandraClient();
+            
+            // Abort after the first batch
+            List<List<Row>> batches = new ArrayList<>();
+            boolean completed = cassandraClient.scanRange(new TokenRange(0, -100L, 100L), null, 2,
+                    (batch, pagingState) -> {
+                        batches.add(batch);
+                        return false;
+                    });
+            
+            assertFalse(completed);
+            assertEquals(1, batches.size());
+            verify(mockSession, times(1)).execute(any(BoundStatement.class));
+        }
+    }
+    
+    @Test
+    void testScanModeRejectsFilteredQuery() throws Exception {
+        testProperties.setProperty("cassandra.scanMode", "token");
+        testProperties.setProperty("cassandra.partitionKey", "id");
+        testProperties.setProperty("cassandra.query", "SELECT * FROM testkeyspace.testtable WHERE id = 1");
+        
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            
+            assertThrows(RuntimeException.class, CassandraClient::new);
+        }
+    }
+    
+    @Test
+    void testProjectionAndKeyPredicate() throws Exception {
+        testProperties.remove("cassandra.query");
+        testProperties.setProperty("cassandra.columns", "tenant, seq, payload");
+        testProperties.setProperty("cassandra.where", "tenant = 1 AND seq > 100");
+        
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            stubTable();
+            
+            cassandraClient = new CassandraClient();
+            
+            // Only the projected columns are read, and the conditions are served by the primary key
+            verify(mockSession).prepare(queryCaptor.capture());
+            assertEquals("SELECT tenant, seq, payload FROM testkeyspace.testtable WHERE tenant = 1 AND seq > 100",
+                    queryCaptor.getValue());
         }
     }
     
+    @Test
+    void testFilteringQueriesAreRejected() throws Exception {
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            stubTable();
+            
+            testProperties.setProperty("cassandra.query",
+                    "SELECT * FROM testkeyspace.testtable WHERE payload = 'x' ALLOW FILTERING");
+            assertThrows(RuntimeException.class, CassandraClient::new);
+            
+            testProperties.setProperty("cassandra.query",
+                    "SELECT * FROM testkeyspace.testtable WHERE payload = 'x' LIMIT 10");
+            assertThrows(RuntimeException.class, CassandraClient::new);
+            
+            testProperties.remove("cassandra.query");
+            testProperties.setProperty("cassandra.columns", "tenant, missing");
+            assertThrows(RuntimeException.class, CassandraClient::new);
+            verify(mockSession, never()).prepare(anyString());
+        }
+    }
+    
+    @Test
+    void testIncrementalColumnSelectsWriteTime() throws Exception {
+        testProperties.remove("cassandra.query");
+        testProperties.setProperty("cassandra.columns", "tenant, seq, payload");
+        testProperties.setProperty("cassandra.incremental.column", "updated_at");
+        ColumnDefinitions resultColumns = TestRows.columnDefinitions(
+                new String[] {"tenant", "seq", "payload", "export_writetime"},
+                new DataType[] {DataTypes.TEXT, DataTypes.INT, DataTypes.TEXT, DataTypes.BIGINT});
+        when(mockPreparedStatement.getResultSetDefinitions()).thenReturn(resultColumns);
+        
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            stubTable();
+            
+            cassandraClient = new CassandraClient();
+            
+            verify(mockSession).prepare(queryCaptor.capture());
+            assertEquals("SELECT tenant, seq, payload, WRITETIME(updated_at) AS export_writetime "
+                    + "FROM testkeyspace.testtable", queryCaptor.getValue());
+            // The write time is not exported
+            assertEquals(3, cassandraClient.getRowCodec().getColumnCount());
+            
+            // Only the rows written after the watermark are handed out
+            Row unchanged = mock(Row.class);
+            when(unchanged.getLong(3)).thenReturn(100L);
+            Row changed = mock(Row.class);
+            when(changed.getLong(3)).thenReturn(101L);
+            Iterator<Row> rowIterator = Arrays.asList(unchanged, changed).iterator();
+            when(mockResultSet.getAvailableWithoutFetching()).thenReturn(2);
+            when(mockResultSet.one()).thenAnswer(invocation -> rowIterator.next());
+            when(mockResultSet.getExecutionInfo()).thenReturn(mockExecutionInfo);
+            
+            assertTrue(cassandraClient.supportsWriteTimeWatermark());
+            cassandraClient.setWriteTimeWatermark(100L);
+            assertEquals(Collections.singletonList(changed), cassandraClient.fetchPage(null, 10).getRows());
+        }
+    }
+    
+    @Test
+    void testIncrementalColumnMustHaveWriteTime() throws Exception {
+        testProperties.remove("cassandra.query");
+        try (MockedStatic<CqlSession> mockedCqlSession = Mockito.mockStatic(CqlSession.class)) {
+            mockedCqlSession.when(CqlSession::builder).thenReturn(mockSessionBuilder);
+            stubTable();
+            
+            testProperties.setProperty("cassandra.incremental.column", "seq");
+            assertThrows(RuntimeException.class, CassandraClient::new);
+            
+            testProperties.setProperty("cassandra.incremental.column", "missing");
+            assertThrows(RuntimeException.class, CassandraClient::new);
+            verify(mockSession, never()).prepare(anyString());
+        }
+    }
+    
+    // testkeyspace.testtable with partition key tenant, clustering column seq, a payload and an updated_at column
+    private void stubTable() {
+        ColumnMetadata tenant = column("tenant");
+        ColumnMetadata seq = column("seq");
+        TableMetadata table = mock(TableMetadata.class);
+        KeyspaceMetadata keyspace = mock(KeyspaceMetadata.class);
+        lenient().when(table.getPartitionKey()).thenReturn(Collections.singletonList(tenant));
+        lenient().when(table.getClusteringColumns())
+                .thenReturn(Collections.singletonMap(seq, ClusteringOrder.ASC));
+        lenient().when(table.getPrimaryKey()).thenReturn(Arrays.asList(tenant, seq));
+        lenient().when(table.getColumn(anyString())).thenAnswer(invocation -> {
+            String name = invocation.getArgument(0);
+            if ("tenant".equals(name) || "seq".equals(name)) {
+                return Optional.of("tenant".equals(name) ? tenant : seq);
+            }
+            return Arrays.asList("payload", "updated_at").contains(name)
+                    ? Optional.of(mock(ColumnMetadata.class)) : Optional.empty();
+        });
+        lenient().when(keyspace.getTable("testtable")).thenReturn(Optional.of(table));
+        lenient().when(mockMetadata.getKeyspace("testkeyspace")).thenReturn(Optional.of(keyspace));
+    }
+    
+    private static ColumnMetadata column(String name) {
+        ColumnMetadata column = mock(ColumnMetadata.class);
+        lenient().when(column.getName()).thenReturn(CqlIdentifier.fromCql(name));
+        return column;
+    }
+    
+    private static Node node(String datacenter, NodeState state) {
+        Node node = mock(Node.class);
+        lenient().when(node.getDatacenter()).thenReturn(datacenter);
+        lenient().when(node.getState()).thenReturn(state);
+        return node;
+    }
+    
     @Test
     void testConnectionManagement() throws Exception {
         // Set up mocks
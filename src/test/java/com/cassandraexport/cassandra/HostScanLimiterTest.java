@@ -0,0 +1,51 @@
+package com.cassandraexport.cassandra;
+
+import com.datastax.oss.driver.api.core.metadata.Node;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class HostScanLimiterTest {
+
+    @Test
+    void testScansGoToTheLeastBusyReplica() throws Exception {
+        HostScanLimiter limiter = new HostScanLimiter(2);
+        Node first = mock(Node.class);
+        Node second = mock(Node.class);
+        List<Node> replicas = Arrays.asList(first, second);
+
+        assertSame(first, limiter.acquire(replicas));
+        assertSame(second, limiter.acquire(replicas));
+        assertSame(first, limiter.acquire(replicas));
+        assertEquals(2, limiter.getActiveScans(first));
+        assertEquals(1, limiter.getActiveScans(second));
+    }
+
+    @Test
+    void testScanWaitsForAFreeReplica() throws Exception {
+        HostScanLimiter limiter = new HostScanLimiter(1);
+        Node node = mock(Node.class);
+        limiter.acquire(Collections.singletonList(node));
+
+        CompletableFuture<Node> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire(Collections.singletonList(node));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+
+        limiter.release(node);
+        assertSame(node, waiting.get(1, TimeUnit.SECONDS));
+        assertEquals(1, limiter.getActiveScans(node));
+    }
+}
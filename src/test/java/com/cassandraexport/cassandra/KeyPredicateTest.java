@@ -0,0 +1,42 @@
+package com.cassandraexport.cassandra;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyPredicateTest {
+
+    private static final List<String> PARTITION_KEY = Arrays.asList("tenant", "day");
+    private static final List<String> CLUSTERING = Arrays.asList("seq", "\"Kind\"");
+
+    @Test
+    void testKeyRestrictionsAreAccepted() {
+        assertDoesNotThrow(() -> validate("tenant = 1 AND day IN (1, 2)"));
+        assertDoesNotThrow(() -> validate("tenant = 1 and day = 2 AND seq > 10 AND seq <= 20"));
+        assertDoesNotThrow(() -> validate("tenant = 1 AND day = 2 AND seq = 3 AND \"Kind\" >= 'a and b'"));
+        assertDoesNotThrow(() -> validate("tenant = 1 AND day = 2 AND (seq, \"Kind\") > (3, 'x')"));
+    }
+
+    @Test
+    void testFilteringRestrictionsAreRejected() {
+        // Not a key column
+        assertThrows(IllegalArgumentException.class, () -> validate("tenant = 1 AND day = 2 AND payload = 'x'"));
+        // Part of the partition key, or a range on it
+        assertThrows(IllegalArgumentException.class, () -> validate("tenant = 1"));
+        assertThrows(IllegalArgumentException.class, () -> validate("tenant = 1 AND day > 2"));
+        // Clustering columns without the partition key, out of order or after a range
+        assertThrows(IllegalArgumentException.class, () -> validate("seq = 3"));
+        assertThrows(IllegalArgumentException.class, () -> validate("tenant = 1 AND day = 2 AND \"Kind\" = 'x'"));
+        assertThrows(IllegalArgumentException.class,
+                () -> validate("tenant = 1 AND day = 2 AND seq > 3 AND \"Kind\" = 'x'"));
+        // Token restrictions belong to token range scans
+        assertThrows(IllegalArgumentException.class, () -> validate("token(tenant, day) > 0"));
+    }
+
+    private static void validate(String where) {
+        KeyPredicate.validate(where, PARTITION_KEY, CLUSTERING);
+    }
+}
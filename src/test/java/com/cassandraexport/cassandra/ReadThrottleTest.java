@@ -0,0 +1,37 @@
+package com.cassandraexport.cassandra;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadThrottleTest {
+
+    @Test
+    void testRowCeiling() {
+        ReadThrottle throttle = new ReadThrottle(1000, 0);
+
+        // The first page is free, the next one waits until the first is paid off
+        assertEquals(0, throttle.reserve(500, -1));
+        long waitNanos = throttle.reserve(500, -1);
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(400), String.valueOf(waitNanos));
+        assertTrue(waitNanos <= TimeUnit.MILLISECONDS.toNanos(500), String.valueOf(waitNanos));
+    }
+
+    @Test
+    void testTheTighterCeilingApplies() {
+        ReadThrottle throttle = new ReadThrottle(1000, 1000);
+
+        throttle.reserve(1, 2000);
+        long waitNanos = throttle.reserve(1, 0);
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(1900), String.valueOf(waitNanos));
+    }
+
+    @Test
+    void testWithoutCeilingNothingWaits() throws Exception {
+        ReadThrottle throttle = new ReadThrottle(0, 0);
+        throttle.acquire(1000000, 1000000000L);
+        assertEquals(0, throttle.reserve(1, 1));
+    }
+}
@@ -0,0 +1,51 @@
+package com.cassandraexport.cassandra;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenRangeTest {
+
+    @Test
+    void testSplitRingCoversWholeRing() {
+        List<TokenRange> ranges = TokenRange.splitRing(256);
+        
+        assertEquals(256, ranges.size());
+        assertEquals(Long.MIN_VALUE, ranges.get(0).getStart());
+        assertEquals(Long.MAX_VALUE, ranges.get(255).getEnd());
+        
+        // Each range must start exactly where the previous one ended
+        for (int i = 1; i < ranges.size(); i++) {
+            assertEquals(i, ranges.get(i).getIndex());
+            assertEquals(ranges.get(i - 1).getEnd(), ranges.get(i).getStart());
+            assertTrue(ranges.get(i).getStart() < ranges.get(i).getEnd());
+        }
+    }
+    
+    @Test
+    void testSplitRingIntoEqualHalves() {
+        List<TokenRange> ranges = TokenRange.splitRing(2);
+        
+        assertEquals(2, ranges.size());
+        assertEquals(Long.MIN_VALUE, ranges.get(0).getStart());
+        assertEquals(-1L, ranges.get(0).getEnd());
+        assertEquals(-1L, ranges.get(1).getStart());
+        assertEquals(Long.MAX_VALUE, ranges.get(1).getEnd());
+    }
+    
+    @Test
+    void testSingleSplit() {
+        List<TokenRange> ranges = TokenRange.splitRing(1);
+        
+        assertEquals(1, ranges.size());
+        assertEquals(new TokenRange(0, Long.MIN_VALUE, Long.MAX_VALUE), ranges.get(0));
+    }
+    
+    @Test
+    void testInvalidSplits() {
+        assertThrows(IllegalArgumentException.class, () -> TokenRange.splitRing(0));
+        assertThrows(IllegalArgumentException.class, () -> new TokenRange(0, 10, 10));
+    }
+}
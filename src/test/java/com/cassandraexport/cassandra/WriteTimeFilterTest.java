@@ -0,0 +1,58 @@
+package com.cassandraexport.cassandra;
+
+import com.cassandraexport.codec.TestRows;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WriteTimeFilterTest {
+
+    @Test
+    void testKeepsRowsWrittenAfterWatermark() {
+        WriteTimeFilter filter = new WriteTimeFilter(3);
+        filter.setWatermark(1000L);
+        Row before = row(999L);
+        Row at = row(1000L);
+        Row after = row(1001L);
+        Row unknown = mock(Row.class);
+        when(unknown.isNull(3)).thenReturn(true);
+
+        assertEquals(Arrays.asList(after, unknown), filter.changed(Arrays.asList(before, at, after, unknown)));
+    }
+
+    @Test
+    void testWithoutWatermarkEveryRowIsKept() {
+        WriteTimeFilter filter = new WriteTimeFilter(3);
+        List<Row> rows = Arrays.asList(row(1L), row(2L));
+
+        assertSame(rows, filter.changed(rows));
+        verify(rows.get(0), never()).getLong(anyInt());
+    }
+
+    @Test
+    void testWriteTimeIsNotExported() {
+        ColumnDefinitions definitions = TestRows.columnDefinitions(
+                new String[] {"id", "name", WriteTimeFilter.ALIAS},
+                new DataType[] {DataTypes.TEXT, DataTypes.TEXT, DataTypes.BIGINT});
+
+        ColumnDefinitions exported = WriteTimeFilter.exportedColumns(definitions);
+
+        assertEquals(2, exported.size());
+        assertEquals("name", exported.get(1).getName().asInternal());
+        assertEquals("WRITETIME(updated_at) AS export_writetime", WriteTimeFilter.selector("updated_at"));
+    }
+
+    private static Row row(long writeTime) {
+        Row row = mock(Row.class);
+        when(row.getLong(3)).thenReturn(writeTime);
+        return row;
+    }
+}
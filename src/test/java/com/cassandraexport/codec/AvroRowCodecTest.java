@@ -0,0 +1,110 @@
+package com.cassandraexport.codec;
+
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class AvroRowCodecTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testEncodeWithSchemaId() throws Exception {
+        FileSchemaRegistry registry = new FileSchemaRegistry(tempDir);
+        AvroRowCodec codec = AvroRowCodec.compile(TestRows.columnDefinitions(), registry, true);
+        Row row = TestRows.row(7);
+
+        byte[] value = codec.encode(row);
+
+        // Confluent wire format: magic byte and the schema id, then the Avro record
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        assertEquals(0, buffer.get());
+        int schemaId = buffer.getInt();
+        GenericRecord record = decode(registry.getSchema(schemaId), value, 5);
+        assertEquals("7", record.get("id").toString());
+        assertEquals("Test Record 7", record.get("name").toString());
+        assertEquals(70, record.get("value"));
+        assertTrue(value.length < JsonRowCodec.compile(TestRows.columnDefinitions()).encode(row).length);
+    }
+
+    @Test
+    void testEncodeWithSchemaFingerprint() throws Exception {
+        AvroRowCodec codec = AvroRowCodec.compile(TestRows.columnDefinitions(), new FileSchemaRegistry(tempDir), false);
+
+        byte[] value = codec.encode(TestRows.row(1));
+
+        // Avro single object encoding: marker bytes and the little endian schema fingerprint
+        ByteBuffer buffer = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals((byte) 0xC3, buffer.get());
+        assertEquals((byte) 0x01, buffer.get());
+        assertEquals(SchemaNormalization.parsingFingerprint64(codec.getSchema()), buffer.getLong());
+        assertEquals("1", decode(codec.getSchema(), value, 10).get("id").toString());
+    }
+
+    @Test
+    void testTypedColumnsAndNulls() throws Exception {
+        ColumnDefinitions definitions = TestRows.columnDefinitions(
+                new String[] {"uid", "amount", "created", "day", "active", "missing"},
+                new DataType[] {DataTypes.UUID, DataTypes.DECIMAL, DataTypes.TIMESTAMP, DataTypes.DATE,
+                        DataTypes.BOOLEAN, DataTypes.BIGINT});
+        AvroRowCodec codec = AvroRowCodec.compile(definitions, new FileSchemaRegistry(tempDir), true);
+
+        UUID uuid = UUID.randomUUID();
+        Row row = mock(Row.class);
+        when(row.isNull(anyInt())).thenReturn(false);
+        when(row.isNull(5)).thenReturn(true);
+        when(row.getUuid(0)).thenReturn(uuid);
+        when(row.getBigDecimal(1)).thenReturn(new java.math.BigDecimal("12.50"));
+        when(row.getInstant(2)).thenReturn(Instant.ofEpochMilli(1700000000000L));
+        when(row.getLocalDate(3)).thenReturn(LocalDate.of(2024, 1, 2));
+        when(row.getBoolean(4)).thenReturn(true);
+
+        GenericRecord record = decode(codec.getSchema(), codec.encode(row), 5);
+
+        assertEquals(uuid.toString(), record.get("uid").toString());
+        assertEquals("12.50", record.get("amount").toString());
+        assertEquals(1700000000000L, record.get("created"));
+        assertEquals((int) LocalDate.of(2024, 1, 2).toEpochDay(), record.get("day"));
+        assertEquals(true, record.get("active"));
+        assertNull(record.get("missing"));
+        assertEquals("timestamp-millis",
+                codec.getSchema().getField("created").schema().getTypes().get(1).getLogicalType().getName());
+    }
+
+    @Test
+    void testSameSchemaKeepsItsId() throws Exception {
+        FileSchemaRegistry registry = new FileSchemaRegistry(tempDir);
+        AvroRowCodec first = AvroRowCodec.compile(TestRows.columnDefinitions(), registry, true);
+        AvroRowCodec second = AvroRowCodec.compile(TestRows.columnDefinitions(), registry, true);
+        AvroRowCodec other = AvroRowCodec.compile(TestRows.columnDefinitions(
+                new String[] {"id"}, new DataType[] {DataTypes.TEXT}), registry, true);
+
+        assertArrayEquals(first.getHeader(), second.getHeader());
+        assertEquals(2, ByteBuffer.wrap(other.getHeader(), 1, 4).getInt());
+    }
+
+    private static GenericRecord decode(Schema schema, byte[] value, int offset) throws Exception {
+        return new GenericDatumReader<GenericRecord>(schema).read(null,
+                DecoderFactory.get().binaryDecoder(value, offset, value.length - offset, null));
+    }
+}
@@ -0,0 +1,61 @@
+package com.cassandraexport.codec;
+
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteArrayPoolTest {
+
+    @Test
+    void testAcquireReusesReleasedArrayOfSameLength() {
+        ByteArrayPool pool = new ByteArrayPool(10);
+        byte[] array = pool.acquire(16);
+        pool.release(array);
+
+        assertEquals(1, pool.getPooledCount());
+        assertNotSame(array, pool.acquire(32));
+        assertSame(array, pool.acquire(16));
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    void testReleaseIsBounded() {
+        ByteArrayPool pool = new ByteArrayPool(2);
+        for (int i = 0; i < 5; i++) {
+            pool.release(new byte[8]);
+        }
+
+        assertEquals(2, pool.getPooledCount());
+    }
+
+    @Test
+    void testCountsHitsAndMisses() {
+        ByteArrayPool pool = new ByteArrayPool(10);
+        byte[] array = pool.acquire(16);
+        pool.release(array);
+        pool.acquire(16);
+        pool.acquire(16);
+
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    void testEncodeIntoPooledArray() throws Exception {
+        RowCodec codec = TestRows.codec();
+        Row row = TestRows.row(1);
+        ByteArrayPool pool = new ByteArrayPool(10);
+        byte[] expected = codec.encode(row);
+        byte[] stale = new byte[expected.length];
+        pool.release(stale);
+
+        byte[] value = codec.encode(row, pool);
+
+        // The recycled array is overwritten with the new value
+        assertSame(stale, value);
+        assertEquals(new String(expected, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,39 @@
+package com.cassandraexport.codec;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSchemaRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRegisterStoresSchemaUnderNewId() throws Exception {
+        Schema first = SchemaBuilder.record("first").fields().requiredInt("a").endRecord();
+        Schema second = SchemaBuilder.record("second").fields().requiredLong("b").endRecord();
+        FileSchemaRegistry registry = new FileSchemaRegistry(tempDir.resolve("schemas"));
+
+        assertEquals(1, registry.register(first));
+        assertEquals(2, registry.register(second));
+        assertEquals(1, registry.register(first));
+
+        assertTrue(Files.exists(tempDir.resolve("schemas").resolve("2.avsc")));
+        assertEquals(second, new FileSchemaRegistry(tempDir.resolve("schemas")).getSchema(2));
+    }
+
+    @Test
+    void testUnreadableSchemaFileIsSkipped() throws Exception {
+        Files.write(tempDir.resolve("1.avsc"), "{not a schema".getBytes());
+        Schema schema = SchemaBuilder.record("row").fields().requiredInt("a").endRecord();
+
+        assertEquals(2, new FileSchemaRegistry(tempDir).register(schema));
+    }
+}
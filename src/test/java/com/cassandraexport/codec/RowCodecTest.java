@@ -0,0 +1,114 @@
+package com.cassandraexport.codec;
+
+import com.cassandraexport.config.AppConfig;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class RowCodecTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void testEncodeReadsColumnsByIndex() throws Exception {
+        RowCodec codec = TestRows.codec();
+        Row row = TestRows.row(7);
+        
+        byte[] value = codec.encode(row);
+        
+        assertEquals("{\"id\":\"7\",\"name\":\"Test Record 7\",\"value\":70}",
+                new String(value, StandardCharsets.UTF_8));
+        verify(row).getInt(2);
+        verify(row, never()).getObject(anyInt());
+        verify(row, never()).getObject(anyString());
+    }
+    
+    @Test
+    void testBufferIsReusedBetweenRows() throws Exception {
+        RowCodec codec = TestRows.codec();
+        
+        byte[] first = codec.encode(TestRows.row(1));
+        byte[] second = codec.encode(TestRows.row(2));
+        
+        // Each value holds exactly one object, nothing of the previous row
+        assertEquals("1", mapper.readTree(first).get("id").asText());
+        assertEquals("{\"id\":\"2\",\"name\":\"Test Record 2\",\"value\":20}",
+                new String(second, StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    void testTypedColumns() throws Exception {
+        ColumnDefinitions definitions = TestRows.columnDefinitions(
+                new String[] {"uid", "amount", "created", "payload", "active", "missing"},
+                new DataType[] {DataTypes.UUID, DataTypes.DECIMAL, DataTypes.TIMESTAMP, DataTypes.BLOB,
+                        DataTypes.BOOLEAN, DataTypes.BIGINT});
+        RowCodec codec = RowCodec.compile(definitions);
+        
+        UUID uuid = UUID.randomUUID();
+        Row row = mock(Row.class);
+        when(row.getUuid(0)).thenReturn(uuid);
+        when(row.getBigDecimal(1)).thenReturn(new BigDecimal("12.50"));
+        when(row.getInstant(2)).thenReturn(Instant.ofEpochMilli(1700000000000L));
+        when(row.getByteBuffer(3)).thenReturn(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        when(row.getBoolean(4)).thenReturn(true);
+        when(row.isNull(5)).thenReturn(true);
+        
+        byte[] value = codec.encode(row);
+        JsonNode json = mapper.readTree(value);
+        
+        assertEquals(uuid.toString(), json.get("uid").asText());
+        assertTrue(new String(value, StandardCharsets.UTF_8).contains("\"amount\":12.50"));
+        assertEquals(1700000000000L, json.get("created").asLong());
+        assertArrayEquals(new byte[] {1, 2, 3}, json.get("payload").binaryValue());
+        assertTrue(json.get("active").asBoolean());
+        assertTrue(json.get("missing").isNull());
+        verify(row, never()).getLong(5);
+    }
+    
+    @Test
+    void testKey() {
+        RowCodec codec = TestRows.codec();
+        assertArrayEquals("42".getBytes(StandardCharsets.UTF_8), codec.key(TestRows.row(42)));
+        assertEquals(RowCodec.NO_TOKEN, codec.token(TestRows.row(42)));
+        assertEquals(3, codec.getColumnCount());
+        assertEquals("name", codec.getColumnName(1));
+        
+        // Without an id column every record gets a random key
+        RowCodec withoutId = RowCodec.compile(TestRows.columnDefinitions(
+                new String[] {"name"}, new DataType[] {DataTypes.TEXT}));
+        String key = new String(withoutId.key(mock(Row.class)), StandardCharsets.UTF_8);
+        assertEquals(key, UUID.fromString(key).toString());
+    }
+    
+    @Test
+    void testForFormat() throws Exception {
+        AppConfig config = mock(AppConfig.class);
+        when(config.getKafkaValueFormat()).thenReturn("json", "avro", "xml");
+        when(config.getKafkaSchemaRegistryDir()).thenReturn(tempDir.toString());
+        when(config.getKafkaSchemaReference()).thenReturn("id");
+        ColumnDefinitions definitions = TestRows.columnDefinitions();
+        
+        assertTrue(RowCodec.forFormat(config, definitions) instanceof JsonRowCodec);
+        assertTrue(RowCodec.forFormat(config, definitions) instanceof AvroRowCodec);
+        assertThrows(IllegalArgumentException.class, () -> RowCodec.forFormat(config, definitions));
+    }
+}
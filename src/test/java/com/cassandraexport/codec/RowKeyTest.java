@@ -0,0 +1,66 @@
+package com.cassandraexport.codec;
+
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RowKeyTest {
+
+    private static final ColumnDefinitions DEFINITIONS = TestRows.columnDefinitions(
+            new String[] {"tenant", "day", "seq", "payload"},
+            new DataType[] {DataTypes.INT, DataTypes.INT, DataTypes.BIGINT, DataTypes.TEXT});
+
+    @Test
+    void testPartitionKeyIsTheRawValue() {
+        RowKey rowKey = RowKey.primaryKey(DEFINITIONS, Collections.singletonList("tenant"),
+                Collections.<String>emptyList());
+        Row row = row(1, 7, 3L);
+
+        assertArrayEquals(new byte[] {0, 0, 0, 1}, rowKey.of(row));
+        // SELECT token(tenant) of an int partition key 1
+        assertEquals(-4069959284402364209L, rowKey.token(row));
+        verify(row, never()).getInt(0);
+    }
+
+    @Test
+    void testPrimaryKeyUsesTheCompositeLayout() {
+        RowKey rowKey = RowKey.primaryKey(DEFINITIONS, Arrays.asList("tenant", "day"),
+                Collections.singletonList("seq"));
+        Row row = row(1, 7, 3L);
+
+        byte[] expected = ByteBuffer.allocate(3 * 3 + 4 + 4 + 8)
+                .putShort((short) 4).putInt(1).put((byte) 0)
+                .putShort((short) 4).putInt(7).put((byte) 0)
+                .putShort((short) 8).putLong(3L).put((byte) 0)
+                .array();
+        assertArrayEquals(expected, rowKey.of(row));
+        assertArrayEquals(expected, rowKey.of(row(1, 7, 3L)));
+
+        // Rows of the same partition share the token, whatever their clustering columns
+        assertEquals(rowKey.token(row), rowKey.token(row(1, 7, 4L)));
+        assertNotEquals(rowKey.token(row), rowKey.token(row(1, 8, 3L)));
+    }
+
+    @Test
+    void testKeyColumnMustBeSelected() {
+        assertThrows(IllegalArgumentException.class, () -> RowKey.primaryKey(DEFINITIONS,
+                Collections.singletonList("missing"), Collections.<String>emptyList()));
+    }
+
+    private static Row row(int tenant, int day, long seq) {
+        Row row = mock(Row.class);
+        when(row.getBytesUnsafe(0)).thenReturn(ByteBuffer.allocate(4).putInt(0, tenant));
+        when(row.getBytesUnsafe(1)).thenReturn(ByteBuffer.allocate(4).putInt(0, day));
+        when(row.getBytesUnsafe(2)).thenReturn(ByteBuffer.allocate(8).putLong(0, seq));
+        return row;
+    }
+}
@@ -0,0 +1,74 @@
+package com.cassandraexport.codec;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import org.mockito.quality.Strictness;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Mocked driver rows of a table with the columns {@code id text, name text, value int}.
+ */
+public final class TestRows {
+
+    private TestRows() {
+    }
+    
+    public static ColumnDefinitions columnDefinitions() {
+        return columnDefinitions(new String[] {"id", "name", "value"},
+                new DataType[] {DataTypes.TEXT, DataTypes.TEXT, DataTypes.INT});
+    }
+    
+    public static ColumnDefinitions columnDefinitions(String[] names, DataType[] types) {
+        ColumnDefinitions definitions = lenientMock(ColumnDefinitions.class);
+        when(definitions.size()).thenReturn(names.length);
+        when(definitions.firstIndexOf(any(CqlIdentifier.class))).thenReturn(-1);
+        for (int i = 0; i < names.length; i++) {
+            CqlIdentifier identifier = lenientMock(CqlIdentifier.class);
+            when(identifier.asInternal()).thenReturn(names[i]);
+            
+            ColumnDefinition definition = lenientMock(ColumnDefinition.class);
+            when(definition.getName()).thenReturn(identifier);
+            when(definition.getType()).thenReturn(types[i]);
+            when(definitions.get(i)).thenReturn(definition);
+            when(definitions.firstIndexOf(CqlIdentifier.fromInternal(names[i]))).thenReturn(i);
+        }
+        return definitions;
+    }
+    
+    public static RowCodec codec() {
+        return RowCodec.compile(columnDefinitions());
+    }
+    
+    public static Row row(int id) {
+        Row row = lenientMock(Row.class);
+        when(row.isNull(anyInt())).thenReturn(false);
+        when(row.getString(0)).thenReturn(String.valueOf(id));
+        when(row.getString(1)).thenReturn("Test Record " + id);
+        when(row.getInt(2)).thenReturn(id * 10);
+        return row;
+    }
+    
+    public static List<Row> rows(int count, int startId) {
+        List<Row> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(row(startId + i));
+        }
+        return rows;
+    }
+    
+    private static <T> T lenientMock(Class<T> type) {
+        return mock(type, withSettings().strictness(Strictness.LENIENT));
+    }
+}
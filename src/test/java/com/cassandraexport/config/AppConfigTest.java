@@ -74,5 +74,23 @@ public class AppConfigTest {
         // Other properties should have default values
         assertEquals("all", config.getKafkaAcks());
         assertEquals(10, config.getKafkaRetries());
+        // The metrics endpoint is only reachable locally unless configured otherwise
+        assertEquals("127.0.0.1", config.getMetricsBindAddress());
     }
-} 
\ No newline at end of file
+    
+    @Test
+    void testKafkaProducerPassthrough() {
+        Properties customProps = new Properties();
+        customProps.setProperty("kafka.producer.compression.type", "zstd");
+        customProps.setProperty("kafka.producer.delivery.timeout.ms", " 60000 ");
+        customProps.setProperty("kafka.topic", "custom-topic");
+
+        TestAppConfig.injectTestProperties(customProps);
+        Properties producerProps = AppConfig.getInstance().getKafkaProducerProperties();
+
+        // Only kafka.producer.* properties are passed through, without the prefix
+        assertEquals(2, producerProps.size());
+        assertEquals("zstd", producerProps.getProperty("compression.type"));
+        assertEquals("60000", producerProps.getProperty("delivery.timeout.ms"));
+    }
+}
@@ -0,0 +1,204 @@
+package com.cassandraexport.file;
+
+import com.cassandraexport.codec.RowCodec;
+import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.kafka.BatchAcknowledgement;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FileSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    private AppConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = mock(AppConfig.class, withSettings().lenient());
+        when(config.getFileDirectory()).thenReturn(tempDir.toString());
+        when(config.getFileFormat()).thenReturn("ndjson");
+        when(config.getFileCompression()).thenReturn("gzip");
+        when(config.getFileRollBytes()).thenReturn(1024L * 1024);
+        when(config.getFileSyncIntervalMs()).thenReturn(20L);
+        when(config.getFileBlockRecords()).thenReturn(100);
+        when(config.getKafkaValueFormat()).thenReturn("json");
+        when(config.getKafkaKeyColumns()).thenReturn("primary");
+        when(config.getCassandraTokenRangeSplits()).thenReturn(4);
+        when(config.getKafkaBatchAckTimeoutMs()).thenReturn(5000L);
+    }
+
+    @Test
+    void testRecordsAreWrittenPerTokenRange() throws Exception {
+        when(config.getFileSyncIntervalMs()).thenReturn(60000L);
+        FileSink sink = new FileSink(config);
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(3);
+
+        sink.sendEncodedAsync(null, -5L, bytes("{\"id\":1}"), acknowledgement);
+        sink.sendEncodedAsync(null, Long.MAX_VALUE, bytes("{\"id\":2}"), acknowledgement);
+        sink.sendEncodedAsync(null, RowCodec.NO_TOKEN, bytes("{\"id\":3}"), acknowledgement);
+
+        // Acknowledged by the sync, not before
+        assertFalse(acknowledgement.await(10, TimeUnit.MILLISECONDS));
+        sink.flush();
+        assertTrue(acknowledgement.isDelivered());
+        sink.close();
+
+        assertEquals("{\"id\":1}\n", OutputFileTest.gunzip(
+                tempDir.resolve("range-00001_-4611686018427387905_-1-000000.ndjson.gz")));
+        assertEquals("{\"id\":2}\n", OutputFileTest.gunzip(
+                tempDir.resolve("range-00003_4611686018427387903_9223372036854775807-000000.ndjson.gz")));
+        assertEquals("{\"id\":3}\n", OutputFileTest.gunzip(tempDir.resolve("all-000000.ndjson.gz")));
+        assertEquals(3, fileNames().size());
+    }
+
+    @Test
+    void testRecordsWithoutTokensAreRefused() throws Exception {
+        // The default key mode computes no tokens, so records could not be placed by token range
+        when(config.getKafkaKeyColumns()).thenReturn(AppConfig.fromProperties(new Properties()).getKafkaKeyColumns());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new FileSink(config));
+
+        assertTrue(e.getMessage().contains("kafka.keyColumns"));
+        assertTrue(fileNames().isEmpty());
+    }
+
+    @Test
+    void testTokensMapToTheirRange() {
+        FileSink sink = new FileSink(config);
+
+        assertEquals(0, sink.rangeIndex(Long.MIN_VALUE + 1));
+        assertEquals(1, sink.rangeIndex(-1L));
+        assertEquals(2, sink.rangeIndex(0L));
+        assertEquals(3, sink.rangeIndex(Long.MAX_VALUE));
+        sink.close();
+    }
+
+    @Test
+    void testSyncSendDoesNotWaitForScheduledSync() throws Exception {
+        // The default sync interval, a batch of the sync send mode writes one record after the other
+        when(config.getFileSyncIntervalMs()).thenReturn(1000L);
+        FileSink sink = new FileSink(config);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(sink.sendEncoded(null, (long) i, bytes("{\"id\":" + i + "}")));
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        sink.close();
+
+        assertTrue(elapsedMs < 1000, "20 records took " + elapsedMs + " ms");
+    }
+
+    @Test
+    void testColumnarBlocks() throws Exception {
+        when(config.getFileFormat()).thenReturn("columnar");
+        when(config.getFileCompression()).thenReturn("none");
+        FileSink sink = new FileSink(config);
+
+        assertTrue(sink.sendEncoded(null, RowCodec.NO_TOKEN, bytes("{\"id\":1,\"name\":\"a\"}")));
+        assertTrue(sink.sendEncoded(null, RowCodec.NO_TOKEN, bytes("{\"id\":2,\"active\":true}")));
+        sink.close();
+
+        assertEquals("{\"rows\":1,\"columns\":{\"id\":[1],\"name\":[\"a\"]}}\n"
+                        + "{\"rows\":1,\"columns\":{\"id\":[2],\"active\":[true]}}\n",
+                read(tempDir.resolve("all-000000.columnar.ndjson")));
+    }
+
+    @Test
+    void testColumnsOfABlock() throws IOException {
+        ColumnBlock block = new ColumnBlock();
+        block.add(bytes("{\"id\":1,\"name\":\"a\"}"));
+        block.add(bytes("{\"id\":2,\"active\":true}"));
+
+        assertEquals("{\"rows\":2,\"columns\":{\"id\":[1,2],\"name\":[\"a\",null],\"active\":[null,true]}}\n",
+                new String(block.encode(), StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> block.add(bytes("[1]")));
+    }
+
+    @Test
+    void testBlockKeepsValuesAsWritten() throws IOException {
+        ColumnBlock block = new ColumnBlock();
+        block.add(bytes("{\"id\": -1.5e3 ,\"name\":\"a \\\"b\\\" \\u00e9\",\"tags\":[1,[2]],\"udt\":{\"x\":{}}}"));
+        // An incomplete record is refused without adding any of its values
+        assertThrows(IllegalArgumentException.class, () -> block.add(bytes("{\"id\":2,\"name\":")));
+        block.add(bytes("{\"id\":3,\"my \\\"col\\\"\":null}"));
+
+        assertEquals("{\"rows\":2,\"columns\":{\"id\":[-1.5e3,3],\"name\":[\"a \\\"b\\\" \\u00e9\",null],"
+                        + "\"tags\":[[1,[2]],null],\"udt\":[{\"x\":{}},null],\"my \\\"col\\\"\":[null,null]}}\n",
+                new String(block.encode(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testFilesRollAndNumberingContinues() throws Exception {
+        when(config.getFileRollBytes()).thenReturn(1L);
+        FileSink sink = new FileSink(config);
+        for (int i = 0; i < 2; i++) {
+            BatchAcknowledgement acknowledgement = new BatchAcknowledgement(1);
+            sink.sendEncodedAsync(null, RowCodec.NO_TOKEN, bytes("{\"id\":" + i + "}"), acknowledgement);
+            sink.flush();
+            assertTrue(acknowledgement.isDelivered());
+        }
+        sink.close();
+
+        // A later run continues after the files that are already there
+        FileSink next = new FileSink(config);
+        next.sendEncoded(null, RowCodec.NO_TOKEN, bytes("{\"id\":2}"));
+        next.close();
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            expected.add(String.format("all-%06d.ndjson.gz", i));
+        }
+        assertEquals(expected, fileNames());
+    }
+
+    @Test
+    void testUnfinishedFilesAreFinishedOnStart() throws Exception {
+        Path inProgress = tempDir.resolve("all-000004.ndjson.inprogress");
+        Files.write(inProgress, bytes("{\"id\":1}\n{\"id\":"));
+        when(config.getFileCompression()).thenReturn("none");
+
+        FileSink sink = new FileSink(config);
+        sink.sendEncoded(null, RowCodec.NO_TOKEN, bytes("{\"id\":2}"));
+        sink.close();
+
+        assertEquals("{\"id\":1}\n", read(tempDir.resolve("all-000004.ndjson")));
+        assertEquals("{\"id\":2}\n", read(tempDir.resolve("all-000005.ndjson")));
+    }
+
+    @Test
+    void testRejectsUnsupportedFormat() {
+        when(config.getFileFormat()).thenReturn("parquet");
+        assertThrows(IllegalArgumentException.class, () -> new FileSink(config));
+    }
+
+    private List<String> fileNames() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
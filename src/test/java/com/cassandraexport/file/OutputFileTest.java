@@ -0,0 +1,93 @@
+package com.cassandraexport.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSyncedGzipMembersFormOneFile() throws IOException {
+        Path target = tempDir.resolve("part.ndjson.gz");
+        OutputFile file = new OutputFile(target, true);
+        file.write(bytes("{\"id\":1}\n"));
+        file.sync();
+        file.write(bytes("{\"id\":2}\n"));
+        assertTrue(Files.exists(tempDir.resolve("part.ndjson.gz.inprogress")));
+
+        file.finish();
+
+        assertFalse(Files.exists(tempDir.resolve("part.ndjson.gz.inprogress")));
+        assertEquals("{\"id\":1}\n{\"id\":2}\n", gunzip(target));
+    }
+
+    @Test
+    void testRecoverCutsGzipFileAtLastSync() throws IOException {
+        Path target = tempDir.resolve("part.ndjson.gz");
+        OutputFile file = new OutputFile(target, true);
+        file.write(bytes("{\"id\":1}\n"));
+        file.sync();
+        file.write(bytes("{\"id\":2}\n"));
+        file.sync();
+        // A crash in the middle of the next member
+        Path inProgress = tempDir.resolve("part.ndjson.gz.inprogress");
+        byte[] torn = Files.readAllBytes(inProgress);
+        Files.write(inProgress, Arrays.copyOf(torn, 12), StandardOpenOption.APPEND);
+        long synced = torn.length;
+
+        assertEquals(target, OutputFile.recover(inProgress, true));
+
+        assertEquals(synced, Files.size(target));
+        assertEquals("{\"id\":1}\n{\"id\":2}\n", gunzip(target));
+    }
+
+    @Test
+    void testRecoverCutsPlainFileAtLastLine() throws IOException {
+        Path inProgress = tempDir.resolve("part.ndjson.inprogress");
+        Files.write(inProgress, bytes("{\"id\":1}\n{\"id\""));
+
+        Path recovered = OutputFile.recover(inProgress, false);
+
+        assertEquals(tempDir.resolve("part.ndjson"), recovered);
+        assertEquals("{\"id\":1}\n", new String(Files.readAllBytes(recovered), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testRecoverDeletesFileWithoutSync() throws IOException {
+        Path inProgress = tempDir.resolve("part.ndjson.gz.inprogress");
+        Files.write(inProgress, new byte[] {0x1f, (byte) 0x8b, 8, 0});
+
+        assertNull(OutputFile.recover(inProgress, true));
+        assertFalse(Files.exists(inProgress));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String gunzip(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                out.write(chunk, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
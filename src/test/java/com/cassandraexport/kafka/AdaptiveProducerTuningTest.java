@@ -0,0 +1,46 @@
+package com.cassandraexport.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveProducerTuningTest {
+
+    @Test
+    void testRecordCompletesSampleOnce() {
+        AdaptiveProducerTuning tuning = new AdaptiveProducerTuning(3, 50);
+
+        assertFalse(tuning.record(100));
+        assertFalse(tuning.record(100));
+        assertTrue(tuning.record(100));
+        assertFalse(tuning.record(100));
+    }
+
+    @Test
+    void testFastTrafficGetsLargeBatchesAndShortLinger() {
+        AdaptiveProducerTuning tuning = new AdaptiveProducerTuning(1, 50);
+
+        // 500 byte values at 200k records/s over 10 partitions: 10 KB per partition and millisecond
+        Properties settings = tuning.settings(500, 200_000, 10);
+
+        assertEquals("500000", settings.getProperty("batch.size"));
+        assertEquals("50", settings.getProperty("linger.ms"));
+
+        // Four times the rate fills the largest batch well within the maximum linger time
+        settings = tuning.settings(500, 800_000, 10);
+        assertEquals(String.valueOf(AdaptiveProducerTuning.MAX_BATCH_SIZE), settings.getProperty("batch.size"));
+        assertEquals("27", settings.getProperty("linger.ms"));
+    }
+
+    @Test
+    void testSlowTrafficKeepsMinimumBatchAndMaximumLinger() {
+        AdaptiveProducerTuning tuning = new AdaptiveProducerTuning(1, 50);
+
+        Properties settings = tuning.settings(200, 100, 12);
+
+        assertEquals(String.valueOf(AdaptiveProducerTuning.MIN_BATCH_SIZE), settings.getProperty("batch.size"));
+        assertEquals("50", settings.getProperty("linger.ms"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.cassandraexport.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchAcknowledgementTest {
+
+    @Test
+    void testAwaitCompletesWhenAllRecordsAcknowledged() throws Exception {
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(3);
+        
+        acknowledgement.recordSuccess();
+        acknowledgement.recordFailure();
+        assertFalse(acknowledgement.await(10, TimeUnit.MILLISECONDS));
+        assertEquals(1, acknowledgement.getPending());
+        
+        acknowledgement.recordSuccess();
+        
+        assertTrue(acknowledgement.await(10, TimeUnit.MILLISECONDS));
+        assertEquals(3, acknowledgement.getExpected());
+        assertEquals(2, acknowledgement.getSucceeded());
+        assertEquals(1, acknowledgement.getFailed());
+        assertEquals(0, acknowledgement.getPending());
+    }
+    
+    @Test
+    void testCallbacksFromOtherThreads() throws Exception {
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(100);
+        
+        Thread callbackThread = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                acknowledgement.recordSuccess();
+            }
+        });
+        callbackThread.start();
+        
+        assertTrue(acknowledgement.await(5, TimeUnit.SECONDS));
+        assertEquals(100, acknowledgement.getSucceeded());
+    }
+}
@@ -1,22 +1,40 @@
 package com.cassandraexport.kafka;
 
+import com.cassandraexport.codec.RowCodec;
 import com.cassandraexport.config.AppConfig;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
 import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -28,7 +46,7 @@ class KafkaProducerTest {
     private KafkaProducer kafkaProducer;
     private AppConfig config;
     @Mock
-    private org.apache.kafka.clients.producer.KafkaProducer<String, String> mockProducer;
+    private org.apache.kafka.clients.producer.KafkaProducer<byte[], byte[]> mockProducer;
     
     @TempDir
     Path tempDir;
@@ -37,8 +55,11 @@ class KafkaProducerTest {
     void setUp() {
         config = mock(AppConfig.class, withSettings().lenient());
         when(config.getErrorMaxRetries()).thenReturn(3);
-        when(config.getErrorRetryBackoffMs()).thenReturn(100);
+        when(config.getErrorRetryBackoffMs()).thenReturn(10);
+        when(config.getKafkaBatchAckTimeoutMs()).thenReturn(5000L);
         when(config.getKafkaTopic()).thenReturn("test-topic");
+        when(config.getKafkaMaxInFlightRecords()).thenReturn(2);
+        when(config.getKafkaPartitioner()).thenReturn("default");
         
         kafkaProducer = new KafkaProducer(config, true); // Use test constructor that skips initialization
         ReflectionTestUtils.setField(kafkaProducer, "producer", mockProducer);
@@ -52,16 +73,16 @@ class KafkaProducerTest {
         record.put("name", "Test");
         TopicPartition topicPartition = new TopicPartition("test-topic", 0);
         RecordMetadata metadata = new RecordMetadata(topicPartition, 0L, 0L, 0L, Long.valueOf(0L), 0, 0);
-        CompletableFuture<RecordMetadata> future = CompletableFuture.completedFuture(metadata);
         
-        when(mockProducer.send(any(ProducerRecord.class))).thenReturn(future);
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class))).thenAnswer(completeWith(metadata, null));
         
         // Act
         boolean result = kafkaProducer.sendRecord("test-key", record);
         
         // Assert
         assertTrue(result);
-        verify(mockProducer).send(any(ProducerRecord.class));
+        verify(mockProducer).send(any(ProducerRecord.class), any(Callback.class));
+        verify(mockProducer, never()).send(any(ProducerRecord.class));
     }
     
     @Test
@@ -70,17 +91,16 @@ class KafkaProducerTest {
         Map<String, Object> record = new HashMap<>();
         record.put("id", "1");
         record.put("name", "Test");
-        CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
-        future.completeExceptionally(new RuntimeException("Test exception"));
-        
-        when(mockProducer.send(any(ProducerRecord.class))).thenReturn(future);
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class)))
+                .thenAnswer(completeWith(null, new RecordTooLargeException("Test exception")));
         
         // Act
         boolean result = kafkaProducer.sendRecord("test-key", record);
         
-        // Assert
+        // Assert - errors a resend cannot fix are not retried
         assertFalse(result);
-        verify(mockProducer, times(3)).send(any(ProducerRecord.class)); // Verify 3 attempts due to retry logic
+        verify(mockProducer, times(1)).send(any(ProducerRecord.class), any(Callback.class));
+        assertEquals(0, kafkaProducer.getInFlightRecords());
     }
     
     @Test
@@ -89,17 +109,400 @@ class KafkaProducerTest {
         Map<String, Object> record = new HashMap<>();
         record.put("id", "1");
         record.put("name", "Test");
-        CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
-        future.completeExceptionally(new TimeoutException("Timed out"));
-        
-        when(mockProducer.send(any(ProducerRecord.class))).thenReturn(future);
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class)))
+                .thenAnswer(completeWith(null, new TimeoutException("Timed out")));
         
         // Act
         boolean result = kafkaProducer.sendRecord("test-key", record);
         
         // Assert
         assertFalse(result);
-        verify(mockProducer, times(3)).send(any(ProducerRecord.class)); // Verify 3 attempts due to retry logic
+        verify(mockProducer, times(3)).send(any(ProducerRecord.class), any(Callback.class)); // Verify 3 attempts due to retry logic
+        assertEquals(0, kafkaProducer.getInFlightRecords());
+        assertFalse(kafkaProducer.isHealthy());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRetriesAreCountedPerRecord() throws Exception {
+        // Arrange - key-1 times out twice, key-2 once, then both are delivered
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition("test-topic", 0), 0L, 0, 0L, 0, 0);
+        Map<String, AtomicInteger> attempts = new HashMap<>();
+        attempts.put("key-1", new AtomicInteger());
+        attempts.put("key-2", new AtomicInteger());
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class))).thenAnswer(invocation -> {
+            ProducerRecord<byte[], byte[]> record = invocation.getArgument(0);
+            String key = new String(record.key(), StandardCharsets.UTF_8);
+            int attempt = attempts.get(key).incrementAndGet();
+            boolean timesOut = attempt <= (key.equals("key-1") ? 2 : 1);
+            invocation.<Callback>getArgument(1).onCompletion(timesOut ? null : metadata,
+                    timesOut ? new TimeoutException("Expired") : null);
+            return new CompletableFuture<RecordMetadata>();
+        });
+
+        // Act - three failed sends in all, more than error.maxRetries, but at most two per record
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(2);
+        kafkaProducer.sendEncodedAsync("key-1".getBytes(StandardCharsets.UTF_8), RowCodec.NO_TOKEN, new byte[0], acknowledgement);
+        kafkaProducer.sendEncodedAsync("key-2".getBytes(StandardCharsets.UTF_8), RowCodec.NO_TOKEN, new byte[0], acknowledgement);
+
+        // Assert
+        assertTrue(acknowledgement.await(5, TimeUnit.SECONDS));
+        assertTrue(acknowledgement.isDelivered());
+        assertEquals(3, attempts.get("key-1").get());
+        assertTrue(kafkaProducer.isHealthy());
+    }
+    
+    @Test
+    void testSendRecordAsync() throws Exception {
+        // Arrange - complete the first send successfully and fail the second one
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", "1");
+        TopicPartition topicPartition = new TopicPartition("test-topic", 0);
+        RecordMetadata metadata = new RecordMetadata(topicPartition, 0L, 0, 0L, 0, 0);
+        
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class)))
+                .thenAnswer(invocation -> {
+                    invocation.<Callback>getArgument(1).onCompletion(metadata, null);
+                    return CompletableFuture.completedFuture(metadata);
+                })
+                .thenAnswer(invocation -> {
+                    invocation.<Callback>getArgument(1).onCompletion(null, new RecordTooLargeException("Too large"));
+                    return new CompletableFuture<RecordMetadata>();
+                });
+        
+        // Act
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(2);
+        kafkaProducer.sendRecordAsync("key-1", record, acknowledgement);
+        kafkaProducer.sendRecordAsync("key-2", record, acknowledgement);
+        
+        // Assert - the send never blocks on the returned future
+        assertTrue(acknowledgement.await(1, TimeUnit.SECONDS));
+        assertEquals(1, acknowledgement.getSucceeded());
+        assertEquals(1, acknowledgement.getFailed());
+        assertEquals(0, kafkaProducer.getInFlightRecords());
+        assertEquals(0, kafkaProducer.getFailedAttempts());
+        // A record failing for a reason of its own does not make the sink unhealthy
+        assertTrue(kafkaProducer.isHealthy());
+        assertFalse(acknowledgement.isDelivered());
+        verify(mockProducer, never()).send(any(ProducerRecord.class));
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedRecordsAreResentOnTheirOwn() throws Exception {
+        // Arrange - the first attempt of key-2 times out, everything else is delivered
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition("test-topic", 0), 0L, 0, 0L, 0, 0);
+        AtomicInteger key2Attempts = new AtomicInteger();
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class))).thenAnswer(invocation -> {
+            ProducerRecord<byte[], byte[]> record = invocation.getArgument(0);
+            boolean timesOut = new String(record.key(), StandardCharsets.UTF_8).equals("key-2")
+                    && key2Attempts.incrementAndGet() == 1;
+            invocation.<Callback>getArgument(1).onCompletion(timesOut ? null : metadata,
+                    timesOut ? new TimeoutException("Expired") : null);
+            return new CompletableFuture<RecordMetadata>();
+        });
+        
+        // Act
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(2);
+        kafkaProducer.sendEncodedAsync("key-1".getBytes(StandardCharsets.UTF_8), RowCodec.NO_TOKEN, new byte[0], acknowledgement);
+        kafkaProducer.sendEncodedAsync("key-2".getBytes(StandardCharsets.UTF_8), RowCodec.NO_TOKEN, new byte[0], acknowledgement);
+        
+        // Assert - only the failed record was sent again, and the batch is fully delivered
+        assertTrue(acknowledgement.await(5, TimeUnit.SECONDS));
+        assertTrue(acknowledgement.isDelivered());
+        assertEquals(2, key2Attempts.get());
+        verify(mockProducer, times(3)).send(any(ProducerRecord.class), any(Callback.class));
+        assertEquals(0, kafkaProducer.getInFlightRecords());
+        assertEquals(0, kafkaProducer.getFailedAttempts());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCloseFailsRecordsWaitingForResend() throws Exception {
+        // Arrange - the first attempt times out, the resend would wait a minute
+        when(config.getErrorRetryBackoffMs()).thenReturn(60000);
+        kafkaProducer = new KafkaProducer(config, true);
+        ReflectionTestUtils.setField(kafkaProducer, "producer", mockProducer);
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class)))
+                .thenAnswer(completeWith(null, new TimeoutException("Expired")));
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(1);
+        kafkaProducer.sendEncodedAsync("key-1".getBytes(StandardCharsets.UTF_8), RowCodec.NO_TOKEN, new byte[0], acknowledgement);
+        assertFalse(acknowledgement.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, kafkaProducer.getFailedAttempts());
+
+        // Act
+        long start = System.currentTimeMillis();
+        kafkaProducer.close();
+
+        // Assert - the record is failed rather than sent after the producer closed
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertTrue(acknowledgement.await(0, TimeUnit.MILLISECONDS));
+        assertEquals(1, acknowledgement.getFailed());
+        assertEquals(0, kafkaProducer.getInFlightRecords());
+        verify(mockProducer, times(1)).send(any(ProducerRecord.class), any(Callback.class));
+        verify(mockProducer).close();
+    }
+
+    @Test
+    void testJitteredBackoff() {
+        for (int i = 0; i < 100; i++) {
+            long backoff = KafkaProducer.jitteredBackoff(100, 2);
+            assertTrue(backoff >= 100 && backoff <= 200, "backoff " + backoff);
+        }
+        assertTrue(KafkaProducer.jitteredBackoff(100, 1000) <= 10000);
+    }
+    
+    @Test
+    void testSendRecordAsyncBoundsInFlightRecords() throws Exception {
+        // Arrange - never complete the sends
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", "1");
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class)))
+                .thenReturn(new CompletableFuture<RecordMetadata>());
+        
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(3);
+        kafkaProducer.sendRecordAsync("key-1", record, acknowledgement);
+        kafkaProducer.sendRecordAsync("key-2", record, acknowledgement);
+        assertEquals(2, kafkaProducer.getInFlightRecords());
+        
+        // Act - a third send has to wait for a free permit
+        Thread sender = new Thread(() -> {
+            try {
+                kafkaProducer.sendRecordAsync("key-3", record, acknowledgement);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        sender.start();
+        sender.join(200);
+        
+        // Assert
+        assertTrue(sender.isAlive());
+        verify(mockProducer, times(2)).send(any(ProducerRecord.class), any(Callback.class));
+        assertFalse(acknowledgement.await(10, TimeUnit.MILLISECONDS));
+        sender.interrupt();
+        sender.join();
+    }
+    
+    @Test
+    void testRecordsSpillWhileKafkaIsBehind() throws Exception {
+        // Arrange - Kafka holds the first sends until it is available again
+        when(config.isKafkaSpillEnabled()).thenReturn(true);
+        when(config.getKafkaSpillDirectory()).thenReturn(tempDir.resolve("spill").toString());
+        when(config.getKafkaSpillSegmentBytes()).thenReturn(1024);
+        when(config.getKafkaSpillMaxBytes()).thenReturn(1024L * 1024);
+        when(config.getKafkaSpillSyncIntervalMs()).thenReturn(10L);
+        when(config.getKafkaSpillWaitMs()).thenReturn(10L);
+        kafkaProducer = new KafkaProducer(config, true);
+        ReflectionTestUtils.setField(kafkaProducer, "producer", mockProducer);
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition("test-topic", 0), 0L, 0, 0L, 0, 0);
+        AtomicBoolean available = new AtomicBoolean(false);
+        List<Callback> held = new CopyOnWriteArrayList<>();
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class))).thenAnswer(invocation -> {
+            if (available.get()) {
+                invocation.<Callback>getArgument(1).onCompletion(metadata, null);
+            } else {
+                held.add(invocation.getArgument(1));
+            }
+            return new CompletableFuture<RecordMetadata>();
+        });
+        List<List<String>> segmentChanges = new CopyOnWriteArrayList<>();
+        kafkaProducer.resumeSpill(Collections.<String>emptyList(), segmentChanges::add);
+
+        // Act - two records take the in-flight permits, the other three go to disk
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(5);
+        for (int i = 0; i < 5; i++) {
+            kafkaProducer.sendEncodedAsync(("key-" + i).getBytes(StandardCharsets.UTF_8), RowCodec.NO_TOKEN,
+                    new byte[] {(byte) i}, acknowledgement);
+        }
+
+        // Assert - the spilled records are acknowledged before Kafka has taken them
+        for (long deadline = System.currentTimeMillis() + 5000;
+             acknowledgement.getSucceeded() < 3 && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, acknowledgement.getSucceeded());
+        assertEquals(Collections.singletonList("spill-0000000000000000.seg"),
+                segmentChanges.get(segmentChanges.size() - 1));
+        assertTrue(kafkaProducer.isHealthy());
+
+        // Act - Kafka catches up and the drainer sends the spilled records
+        available.set(true);
+        for (Callback callback : held) {
+            callback.onCompletion(metadata, null);
+        }
+
+        // Assert
+        for (long deadline = System.currentTimeMillis() + 5000;
+             !segmentChanges.get(segmentChanges.size() - 1).isEmpty() && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(10);
+        }
+        assertTrue(segmentChanges.get(segmentChanges.size() - 1).isEmpty());
+        assertTrue(acknowledgement.isDelivered());
+        verify(mockProducer, times(5)).send(any(ProducerRecord.class), any(Callback.class));
+        assertFalse(Files.exists(tempDir.resolve("spill").resolve("spill-0000000000000000.seg")));
+        kafkaProducer.close();
+    }
+
+    @Test
+    void testSaturatedKafkaDoesNotSpill() throws Exception {
+        // Arrange - Kafka acknowledges every record shortly after it was sent
+        when(config.isKafkaSpillEnabled()).thenReturn(true);
+        when(config.getKafkaSpillDirectory()).thenReturn(tempDir.resolve("spill").toString());
+        when(config.getKafkaSpillSegmentBytes()).thenReturn(1024);
+        when(config.getKafkaSpillMaxBytes()).thenReturn(1024L * 1024);
+        when(config.getKafkaSpillSyncIntervalMs()).thenReturn(10L);
+        when(config.getKafkaSpillWaitMs()).thenReturn(5000L);
+        kafkaProducer = new KafkaProducer(config, true);
+        ReflectionTestUtils.setField(kafkaProducer, "producer", mockProducer);
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition("test-topic", 0), 0L, 0, 0L, 0, 0);
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class))).thenAnswer(invocation -> {
+            Callback callback = invocation.getArgument(1);
+            CompletableFuture.runAsync(() -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                callback.onCompletion(metadata, null);
+            });
+            return new CompletableFuture<RecordMetadata>();
+        });
+        List<List<String>> segmentChanges = new CopyOnWriteArrayList<>();
+        kafkaProducer.resumeSpill(Collections.<String>emptyList(), segmentChanges::add);
+
+        // Act - more records than in-flight permits
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(10);
+        for (int i = 0; i < 10; i++) {
+            kafkaProducer.sendEncodedAsync(("key-" + i).getBytes(StandardCharsets.UTF_8), RowCodec.NO_TOKEN,
+                    new byte[] {(byte) i}, acknowledgement);
+        }
+
+        // Assert - every record waited for a permit and went straight to Kafka
+        assertTrue(acknowledgement.await(5000, TimeUnit.MILLISECONDS));
+        assertTrue(acknowledgement.isDelivered());
+        verify(mockProducer, times(10)).send(any(ProducerRecord.class), any(Callback.class));
+        assertTrue(segmentChanges.stream().allMatch(List::isEmpty));
+        kafkaProducer.close();
+    }
+
+    @Test
+    void testSpilledSegmentsNeedSpillEnabled() {
+        assertThrows(IllegalStateException.class, () -> kafkaProducer.resumeSpill(
+                Collections.singletonList("spill-0000000000000000.seg"), segments -> { }));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSendEncodedPassesValueBytes() throws Exception {
+        // Arrange
+        byte[] value = "{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8);
+        TopicPartition topicPartition = new TopicPartition("test-topic", 0);
+        RecordMetadata metadata = new RecordMetadata(topicPartition, 0L, 0, 0L, 0, 0);
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class))).thenAnswer(completeWith(metadata, null));
+        
+        // Act
+        byte[] key = "key-1".getBytes(StandardCharsets.UTF_8);
+        boolean result = kafkaProducer.sendEncoded(key, RowCodec.NO_TOKEN, value);
+        
+        // Assert - the encoded value is handed over without a String round trip
+        assertTrue(result);
+        ArgumentCaptor<ProducerRecord<byte[], byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(mockProducer).send(captor.capture(), any(Callback.class));
+        assertSame(key, captor.getValue().key());
+        assertNull(captor.getValue().partition());
+        assertSame(value, captor.getValue().value());
+        assertNull(kafkaProducer.getValueBufferPool());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void testTokenPartitioner() throws Exception {
+        // Arrange
+        when(config.getKafkaPartitioner()).thenReturn("token");
+        kafkaProducer = new KafkaProducer(config, true);
+        ReflectionTestUtils.setField(kafkaProducer, "producer", mockProducer);
+        when(mockProducer.partitionsFor("test-topic")).thenReturn(Arrays.asList(
+                new PartitionInfo("test-topic", 0, null, null, null),
+                new PartitionInfo("test-topic", 1, null, null, null),
+                new PartitionInfo("test-topic", 2, null, null, null),
+                new PartitionInfo("test-topic", 3, null, null, null)));
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition("test-topic", 0), 0L, 0, 0L, 0, 0);
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class))).thenAnswer(completeWith(metadata, null));
+        byte[] key = {1};
+        
+        // Act
+        kafkaProducer.sendEncoded(key, Long.MIN_VALUE + 1, new byte[0]);
+        kafkaProducer.sendEncoded(key, -1L, new byte[0]);
+        kafkaProducer.sendEncoded(key, 0L, new byte[0]);
+        kafkaProducer.sendEncoded(key, Long.MAX_VALUE, new byte[0]);
+        kafkaProducer.sendEncoded(key, RowCodec.NO_TOKEN, new byte[0]);
+        
+        // Assert - the ring is split into equal, ordered slices, records without a token are hashed
+        ArgumentCaptor<ProducerRecord<byte[], byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(mockProducer, times(5)).send(captor.capture(), any(Callback.class));
+        assertEquals(Integer.valueOf(0), captor.getAllValues().get(0).partition());
+        assertEquals(Integer.valueOf(1), captor.getAllValues().get(1).partition());
+        assertEquals(Integer.valueOf(2), captor.getAllValues().get(2).partition());
+        assertEquals(Integer.valueOf(3), captor.getAllValues().get(3).partition());
+        assertNull(captor.getAllValues().get(4).partition());
+        verify(mockProducer, times(1)).partitionsFor("test-topic");
+    }
+    
+    @Test
+    void testSendEncodedAsyncRecyclesValueBuffer() throws Exception {
+        // Arrange
+        when(config.isKafkaReuseValueBuffers()).thenReturn(true);
+        when(config.getKafkaValueBufferPoolSize()).thenReturn(10);
+        kafkaProducer = new KafkaProducer(config, true);
+        ReflectionTestUtils.setField(kafkaProducer, "producer", mockProducer);
+        TopicPartition topicPartition = new TopicPartition("test-topic", 0);
+        RecordMetadata metadata = new RecordMetadata(topicPartition, 0L, 0, 0L, 0, 0);
+        when(mockProducer.send(any(ProducerRecord.class), any(Callback.class)))
+                .thenAnswer(invocation -> {
+                    invocation.<Callback>getArgument(1).onCompletion(metadata, null);
+                    return CompletableFuture.completedFuture(metadata);
+                });
+        byte[] value = kafkaProducer.getValueBufferPool().acquire(8);
+        
+        // Act
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(1);
+        kafkaProducer.sendEncodedAsync("key-1".getBytes(StandardCharsets.UTF_8), RowCodec.NO_TOKEN, value, acknowledgement);
+        
+        // Assert - once the record was delivered the array is handed out again
+        assertTrue(acknowledgement.await(1, TimeUnit.SECONDS));
+        assertEquals(1, kafkaProducer.getValueBufferPool().getPooledCount());
+        assertSame(value, kafkaProducer.getValueBufferPool().acquire(8));
+    }
+    
+    @Test
+    void testProducerProperties() {
+        // Arrange
+        when(config.getKafkaBootstrapServers()).thenReturn("localhost:9092");
+        when(config.getKafkaClientId()).thenReturn("test-client");
+        when(config.getKafkaAcks()).thenReturn("1");
+        when(config.getKafkaCompressionType()).thenReturn("zstd");
+        when(config.getKafkaLingerMs()).thenReturn(20);
+        when(config.isKafkaEnableIdempotence()).thenReturn(true);
+        Properties passthrough = new Properties();
+        passthrough.setProperty("linger.ms", "30");
+        passthrough.setProperty("delivery.timeout.ms", "60000");
+        when(config.getKafkaProducerProperties()).thenReturn(passthrough);
+        Properties overrides = new Properties();
+        overrides.setProperty("batch.size", "65536");
+        
+        // Act
+        Properties props = kafkaProducer.producerProperties(overrides);
+        
+        // Assert - passthrough properties replace the named options, overrides replace both
+        assertEquals("zstd", props.get("compression.type"));
+        assertEquals("30", props.get("linger.ms"));
+        assertEquals("60000", props.get("delivery.timeout.ms"));
+        assertEquals("65536", props.get("batch.size"));
+        // Idempotence needs acks=all
+        assertEquals(false, props.get("enable.idempotence"));
+        assertEquals(ByteArraySerializer.class.getName(), props.get("key.serializer"));
+        assertEquals(ByteArraySerializer.class.getName(), props.get("value.serializer"));
     }
     
     @Test
@@ -131,4 +534,12 @@ class KafkaProducerTest {
         // Assert
         assertTrue(result);
     }
-} 
\ No newline at end of file
+
+    // Completes the send callback right away, like a producer with an immediate broker response
+    private static Answer<Future<RecordMetadata>> completeWith(RecordMetadata metadata, Exception exception) {
+        return invocation -> {
+            invocation.<Callback>getArgument(1).onCompletion(metadata, exception);
+            return CompletableFuture.completedFuture(metadata);
+        };
+    }
+}
@@ -0,0 +1,143 @@
+package com.cassandraexport.kafka;
+
+import com.cassandraexport.codec.ByteArrayPool;
+import com.cassandraexport.codec.RowCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpillBufferTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<List<String>> segmentChanges = new ArrayList<>();
+
+    @Test
+    void testRecordsAreAcknowledgedOnceSynced() throws Exception {
+        SpillBuffer spill = new SpillBuffer(tempDir, 1024, 4096, Collections.<String>emptyList(), segmentChanges::add);
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(2);
+
+        assertTrue(spill.append(bytes("key-1"), 42L, bytes("value-1"), acknowledgement));
+        assertTrue(spill.append(null, RowCodec.NO_TOKEN, bytes("value-2"), acknowledgement));
+
+        // Named before the first record went into it, acknowledged only once on disk
+        assertEquals(Collections.singletonList("spill-0000000000000000.seg"), last(segmentChanges));
+        assertEquals(0, acknowledgement.getSucceeded());
+        spill.sync();
+        assertTrue(acknowledgement.isDelivered());
+    }
+
+    @Test
+    void testSegmentsAreReadInOrderAndDeleted() throws Exception {
+        SpillBuffer spill = new SpillBuffer(tempDir, 80, 4096, Collections.<String>emptyList(), segmentChanges::add);
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(spill.append(bytes("key-" + i), i, new byte[4], acknowledgement));
+        }
+        // Two records of 33 bytes fit into a segment of 80 bytes, sealing the first acknowledged its records
+        assertEquals(2, acknowledgement.getSucceeded());
+        assertEquals(2, spill.getSegmentCount());
+
+        SpillBuffer.Segment first = spill.nextSegment(false, 0);
+        assertEquals(2, first.getRecords());
+        List<String> keys = new ArrayList<>();
+        List<Long> tokens = new ArrayList<>();
+        ByteArrayPool valuePool = new ByteArrayPool(10);
+        valuePool.release(new byte[4]);
+        spill.read(first, valuePool, (key, token, value) -> {
+            keys.add(new String(key, StandardCharsets.UTF_8));
+            tokens.add(token);
+            assertEquals(4, value.length);
+        });
+        assertEquals(Arrays.asList("key-0", "key-1"), keys);
+        assertEquals(Arrays.asList(0L, 1L), tokens);
+        // The first value went into the pooled array, the second one into a new array
+        assertEquals(1, valuePool.getHits());
+        assertEquals(1, valuePool.getMisses());
+
+        spill.release(first);
+        assertFalse(Files.exists(tempDir.resolve(first.getName())));
+        assertEquals(Collections.singletonList("spill-0000000000000001.seg"), last(segmentChanges));
+
+        // The segment still taking records is only handed out when asked to seal it
+        assertNull(spill.nextSegment(false, 0));
+        SpillBuffer.Segment second = spill.nextSegment(true, 0);
+        assertEquals(1, second.getRecords());
+        assertTrue(acknowledgement.isDelivered());
+    }
+
+    @Test
+    void testAppendFailsWhenFull() throws Exception {
+        SpillBuffer spill = new SpillBuffer(tempDir, 64, 128, Collections.<String>emptyList(), segmentChanges::add);
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(5);
+
+        // Larger than a segment
+        assertFalse(spill.append(null, 0, new byte[64], acknowledgement));
+        // Two records of 28 bytes per segment, two segments
+        for (int i = 0; i < 4; i++) {
+            assertTrue(spill.append(null, 0, new byte[4], acknowledgement));
+        }
+        assertFalse(spill.append(null, 0, new byte[4], acknowledgement));
+        assertFalse(spill.hasCapacity());
+    }
+
+    @Test
+    void testReopenKeepsOnlyCheckpointedSegments() throws Exception {
+        SpillBuffer spill = new SpillBuffer(tempDir, 80, 4096, Collections.<String>emptyList(), segmentChanges::add);
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(3);
+        for (int i = 0; i < 3; i++) {
+            spill.append(bytes("key-" + i), i, new byte[4], acknowledgement);
+        }
+        spill.close();
+
+        // Only the first segment made it into a checkpoint, the records of the second are read again
+        SpillBuffer reopened = new SpillBuffer(tempDir, 80, 4096,
+                Collections.singletonList("spill-0000000000000000.seg"), segmentChanges::add);
+
+        assertFalse(Files.exists(tempDir.resolve("spill-0000000000000001.seg")));
+        assertEquals(Collections.singletonList("spill-0000000000000000.seg"), last(segmentChanges));
+        assertEquals(2, reopened.nextSegment(false, 0).getRecords());
+
+        // New segments never reuse the name of an old one
+        reopened.append(null, 0, new byte[20], new BatchAcknowledgement(1));
+        assertEquals(Arrays.asList("spill-0000000000000000.seg", "spill-0000000000000002.seg"), last(segmentChanges));
+    }
+
+    @Test
+    void testTornRecordEndsSegment() throws Exception {
+        SpillBuffer spill = new SpillBuffer(tempDir, 1024, 4096, Collections.<String>emptyList(), segmentChanges::add);
+        BatchAcknowledgement acknowledgement = new BatchAcknowledgement(2);
+        spill.append(bytes("key-0"), 0, bytes("value-0"), acknowledgement);
+        spill.append(bytes("key-1"), 1, bytes("value-1"), acknowledgement);
+        spill.close();
+
+        // Corrupt the value of the second record
+        Path file = tempDir.resolve("spill-0000000000000000.seg");
+        byte[] content = Files.readAllBytes(file);
+        int second = 8 + 4 + 5 + 8 + 4 + 7;
+        content[second + 8 + 4 + 5 + 8 + 4] ^= 0x1;
+        Files.write(file, content);
+
+        SpillBuffer reopened = new SpillBuffer(tempDir, 1024, 4096,
+                Collections.singletonList("spill-0000000000000000.seg"), segmentChanges::add);
+        assertEquals(1, reopened.nextSegment(false, 0).getRecords());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> last(List<List<String>> changes) {
+        return changes.get(changes.size() - 1);
+    }
+}
@@ -0,0 +1,75 @@
+package com.cassandraexport.metrics;
+
+import com.cassandraexport.codec.RowCodec;
+import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.kafka.BatchAcknowledgement;
+import com.cassandraexport.kafka.KafkaProducer;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsReporterTest {
+
+    @Test
+    void testPrometheusEndpoint() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("kafka.topic", "test-topic");
+        properties.setProperty("metrics.enabled", "true");
+        properties.setProperty("metrics.bindAddress", "127.0.0.1");
+        properties.setProperty("metrics.port", "0");
+        AppConfig config = AppConfig.fromProperties(properties);
+
+        try (MetricsReporter reporter = MetricsReporter.start(config)) {
+            MockProducer<byte[], byte[]> mockProducer =
+                    new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+            KafkaProducer kafkaProducer = new KafkaProducer(config, mockProducer);
+            BatchAcknowledgement acknowledgement = new BatchAcknowledgement(2);
+            kafkaProducer.sendEncodedAsync(new byte[] {'1'}, RowCodec.NO_TOKEN, new byte[] {1}, acknowledgement);
+            kafkaProducer.sendEncodedAsync(new byte[] {'2'}, RowCodec.NO_TOKEN, new byte[] {2}, acknowledgement);
+            assertTrue(acknowledgement.await(1, TimeUnit.SECONDS));
+            ExportMetrics.get().pageFetched(100, TimeUnit.MILLISECONDS.toNanos(20));
+            ExportMetrics.get().batchSerialized(4096, TimeUnit.MILLISECONDS.toNanos(3));
+
+            String scrape = get("http://127.0.0.1:" + reporter.getPort() + "/metrics");
+
+            assertTrue(scrape.contains("kafka_records_sent_total 2.0"), scrape);
+            assertTrue(scrape.contains("cassandra_rows_fetched_total 100.0"), scrape);
+            assertTrue(scrape.contains("export_bytes_serialized_bytes_total 4096.0"), scrape);
+            assertTrue(scrape.contains("cassandra_page_latency_seconds_bucket"), scrape);
+            assertTrue(scrape.contains("kafka_send_latency_seconds_count 2.0"), scrape);
+            assertTrue(scrape.contains("kafka_records_inflight 0.0"), scrape);
+            assertTrue(scrape.contains("kafka_send_retries 0.0"), scrape);
+        }
+        assertTrue(Metrics.globalRegistry.getRegistries().isEmpty());
+    }
+
+    @Test
+    void testDisabledByDefault() {
+        assertNull(MetricsReporter.start(AppConfig.fromProperties(new Properties())));
+    }
+
+    private static String get(String url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                content.write(buffer, 0, read);
+            }
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
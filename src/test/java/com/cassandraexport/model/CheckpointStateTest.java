@@ -46,6 +46,19 @@ public class CheckpointStateTest {
         assertEquals(batchSize, checkpointState.getRecordsProcessed());
     }
     
+    @Test
+    void testUpdateProgressWithPagingState() {
+        checkpointState.updateProgress(100, 10, "AAEC");
+        
+        assertEquals(100, checkpointState.getLastProcessedOffset());
+        assertEquals("AAEC", checkpointState.getPagingState());
+        
+        checkpointState.updateProgress(105, 5, null);
+        
+        assertNull(checkpointState.getPagingState());
+        assertEquals(15, checkpointState.getRecordsProcessed());
+    }
+    
     @Test
     void testMarkCompleted() {
         checkpointState.markCompleted();
@@ -66,7 +79,7 @@ public class CheckpointStateTest {
     void testSaveAndLoad() throws IOException {
         // Set up checkpoint state with some data
         checkpointState.updateProgress(100, 10);
-        checkpointState.updateProgress(200, 20);
+        checkpointState.updateProgress(200, 20, "AAECAw==");
         
         // Save to temp file
         File tempFile = tempDir.resolve("checkpoint-test.json").toFile();
@@ -82,8 +95,82 @@ public class CheckpointStateTest {
         assertEquals(checkpointState.getRecordsProcessed(), loadedState.getRecordsProcessed());
         assertEquals(checkpointState.isCompleted(), loadedState.isCompleted());
         assertEquals(checkpointState.getErrorMessage(), loadedState.getErrorMessage());
+        assertEquals("AAECAw==", loadedState.getPagingState());
     }
     
+    @Test
+    void testSaveAndLoadCompletedRanges() {
+        checkpointState.setTotalRanges(8);
+        checkpointState.updateRangeProgress(3, -100L, 0L, null, 100);
+        checkpointState.markRangeCompleted(3, -100L, 0L);
+        checkpointState.updateRangeProgress(5, 100L, 200L, null, 50);
+        checkpointState.markRangeCompleted(5, 100L, 200L);
+        
+        String checkpointPath = tempDir.resolve("checkpoint-ranges.json").toFile().getAbsolutePath();
+        checkpointState.save(checkpointPath);
+        
+        CheckpointState loadedState = CheckpointState.load(checkpointPath);
+        
+        assertEquals(8, loadedState.getTotalRanges());
+        assertTrue(loadedState.isRangeCompleted(3));
+        assertTrue(loadedState.isRangeCompleted(5));
+        assertFalse(loadedState.isRangeCompleted(4));
+        assertEquals(150, loadedState.getRecordsProcessed());
+        assertEquals(2, loadedState.getBatchesProcessed());
+    }
+    
+    @Test
+    void testSaveAndLoadBinaryWithPartialRange() {
+        checkpointState.setTotalRanges(4);
+        checkpointState.updateRangeProgress(0, Long.MIN_VALUE, -10L, null, 20);
+        checkpointState.markRangeCompleted(0, Long.MIN_VALUE, -10L);
+        checkpointState.updateRangeProgress(2, 0L, 10L, "AQID", 30);
+        
+        String checkpointPath = tempDir.resolve("checkpoint.bin").toFile().getAbsolutePath();
+        checkpointState.save(checkpointPath);
+        
+        // No temporary file is left behind by the atomic replace
+        assertFalse(new File(checkpointPath + ".tmp").exists());
+        
+        CheckpointState loadedState = CheckpointState.load(checkpointPath);
+        
+        assertEquals(4, loadedState.getTotalRanges());
+        assertTrue(loadedState.isRangeCompleted(0));
+        assertNull(loadedState.getRange(0).getPagingState());
+        assertFalse(loadedState.isRangeCompleted(2));
+        assertEquals("AQID", loadedState.getRange(2).getPagingState());
+        assertEquals(30, loadedState.getRange(2).getRecordsProcessed());
+        assertEquals(0L, loadedState.getRange(2).getStart());
+        assertEquals(10L, loadedState.getRange(2).getEnd());
+        assertEquals(50, loadedState.getRecordsProcessed());
+        assertNull(loadedState.getRange(1));
+    }
+    
+    @Test
+    void testStartRunResetsProgress() {
+        assertTrue(checkpointState.isFresh());
+        checkpointState.setTotalRanges(4);
+        checkpointState.updateRangeProgress(1, 0L, 10L, "AQID", 30);
+        checkpointState.setError("timeout");
+        checkpointState.markCompleted();
+        assertFalse(checkpointState.isFresh());
+
+        checkpointState.startRun(1000L, 2000L);
+
+        assertTrue(checkpointState.isFresh());
+        assertNull(checkpointState.getErrorMessage());
+        assertEquals(0, checkpointState.getTotalRanges());
+        assertNull(checkpointState.getRange(1));
+
+        // The watermark and start of the run survive a JSON checkpoint
+        String checkpointPath = tempDir.resolve("checkpoint-run.json").toFile().getAbsolutePath();
+        checkpointState.save(checkpointPath);
+        CheckpointState loadedState = CheckpointState.load(checkpointPath);
+        assertEquals(1000L, loadedState.getWriteTimeWatermark());
+        assertEquals(2000L, loadedState.getRunStartedAt());
+        assertTrue(loadedState.isFresh());
+    }
+
     @Test
     void testLoadNonExistentFile() {
         File tempFile = tempDir.resolve("nonexistent.json").toFile();
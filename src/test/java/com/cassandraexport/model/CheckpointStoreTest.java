@@ -0,0 +1,107 @@
+package com.cassandraexport.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckpointStoreTest {
+
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void testEncodeAndDecode() throws IOException {
+        CheckpointState state = new CheckpointState();
+        state.startRun(1_700_000_000_000_000L, 1_700_000_100_000_000L);
+        state.updateProgress(500, 100, "AQIDBA==");
+        state.setErrorMessage("broker unavailable");
+        state.setTotalRanges(2);
+        state.updateRangeProgress(1, 0L, Long.MAX_VALUE, "BQY=", 7);
+        state.setSpillSegments(Arrays.asList("spill-0000000000000003.seg", "spill-0000000000000004.seg"));
+        
+        byte[] content = CheckpointStore.encode(state);
+        assertTrue(CheckpointStore.isBinary(content));
+        
+        CheckpointState decoded = CheckpointStore.decode(content);
+        assertEquals(500, decoded.getLastProcessedOffset());
+        assertEquals("AQIDBA==", decoded.getPagingState());
+        assertEquals(2, decoded.getBatchesProcessed());
+        assertEquals(107, decoded.getRecordsProcessed());
+        assertEquals("broker unavailable", decoded.getErrorMessage());
+        assertEquals(2, decoded.getTotalRanges());
+        assertEquals("BQY=", decoded.getRange(1).getPagingState());
+        assertEquals(Long.MAX_VALUE, decoded.getRange(1).getEnd());
+        assertEquals(Arrays.asList("spill-0000000000000003.seg", "spill-0000000000000004.seg"),
+                decoded.getSpillSegments());
+        assertEquals(1_700_000_000_000_000L, decoded.getWriteTimeWatermark());
+        assertEquals(1_700_000_100_000_000L, decoded.getRunStartedAt());
+    }
+    
+    @Test
+    void testDecodesVersionOne() throws IOException {
+        CheckpointState state = new CheckpointState();
+        state.updateProgress(500, 100, "AQIDBA==");
+        
+        // Version 1 ends after the ranges, without the spill segments and the run
+        CheckpointState decoded = CheckpointStore.decode(olderVersion(CheckpointStore.encode(state), 1, 20));
+        assertEquals(500, decoded.getLastProcessedOffset());
+        assertTrue(decoded.getSpillSegments().isEmpty());
+        assertEquals(Long.MIN_VALUE, decoded.getWriteTimeWatermark());
+    }
+    
+    @Test
+    void testDecodesVersionTwo() throws IOException {
+        CheckpointState state = new CheckpointState();
+        state.setSpillSegments(Arrays.asList("spill-0000000000000003.seg"));
+        state.setRunStartedAt(42L);
+        
+        // Version 2 ends after the spill segments, without the run
+        CheckpointState decoded = CheckpointStore.decode(olderVersion(CheckpointStore.encode(state), 2, 16));
+        assertEquals(Arrays.asList("spill-0000000000000003.seg"), decoded.getSpillSegments());
+        assertEquals(0, decoded.getRunStartedAt());
+        assertEquals(Long.MIN_VALUE, decoded.getWriteTimeWatermark());
+    }
+    
+    // Drops the fields later versions added before the checksum and checksums the rest again
+    private static byte[] olderVersion(byte[] content, int version, int addedBytes) {
+        byte[] older = Arrays.copyOf(content, content.length - addedBytes);
+        older[4] = (byte) version;
+        CRC32 crc = new CRC32();
+        crc.update(older, 0, older.length - 8);
+        ByteBuffer.wrap(older).putLong(older.length - 8, crc.getValue());
+        return older;
+    }
+    
+    @Test
+    void testJsonIsNotBinary() {
+        assertFalse(CheckpointStore.isBinary("{\"completed\":false}".getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    @Test
+    void testDecodeRejectsCorruptedContent() throws IOException {
+        byte[] content = CheckpointStore.encode(new CheckpointState());
+        content[10] ^= 0x1;
+        
+        assertThrows(IOException.class, () -> CheckpointStore.decode(content));
+    }
+    
+    @Test
+    void testWriteAtomicallyReplacesFile() throws IOException {
+        Path target = tempDir.resolve("checkpoint.bin");
+        Files.write(target, new byte[] {1, 2, 3});
+        
+        CheckpointStore.writeAtomically(target, new byte[] {4, 5});
+        
+        assertArrayEquals(new byte[] {4, 5}, Files.readAllBytes(target));
+        assertFalse(Files.exists(tempDir.resolve("checkpoint.bin.tmp")));
+    }
+}
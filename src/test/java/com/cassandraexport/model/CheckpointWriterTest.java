@@ -0,0 +1,98 @@
+package com.cassandraexport.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckpointWriterTest {
+
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void testUpdatesAreCoalescedUntilRecordThreshold() throws Exception {
+        CheckpointState state = new CheckpointState();
+        String checkpointFile = tempDir.resolve("checkpoint.bin").toString();
+        
+        try (CheckpointWriter writer = new CheckpointWriter(state, checkpointFile, 60000, 100)) {
+            for (int i = 1; i <= 9; i++) {
+                synchronized (state) {
+                    state.updateProgress(i * 10, 10);
+                }
+                writer.recordProgress(10);
+            }
+            
+            // Below the record threshold and well within the interval, nothing is written yet
+            Thread.sleep(200);
+            assertEquals(0, writer.getFlushCount());
+            assertFalse(new File(checkpointFile).exists());
+            
+            synchronized (state) {
+                state.updateProgress(100, 10);
+            }
+            writer.recordProgress(10);
+            
+            waitForFlushes(writer, 1);
+            assertEquals(1, writer.getFlushCount());
+            assertEquals(100, CheckpointState.load(checkpointFile).getRecordsProcessed());
+        }
+    }
+    
+    @Test
+    void testFlushesAfterInterval() throws Exception {
+        CheckpointState state = new CheckpointState();
+        String checkpointFile = tempDir.resolve("checkpoint.bin").toString();
+        
+        try (CheckpointWriter writer = new CheckpointWriter(state, checkpointFile, 50, 0)) {
+            synchronized (state) {
+                state.updateProgress(5, 5);
+            }
+            writer.recordProgress(5);
+            
+            waitForFlushes(writer, 1);
+            assertEquals(5, CheckpointState.load(checkpointFile).getLastProcessedOffset());
+        }
+    }
+    
+    @Test
+    void testCloseWritesPendingProgress() {
+        CheckpointState state = new CheckpointState();
+        String checkpointFile = tempDir.resolve("checkpoint.json").toString();
+        
+        CheckpointWriter writer = new CheckpointWriter(state, checkpointFile, 60000, 0);
+        synchronized (state) {
+            state.updateProgress(42, 42, "AQI=");
+        }
+        writer.recordProgress(42);
+        writer.close();
+        
+        CheckpointState loaded = CheckpointState.load(checkpointFile);
+        assertEquals(42, loaded.getRecordsProcessed());
+        assertEquals("AQI=", loaded.getPagingState());
+    }
+    
+    @Test
+    void testFlushWritesImmediately() {
+        CheckpointState state = new CheckpointState();
+        String checkpointFile = tempDir.resolve("checkpoint.bin").toString();
+        
+        try (CheckpointWriter writer = new CheckpointWriter(state, checkpointFile, 60000, 0)) {
+            state.setError("Kafka unavailable");
+            writer.flush();
+            
+            assertEquals(1, writer.getFlushCount());
+            assertEquals("Kafka unavailable", CheckpointState.load(checkpointFile).getErrorMessage());
+        }
+    }
+    
+    private void waitForFlushes(CheckpointWriter writer, long flushes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getFlushCount() < flushes && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
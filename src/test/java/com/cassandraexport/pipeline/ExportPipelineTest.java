@@ -0,0 +1,259 @@
+package com.cassandraexport.pipeline;
+
+import com.cassandraexport.cassandra.CassandraClient;
+import com.cassandraexport.cassandra.ResultPage;
+import com.cassandraexport.cassandra.TokenRange;
+import com.cassandraexport.codec.TestRows;
+import com.cassandraexport.config.AppConfig;
+import com.cassandraexport.config.TestAppConfig;
+import com.cassandraexport.kafka.BatchAcknowledgement;
+import com.cassandraexport.kafka.KafkaProducer;
+import com.cassandraexport.model.CheckpointState;
+import com.cassandraexport.model.CheckpointWriter;
+import com.cassandraexport.spi.RowSource;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ExportPipelineTest {
+
+    @Mock
+    private CassandraClient cassandraClient;
+    
+    @Mock
+    private KafkaProducer kafkaProducer;
+    
+    @TempDir
+    Path tempDir;
+    
+    private Properties testProperties;
+    private CheckpointState checkpointState;
+    private String checkpointFile;
+    private CheckpointWriter checkpointWriter;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        testProperties = TestAppConfig.getTestProperties();
+        testProperties.setProperty("cassandra.batchSize", "2");
+        testProperties.setProperty("pipeline.readerThreads", "2");
+        testProperties.setProperty("pipeline.serializerThreads", "3");
+        testProperties.setProperty("pipeline.senderThreads", "2");
+        testProperties.setProperty("pipeline.rowQueueCapacity", "1");
+        testProperties.setProperty("pipeline.sendQueueCapacity", "1");
+        testProperties.setProperty("pipeline.maxPendingBatches", "2");
+        TestAppConfig.injectTestProperties(testProperties);
+        
+        checkpointState = new CheckpointState();
+        checkpointFile = tempDir.resolve("pipeline-checkpoint.json").toString();
+        checkpointWriter = new CheckpointWriter(checkpointState, checkpointFile, 1000, 10000);
+        
+        lenient().when(kafkaProducer.isHealthy()).thenReturn(true);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        checkpointWriter.close();
+    }
+    
+    @Test
+    void testExportTokenRanges() throws Exception {
+        acknowledgeSends(null);
+        when(cassandraClient.scanRange(any(TokenRange.class), any(), anyInt(), any())).thenAnswer(invocation -> {
+            TokenRange range = invocation.getArgument(0);
+            RowSource.BatchHandler handler = invocation.getArgument(3);
+            return handler.onBatch(createSampleBatch(2, range.getIndex() * 10), "state-" + range.getIndex())
+                    && handler.onBatch(createSampleBatch(1, range.getIndex() * 10 + 2), null);
+        });
+        
+        List<TokenRange> ranges = TokenRange.splitRing(4);
+        createPipeline().exportTokenRanges(ranges);
+        
+        // Every record was sent once and every range checkpointed with its record count
+        verify(kafkaProducer, times(12)).sendEncodedAsync(any(byte[].class), anyLong(), any(byte[].class), any(BatchAcknowledgement.class));
+        verify(kafkaProducer, never()).sendRecord(anyString(), any());
+        assertEquals(4, checkpointState.getCompletedRanges().size());
+        assertEquals(12, checkpointState.getRecordsProcessed());
+        assertTrue(checkpointState.isCompleted());
+        assertNull(checkpointState.getErrorMessage());
+        
+        CheckpointState saved = CheckpointState.load(checkpointFile);
+        assertTrue(saved.isCompleted());
+        assertEquals(4, saved.getCompletedRanges().size());
+    }
+    
+    @Test
+    void testExportTokenRangesAsync() throws Exception {
+        testProperties.setProperty("cassandra.readMode", "async");
+        testProperties.setProperty("cassandra.asyncScans", "3");
+        acknowledgeSends(null);
+        ExecutorService driverThreads = Executors.newFixedThreadPool(2);
+        when(cassandraClient.scanRangeAsync(any(TokenRange.class), any(), anyInt(), any())).thenAnswer(invocation -> {
+            TokenRange range = invocation.getArgument(0);
+            RowSource.AsyncBatchHandler handler = invocation.getArgument(3);
+            // Pages arrive on other threads, the next one only once the handler took the previous
+            return CompletableFuture.supplyAsync(() -> createSampleBatch(2, range.getIndex() * 10), driverThreads)
+                    .thenCompose(batch -> handler.onBatch(batch, "state-" + range.getIndex()))
+                    .thenComposeAsync(taken -> taken
+                            ? handler.onBatch(createSampleBatch(1, range.getIndex() * 10 + 2), null)
+                            : CompletableFuture.completedFuture(false), driverThreads);
+        });
+        
+        try {
+            createPipeline().exportTokenRanges(TokenRange.splitRing(8));
+        } finally {
+            driverThreads.shutdownNow();
+        }
+        
+        // All ranges were scanned asynchronously through a row queue of a single batch
+        verify(cassandraClient, never()).scanRange(any(TokenRange.class), any(), anyInt(), any());
+        verify(kafkaProducer, times(24)).sendEncodedAsync(any(byte[].class), anyLong(), any(byte[].class), any(BatchAcknowledgement.class));
+        assertEquals(8, checkpointState.getCompletedRanges().size());
+        assertEquals(24, checkpointState.getRecordsProcessed());
+        assertTrue(checkpointState.isCompleted());
+        assertNull(checkpointState.getErrorMessage());
+    }
+    
+    @Test
+    void testExportSequential() throws Exception {
+        acknowledgeSends(null);
+        List<Row> firstPage = createSampleBatch(2, 0);
+        List<Row> secondPage = createSampleBatch(2, 2);
+        List<Row> lastPage = createSampleBatch(1, 4);
+        when(cassandraClient.fetchPage(null, 2)).thenReturn(new ResultPage(firstPage, "page-2"));
+        when(cassandraClient.fetchPage("page-2", 2)).thenReturn(new ResultPage(secondPage, "page-3"));
+        when(cassandraClient.fetchPage("page-3", 2)).thenReturn(new ResultPage(lastPage, null));
+        
+        createPipeline().exportSequential();
+        
+        // Batches are checkpointed in page order even though several workers handled them
+        verify(kafkaProducer, times(5)).sendEncodedAsync(any(byte[].class), anyLong(), any(byte[].class), any(BatchAcknowledgement.class));
+        assertEquals(5, checkpointState.getLastProcessedOffset());
+        assertEquals(5, checkpointState.getRecordsProcessed());
+        assertEquals(3, checkpointState.getBatchesProcessed());
+        assertNull(checkpointState.getPagingState());
+        assertFalse(checkpointState.isCompleted()); // totalRecords is 1000
+    }
+    
+    @Test
+    void testExportSequentialStopsAtTotalRecords() throws Exception {
+        testProperties.setProperty("cassandra.totalRecords", "4");
+        acknowledgeSends(null);
+        List<Row> firstPage = createSampleBatch(2, 0);
+        List<Row> secondPage = createSampleBatch(2, 2);
+        when(cassandraClient.fetchPage(null, 2)).thenReturn(new ResultPage(firstPage, "page-2"));
+        when(cassandraClient.fetchPage("page-2", 2)).thenReturn(new ResultPage(secondPage, "page-3"));
+        
+        createPipeline().exportSequential();
+        
+        verify(cassandraClient, never()).fetchPage("page-3", 2);
+        assertEquals("page-3", checkpointState.getPagingState());
+        assertTrue(checkpointState.isCompleted());
+    }
+    
+    @Test
+    void testFailedSendsStopThePipeline() throws Exception {
+        acknowledgeSends("1");
+        when(cassandraClient.scanRange(any(TokenRange.class), any(), anyInt(), any())).thenAnswer(invocation -> {
+            RowSource.BatchHandler handler = invocation.getArgument(3);
+            return handler.onBatch(createSampleBatch(2, 0), "state");
+        });
+        
+        createPipeline().exportTokenRanges(TokenRange.splitRing(64));
+        
+        // The failure is recorded and the remaining ranges are abandoned
+        assertNotNull(checkpointState.getErrorMessage());
+        assertFalse(checkpointState.isCompleted());
+        assertTrue(checkpointState.getCompletedRanges().size() < 64);
+        verify(cassandraClient, atMost(63)).scanRange(any(TokenRange.class), any(), anyInt(), any());
+    }
+    
+    @Test
+    void testBufferedRowsAreBounded() throws Exception {
+        testProperties.setProperty("cassandra.batchSize", "10");
+        testProperties.setProperty("pipeline.maxBufferedRows", "4");
+        testProperties.setProperty("pipeline.rowQueueCapacity", "8");
+        testProperties.setProperty("pipeline.sendQueueCapacity", "8");
+        testProperties.setProperty("pipeline.maxPendingBatches", "8");
+
+        // Kafka acknowledges later, from another thread
+        ScheduledExecutorService callbacks = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger unacknowledged = new AtomicInteger();
+        AtomicInteger maxUnacknowledged = new AtomicInteger();
+        doAnswer(invocation -> {
+            BatchAcknowledgement acknowledgement = invocation.getArgument(3);
+            maxUnacknowledged.accumulateAndGet(unacknowledged.incrementAndGet(), Math::max);
+            callbacks.schedule(() -> {
+                unacknowledged.decrementAndGet();
+                acknowledgement.recordSuccess();
+            }, 2, TimeUnit.MILLISECONDS);
+            return null;
+        }).when(kafkaProducer).sendEncodedAsync(any(byte[].class), anyLong(), any(byte[].class), any(BatchAcknowledgement.class));
+        when(cassandraClient.scanRange(any(TokenRange.class), any(), eq(4), any())).thenAnswer(invocation -> {
+            TokenRange range = invocation.getArgument(0);
+            RowSource.BatchHandler handler = invocation.getArgument(3);
+            return handler.onBatch(createSampleBatch(2, range.getIndex() * 10), "state-" + range.getIndex())
+                    && handler.onBatch(createSampleBatch(2, range.getIndex() * 10 + 2), null);
+        });
+
+        try {
+            createPipeline().exportTokenRanges(TokenRange.splitRing(8));
+        } finally {
+            callbacks.shutdownNow();
+        }
+
+        // Pages are capped at the budget, and no more rows than it are between the readers and Kafka
+        assertEquals(32, checkpointState.getRecordsProcessed());
+        assertTrue(checkpointState.isCompleted());
+        assertTrue(maxUnacknowledged.get() <= 4, "at most 4 unacknowledged records, saw " + maxUnacknowledged.get());
+    }
+
+    private ExportPipeline createPipeline() {
+        return new ExportPipeline(AppConfig.getInstance(), cassandraClient, kafkaProducer,
+                checkpointState, checkpointWriter, new AtomicBoolean(true),
+                TestRows.codec());
+    }
+    
+    // Acknowledges every send, failing the ones whose key equals failingKey
+    private void acknowledgeSends(String failingKey) throws Exception {
+        doAnswer(invocation -> {
+            BatchAcknowledgement acknowledgement = invocation.getArgument(3);
+            if (new String(invocation.<byte[]>getArgument(0), StandardCharsets.UTF_8).equals(failingKey)) {
+                acknowledgement.recordFailure();
+            } else {
+                acknowledgement.recordSuccess();
+            }
+            return null;
+        }).when(kafkaProducer).sendEncodedAsync(any(byte[].class), anyLong(), any(byte[].class), any(BatchAcknowledgement.class));
+    }
+    
+    private List<Row> createSampleBatch(int size, int startId) {
+        return TestRows.rows(size, startId);
+    }
+}
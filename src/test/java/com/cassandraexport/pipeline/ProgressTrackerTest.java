@@ -0,0 +1,83 @@
+package com.cassandraexport.pipeline;
+
+import com.cassandraexport.cassandra.TokenRange;
+import com.cassandraexport.model.CheckpointState;
+import com.cassandraexport.model.CheckpointWriter;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class ProgressTrackerTest {
+
+    @TempDir
+    Path tempDir;
+    
+    private CheckpointState checkpointState;
+    private CheckpointWriter checkpointWriter;
+    private ProgressTracker progressTracker;
+    
+    @BeforeEach
+    void setUp() {
+        checkpointState = new CheckpointState();
+        checkpointWriter = new CheckpointWriter(checkpointState,
+                tempDir.resolve("tracker-checkpoint.json").toString(), 1000, 10000);
+        progressTracker = new ProgressTracker(checkpointState, checkpointWriter, 100);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        checkpointWriter.close();
+    }
+    
+    @Test
+    void testSequentialBatchesCommittedInOrder() {
+        RowBatch first = RowBatch.sequential(0, 0, createRows(10), "page-2");
+        RowBatch second = RowBatch.sequential(1, 10, createRows(10), "page-3");
+        
+        // The second batch is acknowledged first, it must not be checkpointed before the first one
+        progressTracker.commit(second);
+        assertEquals(0, checkpointState.getRecordsProcessed());
+        assertNull(checkpointState.getPagingState());
+        
+        progressTracker.commit(first);
+        assertEquals(20, checkpointState.getLastProcessedOffset());
+        assertEquals(20, checkpointState.getRecordsProcessed());
+        assertEquals("page-3", checkpointState.getPagingState());
+        assertEquals(20, progressTracker.getTotalProcessed());
+    }
+    
+    @Test
+    void testRangeCompletedAfterAllBatches() {
+        TokenRange range = new TokenRange(7, 0, 100);
+        TokenRange otherRange = new TokenRange(8, 100, 200);
+        
+        progressTracker.commit(RowBatch.endOfRange(range, 2));
+        progressTracker.commit(RowBatch.ofRange(range, 0, createRows(5), "range-7-page-2"));
+        progressTracker.commit(RowBatch.ofRange(otherRange, 0, createRows(3), "range-8-page-2"));
+        assertFalse(checkpointState.isRangeCompleted(7));
+        assertEquals("range-7-page-2", checkpointState.getRange(7).getPagingState());
+        
+        progressTracker.commit(RowBatch.ofRange(range, 1, createRows(4), null));
+        assertTrue(checkpointState.isRangeCompleted(7));
+        assertFalse(checkpointState.isRangeCompleted(8));
+        
+        // A partially exported range keeps the paging state to resume from
+        assertEquals("range-8-page-2", checkpointState.getRange(8).getPagingState());
+        assertEquals(9, checkpointState.getRange(7).getRecordsProcessed());
+        assertEquals(12, checkpointState.getRecordsProcessed());
+        assertEquals(12, progressTracker.getTotalProcessed());
+    }
+    
+    private List<Row> createRows(int count) {
+        return Collections.nCopies(count, mock(Row.class));
+    }
+}